@@ -0,0 +1,542 @@
+/**
+ * TinyDev - Programming language for kids
+ * 
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Clase que ejecuta por lotes, desde la lnea de comandos, todos los
+ * programas de un directorio, sin ventanas.
+ * 
+ * Uso:
+ * 
+ *   java -cp tinydev.jar TinyDevBatch [opciones] directorio
+ * 
+ *   -threads n      -- N de programas que se ejecutan a la vez (por defecto, n de procesadores)
+ *   -engine nombre  -- Motor de ejecucin: tree, bytecode o jit (por defecto, tree)
+ *   -timeout s      -- Tiempo mximo de ejecucin de cada programa, en segundos (por defecto, 60)
+ *   -idle n         -- N de consultas a Key() / MouseClick() sin entrada, para cerrar la pantalla
+ *   -virtual        -- Ejecutar los programas en threads virtuales (Java 21 o superior); as,
+ *                      se pueden ejecutar muchos ms a la vez, si la mayora esperan (WAIT...)
+ *   -quantum n      -- Ejecutar los programas por turnos de n lneas, en los threads de -threads
+ *                      (ver TinyDevScheduler); as, un programa con un bucle sin fin no retrasa
+ *                      a los dems, y los que esperan (WAIT...) no ocupan ningn thread
+ *   -out fichero    -- Fichero de resultados (por defecto, la salida estndar)
+ * 
+ * Cada programa (fichero .td) se ejecuta con su propio intrprete (ver
+ * TinyDevLang.newRun()) y su propia pantalla sin ventana (ver
+ * TinyDevHeadlessScreen), cuya entrada se toma del fichero con el mismo
+ * nombre y extensin .in, si existe.
+ * 
+ * Los resultados se escriben en orden alfabtico, una lnea por programa,
+ * con sus campos separados por tabuladores:
+ * 
+ *   programa  estado  error  lnea  pantalla  ms
+ * 
+ * El estado es "ok", "error" (el programa ha dado un error), "timeout"
+ * (se ha detenido por superar el tiempo mximo) o "crash" (excepcin del
+ * intrprete). El error y su n de lnea (1..?) son "-" si no los hay, y
+ * la pantalla es el hash SHA-1 de sus pixels al finalizar el programa.
+ * 
+ * @author Miguel
+ */
+public class TinyDevBatch {
+	
+	private static final int DEFAULT_TIMEOUT = 60;  // Tiempo mximo de ejecucin por defecto, en segundos
+	
+	private static final String SOURCE_EXTENSION = ".td";  // Extensin de los programas
+	private static final String INPUT_EXTENSION = ".in";   // Extensin de los guiones de entrada
+	
+	private int threads = Runtime.getRuntime().availableProcessors();  // N de programas que se ejecutan a la vez
+	private int timeout = DEFAULT_TIMEOUT;                             // Tiempo mximo de ejecucin, en segundos
+	private int idleLimit = TinyDevHeadlessScreen.DEFAULT_IDLE_LIMIT;  // N de consultas sin entrada, para cerrar la pantalla
+	private boolean virtual;                                           // True para usar threads virtuales
+	private int quantum;                                               // N de lneas de cada turno, o 0 para ejecutar sin turnos
+	private TinyDevLang config = new TinyDevLang(null);                // Configuracin de los intrpretes
+	
+	// Parada de los programas que superan el tiempo mximo
+	private ScheduledExecutorService watchdog;
+	
+	/**
+	 * Ejecucin de un programa.
+	 */
+	private class Job implements Runnable {
+		
+		private File file;      // Fichero del programa
+		private String status;  // Estado final
+		private String error = "-";
+		private String line = "-";
+		private String hash = "-";
+		private long time;      // Tiempo de ejecucin, en ms
+		
+		private long start;                    // Inicio de la ejecucin (ver System.nanoTime())
+		private ArrayList<String> source;      // Cdigo fuente
+		private TinyDevHeadlessScreen screen;  // Pantalla
+		private ScheduledFuture<?> alarm;      // Parada por tiempo
+		
+		private TinyDevLang lang;             // Intrprete
+		private Thread thread;                // Thread que lo ejecuta, o null si ya ha finalizado
+		private TinyDevScheduler scheduler;   // Planificador que lo ejecuta por turnos, o null
+		private boolean timedOut;             // True si ha superado el tiempo mximo
+		private boolean finished;             // True si ha finalizado
+		
+		/**
+		 * Constructor.
+		 * 
+		 * @param f  fichero del programa
+		 */
+		Job(File f) {
+			
+			file = f;
+		}
+		
+		@Override
+		public void run() {
+			
+			try {
+				load();
+				
+				synchronized(this) {
+					thread = Thread.currentThread();
+				}
+				
+				lang.run(source, screen, file.getAbsoluteFile().getParent());
+				
+				synchronized(this) {
+					thread = null;
+					Thread.interrupted();  // Por si se ha interrumpido al finalizar
+				}
+				
+				finish(null);
+				
+			} catch(Exception | StackOverflowError e) {
+				
+				synchronized(this) {
+					thread = null;
+					Thread.interrupted();
+				}
+				
+				finish(e);
+			}
+		}
+		
+		/**
+		 * Ejecutar el programa por turnos, con un planificador. Finaliza
+		 * enseguida; al finalizar el programa, lo descuenta del contador.
+		 * 
+		 * @param sched  planificador
+		 * @param count  contador de programas en ejecucin
+		 */
+		void schedule(TinyDevScheduler sched, final CountDownLatch count) {
+			
+			try {
+				load();
+				
+				synchronized(this) {
+					scheduler = sched;
+				}
+				
+				sched.submit(lang, source, screen, file.getAbsoluteFile().getParent(), new Consumer<Throwable>() {
+					
+					@Override
+					public void accept(Throwable e) {
+						
+						finish(e);
+						count.countDown();
+					}
+				});
+				
+			} catch(IOException e) {
+				
+				finish(e);
+				count.countDown();
+			}
+		}
+		
+		/**
+		 * Leer el programa y su guin de entrada, y preparar su intrprete
+		 * y su parada por tiempo.
+		 * 
+		 * @throws IOException  si no se pueden leer los ficheros
+		 */
+		private void load() throws IOException {
+			
+			start = System.nanoTime();
+			
+			// Cdigo fuente, como lo lee el editor
+			String text = new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset());
+			source = new ArrayList<String>(Arrays.asList(text.split("\\r?\\n")));
+			
+			// Pantalla, con su guin de entrada
+			screen = new TinyDevHeadlessScreen();
+			screen.setIdleLimit(idleLimit);
+			
+			File input = new File(file.getParentFile(), baseName(file) + INPUT_EXTENSION);
+			
+			if(input.isFile()) {
+				
+				for(String ln : Files.readAllLines(input.toPath(), StandardCharsets.UTF_8)) {
+					
+					if(screen.addInput(ln))
+						throw new IOException("Bad input line in " + input.getName() + ": " + ln);
+				}
+			}
+			
+			// Su propio intrprete
+			lang = config.newRun();
+			
+			alarm = watchdog.schedule(new Runnable() {
+				
+				@Override
+				public void run() {
+					
+					expire();
+				}
+			}, timeout, TimeUnit.SECONDS);
+		}
+		
+		/**
+		 * Tomar el resultado del programa, al finalizar.
+		 * 
+		 * @param e  excepcin del intrprete que lo ha terminado, o null
+		 */
+		private synchronized void finish(Throwable e) {
+			
+			finished = true;
+			
+			if(alarm != null)
+				alarm.cancel(false);
+			
+			if(e == null) {
+				
+				// Resultado
+				if(timedOut)
+					status = "timeout";
+				else if(lang.getError() != TinyDevLang.Error.SUCCESS) {
+					
+					status = "error";
+					error = lang.getError().toString();
+					line = Integer.toString(lang.getErrorLine() + 1);
+				}
+				else
+					status = "ok";
+				
+				try {
+					hash = hash((BufferedImage) screen.getImage(0, 0, 0, 0));
+				} catch(NoSuchAlgorithmException ex) {
+					e = ex;
+				}
+			}
+			
+			if(e != null) {
+				
+				status = "crash";
+				error = e.getClass().getSimpleName();
+			}
+			
+			time = (System.nanoTime() - start) / 1000000;
+		}
+		
+		/**
+		 * Detener el programa, por superar el tiempo mximo. Se llama
+		 * desde el thread de watchdog.
+		 */
+		synchronized void expire() {
+			
+			if(finished)
+				return;
+			
+			if(scheduler != null) {
+				
+				timedOut = true;
+				
+				// Terminar su espera, si est en un WAIT
+				scheduler.stop(lang);
+			}
+			else if(thread != null) {
+				
+				timedOut = true;
+				lang.stop();
+				
+				// Despertar al programa, si est en un WAIT
+				thread.interrupt();
+			}
+		}
+		
+		/**
+		 * Devolver el resultado, como una lnea de texto.
+		 * 
+		 * @return  resultado
+		 */
+		String result() {
+			
+			return file.getName() + "\t" + status + "\t" + error + "\t" + line + "\t" + hash + "\t" + time;
+		}
+	}
+	
+	/**
+	 * Programa principal.
+	 * 
+	 * @param args  argumentos de la lnea de comandos
+	 */
+	public static void main(String[] args) {
+		
+		// Sin ventanas
+		System.setProperty("java.awt.headless", "true");
+		
+		TinyDevBatch batch = new TinyDevBatch();
+		String dir = null;
+		String out = null;
+		
+		// Tomar las opciones
+		try {
+			for(int i = 0; i < args.length; ++i) {
+				
+				switch(args[i]) {
+					case "-threads" :
+						batch.threads = Integer.parseInt(args[++i]);
+						break;
+					case "-engine" :
+						batch.config.setEngine(TinyDevLang.Engine.valueOf(args[++i].toUpperCase(Locale.ROOT)));
+						break;
+					case "-timeout" :
+						batch.timeout = Integer.parseInt(args[++i]);
+						break;
+					case "-idle" :
+						batch.idleLimit = Integer.parseInt(args[++i]);
+						break;
+					case "-out" :
+						out = args[++i];
+						break;
+					case "-virtual" :
+						batch.virtual = true;
+						break;
+					case "-quantum" :
+						batch.quantum = Integer.parseInt(args[++i]);
+						
+						if(batch.quantum < 1)
+							throw new IllegalArgumentException();
+						break;
+					default :
+						if(dir != null || args[i].startsWith("-"))
+							throw new IllegalArgumentException(args[i]);
+						
+						dir = args[i];
+						break;
+				}
+			}
+			
+			if(dir == null || batch.threads < 1 || batch.timeout < 1 || (batch.virtual && batch.quantum > 0))
+				throw new IllegalArgumentException();
+			
+		} catch(RuntimeException e) {
+			
+			usage();
+			System.exit(1);
+		}
+		
+		if(batch.virtual && !TinyDevLang.hasVirtualThreads())
+			System.err.println("TinyDevBatch: virtual threads are not available, using platform threads");
+		
+		// Ejecutar los programas, y escribir los resultados
+		try {
+			ArrayList<Job> jobs = batch.run(new File(dir));
+			
+			PrintStream ps = (out != null ? new PrintStream(new File(out), "UTF-8") : System.out);
+			
+			ps.println("# program\tstatus\terror\tline\tscreen\tms");
+			
+			for(Job job : jobs)
+				ps.println(job.result());
+			
+			ps.flush();
+			
+			if(ps != System.out)
+				ps.close();
+			
+		} catch(IOException e) {
+			
+			System.err.println("TinyDevBatch: " + e.getMessage());
+			System.exit(2);
+		}
+	}
+	
+	/**
+	 * Ejecutar los programas de un directorio, y esperar a que finalicen.
+	 * 
+	 * @param dir  directorio
+	 * @return  ejecuciones, en orden alfabtico de sus ficheros
+	 * @throws IOException  si no se puede leer el directorio
+	 */
+	private ArrayList<Job> run(File dir) throws IOException {
+		
+		File[] files = dir.listFiles();
+		
+		if(files == null)
+			throw new IOException("Cannot read directory " + dir);
+		
+		Arrays.sort(files);
+		
+		ArrayList<Job> jobs = new ArrayList<Job>();
+		
+		for(File f : files) {
+			
+			if(f.isFile() && f.getName().endsWith(SOURCE_EXTENSION))
+				jobs.add(new Job(f));
+		}
+		
+		// Thread de parada por tiempo
+		watchdog = Executors.newSingleThreadScheduledExecutor(daemonThreads("TinyDev watchdog", false));
+		
+		try {
+			if(quantum > 0) {
+				
+				// Por turnos, con un planificador
+				TinyDevScheduler scheduler = new TinyDevScheduler(threads, quantum);
+				CountDownLatch count = new CountDownLatch(jobs.size());
+				
+				for(Job job : jobs)
+					job.schedule(scheduler, count);
+				
+				// Esperar a que finalicen
+				count.await();
+				
+				scheduler.shutdown();
+			}
+			else {
+				
+				// Un thread por programa
+				ExecutorService pool = Executors.newFixedThreadPool(threads, daemonThreads("TinyDev batch", virtual));
+				
+				for(Job job : jobs)
+					pool.execute(job);
+				
+				// Esperar a que finalicen
+				pool.shutdown();
+				
+				while(!pool.awaitTermination(1, TimeUnit.MINUTES))
+					;
+			}
+			
+		} catch(InterruptedException e) {
+			throw new IOException("Interrupted");
+		}
+		
+		watchdog.shutdownNow();
+		
+		return jobs;
+	}
+	
+	/**
+	 * Helper: Factora de threads, que no impiden que finalice la JVM
+	 * (los threads virtuales nunca lo impiden).
+	 * 
+	 * @param name     nombre de los threads
+	 * @param virtual  true para crear threads virtuales, si la JVM los tiene
+	 * @return  factora
+	 */
+	private static ThreadFactory daemonThreads(final String name, final boolean virtual) {
+		
+		return new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				
+				Thread th = TinyDevLang.newThread(r, name, virtual);
+				
+				if(!TinyDevLang.isVirtualThread(th))
+					th.setDaemon(true);
+				
+				return th;
+			}
+		};
+	}
+	
+	/**
+	 * Helper: Nombre de un fichero, sin su extensin.
+	 * 
+	 * @param f  fichero
+	 * @return  nombre
+	 */
+	private static String baseName(File f) {
+		
+		String name = f.getName();
+		int dot = name.lastIndexOf('.');
+		
+		return (dot > 0 ? name.substring(0, dot) : name);
+	}
+	
+	/**
+	 * Helper: Hash SHA-1 de los pixels de una imagen.
+	 * 
+	 * @param img  imagen
+	 * @return  hash, en hexadecimal
+	 */
+	private static String hash(BufferedImage img) throws NoSuchAlgorithmException {
+		
+		MessageDigest md = MessageDigest.getInstance("SHA-1");
+		
+		int[] pixels = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+		byte[] bytes = new byte[pixels.length * 4];
+		
+		for(int i = 0; i < pixels.length; ++i) {
+			
+			bytes[i * 4] = (byte) (pixels[i] >> 24);
+			bytes[i * 4 + 1] = (byte) (pixels[i] >> 16);
+			bytes[i * 4 + 2] = (byte) (pixels[i] >> 8);
+			bytes[i * 4 + 3] = (byte) pixels[i];
+		}
+		
+		StringBuilder sb = new StringBuilder();
+		
+		for(byte b : md.digest(bytes))
+			sb.append(String.format("%02x", b));
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Helper: Mostrar el uso del programa.
+	 */
+	private static void usage() {
+		
+		System.err.println("Usage: TinyDevBatch [-threads n] [-engine tree|bytecode|jit] [-timeout seconds]");
+		System.err.println("                    [-idle polls] [-virtual | -quantum lines] [-out file] directory");
+	}
+}
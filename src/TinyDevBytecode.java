@@ -0,0 +1,511 @@
+/**
+ * TinyDev - Programming language for kids
+ *
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Clase que implementa el compilador a bytecode de un programa, una vez
+ * compiladas sus lneas (ver TinyDevCompiler).
+ * 
+ * El bytecode es un array de enteros, con dos partes:
+ * 
+ * - Las instrucciones del programa, una por lnea ejecutable (las lneas
+ *   vacas y las de place no ocupan nada). La tabla de posiciones de las
+ *   lneas permite continuar la ejecucin en cualquiera de ellas (ver getPc).
+ *   Las que ms se ejecutan (SET, IF, bucles, saltos) tienen su propio
+ *   cdigo de operacin, con sus saltos ya resueltos a posiciones del
+ *   bytecode, segn los destinos enlazados antes de la ejecucin (ver
+ *   TinyDevLang.matchBlocks); el resto, y las que tienen errores de
+ *   compilacin, las ejecuta el intrprete.
+ * 
+ * - Las expresiones, cada una terminada en OP_END. Se calculan con un
+ *   acumulador (las variables exprXxx del intrprete) y una pila de
+ *   operandos. Los argumentos de las funciones son expresiones aparte.
+ * 
+ * Las cadenas de texto, instrucciones y funciones se guardan en un pool
+ * de constantes; el bytecode contiene su posicin en l.
+ * 
+ * La tabla de lneas indica el n de lnea de cada posicin del bytecode,
+ * para poder indicar los errores igual que con el intrprete.
+ * 
+ * @author Miguel
+ */
+public class TinyDevBytecode {
+	
+	// --------------------
+	// Cdigos de operacin
+	// --------------------
+	
+	// Instrucciones; todas llevan la posicin k de la instruccin en el pool
+	public static final int OP_STATEMENT = 0;         // STATEMENT k: ejecutar la instruccin k con el intrprete
+	public static final int OP_SET = 27;              // SET k slot: asignar un valor a una variable
+	public static final int OP_SET_ELEMENT = 28;      // SET_ELEMENT k slot: asignar un valor a un elemento de un array
+	public static final int OP_IF = 29;               // IF k: IF simple
+	public static final int OP_IF_BLOCK = 30;         // IF_BLOCK k pc end: IF de bloque; si es falso, saltar a pc (si end != 0, tras el END IF)
+	public static final int OP_DO = 31;               // DO k pc: DO; al salir del bucle, saltar a pc
+	public static final int OP_LOOP = 32;             // LOOP k: LOOP
+	public static final int OP_BREAK = 33;            // BREAK k pc: salir del bucle, saltar a pc
+	public static final int OP_FOR = 34;              // FOR k pc: FOR; si no se entra en el bucle, saltar a pc
+	public static final int OP_NEXT = 35;             // NEXT k: NEXT
+	public static final int OP_JUMP = 36;             // JUMP k pc: saltar a pc
+	public static final int OP_CALL = 37;             // CALL k pc: llamar a pc
+	public static final int OP_RETURN = 38;           // RETURN k: volver del CALL
+	
+	// Valores (dejan el resultado en el acumulador)
+	public static final int OP_NUMBER = 1;            // NUMBER n: nmero constante
+	public static final int OP_STRING = 2;            // STRING k: cadena de texto k del pool
+	public static final int OP_VARIABLE = 3;          // VARIABLE slot: variable, o array completo
+	public static final int OP_ARRAY = 4;             // ARRAY slot: comprobar que existe el array, antes de calcular el ndice
+	public static final int OP_ELEMENT = 5;           // ELEMENT slot: elemento del array; el ndice est en el acumulador
+	public static final int OP_NEGATIVE = 6;          // NEGATIVE: cambiar el signo del acumulador
+	public static final int OP_FUNCTION = 7;          // FUNCTION k: calcular la funcin k del pool
+	
+	// Pila de operandos
+	public static final int OP_PUSH = 8;              // PUSH: guardar el acumulador en la pila
+	public static final int OP_PUSH_NUMBER = 9;       // PUSH_NUMBER: igual, si es numrico
+	
+	// Operaciones lgicas, con cortocircuito (el operando de la izquierda est en el acumulador)
+	public static final int OP_AND = 10;              // AND pc: si es falso, es el resultado, saltar a pc; si no, calcular el de la derecha
+	public static final int OP_OR = 11;               // OR pc: si es cierto, es el resultado, saltar a pc; si no, calcular el de la derecha
+	public static final int OP_BOOLEAN = 12;          // BOOLEAN: el operando de la derecha, en el acumulador, ha de ser booleano
+	
+	// Operaciones (pila operador acumulador -> acumulador)
+	public static final int OP_EQUAL = 13;
+	public static final int OP_NOT_EQUAL = 14;
+	public static final int OP_GREATER = 15;
+	public static final int OP_GREATER_OR_EQUAL = 16;
+	public static final int OP_LESS = 17;
+	public static final int OP_LESS_OR_EQUAL = 18;
+	public static final int OP_PLUS = 19;
+	public static final int OP_MINUS = 20;
+	public static final int OP_MULTIPLY = 21;
+	public static final int OP_DIVIDE = 22;
+	public static final int OP_MODULUS = 23;
+	
+	// Operaciones con el operando de la derecha inmediato (acumulador operador inmediato -> acumulador)
+	public static final int OP_OPERATE_NUMBER = 24;   // OPERATE_NUMBER op n: operacin op con el nmero constante n
+	public static final int OP_OPERATE_VARIABLE = 25; // OPERATE_VARIABLE op slot: operacin op con una variable
+	
+	// Fin de una expresin
+	public static final int OP_END = 26;
+	
+	private int[] code = new int[256];                 // Bytecode
+	private int[] lines = new int[256];                // N de lnea de cada posicin del bytecode
+	private int size;                                  // Tamao del bytecode
+	private int[] linePcs;                             // Posicin en el bytecode de cada lnea
+	private ArrayList<Object> pool = new ArrayList<Object>();       // Pool de constantes
+	private ArrayList<TinyDevExpr> pending = new ArrayList<TinyDevExpr>();  // Expresiones pendientes de generar
+	private ArrayList<Integer> jumps = new ArrayList<Integer>();            // Posiciones de los saltos, con el n de lnea destino
+	private int lineNumber;                            // N de lnea que se est generando
+	
+	/**
+	 * Compilar a bytecode un programa, cuyas lneas ya estn compiladas.
+	 * 
+	 * @param program  lneas del programa
+	 */
+	public void compile(ArrayList<TinyDevLine> program) {
+		
+		linePcs = new int[program.size() + 1];
+		
+		// Instrucciones, una por lnea ejecutable
+		for(lineNumber = 0; lineNumber < program.size(); ++lineNumber) {
+			
+			linePcs[lineNumber] = size;
+			
+			TinyDevStatement st = program.get(lineNumber).getStatement();
+			
+			if(st != null)
+				compileStatement(program, st);
+		}
+		
+		linePcs[lineNumber] = size;
+		
+		// Resolver los saltos: de n de lnea, a posicin en el bytecode
+		for(int pc : jumps)
+			code[pc] = linePcs[code[pc]];
+		
+		// Expresiones de las instrucciones, incluidas las de IF / ELSE simples
+		for(lineNumber = 0; lineNumber < program.size(); ++lineNumber) {
+			
+			for(TinyDevStatement st = program.get(lineNumber).getStatement(); st != null; st = st.getNext()) {
+				
+				compileExpr(st.getIndex());
+				
+				for(int i = 0; i < st.getArgCount(); ++i)
+					compileExpr(st.getArg(i));
+			}
+		}
+	}
+	
+	/**
+	 * Devolver el bytecode.
+	 * 
+	 * @return  bytecode
+	 */
+	public int[] getCode() {
+		
+		return code;
+	}
+	
+	/**
+	 * Devolver el pool de constantes.
+	 * 
+	 * @return  constantes
+	 */
+	public Object[] getPool() {
+		
+		return pool.toArray();
+	}
+	
+	/**
+	 * Devolver el n de lnea de una posicin del bytecode.
+	 * 
+	 * @param pc  posicin en el bytecode
+	 * @return  n de lnea (0..?)
+	 */
+	public int getLine(int pc) {
+		
+		return lines[pc];
+	}
+	
+	/**
+	 * Devolver la posicin en el bytecode de una lnea. La ltima lnea
+	 * + 1 corresponde al final del programa.
+	 * 
+	 * @param line  n de lnea (0..?)
+	 * @return  posicin en el bytecode
+	 */
+	public int getPc(int line) {
+		
+		return linePcs[line];
+	}
+	
+	/**
+	 * Devolver la tabla de posiciones en el bytecode de las lneas.
+	 * 
+	 * @return  posiciones en el bytecode, segn el n de lnea
+	 */
+	public int[] getLinePcs() {
+		
+		return linePcs;
+	}
+	
+	/**
+	 * Generar una instruccin.
+	 * 
+	 * Los saltos van a la lnea a la que contina el intrprete tras
+	 * ejecutarla: la siguiente a la indicada en lineNumber (ver
+	 * TinyDevLang.exitIf, exitDo y doJump). Si no tiene destino, la
+	 * ejecuta el intrprete, que indica el error.
+	 * 
+	 * @param program  lneas del programa
+	 * @param st       instruccin
+	 */
+	private void compileStatement(ArrayList<TinyDevLine> program, TinyDevStatement st) {
+		
+		int k = constant(st);
+		int target = st.getTarget();
+		
+		// Las instrucciones con errores de compilacin las indica el intrprete
+		if(st.getError() == TinyDevLang.Error.SUCCESS) {
+			
+			switch(st.getCode()) {
+				
+				// SET: variable, o elemento de un array
+				case SET :
+					emit(st.getIndex() == null ? OP_SET : OP_SET_ELEMENT);
+					emit(k);
+					emit(st.getIdentifier().getSlot());
+					return;
+					
+				// IF simple; IF de bloque: si es falso, contina en el ELSE, o
+				// tras el END IF
+				case IF :
+					if(st.getNext() != null) {
+						emit(OP_IF);
+						emit(k);
+						return;
+					}
+					
+					if(target < 0)
+						break;
+					
+					boolean toElse = program.get(target).getStatement().getCode() == TinyDevKeyword.Id.ELSE;
+					
+					emit(OP_IF_BLOCK);
+					emit(k);
+					jump(toElse ? target : target + 1);
+					emit(toElse ? 0 : 1);
+					return;
+					
+				// DO, BREAK, FOR: al salir, continan tras el LOOP o NEXT
+				case DO :
+				case BREAK :
+				case FOR :
+					if(target < 0)
+						break;
+					
+					emit(st.getCode() == TinyDevKeyword.Id.DO ? OP_DO : (st.getCode() == TinyDevKeyword.Id.BREAK ? OP_BREAK : OP_FOR));
+					emit(k);
+					jump(target + 1);
+					return;
+					
+				// LOOP, NEXT, RETURN: continan en la lnea guardada al
+				// ejecutar el DO, FOR o CALL
+				case LOOP :
+					emit(OP_LOOP);
+					emit(k);
+					return;
+					
+				case NEXT :
+					emit(OP_NEXT);
+					emit(k);
+					return;
+					
+				case RETURN :
+					emit(OP_RETURN);
+					emit(k);
+					return;
+					
+				// JUMP, CALL: continan en la lnea del place; si se ha
+				// sustituido el place por su instruccin, el CALL la ejecuta
+				// el intrprete
+				case JUMP :
+				case CALL :
+					if(target < 0 || st.getBody() != null)
+						break;
+					
+					emit(st.getCode() == TinyDevKeyword.Id.JUMP ? OP_JUMP : OP_CALL);
+					emit(k);
+					jump(target);
+					return;
+					
+				default :
+					break;
+			}
+		}
+		
+		// Resto de instrucciones
+		emit(OP_STATEMENT);
+		emit(k);
+	}
+	
+	/**
+	 * Aadir un salto al bytecode, que se resuelve al terminar de generar
+	 * las instrucciones.
+	 * 
+	 * @param line  n de lnea destino
+	 */
+	private void jump(int line) {
+		
+		jumps.add(size);
+		emit(line);
+	}
+	
+	/**
+	 * Generar una expresin, terminada en OP_END, junto con las de los
+	 * argumentos de sus funciones. Cada una queda enlazada con su
+	 * posicin en el bytecode (ver TinyDevExpr.getCode).
+	 * 
+	 * @param e  expresin, o null
+	 */
+	private void compileExpr(TinyDevExpr e) {
+		
+		pending.add(e);
+		
+		while(!pending.isEmpty()) {
+			
+			e = pending.remove(pending.size() - 1);
+			
+			// Generar la expresin, si no lo est ya
+			if(e != null && e.getCode() < 0) {
+				
+				e.setCode(size);
+				
+				compileNode(e);
+				
+				emit(OP_END);
+			}
+		}
+	}
+	
+	/**
+	 * Generar un nodo de una expresin.
+	 * 
+	 * El orden de clculo y las comprobaciones de tipo son los mismos
+	 * que los del intrprete, para obtener los mismos errores.
+	 * 
+	 * @param e  nodo
+	 */
+	private void compileNode(TinyDevExpr e) {
+		
+		switch(e.getType()) {
+		
+			case NUMBER :
+				emit(OP_NUMBER);
+				emit(e.getNumber());
+				break;
+				
+			case STRING :
+				emit(OP_STRING);
+				emit(constant(e.getValue()));
+				break;
+				
+			case VARIABLE :
+				emit(OP_VARIABLE);
+				emit(e.getIdentifier().getSlot());
+				break;
+				
+			case ELEMENT :
+				emit(OP_ARRAY);
+				emit(e.getIdentifier().getSlot());
+				compileNode(e.getArg(0));
+				emit(OP_ELEMENT);
+				emit(e.getIdentifier().getSlot());
+				break;
+				
+			case NEGATIVE :
+				compileNode(e.getArg(0));
+				emit(OP_NEGATIVE);
+				break;
+				
+			case OPERATOR :
+				compileNode(e.getArg(0));
+				
+				// Operacin lgica: el operando de la derecha slo se calcula
+				// si el de la izquierda no decide el resultado
+				if(e.getOperator() == TinyDevOperator.Id.AND || e.getOperator() == TinyDevOperator.Id.OR) {
+					
+					emit(operatorCode(e.getOperator()));
+					
+					int jump = size;
+					emit(0);
+					
+					compileNode(e.getArg(1));
+					emit(OP_BOOLEAN);
+					
+					code[jump] = size;
+					break;
+				}
+				
+				// Si el operando de la derecha es un nmero constante, o una
+				// variable, no es necesario pasar por la pila
+				TinyDevExpr right = e.getArg(1);
+				
+				if(right.getType() == TinyDevExpr.Id.NUMBER) {
+					emit(OP_OPERATE_NUMBER);
+					emit(operatorCode(e.getOperator()));
+					emit(right.getNumber());
+					break;
+				}
+				
+				if(right.getType() == TinyDevExpr.Id.VARIABLE) {
+					emit(OP_OPERATE_VARIABLE);
+					emit(operatorCode(e.getOperator()));
+					emit(right.getIdentifier().getSlot());
+					break;
+				}
+				
+				// El operando izquierdo de algunas operaciones se comprueba
+				// antes de calcular el derecho
+				switch(e.getOperator()) {
+					case MULTIPLY :
+					case DIVIDE :
+					case MODULUS :
+						emit(OP_PUSH_NUMBER);
+						break;
+					default :
+						emit(OP_PUSH);
+						break;
+				}
+				
+				compileNode(e.getArg(1));
+				emit(operatorCode(e.getOperator()));
+				break;
+				
+			case FUNCTION :
+				
+				// Los argumentos se calculan desde la funcin
+				emit(OP_FUNCTION);
+				emit(constant(e));
+				
+				for(int i = e.getArgCount() - 1; i >= 0; --i)
+					pending.add(e.getArg(i));
+				break;
+		}
+	}
+	
+	/**
+	 * Devolver el cdigo de operacin de un operador.
+	 * 
+	 * @param id  operador
+	 * @return  cdigo de operacin
+	 */
+	private static int operatorCode(TinyDevOperator.Id id) {
+		
+		switch(id) {
+			case AND : return OP_AND;
+			case OR : return OP_OR;
+			case EQUAL : return OP_EQUAL;
+			case NOT_EQUAL : return OP_NOT_EQUAL;
+			case GREATER : return OP_GREATER;
+			case GREATER_OR_EQUAL : return OP_GREATER_OR_EQUAL;
+			case LESS : return OP_LESS;
+			case LESS_OR_EQUAL : return OP_LESS_OR_EQUAL;
+			case PLUS : return OP_PLUS;
+			case MINUS : return OP_MINUS;
+			case MULTIPLY : return OP_MULTIPLY;
+			case DIVIDE : return OP_DIVIDE;
+			default : return OP_MODULUS;
+		}
+	}
+	
+	/**
+	 * Aadir una constante al pool.
+	 * 
+	 * @param value  constante
+	 * @return  posicin en el pool
+	 */
+	private int constant(Object value) {
+		
+		pool.add(value);
+		
+		return pool.size() - 1;
+	}
+	
+	/**
+	 * Aadir un entero al bytecode.
+	 * 
+	 * @param value  entero
+	 */
+	private void emit(int value) {
+		
+		// Ampliar el bytecode, si es necesario
+		if(size == code.length) {
+			code = Arrays.copyOf(code, size * 2);
+			lines = Arrays.copyOf(lines, size * 2);
+		}
+		
+		lines[size] = lineNumber;
+		code[size++] = value;
+	}
+}
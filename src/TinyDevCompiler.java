@@ -0,0 +1,1421 @@
+/**
+ * TinyDev - Programming language for kids
+ *
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+import java.util.ArrayList;
+
+/**
+ * Clase que implementa el compilador de lneas de cdigo tokenizado.
+ * 
+ * Convierte los tokens de cada lnea en una instruccin (TinyDevStatement), con
+ * sus expresiones ya analizadas (TinyDevExpr), de forma que el intrprete no
+ * tenga que volver a analizar los tokens cada vez que ejecuta la lnea.
+ * 
+ * Los errores de sintaxis no abortan la compilacin del programa: se guardan en
+ * la instruccin, y se indican cuando sta se ejecuta, en la misma lnea que
+ * antes.
+ * 
+ * @author Miguel
+ */
+public class TinyDevCompiler {
+	
+	private ArrayList<TinyDevToken> tokens;  // Lnea de tokens que se est compilando
+	private int index;                       // Posicin en la lnea de tokens
+	private TinyDevLang.Error errorId;       // Cdigo de error
+	
+	/**
+	 * Compilar una lnea de tokens, que ha de comenzar por
+	 * una palabra reservada.
+	 * 
+	 * @param tks  tokens
+	 * @return  instruccin compilada; en caso de error, contiene el cdigo de error
+	 */
+	public TinyDevStatement compile(ArrayList<TinyDevToken> tks) {
+		
+		// Inicializar globales
+		tokens = tks;
+		index = 1;
+		errorId = TinyDevLang.Error.SUCCESS;
+		
+		// El 1er token ha de ser una palabra reservada
+		if(tokens.isEmpty() || tokens.get(0).getType() != TinyDevToken.Id.KEYWORD) {
+			
+			TinyDevStatement st = new TinyDevStatement(null);
+			st.setError(TinyDevLang.Error.BAD_SYNTAX);
+			return st;
+		}
+		
+		// Tomar la instruccin
+		TinyDevKeyword.Id cmd = tokens.get(0).getKeyword().getCode();
+		
+		// Crear la instruccin
+		TinyDevStatement st = new TinyDevStatement(cmd);
+		
+		// Compilar la instruccin correspondiente (la lista
+		// est en orden alfabtico)
+		switch(cmd) {
+		
+			case BREAK :
+			case CLEAR :
+			case NEXT :
+			case RETURN :
+				needEnd();
+				break;
+			case CALL :
+			case JUMP :
+				compileJump(st);
+				break;
+			case CASE :
+				compileCase(st);
+				break;
+			case CURSOR :
+				compileCursor(st);
+				break;
+			case DIALOG :
+				compileDialog(st);
+				break;
+			case DO :
+			case LOOP :
+				compileDo(st);
+				break;
+			case ELLIPSE :
+			case RECTANGLE :
+				compileShape(st);
+				break;
+			case ELSE :
+				compileElse(st);
+				break;
+			case END :
+				compileEnd(st);
+				break;
+			case FONT :
+				compileFont(st);
+				break;
+			case FOR :
+				compileFor(st);
+				break;
+			case IF :
+				compileIf(st);
+				break;
+			case IMAGE :
+				compileArgs(st, 3);
+				break;
+			case LINE :
+				compileArgs(st, 4);
+				break;
+			case PAPER :
+			case PEN :
+			case RANDOM :
+			case SOUND :
+			case WAIT :
+				compileArgs(st, 1);
+				break;
+			case POINT :
+			case SCREEN :
+			case WRITEIMAGE :
+				compileArgs(st, 2);
+				break;
+			case PRINT :
+				compilePrint(st);
+				break;
+			case SELECT :
+				compileArgs(st, 1);
+				break;
+			case SET :
+				compileSet(st);
+				break;
+			case VARIABLE :
+				compileVariable(st);
+				break;
+			case WRITEFILE :
+				compileWriteFile(st);
+				break;
+				
+			// Instruccin no ejecutable (funcin), o no reconocida
+			default :
+				syntaxError();
+				break;
+		}
+		
+		// Guardar el posible error
+		st.setError(errorId);
+		
+		// Devolver la instruccin compilada
+		return st;
+	}
+	
+	// -------------------------
+	// I N S T R U C C I O N E S
+	// -------------------------
+	
+	// NOTA: Todos los mtodos que compilan instrucciones, indican en la
+	//       variable errorId los posibles errores, y devuelven true en
+	//       caso de error.
+	
+	/**
+	 * Compilar una instruccin con un n fijo de argumentos, separados
+	 * por comas:
+	 * 
+	 * INSTRUCCIN expresin {, expresin...}
+	 * 
+	 * @param st     instruccin
+	 * @param count  n de argumentos
+	 * @return  true en caso de error, false en caso contrario
+	 */
+	private boolean compileArgs(TinyDevStatement st, int count) {
+		
+		// Tomar los argumentos
+		TinyDevExpr[] args = exprList(count);
+		
+		if(args == null)
+			return true;
+		
+		// No ha de haber ms argumentos
+		if(needEnd())
+			return true;
+		
+		st.setArgs(args);
+		
+		return false;
+	}
+	
+	/**
+	 * Instruccin - Imprimir expresin textual:
+	 * 
+	 * PRINT {LEFT | CENTER | RIGHT} expresin_textual
+	 */
+	private boolean compilePrint(TinyDevStatement st) {
+		
+		// Necesita argumento
+		if(needArg())
+			return true;
+		
+		// Comprobar si el 1er argumento es la alineacin
+		TinyDevToken tk = tokens.get(1);
+		
+		if(tokenIsCommandOf(tk, TinyDevKeyword.Id.LEFT)
+				|| tokenIsCommandOf(tk, TinyDevKeyword.Id.CENTER)
+				|| tokenIsCommandOf(tk, TinyDevKeyword.Id.RIGHT)) {
+			st.setOption(tk.getKeyword().getCode());
+			++index;
+		}
+		
+		// Necesita texto, y final
+		return compileArgs(st, 1);
+	}
+	
+	/**
+	 * Instruccin - Cambiar la fuente, su tamao y los atributos:
+	 * 
+	 * FONT nombre | tamao | PLAIN | BOLD | ITALIC | TRANSPARENT {...}
+	 */
+	private boolean compileFont(TinyDevStatement st) {
+		
+		// Necesita argumento
+		if(needArg())
+			return true;
+		
+		// Estilo por defecto: ninguno
+		int style = TinyDevLang.FONT_STYLE_PLAIN;
+		
+		// Flag para indicar que se ha seleccionado el atributo PLAIN
+		boolean plain = false;
+		
+		// Nombres y tamaos de la fuente, en el orden en que aparecen
+		ArrayList<TinyDevExpr> args = new ArrayList<TinyDevExpr>();
+		
+		// Recorrer los argumentos
+		do {
+			// Tomar token
+			TinyDevToken tok = tokens.get(index);
+			
+			// Eliminar posible coma
+			if(tokenIsOtherOf(tok, TinyDevOperator.Id.COMMA)) {
+				++index;
+				continue;
+			}
+			
+			// Si es una palabra reservada, ver
+			// si corresponde a los atributos
+			if(tok.getType() == TinyDevToken.Id.KEYWORD) {
+				
+				// Cambiar los atributos
+				switch(tok.getKeyword().getCode()) {
+				
+					case PLAIN :
+						plain = true;
+						break;
+					case BOLD :
+						style |= TinyDevLang.FONT_STYLE_BOLD;
+						break;
+					case ITALIC :
+						style |= TinyDevLang.FONT_STYLE_ITALIC;
+						break;
+					case TRANSPARENT :
+						style |= TinyDevLang.FONT_STYLE_TRANSPARENT;
+						break;
+					
+					// No corresponde a un atributo,
+					// finalizar
+					default :
+						errorId = TinyDevLang.Error.BAD_ARGUMENT;
+						return true;
+				}
+				
+				// Incrementar la posicin
+				++index;
+				
+			} else {
+				
+				// Ha de ser una expresin: nombre o tamao de la fuente
+				TinyDevExpr arg = expr();
+				
+				if(arg == null)
+					return true;
+				
+				args.add(arg);
+			}
+		} while(tokensLeft());
+		
+		// Guardar los argumentos
+		st.setArgs(args.toArray(new TinyDevExpr[args.size()]));
+		
+		// Si se han indicado atributos, guardarlos
+		if(style != TinyDevLang.FONT_STYLE_PLAIN || plain)
+			st.setStyle(style);
+		
+		return false;
+	}
+	
+	/**
+	 * Instruccin - Posicionar el cursor:
+	 * 
+	 * CURSOR TO x y
+	 */
+	private boolean compileCursor(TinyDevStatement st) {
+		
+		// Necesita argumento
+		if(needArg())
+			return true;
+		
+		// Comprobar que el siguiente argumento es TO
+		if(!tokenIsCommandOf(tokens.get(1), TinyDevKeyword.Id.TO)) {
+			syntaxError();
+			return true;
+		}
+		
+		// Saltar TO
+		++index;
+		
+		// Tomar X, Y
+		return compileArgs(st, 2);
+	}
+	
+	/**
+	 * Instruccin - Cuadro de dilogo:
+	 * 
+	 * DIALOG INPUT | INFORMATION | WARNING | ERROR | YESNO | OKCANCEL expresin_textual
+	 */
+	private boolean compileDialog(TinyDevStatement st) {
+		
+		// Necesita argumento
+		if(needArg())
+			return true;
+		
+		// Tomar el tipo de dilogo; si no es vlido, el error
+		// se indicar al ejecutar la instruccin, como antes
+		TinyDevToken tk = tokens.get(1);
+		
+		if(tk.getType() == TinyDevToken.Id.KEYWORD) {
+			
+			switch(tk.getKeyword().getCode()) {
+				case INPUT :
+				case INFORMATION :
+				case WARNING :
+				case ERROR :
+				case YESNO :
+				case OKCANCEL :
+					st.setOption(tk.getKeyword().getCode());
+					break;
+				default :
+					break;
+			}
+		}
+		
+		// Saltar el tipo de dilogo
+		++index;
+		
+		// Necesita texto, y final
+		return compileArgs(st, 1);
+	}
+	
+	/**
+	 * Instruccin - Crear una variable o array:
+	 * 
+	 * VARIABLE tipo nombre {= valor}
+	 * VARIABLE tipo nombre[tamao]
+	 */
+	private boolean compileVariable(TinyDevStatement st) {
+		
+		// Necesita argumento
+		if(needArg())
+			return true;
+		
+		// Tomar tipo de dato
+		TinyDevToken token = tokens.get(1);
+		
+		if(tokenIsCommandOf(token, TinyDevKeyword.Id.NUMBER)
+				|| tokenIsCommandOf(token, TinyDevKeyword.Id.STRING)
+				|| tokenIsCommandOf(token, TinyDevKeyword.Id.IMAGE)
+				|| tokenIsCommandOf(token, TinyDevKeyword.Id.SOUND)) {
+			st.setOption(token.getKeyword().getCode());
+		}
+		else {
+			
+			// Error, tipo errneo
+			errorId = TinyDevLang.Error.BAD_DATA_TYPE;
+			return true;
+		}
+		
+		// Saltar tipo
+		++index;
+		
+		// Necesita argumento
+		if(needArg())
+			return true;
+		
+		// Tomar identificador
+		if(tokens.get(2).getType() != TinyDevToken.Id.IDENTIFIER) {	
+			// Error, no es un identificador
+			syntaxError();
+			return true;
+		}
+		
+		st.setIdentifier(tokens.get(2).getIdentifier());
+		
+		// Saltar nombre de variable
+		++index;
+		
+		// Comprobar si es un array, y tomar su tamao
+		if(tokenIsOtherOf(peekToken(), TinyDevOperator.Id.OPEN_BRACKET)) {
+			
+			TinyDevExpr size = arrayIndex();
+			
+			if(size == null)
+				return true;
+			
+			st.setIndex(size);
+		}
+		
+		// Si quedan tokens, ser la inicializacin
+		if(tokensLeft()) {
+			
+			// Ha de ser =
+			if(!tokenIsOtherOf(tokens.get(index), TinyDevOperator.Id.ASSIGN)) {		
+				// No, error
+				syntaxError();
+				return true;
+			}
+			
+			// Saltar =
+			++index;
+			
+			// Ha de quedar la expresin con el valor
+			if(!tokensLeft()) {
+				
+				// No hay valor, error
+				syntaxError();
+				return true;
+			}
+			
+			// Tomar el valor, y necesita final
+			return compileArgs(st, 1);
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Instruccin - Asignar un valor a una variable o elemento de un array:
+	 * 
+	 * SET variable = valor
+	 * SET array[ndice] = valor
+	 */
+	private boolean compileSet(TinyDevStatement st) {
+		
+		// Necesita argumento
+		if(needArg())
+			return true;
+		
+		// Comprobar que el 1er argumento es un identificador
+		if(tokens.get(1).getType() != TinyDevToken.Id.IDENTIFIER) {
+			
+			// No, error
+			syntaxError();
+			return true;
+		}
+		
+		st.setIdentifier(tokens.get(1).getIdentifier());
+		
+		// Saltar el identificador
+		++index;
+		
+		// Ver si es un array
+		if(tokenIsOtherOf(peekToken(), TinyDevOperator.Id.OPEN_BRACKET)) {
+			
+			TinyDevExpr ix = arrayIndex();
+			
+			if(ix == null)
+				return true;
+			
+			st.setIndex(ix);
+		}
+		
+		// Necesita argumento
+		if(needArg())
+			return true;
+		
+		// Ha de ser =
+		if(!tokenIsOtherOf(tokens.get(index), TinyDevOperator.Id.ASSIGN)) {
+			
+			syntaxError();
+			return true;
+		}
+		
+		// Saltar =
+		++index;
+		
+		// Tomar valor, y necesita final
+		return compileArgs(st, 1);
+	}
+	
+	/**
+	 * Instruccin - Ejecucin condicional simple o de bloque:
+	 * 
+	 * IF condicin THEN {instruccin}
+	 */
+	private boolean compileIf(TinyDevStatement st) {
+		
+		// Tomar la condicin; se guarda aunque haya errores despus,
+		// para calcularla antes de indicarlos (ver TinyDevLang.command())
+		TinyDevExpr test = expr();
+		
+		if(test == null)
+			return true;
+		
+		st.setArgs(new TinyDevExpr[] { test });
+		
+		// Necesita argumento
+		if(needArg())
+			return true;
+		
+		// Ha de ser THEN
+		if(!tokenIsCommandOf(tokens.get(index), TinyDevKeyword.Id.THEN)) {
+			
+			syntaxError();
+			return true;
+		}
+		
+		// Saltar THEN
+		++index;
+		
+		// Si quedan argumentos, es un IF simple
+		if(tokensLeft())
+			st.setNext(compileNext());
+		
+		return false;
+	}
+	
+	/**
+	 * Instruccin - Parte ELSE de una ejecucin condicional:
+	 * 
+	 * ELSE {instruccin}
+	 * ELSE IF condicin THEN {instruccin}
+	 */
+	private boolean compileElse(TinyDevStatement st) {
+		
+		// Si quedan argumentos, son la instruccin a ejecutar
+		if(tokensLeft())
+			st.setNext(compileNext());
+		
+		return false;
+	}
+	
+	/**
+	 * Compilar el resto de la lnea como una instruccin independiente.
+	 * 
+	 * Sus posibles errores se guardan en dicha instruccin, y slo se
+	 * indicarn si llega a ejecutarse.
+	 * 
+	 * @return  instruccin
+	 */
+	private TinyDevStatement compileNext() {
+		
+		// Crear una lista de tokens
+		ArrayList<TinyDevToken> tks = new ArrayList<TinyDevToken>();
+		
+		// Tomar los tokens de la instruccin
+		for(int i = index; i < tokens.size(); ++i)
+			tks.add(tokens.get(i));
+		
+		// No quedan tokens en esta lnea
+		index = tokens.size();
+		
+		// Compilar la instruccin
+		return new TinyDevCompiler().compile(tks);
+	}
+	
+	/**
+	 * Instruccin - DO o LOOP de un bucle:
+	 * 
+	 * DO {WHILE | UNTIL condicin}
+	 * LOOP {WHILE | UNTIL condicin}
+	 */
+	private boolean compileDo(TinyDevStatement st) {
+		
+		// Si no hay argumentos, no lleva condicin
+		if(!tokensLeft())
+			return false;
+		
+		// Comprobar si es WHILE o UNTIL
+		if(tokenIsCommandOf(tokens.get(1), TinyDevKeyword.Id.WHILE)
+				|| tokenIsCommandOf(tokens.get(1), TinyDevKeyword.Id.UNTIL)) {
+			st.setOption(tokens.get(1).getKeyword().getCode());
+		}
+		else {
+			// Ninguno de los 2, error
+			syntaxError();
+			return true;
+		}
+		
+		// Saltar WHILE o UNTIL
+		++index;
+		
+		// Tomar la condicin, y necesita final
+		return compileArgs(st, 1);
+	}
+	
+	/**
+	 * Instruccin - FOR de un bucle con contador:
+	 * 
+	 * FOR variable = inicio TO final {STEP incremento}
+	 */
+	private boolean compileFor(TinyDevStatement st) {
+		
+		// Necesita argumento
+		if(needArg())
+			return true;
+		
+		// Comprobar que el 1er argumento es un identificador
+		if(tokens.get(1).getType() != TinyDevToken.Id.IDENTIFIER) {
+			
+			// No, error
+			syntaxError();
+			return true;
+		}
+		
+		st.setIdentifier(tokens.get(1).getIdentifier());
+		
+		// Saltar el identificador
+		++index;
+		
+		// Necesita argumento
+		if(needArg())
+			return true;
+		
+		// Ha de ser =
+		if(!tokenIsOtherOf(tokens.get(index), TinyDevOperator.Id.ASSIGN)) {
+			
+			syntaxError();
+			return true;
+		}
+		
+		// Saltar =
+		++index;
+		
+		// Tomar el valor inicial
+		TinyDevExpr first = expr();
+		
+		if(first == null)
+			return true;
+		
+		// Necesita argumento
+		if(needArg())
+			return true;
+		
+		// Ha de ser TO
+		if(!tokenIsCommandOf(tokens.get(index), TinyDevKeyword.Id.TO)) {
+			
+			syntaxError();
+			return true;
+		}
+		
+		// Saltar TO
+		++index;
+		
+		// Tomar el valor final
+		TinyDevExpr last = expr();
+		
+		if(last == null)
+			return true;
+		
+		// Ver si lleva incremento
+		if(tokensLeft()) {
+			
+			// Ha de ser STEP
+			if(!tokenIsCommandOf(tokens.get(index), TinyDevKeyword.Id.STEP)) {
+				
+				syntaxError();
+				return true;
+			}
+			
+			// Saltar STEP
+			++index;
+			
+			// Tomar el incremento
+			TinyDevExpr step = expr();
+			
+			if(step == null)
+				return true;
+			
+			st.setArgs(new TinyDevExpr[] { first, last, step });
+		}
+		else
+			st.setArgs(new TinyDevExpr[] { first, last });
+		
+		// No hay ms argumentos
+		return needEnd();
+	}
+	
+	/**
+	 * Instruccin - Caso de un bloque SELECT:
+	 * 
+	 * CASE valor {, valor...}
+	 * CASE ELSE
+	 */
+	private boolean compileCase(TinyDevStatement st) {
+		
+		// Necesita argumento
+		if(needArg())
+			return true;
+		
+		// Comprobar si es CASE ELSE
+		if(tokenIsCommandOf(tokens.get(1), TinyDevKeyword.Id.ELSE)) {
+			
+			st.setOption(TinyDevKeyword.Id.ELSE);
+			
+			// Saltar el ELSE
+			++index;
+			
+			// No hay ms argumentos
+			return needEnd();
+		}
+		
+		// Tomar los valores, separados por comas
+		ArrayList<TinyDevExpr> values = new ArrayList<TinyDevExpr>();
+		
+		do {
+			
+			TinyDevExpr e = expr();
+			
+			if(e == null)
+				return true;
+			
+			values.add(e);
+			
+		} while(tokensLeft() && !eatComma());
+		
+		// No ha de haber ms argumentos
+		if(needEnd())
+			return true;
+		
+		st.setArgs(values.toArray(new TinyDevExpr[values.size()]));
+		
+		return false;
+	}
+	
+	/**
+	 * Instruccin - Saltar o llamar a un place:
+	 * 
+	 * JUMP place
+	 * CALL place
+	 */
+	private boolean compileJump(TinyDevStatement st) {
+		
+		// Necesita argumentos: place
+		if(needArg())
+			return true;
+		
+		// Comprobar que hay un identificador
+		if(tokens.get(index).getType() != TinyDevToken.Id.IDENTIFIER) {
+			syntaxError();
+			return true;
+		}
+		
+		st.setIdentifier(tokens.get(index).getIdentifier());
+		
+		// Saltar el place
+		++index;
+		
+		// No hay ms argumentos
+		return needEnd();
+	}
+	
+	/**
+	 * Instruccin - Finaliza el programa, o un bloque IF o SELECT:
+	 * 
+	 * END
+	 * END IF
+	 * END SELECT
+	 */
+	private boolean compileEnd(TinyDevStatement st) {
+		
+		// Comprobar si es END IF o END SELECT
+		if(tokensLeft() && (tokenIsCommandOf(tokens.get(1), TinyDevKeyword.Id.IF)
+				|| tokenIsCommandOf(tokens.get(1), TinyDevKeyword.Id.SELECT))) {
+			
+			st.setOption(tokens.get(1).getKeyword().getCode());
+			
+			// Saltar el IF o SELECT
+			++index;
+		}
+		
+		// No ha de haber ms argumentos
+		return needEnd();
+	}
+	
+	/**
+	 * Instruccin - Dibujar una elipse o un rectngulo:
+	 * 
+	 * ELLIPSE {FILL | SOLID} x, y, ancho, alto
+	 * RECTANGLE {FILL | SOLID} x, y, ancho, alto
+	 */
+	private boolean compileShape(TinyDevStatement st) {
+		
+		// Estilo
+		if(tokensLeft()) {
+			
+			TinyDevToken tk = tokens.get(index);
+			
+			if(tokenIsCommandOf(tk, TinyDevKeyword.Id.FILL) || tokenIsCommandOf(tk, TinyDevKeyword.Id.SOLID)) {
+				st.setOption(tk.getKeyword().getCode());
+				++index;
+			}
+		}
+		
+		// X, Y, ancho, alto
+		return compileArgs(st, 4);
+	}
+	
+	/**
+	 * Instruccin - Escribir fichero:
+	 * 
+	 * WRITEFILE filename, textArray
+	 */
+	private boolean compileWriteFile(TinyDevStatement st) {
+		
+		// Tomar el nombre de fichero
+		TinyDevExpr fname = expr();
+		
+		if(fname == null)
+			return true;
+		
+		st.setArgs(new TinyDevExpr[] { fname });
+		
+		// Coma
+		if(eatComma())
+			return true;
+		
+		// Ha de ser un identificador
+		TinyDevToken tk = peekToken();
+		
+		if(tk == null || tk.getType() != TinyDevToken.Id.IDENTIFIER) {
+			syntaxError();
+			return true;
+		}
+		
+		st.setIdentifier(tk.getIdentifier());
+		
+		// Saltar el identificador
+		++index;
+		
+		// Necesita final
+		return needEnd();
+	}
+	
+	// ---------------------
+	// E X P R E S I O N E S
+	// ---------------------
+	
+	// El anlisis de expresiones se basa en el parser descendente recursivo del
+	// intrprete, pero en lugar de calcular los valores, genera los nodos
+	// de la expresin.
+	//
+	// Los mtodos devuelven el nodo generado, o null en caso de error, que
+	// se indica en la variable errorId.
+	
+	/**
+	 * Compilar una lista de expresiones separadas por comas.
+	 * 
+	 * @param count  n de expresiones
+	 * @return  expresiones, o null en caso de error
+	 */
+	private TinyDevExpr[] exprList(int count) {
+		
+		TinyDevExpr[] list = new TinyDevExpr[count];
+		
+		for(int i = 0; i < count; ++i) {
+			
+			// Coma entre expresiones
+			if(i > 0 && eatComma())
+				return null;
+			
+			// Expresin
+			if((list[i] = expr()) == null)
+				return null;
+		}
+		
+		return list;
+	}
+	
+	/**
+	 * Compilar una expresin de cualquier tipo.
+	 * 
+	 * @return  expresin, o null en caso de error
+	 */
+	private TinyDevExpr expr() {
+		
+		// Compilar la expresin, llamando al 1er nivel
+		TinyDevExpr e = exprLogical();
+		
+		// Si hubo un error, indicar un cdigo de error genrico, de no
+		// ser que se haya indicado un cdigo de error concreto
+		if(e == null && errorId == TinyDevLang.Error.SUCCESS)
+			errorId = TinyDevLang.Error.BAD_EXPRESSION;
+		
+		return e;
+	}
+	
+	/**
+	 * Comparacin lgica AND, OR.
+	 * 
+	 * @return  expresin, o null en caso de error
+	 */
+	private TinyDevExpr exprLogical() {
+		
+		// Llamar al nivel siguiente
+		TinyDevExpr left = exprRelational();
+		
+		// Bucle
+		while(left != null) {
+			
+			// Tomar tipo de operador
+			TinyDevOperator.Id id = peekOperator();
+			
+			// Salir del bucle si no es un operador de este nivel
+			if(id != TinyDevOperator.Id.AND && id != TinyDevOperator.Id.OR)
+				break;
+			
+			// Saltar el operador
+			++index;
+
+			// Llamar al nivel siguiente
+			TinyDevExpr right = exprRelational();
+			
+			left = (right == null ? null : new TinyDevExpr(id, left, right));
+		}
+		
+		return left;
+	}
+	
+	/**
+	 * Comparacin relacional ==, !=, >, >=, <, <=.
+	 * 
+	 * @return  expresin, o null en caso de error
+	 */
+	private TinyDevExpr exprRelational() {
+		
+		// Llamar al nivel siguiente
+		TinyDevExpr left = exprAdd();
+		
+		// Bucle
+		while(left != null) {
+			
+			// Tomar tipo de operador
+			TinyDevOperator.Id id = peekOperator();
+			
+			// Salir del bucle si no es un operador de este nivel
+			if(id != TinyDevOperator.Id.EQUAL && id != TinyDevOperator.Id.NOT_EQUAL
+					&& id != TinyDevOperator.Id.LESS && id != TinyDevOperator.Id.LESS_OR_EQUAL
+					&& id != TinyDevOperator.Id.GREATER && id != TinyDevOperator.Id.GREATER_OR_EQUAL)
+				break;
+			
+			// Saltar el operador
+			++index;
+			
+			// Llamar al nivel siguiente
+			TinyDevExpr right = exprAdd();
+			
+			left = (right == null ? null : new TinyDevExpr(id, left, right));
+		}
+		
+		return left;
+	}
+	
+	/**
+	 * Operacin aritmtica: +, -.
+	 * 
+	 * @return  expresin, o null en caso de error
+	 */
+	private TinyDevExpr exprAdd() {
+		
+		// Llamar al nivel siguiente
+		TinyDevExpr left = exprMul();
+		
+		// Bucle
+		while(left != null) {
+			
+			// Tomar tipo de operador
+			TinyDevOperator.Id id = peekOperator();
+			
+			// Si no es + o -, salir del bucle
+			if(id != TinyDevOperator.Id.PLUS && id != TinyDevOperator.Id.MINUS)
+				break;
+			
+			// Saltar operador
+			++index;
+			
+			// Llamar al nivel siguiente
+			TinyDevExpr right = exprMul();
+			
+			left = (right == null ? null : new TinyDevExpr(id, left, right));
+		}
+		
+		return left;
+	}
+	
+	/**
+	 * Operacin aritmtica: *, /, %.
+	 * 
+	 * @return  expresin, o null en caso de error
+	 */
+	private TinyDevExpr exprMul() {
+		
+		// Llamar al nivel siguiente
+		TinyDevExpr left = exprValue();
+		
+		// Bucle
+		while(left != null) {
+			
+			// Tomar tipo de operador
+			TinyDevOperator.Id id = peekOperator();
+			
+			// Si no es uno de los requeridos, salir del bucle
+			if(id != TinyDevOperator.Id.MULTIPLY && id != TinyDevOperator.Id.DIVIDE && id != TinyDevOperator.Id.MODULUS)
+				break;
+			
+			// Saltar operador
+			++index;
+			
+			// Llamar al nivel siguiente
+			TinyDevExpr right = exprValue();
+			
+			left = (right == null ? null : new TinyDevExpr(id, left, right));
+		}
+		
+		return left;
+	}
+	
+	/**
+	 * Tomar valor primario.
+	 * 
+	 * @return  expresin, o null en caso de error
+	 */
+	private TinyDevExpr exprValue() {
+		
+		// Tomar token
+		TinyDevToken token = peekToken();
+		
+		// Faltan argumentos, error
+		if(token == null) {
+			errorId = TinyDevLang.Error.BAD_NUMBER_OF_ARGUMENTS;
+			return null;
+		}
+		
+		// Abrir parntesis: expresin anidada
+		if(tokenIsOtherOf(token, TinyDevOperator.Id.OPEN_PARENTHESIS)) {
+			
+			// Saltar parntesis
+			++index;
+			
+			// Llamar al nivel ms bajo de expresin
+			TinyDevExpr e = exprLogical();
+			
+			// Ha de ser el cierre del parntesis
+			if(e != null && tokenIsCloseParenthesis()) {
+				
+				// Saltar parntesis
+				++index;
+				
+				return e;
+			}
+			
+			// Error
+			return null;
+		}
+		
+		// Signo '-', ha de ser un valor numrico negativo
+		if(tokenIsOtherOf(token, TinyDevOperator.Id.MINUS)) {
+
+			// Saltar signo
+			++index;
+
+			// Llamar a este mismo nivel
+			TinyDevExpr e = exprValue();
+			
+			return e == null ? null : new TinyDevExpr(e);
+		}
+		
+		// Comprobar el tipo del token
+		switch(token.getType()) {
+		
+			// Variable, array, o elemento de un array
+			case IDENTIFIER :
+				
+				// Saltar identificador
+				++index;
+				
+				// Ver si es un elemento de un array
+				TinyDevExpr ix = null;
+				
+				if(tokenIsOtherOf(peekToken(), TinyDevOperator.Id.OPEN_BRACKET)) {
+					
+					if((ix = arrayIndex()) == null)
+						return null;
+				}
+				
+				return new TinyDevExpr(token.getIdentifier(), ix);
+		
+			// Nmero positivo
+			case NUMBER :
+				
+				// Saltar nmero
+				++index;
+				
+				return new TinyDevExpr(token.getNumber());
+			
+			// Cadena textual
+			case STRING :
+				
+				// Saltar cadena
+				++index;
+				
+				return new TinyDevExpr(token.getString());
+				
+			// Palabra reservada que devuelve un valor (funcin)
+			case KEYWORD :
+				
+				// Saltar palabra reservada
+				++index;
+				
+				return exprFunction(token.getKeyword().getCode());
+				
+			default :
+				break;
+		}
+		
+		// Error
+		return null;
+	}
+	
+	/**
+	 * Compilar una funcin, una vez saltado su nombre.
+	 * 
+	 * @param fn  funcin
+	 * @return  expresin, o null en caso de error
+	 */
+	private TinyDevExpr exprFunction(TinyDevKeyword.Id fn) {
+		
+		// Ha de ser un parntesis abierto
+		if(!tokenIsOtherOf(peekToken(), TinyDevOperator.Id.OPEN_PARENTHESIS))
+			return null;
+		
+		// Saltar (
+		++index;
+		
+		// Argumentos de la funcin
+		TinyDevExpr[] args;
+		
+		// Comprobar cul es, y tomar sus argumentos
+		switch(fn) {
+			case BREAK :         // break()
+			case CURSORX :       // cursorX()
+			case CURSORY :       // cursorY()
+			case KEY :           // key()
+			case MOUSECLICK :    // mouseClick()
+			case MOUSEX :        // mouseX()
+			case MOUSEY :        // mouseY()
+			case PAPER :         // paper()
+			case PEN :           // pen()
+			case RANDOM :        // random()
+			case REPLY :         // reply()
+			case SCREENHEIGHT :  // screenHeight()
+			case SCREENWIDTH :   // screenWidth()
+				args = new TinyDevExpr[0];
+				break;
+			case LENGTH :        // length(variable_de_tipo_array | string)
+			case LOWERCASE :     // lowercase(string)
+			case NUMBER :        // number(string)
+			case READFILE :      // readfile(string)
+			case STRING :        // string(number)
+			case TEXTHEIGHT :    // textHeight(string)
+			case TEXTWIDTH :     // textWidth(string)
+			case UPPERCASE :     // uppercase(string)
+				args = exprList(1);
+				break;
+			case REPEATSTRING :  // repeatstring(string, how_many)
+				args = exprList(2);
+				break;
+			case MIDDLE :        // middle(string, first_pos, how_many)
+				args = exprList(3);
+				break;
+			case FINDSTRING :    // findstring(string, substring, {position})
+				args = exprList(2);
+				if(args != null && tokenIsOtherOf(peekToken(), TinyDevOperator.Id.COMMA)) {
+					++index;
+					TinyDevExpr pos = expr();
+					args = (pos == null ? null : new TinyDevExpr[] { args[0], args[1], pos });
+				}
+				break;
+			case SCREENIMAGE :   // screenImage({x, y, width, height})
+				args = tokenIsCloseParenthesis() ? new TinyDevExpr[0] : exprList(4);
+				break;
+			default :
+				// Es una palabra reservada que
+				// no es una funcin, error
+				errorId = TinyDevLang.Error.BAD_SYNTAX;
+				return null;
+		}
+		
+		// Comprobar si hubo un error en los argumentos
+		if(args == null)
+			return null;
+		
+		// Ha de ser un parntesis cerrado
+		if(!tokenIsCloseParenthesis()) {
+			
+			// Error: falta el parntesis de cierre
+			errorId = TinyDevLang.Error.BAD_NUMBER_OF_ARGUMENTS;
+			return null;
+		}
+		
+		// Saltar )
+		++index;
+		
+		return new TinyDevExpr(fn, args);
+	}
+	
+	/**
+	 * Compilar una expresin entre corchetes, que indica
+	 * el ndice o el tamao de un array. Presupone que el
+	 * token actual es el corchete abierto.
+	 * 
+	 * @return  expresin del ndice, o null en caso de error
+	 */
+	private TinyDevExpr arrayIndex() {
+		
+		// Saltar el corchete
+		++index;
+		
+		// Ha de ser una expresin
+		TinyDevExpr e = expr();
+		
+		if(e == null)
+			return null;
+		
+		// Ha de ser un corchete de cierre
+		if(!tokenIsOtherOf(peekToken(), TinyDevOperator.Id.CLOSE_BRACKET)) {
+			
+			// Expresin de ndice mal construida
+			syntaxError();
+			return null;
+		}
+		
+		// Saltar el corchete
+		++index;
+		
+		return e;
+	}
+	
+	// -------
+	// Helpers
+	// -------
+
+	/**
+	 * Helper: Devuelve un token sin avanzar la posicin en la lnea,
+	 * o null si no quedan ms.
+	 * 
+	 * @return  token en la posicin actual, o null si no quedan ms
+	 */
+	private TinyDevToken peekToken() {
+		
+		// Devolver token si todava quedan
+		if(index < tokens.size()) {
+			return tokens.get(index);
+		}
+		
+		// No quedan
+		return null;
+	}
+	
+	/**
+	 * Helper: Devuelve el tipo del operador de la posicin actual,
+	 * sin avanzar la posicin en la lnea.
+	 * 
+	 * @return  tipo de operador, o null si no quedan tokens o no es un operador
+	 */
+	private TinyDevOperator.Id peekOperator() {
+		
+		TinyDevToken token = peekToken();
+		
+		if(token == null || token.getType() != TinyDevToken.Id.OPERATOR)
+			return null;
+		
+		return token.getOperator().getType();
+	}
+	
+	/**
+	 * Comprueba si un token de tipo 'otros' es uno determinado.
+	 * 
+	 * @param token  token
+	 * @param type   tipo
+	 * @return       true si es el indicado, false en caso contrario
+	 */
+	static boolean tokenIsOtherOf(TinyDevToken token, TinyDevOperator.Id type) {
+		
+		// Hacer la comprobacin, si token no es null
+		if(token != null) {
+			// Comprobar si el token coincide con lo indicado
+			if(token.getType() == TinyDevToken.Id.OPERATOR && token.getOperator().getType() == type) {
+				
+				// S
+				return true;
+			}
+		}
+		
+		// No
+		return false;
+	}
+	
+	private boolean tokenIsCloseParenthesis() {
+		return tokenIsOtherOf(peekToken(), TinyDevOperator.Id.CLOSE_PARENTHESIS);
+	}
+	
+	/**
+	 * Comprobar si el token es la palabra reservada indicada.
+	 * 
+	 * @param token  token
+	 * @param id     palabra reservada
+	 * @return       true si coinciden, false en caso contrario
+	 */
+	static boolean tokenIsCommandOf(TinyDevToken token, TinyDevKeyword.Id id) {
+		
+		// Comprobar si la palabra reservada coincide
+		if(token.getType() == TinyDevToken.Id.KEYWORD && token.getKeyword().getCode() == id) {
+			
+			// S
+			return true;
+		}
+		
+		// No
+		return false;
+	}
+
+	/**
+	 * Comprobar si quedan tokens por leer.
+	 * 
+	 * @return  true si quedan, false en caso contrario
+	 */
+	private boolean tokensLeft() {
+		
+		// Devolver comprobacin
+		return index < tokens.size();
+	}
+	
+	/**
+	 * Comprobar si quedan tokens por leer. Si no quedan,
+	 * establece el cdigo de error.
+	 * 
+	 * @return  true si no quedan, false en caso contrario
+	 */
+	private boolean needArg() {
+		
+		// Comprobar si quedan tokens
+		if(!tokensLeft()) {
+			
+			// No quedan, error
+			errorId = TinyDevLang.Error.BAD_NUMBER_OF_ARGUMENTS;
+			return true;
+		}
+		
+		// S quedan
+		return false;
+	}
+	
+	/**
+	 * Comprobar si quedan tokens por leer. Si quedan,
+	 * establece el cdigo de error.
+	 * 
+	 * @return  true si quedan, false en caso contrario
+	 */
+	private boolean needEnd() {
+		
+		// Comprobar si quedan tokens
+		if(tokensLeft()) {
+			
+			// S quedan, error
+			errorId = TinyDevLang.Error.BAD_NUMBER_OF_ARGUMENTS;
+			return true;
+		}
+		
+		// No quedan
+		return false;
+	}
+	
+	private boolean eatComma() {
+		if(tokenIsOtherOf(peekToken(), TinyDevOperator.Id.COMMA)) {
+			++index;
+			return false;
+		}
+		
+		errorId = TinyDevLang.Error.BAD_NUMBER_OF_ARGUMENTS;
+		return true;
+	}
+	
+	/**
+	 * Helper.
+	 * 
+	 * Establece el cdigo de error en BAD_SYNTAX.
+	 */
+	private void syntaxError() {
+		
+		errorId = TinyDevLang.Error.BAD_SYNTAX;
+	}
+}
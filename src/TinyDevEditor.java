@@ -51,6 +51,7 @@ import java.net.URI;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Locale;
 import java.util.Random;
 import java.util.ResourceBundle;
 
@@ -102,7 +103,7 @@ import java.awt.event.MouseEvent;
  *
  */
 @SuppressWarnings("serial")
-public class TinyDevEditor extends JFrame {
+public class TinyDevEditor extends JFrame implements TinyDevListener {
 	
 	// ---------------
 	// G L O B A L E S
@@ -135,6 +136,8 @@ public class TinyDevEditor extends JFrame {
 	private int lineNumber;      // N de lnea actualmente en edicin
 	private boolean cfgTip;      // Mostrar consejo al iniciar
 	private boolean cfgTemplate; // Utilizar plantilla en nuevos ficheros
+	private int cfgMemory;       // Memoria mxima para los arrays y strings de un programa, en MB
+	private TinyDevLang.Engine cfgEngine;  // Motor de ejecucin de los programas
 	private boolean cfgChanged;  // True si ha habido cambios en la configuracin, que hay que grabar
 	private String tip = null;   // Consejo a mostrar al inicio
 
@@ -1320,6 +1323,8 @@ public class TinyDevEditor extends JFrame {
 				screen = new TinyDevScreen();
 		    
 		    // Ejecutar el intrprete
+		    lang.setMemoryLimit(cfgMemory * 1024L * 1024L);
+		    lang.setEngine(cfgEngine);
 		    lang.execute(sourceCode, screen, currentDirectory);
 		}
 	    
@@ -1578,6 +1583,8 @@ public class TinyDevEditor extends JFrame {
 		if(write) {
 			props.set("tips", cfgTip ? "true" : "false");
 			props.set("template", cfgTemplate ? "true" : "false");
+			props.set("memory", Integer.toString(cfgMemory));
+			props.set("engine", cfgEngine.name().toLowerCase(Locale.ROOT));
 			
 			props.save();
 		} else {
@@ -1586,6 +1593,24 @@ public class TinyDevEditor extends JFrame {
 			cfgTip = props.get("tips", "false").equals("true");
 			cfgTemplate = props.get("template", "false").equals("true");
 			
+			// Memoria mxima para los arrays y strings
+			try {
+				cfgMemory = Integer.parseInt(props.get("memory", "64"));
+			} catch(NumberFormatException e) {
+				cfgMemory = 64;
+			}
+			
+			if(cfgMemory <= 0) {
+				cfgMemory = 64;
+			}
+			
+			// Motor de ejecucin
+			try {
+				cfgEngine = TinyDevLang.Engine.valueOf(props.get("engine", "tree").toUpperCase(Locale.ROOT));
+			} catch(IllegalArgumentException e) {
+				cfgEngine = TinyDevLang.Engine.TREE;
+			}
+			
 			// Tip
 			if(cfgTip) {
 				try {
@@ -1754,10 +1779,11 @@ public class TinyDevEditor extends JFrame {
 	 * Cambiar la posicin del cursor a la lnea correspondiente, si sta sigue
 	 * siendo la original (ha podido editarse, o se ha cargado otro fichero).
 	 * 
-	 * @param lineNumber  nmero de lnea (1..?)
+	 * @param lineNumber  nmero de lnea (0..?)
 	 * @param sourceCode  lnea de cdigo fuente
 	 * @param errorMsg    mensaje de error
 	 */
+	@Override
 	public void notifyError(int lineNumber, String sourceCode, String errorMsg) {
 		
 		// Tomar posicin actual del cursor de edicin
@@ -0,0 +1,307 @@
+/**
+ * TinyDev - Programming language for kids
+ *
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Clase que implementa un nodo de una expresin compilada.
+ * 
+ * Las expresiones se compilan una sola vez, a partir de los tokens
+ * de la lnea, en un rbol de nodos que el intrprete recorre en cada
+ * ejecucin, sin tener que volver a analizar los tokens.
+ * 
+ * @author Miguel
+ */
+public class TinyDevExpr {
+	
+	// ---------------
+	// Tipos de nodos
+	// ---------------
+	
+	public enum Id {
+		NUMBER,    // Nmero constante
+		STRING,    // Cadena de texto constante
+		VARIABLE,  // Variable, o array completo
+		ELEMENT,   // Elemento de un array: variable[ndice]
+		NEGATIVE,  // Signo '-': -valor
+		OPERATOR,  // Operacin binaria: izquierda operador derecha
+		FUNCTION   // Funcin: nombre(argumentos)
+	}
+	
+	private Id type;                       // Tipo de nodo
+	private int number;                    // Valor de la constante numrica
+	private String value;                  // Valor de la constante textual
+	private TinyDevIdentifier identifier;  // Identificador de la variable
+	private TinyDevOperator.Id operator;   // Operador
+	private TinyDevKeyword.Id function;    // Funcin
+	private TinyDevExpr[] args;            // Operandos, ndice, o argumentos
+	private int code = -1;                 // Posicin de su bytecode, o -1 si no se ha generado
+	private int jit = -1;                  // ndice de su cdigo compilado por el JIT, o -1 si no lo tiene
+	private BooleanSupplier closure;       // Expresin compilada a closure, o null si no la tiene
+	private TinyDevLang.DataType dataType; // Tipo de su resultado, si se conoce antes de la ejecucin, o null
+	
+	/**
+	 * Constructor para un nmero constante.
+	 * 
+	 * @param num  nmero
+	 */
+	public TinyDevExpr(int num) {
+		
+		type = Id.NUMBER;
+		number = num;
+	}
+	
+	/**
+	 * Constructor para una cadena de texto constante.
+	 * 
+	 * @param str  cadena de texto
+	 */
+	public TinyDevExpr(String str) {
+		
+		type = Id.STRING;
+		value = str;
+	}
+	
+	/**
+	 * Constructor para una variable, o para un elemento de un array.
+	 * 
+	 * @param id     identificador de la variable
+	 * @param index  expresin del ndice, o null si no es un elemento de un array
+	 */
+	public TinyDevExpr(TinyDevIdentifier id, TinyDevExpr index) {
+		
+		type = (index == null ? Id.VARIABLE : Id.ELEMENT);
+		identifier = id;
+		args = (index == null ? null : new TinyDevExpr[] { index });
+	}
+	
+	/**
+	 * Constructor para el signo '-'.
+	 * 
+	 * @param operand  operando
+	 */
+	public TinyDevExpr(TinyDevExpr operand) {
+		
+		type = Id.NEGATIVE;
+		args = new TinyDevExpr[] { operand };
+	}
+	
+	/**
+	 * Constructor para una operacin binaria.
+	 * 
+	 * @param op     operador
+	 * @param left   operando de la izquierda
+	 * @param right  operando de la derecha
+	 */
+	public TinyDevExpr(TinyDevOperator.Id op, TinyDevExpr left, TinyDevExpr right) {
+		
+		type = Id.OPERATOR;
+		operator = op;
+		args = new TinyDevExpr[] { left, right };
+	}
+	
+	/**
+	 * Constructor para una funcin.
+	 * 
+	 * @param fn  funcin
+	 * @param ar  argumentos
+	 */
+	public TinyDevExpr(TinyDevKeyword.Id fn, TinyDevExpr[] ar) {
+		
+		type = Id.FUNCTION;
+		function = fn;
+		args = ar;
+	}
+	
+	/**
+	 * Devolver el tipo de nodo.
+	 * 
+	 * @return  tipo
+	 */
+	public Id getType() {
+		
+		return type;
+	}
+	
+	/**
+	 * Devolver el valor de la constante numrica.
+	 * 
+	 * @return  valor
+	 */
+	public int getNumber() {
+		
+		return number;
+	}
+	
+	/**
+	 * Devolver el valor de la constante textual.
+	 * 
+	 * @return  valor
+	 */
+	public String getValue() {
+		
+		return value;
+	}
+	
+	/**
+	 * Devolver el identificador de la variable.
+	 * 
+	 * @return  identificador
+	 */
+	public TinyDevIdentifier getIdentifier() {
+		
+		return identifier;
+	}
+	
+	/**
+	 * Devolver el operador.
+	 * 
+	 * @return  operador
+	 */
+	public TinyDevOperator.Id getOperator() {
+		
+		return operator;
+	}
+	
+	/**
+	 * Devolver la funcin.
+	 * 
+	 * @return  funcin
+	 */
+	public TinyDevKeyword.Id getFunction() {
+		
+		return function;
+	}
+	
+	/**
+	 * Devolver un operando o argumento.
+	 * 
+	 * @param index  posicin (0..?)
+	 * @return  operando o argumento
+	 */
+	public TinyDevExpr getArg(int index) {
+		
+		return args[index];
+	}
+	
+	/**
+	 * Sustituir un operando o argumento.
+	 * 
+	 * @param index  posicin (0..?)
+	 * @param arg    operando o argumento
+	 */
+	public void setArg(int index, TinyDevExpr arg) {
+		
+		args[index] = arg;
+	}
+	
+	/**
+	 * Devolver el n de operandos o argumentos.
+	 * 
+	 * @return  n de operandos o argumentos
+	 */
+	public int getArgCount() {
+		
+		return args == null ? 0 : args.length;
+	}
+	
+	/**
+	 * Devolver el tipo de su resultado, calculado antes de la ejecucin
+	 * (ver TinyDevLang.checkTypes).
+	 * 
+	 * @return  tipo, o null si no se conoce
+	 */
+	public TinyDevLang.DataType getDataType() {
+		
+		return dataType;
+	}
+	
+	/**
+	 * Fijar el tipo de su resultado.
+	 * 
+	 * @param dt  tipo, o null si no se conoce
+	 */
+	public void setDataType(TinyDevLang.DataType dt) {
+		
+		dataType = dt;
+	}
+	
+	/**
+	 * Devolver la posicin de su bytecode.
+	 * 
+	 * @return  posicin en el bytecode del programa, o -1 si no se ha generado
+	 */
+	public int getCode() {
+		
+		return code;
+	}
+	
+	/**
+	 * Fijar la posicin de su bytecode.
+	 * 
+	 * @param pc  posicin en el bytecode del programa
+	 */
+	public void setCode(int pc) {
+		
+		code = pc;
+	}
+	
+	/**
+	 * Devolver el ndice de su cdigo compilado por el JIT (ver TinyDevJit).
+	 * 
+	 * @return  ndice, o -1 si no lo tiene
+	 */
+	public int getJit() {
+		
+		return jit;
+	}
+	
+	/**
+	 * Fijar el ndice de su cdigo compilado por el JIT.
+	 * 
+	 * @param index  ndice, o -1 si no lo tiene
+	 */
+	public void setJit(int index) {
+		
+		jit = index;
+	}
+	
+	/**
+	 * Devolver la expresin compilada a closure: calcula su valor como
+	 * el intrprete, y devuelve true en caso de error.
+	 * 
+	 * @return  closure, o null si no la tiene
+	 */
+	public BooleanSupplier getClosure() {
+		
+		return closure;
+	}
+	
+	/**
+	 * Fijar la expresin compilada a closure.
+	 * 
+	 * @param cl  closure, o null si no la tiene
+	 */
+	public void setClosure(BooleanSupplier cl) {
+		
+		closure = cl;
+	}
+}
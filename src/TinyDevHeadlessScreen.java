@@ -0,0 +1,283 @@
+/**
+ * TinyDev - Programming language for kids
+ * 
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Clase que implementa la entrada / salida sin ventana, para ejecutar
+ * programas en servidores sin pantalla.
+ * 
+ * Dibuja en el mismo buffer de pantalla que TinyDevScreen, con el mismo
+ * cdigo, de forma que el resultado es idntico; la entrada de teclado y
+ * ratn, y las respuestas de los dilogos, se toman de un guin.
+ * 
+ * Cada lnea del guin es una de las siguientes:
+ * 
+ *   key {tecla}              -- Key() devuelve la tecla ("a", "enter", "up"...), o nada
+ *   click {botn x y}        -- MouseClick() devuelve el botn ("left", "middle", "right"),
+ *                               y el ratn pasa a la posicin x, y; o nada
+ *   answer {texto}           -- Respuesta del siguiente dilogo: texto, "yes" / "no", "ok" / "cancel"
+ *   # comentario
+ * 
+ * Las teclas, las pulsaciones del ratn y las respuestas se consumen en
+ * orden, cada una en la siguiente llamada que la pide. Una vez consumidas,
+ * Key() y MouseClick() no devuelven nada, y la pantalla se da por cerrada
+ * despus de un n de consultas sin entrada, como si el usuario cerrara
+ * la ventana (ver setIdleLimit()). Los dilogos sin respuesta se cancelan.
+ * 
+ * Los mensajes de los dilogos se guardan, para consultarlos despus de la
+ * ejecucin (ver getDialogs()).
+ * 
+ * No usa Swing, as que se puede usar desde cualquier thread, y con la
+ * propiedad java.awt.headless=true.
+ * 
+ * @author Miguel
+ */
+public class TinyDevHeadlessScreen extends TinyDevScreen {
+	
+	public static final int DEFAULT_IDLE_LIMIT = 10000;  // N de consultas sin entrada, por defecto, para cerrar la pantalla
+	
+	private ArrayDeque<String> keys = new ArrayDeque<String>();      // Teclas del guin ("" si ninguna)
+	private ArrayDeque<String[]> clicks = new ArrayDeque<String[]>(); // Pulsaciones del ratn del guin: botn, x, y (vaca si ninguna)
+	private ArrayDeque<String> answers = new ArrayDeque<String>();   // Respuestas de los dilogos
+	
+	private ArrayList<String> dialogs = new ArrayList<String>();     // Mensajes de los dilogos mostrados
+	
+	private String title = "";  // Ttulo
+	private int mouseX = -1;    // Posicin X del ratn, o -1 si no est en la pantalla
+	private int mouseY = -1;    // Posicin Y del ratn, o -1 si no est en la pantalla
+	
+	private int idleLimit = DEFAULT_IDLE_LIMIT;  // N de consultas sin entrada, para cerrar la pantalla
+	private int idlePolls;                       // N de consultas sin entrada
+	
+	private volatile boolean closed;  // True si la pantalla se ha cerrado
+	
+	/**
+	 * Constructor.
+	 */
+	public TinyDevHeadlessScreen() {
+		
+		super(false);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param script  lneas del guin
+	 */
+	public TinyDevHeadlessScreen(List<String> script) {
+		
+		this();
+		
+		for(String line : script)
+			addInput(line);
+	}
+	
+	/**
+	 * Aadir una lnea al guin de entrada.
+	 * 
+	 * @param line  lnea
+	 * @return  true en caso de error, false en caso contrario
+	 */
+	public boolean addInput(String line) {
+		
+		line = line.trim();
+		
+		// Lneas vacas y comentarios
+		if(line.isEmpty() || line.startsWith("#"))
+			return false;
+		
+		// Orden, y argumentos
+		int pos = line.indexOf(' ');
+		String cmd = (pos < 0 ? line : line.substring(0, pos)).toLowerCase();
+		String args = (pos < 0 ? "" : line.substring(pos + 1).trim());
+		
+		switch(cmd) {
+			case "key" :
+				keys.add(args);
+				return false;
+			case "click" :
+				if(args.isEmpty()) {
+					clicks.add(new String[0]);
+					return false;
+				}
+				
+				String[] click = args.split("\\s+");
+				
+				if(click.length != 3 || !click[1].matches("-?\\d+") || !click[2].matches("-?\\d+"))
+					return true;
+				
+				clicks.add(click);
+				return false;
+			case "answer" :
+				answers.add(args);
+				return false;
+			default :
+				return true;
+		}
+	}
+	
+	/**
+	 * Establecer el n de consultas a Key() o MouseClick() sin entrada,
+	 * para dar la pantalla por cerrada.
+	 * 
+	 * @param limit  n de consultas
+	 */
+	public void setIdleLimit(int limit) {
+		
+		idleLimit = limit;
+	}
+	
+	/**
+	 * Devolver los mensajes de los dilogos mostrados, en orden.
+	 * 
+	 * @return  mensajes
+	 */
+	public List<String> getDialogs() {
+		
+		return dialogs;
+	}
+	
+	/**
+	 * Devolver el ttulo.
+	 * 
+	 * @return  ttulo
+	 */
+	public String getTitle() {
+		
+		return title;
+	}
+	
+	@Override
+	public void quit() {
+		
+		closed = true;
+	}
+	
+	@Override
+	public boolean isClosed() {
+		
+		return closed;
+	}
+	
+	@Override
+	public void setTitle(String title) {
+		
+		this.title = title;
+	}
+	
+	@Override
+	public String readLine(String prompt, String title) {
+		
+		dialogs.add(prompt);
+		
+		return (answers.isEmpty() ? "" : answers.poll());
+	}
+	
+	@Override
+	public void dialogInformation(String message, String title) {
+		
+		dialogs.add(message);
+	}
+	
+	@Override
+	public void dialogWarning(String message, String title) {
+		
+		dialogs.add(message);
+	}
+	
+	@Override
+	public void dialogError(String message, String title) {
+		
+		dialogs.add(message);
+	}
+	
+	@Override
+	public String dialogYesNo(String message, String title) {
+		
+		dialogs.add(message);
+		
+		return ("yes".equalsIgnoreCase(answers.poll()) ? "yes" : "no");
+	}
+	
+	@Override
+	public String dialogOkCancel(String message, String title) {
+		
+		dialogs.add(message);
+		
+		return ("ok".equalsIgnoreCase(answers.poll()) ? "ok" : "cancel");
+	}
+	
+	@Override
+	public String getMouseClick() {
+		
+		String[] click = clicks.poll();
+		
+		if(click == null) {
+			idle();
+			return "";
+		}
+		
+		if(click.length == 0)
+			return "";
+		
+		// Pulsacin: el ratn pasa a su posicin
+		mouseX = Integer.parseInt(click[1]);
+		mouseY = Integer.parseInt(click[2]);
+		
+		return click[0].toLowerCase();
+	}
+	
+	@Override
+	public int getMouseX() {
+		
+		return mouseX;
+	}
+	
+	@Override
+	public int getMouseY() {
+		
+		return mouseY;
+	}
+	
+	@Override
+	public String getKey() {
+		
+		String k = keys.poll();
+		
+		if(k == null)
+			idle();
+		
+		return (k == null || k.isEmpty() ? null : k);
+	}
+	
+	/**
+	 * Helper: Contar una consulta sin entrada, y cerrar la pantalla al
+	 * llegar al lmite.
+	 */
+	private void idle() {
+		
+		if(++idlePolls >= idleLimit)
+			closed = true;
+	}
+}
@@ -0,0 +1,255 @@
+/**
+ * TinyDev - Programming language for kids
+ * 
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+/**
+ * Interfaz de la entrada / salida de los programas: pantalla, texto,
+ * dibujo, imgenes, sonido, teclado, ratn y dilogos.
+ * 
+ * El intrprete slo accede a la entrada / salida a travs de ella, de
+ * forma que se puede elegir la implementacin en cada ejecucin (ver
+ * TinyDevLang.run()):
+ * 
+ *   TinyDevScreen          -- Ventana de Swing (la del editor)
+ *   TinyDevHeadlessScreen  -- Sin ventana, con entrada desde un guin
+ *   TinyDevNullIO          -- Sin salida, para medir slo el intrprete
+ *   TinyDevRecordingIO     -- Registra las llamadas de dibujo, y las pasa a otra
+ * 
+ * Los mtodos que devuelven un boolean, devuelven true en caso de error
+ * (posicin o tamao fuera de la pantalla, color desconocido, etc.), y
+ * false en caso contrario.
+ * 
+ * Las imgenes y sonidos son objetos propios de cada implementacin; el
+ * intrprete slo los guarda en las variables, y los devuelve.
+ * 
+ * @author Miguel
+ */
+public interface TinyDevIO {
+	
+	public static final int MIN_SCREEN_WIDTH = 256;
+	public static final int MIN_SCREEN_HEIGHT = 256;
+	public static final int MAX_SCREEN_WIDTH = 800;
+	public static final int MAX_SCREEN_HEIGHT = 800;
+	
+	public static final int DEFAULT_SCREEN_WIDTH = 300;	// Ancho de pantalla en pixels por defecto
+	public static final int DEFAULT_SCREEN_HEIGHT = 300;   // Alto  de pantalla en pixels por defecto
+	
+	// --------
+	// Pantalla
+	// --------
+	
+	/**
+	 * Inicializacin de la pantalla: tamao, colores, cursor, etc.
+	 * 
+	 * @param width   ancho del rea de trabajo en pixels
+	 * @param height  alto  del rea de trabajo en pixels
+	 * @return        true en caso de error, false en caso contrario
+	 */
+	boolean reset(int width, int height);
+	
+	/**
+	 * Cerrar la pantalla.
+	 */
+	void quit();
+	
+	/**
+	 * Comprobar si la pantalla se ha cerrado; en ese caso, la ejecucin
+	 * del programa finaliza.
+	 * 
+	 * @return  true si se ha cerrado, false en caso contrario
+	 */
+	boolean isClosed();
+	
+	/**
+	 * Cambiar el ttulo de la pantalla.
+	 * 
+	 * @param title  ttulo
+	 */
+	void setTitle(String title);
+	
+	int getWidth();
+	
+	int getHeight();
+	
+	// -----
+	// Texto
+	// -----
+	
+	/**
+	 * Imprimir una cadena de texto en la pantalla, en la posicin del
+	 * cursor.
+	 * 
+	 * @param txt  texto
+	 */
+	void print(String txt);
+	
+	/**
+	 * Borrar la pantalla, y situar el cursor en la fila 0, columna 0.
+	 */
+	void clear();
+	
+	boolean cursorTo(int x, int y);
+	
+	int getRow();
+	
+	int getColumn();
+	
+	int getTextWidth(String txt);
+	
+	int getTextHeight();
+	
+	void setFontFace(String face);
+	
+	void setFontSize(int size);
+	
+	/**
+	 * Cambiar el estilo de la fuente.
+	 * 
+	 * @param style  estilo (ver TinyDevLang.FONT_STYLE_...)
+	 */
+	void setFontStyle(int style);
+	
+	// ------
+	// Dibujo
+	// ------
+	
+	boolean setPen(String colorName);
+	
+	boolean setPaper(String colorName);
+	
+	boolean ellipse(int x, int y, int width, int height, TinyDevLang.Style style);
+	
+	boolean line(int x, int y, int x2, int y2);
+	
+	boolean rectangle(int x, int y, int width, int height, TinyDevLang.Style style);
+	
+	boolean point(int x, int y);
+	
+	// --------
+	// Imgenes
+	// --------
+	
+	/**
+	 * Cargar una imagen de un fichero.
+	 * 
+	 * @param filename  nombre del fichero
+	 * @return  imagen, o null en caso de error
+	 */
+	Object loadImage(String filename);
+	
+	/**
+	 * Guardar una imagen en un fichero.
+	 * 
+	 * @param filename  nombre del fichero; si no tiene extensin, se guarda en formato png
+	 * @param img       imagen
+	 * @return  true en caso de error, false en caso contrario
+	 */
+	boolean saveImage(String filename, Object img);
+	
+	boolean drawImage(int x, int y, Object img);
+	
+	/**
+	 * Leer una imagen de la pantalla.
+	 * 
+	 * @param x       posicin X
+	 * @param y       posicin Y
+	 * @param width   ancho en pixels, o 0 para toda la pantalla
+	 * @param height  alto en pixels, o 0 para toda la pantalla
+	 * @return  imagen, o null en caso de error
+	 */
+	Object getImage(int x, int y, int width, int height);
+	
+	// ------
+	// Sonido
+	// ------
+	
+	Object loadSound(String filename);
+	
+	void playSound(Object snd);
+	
+	// ----------------
+	// Teclado y ratn
+	// ----------------
+	
+	/**
+	 * Tomar la ltima tecla pulsada, y olvidarla.
+	 * 
+	 * @return  tecla, o null si no hay ninguna
+	 */
+	String getKey();
+	
+	/**
+	 * Tomar el ltimo botn del ratn pulsado, y olvidarlo.
+	 * 
+	 * @return  "left", "middle", "right", o "" si no hay ninguno
+	 */
+	String getMouseClick();
+	
+	/**
+	 * Devolver la posicin X del ratn.
+	 * 
+	 * @return  posicin, o -1 si no est en la pantalla
+	 */
+	int getMouseX();
+	
+	/**
+	 * Devolver la posicin Y del ratn.
+	 * 
+	 * @return  posicin, o -1 si no est en la pantalla
+	 */
+	int getMouseY();
+	
+	// --------
+	// Dilogos
+	// --------
+	
+	/**
+	 * Leer una lnea de texto.
+	 * 
+	 * @param prompt  mensaje
+	 * @param title   ttulo
+	 * @return  texto ledo, o "" si se cancela
+	 */
+	String readLine(String prompt, String title);
+	
+	void dialogInformation(String message, String title);
+	
+	void dialogWarning(String message, String title);
+	
+	void dialogError(String message, String title);
+	
+	/**
+	 * Pedir confirmacin.
+	 * 
+	 * @param message  mensaje
+	 * @param title    ttulo
+	 * @return  "yes" o "no"
+	 */
+	String dialogYesNo(String message, String title);
+	
+	/**
+	 * Pedir confirmacin.
+	 * 
+	 * @param message  mensaje
+	 * @param title    ttulo
+	 * @return  "ok" o "cancel"
+	 */
+	String dialogOkCancel(String message, String title);
+}
@@ -28,15 +28,18 @@
 public class TinyDevIdentifier {
 	
 	private String name;  // Nombre
+	private int slot;     // Posicin de su variable, en la tabla de variables
 	
 	/**
 	 * Constructor.
 	 * 
 	 * @param nm  nombre
+	 * @param sl  posicin en la tabla de variables
 	 */
-	public TinyDevIdentifier(String nm) {
+	public TinyDevIdentifier(String nm, int sl) {
 		
 		name = nm;
+		slot = sl;
 	}
 	
 	/**
@@ -48,5 +51,14 @@ public class TinyDevIdentifier {
 		
 		return name;
 	}
+	
+	/**
+	 * Devolver la posicin de su variable en la tabla de variables.
+	 * 
+	 * @return  posicin (0..?)
+	 */
+	public int getSlot() {
+		
+		return slot;
+	}
 }
-
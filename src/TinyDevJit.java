@@ -0,0 +1,1503 @@
+/**
+ * TinyDev - Programming language for kids
+ * 
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Clase que implementa el compilador JIT de un programa, una vez compiladas
+ * sus lneas (ver TinyDevCompiler).
+ * 
+ * El intrprete ejecuta el programa hasta superar un n de instrucciones
+ * ejecutadas; entonces se genera el cdigo fuente de una clase Java que
+ * hereda de sta, se compila en memoria con javax.tools.JavaCompiler, y el
+ * intrprete le cede la ejecucin en la siguiente lnea. La JVM optimiza
+ * dicha clase como cualquier otra.
+ * 
+ * El cdigo generado:
+ * 
+ * - Ejecuta las lneas en bloques (mtodos) de BLOCK_LINES lneas, para que
+ *   la JVM los pueda compilar a su vez. Cada lnea indica su n al
+ *   intrprete antes de ejecutarse, para indicar los errores.
+ * 
+ * - Ejecuta directamente las instrucciones SET, JUMP e IF simple; el resto
+ *   se ejecutan con el intrprete, que calcula sus expresiones con el
+ *   cdigo compilado (ver TinyDevExpr.getJit).
+ * 
+ * - Calcula las expresiones con los tipos que tienen las variables al
+ *   compilar, y llama directamente a TinyDevIO y a las funciones. Si una
+ *   variable no es del tipo esperado, o una operacin dara error, deja la
+ *   instruccin o expresin al intrprete, que la repite y obtiene los
+ *   mismos resultados y errores. Por ello, tras llamar a una funcin con
+ *   efectos (key, mouseClick, random) ya no se puede ceder al intrprete,
+ *   y lo que pueda fallar despus no se compila.
+ * 
+ * Si no hay compilador de Java disponible (p.ej. en un JRE), el programa
+ * se sigue ejecutando con el intrprete.
+ * 
+ * @author Miguel
+ */
+public abstract class TinyDevJit {
+	
+	private static final String CLASS_NAME = "TinyDevJitProgram";  // Nombre de la clase generada
+	private static final int BLOCK_LINES = 64;                     // N de lneas de cada bloque del cdigo generado
+	
+	private TinyDevLang lang;     // Intrprete
+	private TinyDevExpr[] exprs;  // Expresiones compiladas, segn su ndice
+	
+	protected final TinyDevIO io;                   // Objeto de entrada / salida
+	protected final TinyDevVariable[] variables;    // Variables, segn el slot de su identificador
+	protected final TinyDevStatement[] statements;  // Instrucciones, segn su n de lnea
+	
+	/**
+	 * Constructor, para el cdigo generado.
+	 * 
+	 * @param lang        intrprete
+	 * @param io          objeto de entrada / salida
+	 * @param variables   tabla de variables
+	 * @param statements  instrucciones, segn su n de lnea
+	 */
+	protected TinyDevJit(TinyDevLang lang, TinyDevIO io, TinyDevVariable[] variables, TinyDevStatement[] statements) {
+		
+		this.lang = lang;
+		this.io = io;
+		this.variables = variables;
+		this.statements = statements;
+	}
+	
+	/**
+	 * Ejecutar el programa a partir de una lnea, hasta que finalice, se
+	 * detenga, o haya un error.
+	 * 
+	 * @param line  n de lnea (0..?)
+	 */
+	public abstract void run(int line);
+	
+	/**
+	 * Calcular una expresin compilada, dejando el resultado en el
+	 * intrprete, como expr().
+	 * 
+	 * @param index  ndice de la expresin (ver TinyDevExpr.getJit)
+	 * @return  true si la ha de calcular el intrprete, false en caso contrario
+	 */
+	public abstract boolean evaluate(int index);
+	
+	/**
+	 * Preparar la compilacin de un programa, tomando los tipos que
+	 * tienen sus variables en este momento.
+	 * 
+	 * La compilacin en s se puede hacer en otro thread; devuelve el
+	 * cdigo compilado, o null si no se ha podido compilar.
+	 * 
+	 * @param lang       intrprete
+	 * @param program    lneas del programa
+	 * @param variables  tabla de variables
+	 * @param io         objeto de entrada / salida
+	 * @return  compilacin
+	 */
+	static Callable<TinyDevJit> compiler(final TinyDevLang lang, final ArrayList<TinyDevLine> program,
+			final TinyDevVariable[] variables, final TinyDevIO io) {
+		
+		final Generator gen = new Generator(program, variables);
+		
+		return new Callable<TinyDevJit>() {
+			
+			@Override
+			public TinyDevJit call() {
+				
+				// Generar el cdigo fuente, y compilarlo
+				Class<?> cls = compileClass(gen.generate());
+				
+				if(cls == null)
+					return null;
+				
+				// Instrucciones, segn su n de lnea
+				TinyDevStatement[] sts = new TinyDevStatement[program.size()];
+				
+				for(int i = 0; i < sts.length; ++i)
+					sts[i] = program.get(i).getStatement();
+				
+				// Crear el cdigo compilado
+				try {
+					TinyDevJit jit = (TinyDevJit) cls.getConstructor(TinyDevLang.class, TinyDevIO.class,
+							TinyDevVariable[].class, TinyDevStatement[].class).newInstance(lang, io, variables, sts);
+					
+					jit.exprs = gen.getExprs();
+					
+					return jit;
+				
+				} catch(ReflectiveOperationException ex) {
+					return null;
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Enlazar las expresiones compiladas con su cdigo. Se ha de llamar
+	 * desde el thread de ejecucin del programa, antes de run().
+	 */
+	void install() {
+		
+		for(int i = 0; i < exprs.length; ++i)
+			exprs[i].setJit(i);
+	}
+	
+	/**
+	 * Compilar en memoria el cdigo fuente de la clase generada, y
+	 * cargarla.
+	 * 
+	 * @param source  cdigo fuente
+	 * @return  clase, o null si no se ha podido compilar
+	 */
+	private static Class<?> compileClass(final String source) {
+		
+		// Compilador de Java, si est disponible
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		
+		if(compiler == null)
+			return null;
+		
+		// Clases compiladas, segn su nombre
+		final HashMap<String, ByteArrayOutputStream> classes = new HashMap<String, ByteArrayOutputStream>();
+		
+		// Cdigo fuente
+		JavaFileObject src = new SimpleJavaFileObject(URI.create("string:///" + CLASS_NAME + JavaFileObject.Kind.SOURCE.extension),
+				JavaFileObject.Kind.SOURCE) {
+			
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				
+				return source;
+			}
+		};
+		
+		// Opciones: las clases de TinyDev han de estar en el classpath
+		List<String> options = Arrays.asList("-classpath", classPath(), "-nowarn", "-g:none");
+		
+		try {
+			StandardJavaFileManager std = compiler.getStandardFileManager(null, null, null);
+			
+			// Guardar las clases compiladas en memoria
+			JavaFileManager files = new ForwardingJavaFileManager<StandardJavaFileManager>(std) {
+				
+				@Override
+				public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+					
+					final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					
+					classes.put(className, bytes);
+					
+					return new SimpleJavaFileObject(URI.create("mem:///" + className + kind.extension), kind) {
+						
+						@Override
+						public OutputStream openOutputStream() {
+							
+							return bytes;
+						}
+					};
+				}
+			};
+			
+			// Compilar, guardando los errores, si los hay
+			DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+			
+			boolean ok = compiler.getTask(null, files, diagnostics, options, null, Arrays.asList(src)).call();
+			
+			files.close();
+			
+			if(!ok)
+				return null;
+			
+			// Cargar la clase
+			ClassLoader loader = new ClassLoader(TinyDevJit.class.getClassLoader()) {
+				
+				@Override
+				protected Class<?> findClass(String name) throws ClassNotFoundException {
+					
+					ByteArrayOutputStream bytes = classes.get(name);
+					
+					if(bytes == null)
+						throw new ClassNotFoundException(name);
+					
+					byte[] b = bytes.toByteArray();
+					
+					return defineClass(name, b, 0, b.length);
+				}
+			};
+			
+			return loader.loadClass(CLASS_NAME);
+		
+		} catch(Exception ex) {
+			
+			// Cualquier problema al compilar: seguir con el intrprete
+			return null;
+		}
+	}
+	
+	/**
+	 * Devolver el classpath para compilar la clase generada: el de la
+	 * JVM, ms la ubicacin de las clases de TinyDev.
+	 * 
+	 * @return  classpath
+	 */
+	private static String classPath() {
+		
+		String cp = System.getProperty("java.class.path", "");
+		
+		try {
+			CodeSource cs = TinyDevJit.class.getProtectionDomain().getCodeSource();
+			
+			if(cs != null)
+				cp = new File(cs.getLocation().toURI()).getPath() + File.pathSeparator + cp;
+		
+		} catch(Exception ex) {
+			// Nada; se usa el classpath de la JVM
+		}
+		
+		return cp;
+	}
+	
+	// -----------------------------------------
+	// Helpers para el cdigo generado: ejecucin
+	// -----------------------------------------
+	
+	/**
+	 * Comenzar a ejecutar una lnea, comprobando antes si se ha de
+	 * detener la ejecucin, o terminar el turno (ver TinyDevScheduler);
+	 * el siguiente turno contina en esta lnea.
+	 * 
+	 * @param line  n de lnea
+	 * @return  true si se ha de detener la ejecucin, false en caso contrario
+	 */
+	protected final boolean step(int line) {
+		
+		return lang.jitStep(line);
+	}
+	
+	/**
+	 * Ejecutar una instruccin con el intrprete.
+	 * 
+	 * @param st  instruccin
+	 * @return  true en caso de error, false en caso contrario
+	 */
+	protected final boolean exec(TinyDevStatement st) {
+		
+		return lang.jitCommand(st);
+	}
+	
+	/**
+	 * Ejecutar una instruccin IF de bloque, DO o LOOP, con el resultado de
+	 * su condicin, o con el intrprete si no lo tiene.
+	 * 
+	 * @param st    instruccin
+	 * @param cond  resultado de la condicin (1 cierta, 0 falsa), o -1
+	 * @return  true en caso de error, false en caso contrario
+	 */
+	protected final boolean exec(TinyDevStatement st, int cond) {
+		
+		return cond < 0 ? lang.jitCommand(st) : lang.jitCommand(st, cond);
+	}
+	
+	/**
+	 * Devolver la siguiente lnea a ejecutar, tras una instruccin que
+	 * puede cambiar el flujo del programa.
+	 * 
+	 * @return  n de lnea
+	 */
+	protected final int next() {
+		
+		return lang.jitNextLine();
+	}
+	
+	/**
+	 * Indicar el resultado de la condicin de un IF simple, para su ELSE.
+	 * 
+	 * @param test  resultado
+	 */
+	protected final void ifTrue(boolean test) {
+		
+		lang.jitIfTrue(test);
+	}
+	
+	// ------------------------------------------
+	// Helpers para el cdigo generado: resultados
+	// ------------------------------------------
+	
+	/**
+	 * Dejar en el intrprete el resultado numrico de una expresin.
+	 * 
+	 * @param n  valor
+	 * @return  false (xito)
+	 */
+	protected final boolean number(int n) {
+		
+		lang.exprType = TinyDevLang.DataType.NUMBER;
+		lang.exprInt = n;
+		
+		return false;
+	}
+	
+	/**
+	 * Dejar en el intrprete el resultado textual de una expresin.
+	 * 
+	 * @param s  valor
+	 * @return  false (xito)
+	 */
+	protected final boolean string(String s) {
+		
+		lang.exprType = TinyDevLang.DataType.STRING;
+		lang.exprValue = s;
+		
+		return false;
+	}
+	
+	/**
+	 * Dejar en el intrprete el resultado booleano de una expresin.
+	 * 
+	 * @param b  valor
+	 * @return  false (xito)
+	 */
+	protected final boolean bool(boolean b) {
+		
+		lang.exprType = TinyDevLang.DataType.BOOLEAN;
+		lang.exprBool = b;
+		
+		return false;
+	}
+	
+	/**
+	 * Reservar la memoria de un string que se asigna a una variable o
+	 * elemento de un array, liberando la de su valor anterior.
+	 * 
+	 * @param oldValue  valor anterior
+	 * @param newValue  valor nuevo
+	 * @return  true si no cabe en la memoria del programa (lo ha de
+	 *          indicar el intrprete), false en caso contrario
+	 */
+	protected final boolean reserve(Object oldValue, String newValue) {
+		
+		return lang.jitReserve(oldValue, newValue);
+	}
+	
+	// -----------------------------------------
+	// Helpers para el cdigo generado: funciones
+	// -----------------------------------------
+	
+	// random()
+	protected final int random() {
+		
+		return lang.jitRandom();
+	}
+	
+	// key()
+	protected final String key() {
+		
+		return lang.pollKey();
+	}
+	
+	// mouseClick()
+	protected final String mouseClick() {
+		
+		return lang.pollMouseClick();
+	}
+	
+	// reply()
+	protected final String reply() {
+		
+		return lang.jitReply();
+	}
+	
+	// pen()
+	protected final String pen() {
+		
+		return lang.jitPen();
+	}
+	
+	// paper()
+	protected final String paper() {
+		
+		return lang.jitPaper();
+	}
+	
+	// number(string)
+	protected final int stringToInt(String s) {
+		
+		return lang.jitStringToInt(s);
+	}
+	
+	// repeatstring(string, n), con n >= 0
+	protected static String repeat(String s, int n) {
+		
+		StringBuilder sb = new StringBuilder();
+		
+		for(int i = 0; i < n; ++i)
+			sb.append(s);
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Generador del cdigo fuente de la clase compilada.
+	 */
+	private static final class Generator {
+		
+		private ArrayList<TinyDevLine> program;                   // Lneas del programa
+		private TinyDevLang.DataType[] types;                     // Tipo de cada variable al compilar, o null si no existe
+		private TinyDevLang.DataType[] subTypes;                  // Sub-tipo de cada variable, si es un array
+		private ArrayList<TinyDevExpr> exprs = new ArrayList<TinyDevExpr>();  // Expresiones compiladas
+		
+		private StringBuilder out = new StringBuilder();      // Cdigo fuente de la clase
+		private StringBuilder methods = new StringBuilder();  // Cdigo fuente de los mtodos de instrucciones y expresiones
+		private int methodCount;                              // N de mtodos generados
+		private boolean fallThrough;                          // True si la ltima lnea generada contina en la siguiente
+		
+		// Mtodo que se est generando
+		private StringBuilder guards;                             // Comprobacin de las variables
+		private StringBuilder body;                               // Cdigo
+		private ArrayList<Integer> guarded = new ArrayList<Integer>();  // Slots de las variables comprobadas
+		private String bail;                                      // Cdigo para ceder al intrprete
+		private int temps;                                        // N de variables temporales
+		private boolean impure;                                   // True si ya se ha llamado a una funcin con efectos
+		private boolean failed;                                   // True si no se puede compilar
+		private TinyDevLang.DataType type;                        // Tipo del ltimo valor generado
+		
+		/**
+		 * Constructor: toma los tipos que tienen las variables.
+		 * 
+		 * @param program    lneas del programa
+		 * @param variables  tabla de variables
+		 */
+		Generator(ArrayList<TinyDevLine> program, TinyDevVariable[] variables) {
+			
+			this.program = program;
+			
+			types = new TinyDevLang.DataType[variables.length];
+			subTypes = new TinyDevLang.DataType[variables.length];
+			
+			for(int i = 0; i < variables.length; ++i) {
+				
+				if(variables[i] != null) {
+					types[i] = variables[i].getType();
+					subTypes[i] = variables[i].getSubType();
+				}
+			}
+		}
+		
+		/**
+		 * Devolver las expresiones compiladas.
+		 * 
+		 * @return  expresiones, segn su ndice
+		 */
+		TinyDevExpr[] getExprs() {
+			
+			return exprs.toArray(new TinyDevExpr[exprs.size()]);
+		}
+		
+		/**
+		 * Generar el cdigo fuente de la clase.
+		 * 
+		 * @return  cdigo fuente
+		 */
+		String generate() {
+			
+			int size = program.size();
+			int blocks = (size + BLOCK_LINES - 1) / BLOCK_LINES;
+			
+			out.append("public final class ").append(CLASS_NAME).append(" extends TinyDevJit {\n\n");
+			
+			// Constructor
+			out.append("\tpublic ").append(CLASS_NAME).append("(TinyDevLang lang, TinyDevIO io, TinyDevVariable[] variables, TinyDevStatement[] statements) {\n");
+			out.append("\t\tsuper(lang, io, variables, statements);\n");
+			out.append("\t}\n\n");
+			
+			// Ejecucin: pasa de un bloque a otro, hasta el final del programa
+			out.append("\tpublic void run(int line) {\n");
+			out.append("\t\twhile(line >= 0 && line < ").append(size).append(") {\n");
+			out.append("\t\t\tswitch(line / ").append(BLOCK_LINES).append(") {\n");
+			
+			for(int b = 0; b < blocks; ++b)
+				out.append("\t\t\t\tcase ").append(b).append(" : line = b").append(b).append("(line); break;\n");
+			
+			out.append("\t\t\t\tdefault : return;\n");
+			out.append("\t\t\t}\n");
+			out.append("\t\t}\n");
+			out.append("\t}\n\n");
+			
+			// Bloques de lneas
+			for(int b = 0; b < blocks; ++b)
+				generateBlock(b * BLOCK_LINES, Math.min((b + 1) * BLOCK_LINES, size), b);
+			
+			// Expresiones, para el intrprete
+			out.append("\tpublic boolean evaluate(int index) {\n");
+			out.append("\t\tswitch(index) {\n");
+			
+			for(int i = 0; i < exprs.size(); ++i)
+				out.append("\t\t\tcase ").append(i).append(" : return e").append(i).append("();\n");
+			
+			out.append("\t\t}\n");
+			out.append("\t\treturn true;\n");
+			out.append("\t}\n\n");
+			
+			out.append(methods);
+			out.append("}\n");
+			
+			return out.toString();
+		}
+		
+		/**
+		 * Generar un bloque de lneas: devuelve la siguiente lnea a
+		 * ejecutar, fuera del bloque, o -1 para terminar.
+		 * 
+		 * @param first  primera lnea
+		 * @param last   ltima lnea + 1
+		 * @param block  n de bloque
+		 */
+		private void generateBlock(int first, int last, int block) {
+			
+			out.append("\tprivate int b").append(block).append("(int line) {\n");
+			out.append("\t\tfor(;;) {\n");
+			out.append("\t\t\tswitch(line) {\n");
+			
+			for(int n = first; n < last; ++n) {
+				
+				out.append("\t\t\t\tcase ").append(n).append(" :\n");
+				
+				TinyDevStatement st = program.get(n).getStatement();
+				
+				fallThrough = true;
+				
+				if(st != null)
+					generateLine(n, st);
+			}
+			
+			if(fallThrough)
+				out.append("\t\t\t\t\treturn ").append(last).append(";\n");
+			
+			out.append("\t\t\t\tdefault :\n");
+			out.append("\t\t\t\t\treturn line;\n");
+			out.append("\t\t\t}\n");
+			out.append("\t\t}\n");
+			out.append("\t}\n\n");
+		}
+		
+		/**
+		 * Generar una lnea. Las instrucciones que no cambian el flujo del
+		 * programa continan en la siguiente lnea.
+		 * 
+		 * @param n   n de lnea
+		 * @param st  instruccin
+		 */
+		private void generateLine(int n, TinyDevStatement st) {
+			
+			String ref = "statements[" + n + "]";
+			
+			out.append("\t\t\t\t\t// ").append(st.getCode()).append("\n");
+			out.append("\t\t\t\t\tif(step(").append(n).append(")) return -1;\n");
+			
+			// Expresiones, para cuando las calcule el intrprete
+			for(TinyDevStatement s = st; s != null; s = s.getNext()) {
+				
+				generateExpr(s.getIndex());
+				
+				for(int i = 0; i < s.getArgCount(); ++i)
+					generateExpr(s.getArg(i));
+			}
+			
+			// Las instrucciones con errores de compilacin las indica el intrprete
+			if(st.getError() != TinyDevLang.Error.SUCCESS) {
+				out.append("\t\t\t\t\tif(exec(").append(ref).append(")) return -1;\n");
+				return;
+			}
+			
+			switch(st.getCode()) {
+				
+				// JUMP: saltar a la lnea del place
+				case JUMP :
+					out.append("\t\t\t\t\tline = ").append(st.getTarget()).append(";\n");
+					out.append("\t\t\t\t\tcontinue;\n");
+					fallThrough = false;
+					return;
+				
+				// IF simple: calcular la condicin, y ejecutar la instruccin;
+				// IF de bloque: igual que DO y LOOP
+				case IF :
+					if(st.getNext() != null)
+						generateSimpleIf(st, ref);
+					else
+						generateBlockCondition(st, ref);
+					break;
+				
+				// DO y LOOP con condicin: calcularla, y pasarla al intrprete
+				case DO :
+				case LOOP :
+					generateBlockCondition(st, ref);
+					break;
+				
+				// Resto de instrucciones
+				default :
+					out.append("\t\t\t\t\tif(").append(statement(st, ref)).append(") return -1;\n");
+					break;
+			}
+			
+			// Si la instruccin puede cambiar el flujo del programa, continuar en
+			// la lnea que indique el intrprete
+			if(changesFlow(st)) {
+				out.append("\t\t\t\t\tline = next();\n");
+				out.append("\t\t\t\t\tcontinue;\n");
+				fallThrough = false;
+			}
+		}
+		
+		/**
+		 * Generar un IF de bloque, DO o LOOP: calcular su condicin, si la
+		 * tiene, y pasarla al intrprete, que salta a la lnea que
+		 * corresponda.
+		 * 
+		 * @param st   instruccin
+		 * @param ref  cdigo que devuelve la instruccin
+		 */
+		private void generateBlockCondition(TinyDevStatement st, String ref) {
+			
+			String cond = (st.getArgCount() > 0 ? generateCondition(st.getArg(0)) : null);
+			
+			out.append("\t\t\t\t\tif(exec(").append(ref);
+			
+			if(cond != null)
+				out.append(", ").append(cond).append("()");
+			
+			out.append(")) return -1;\n");
+		}
+		
+		/**
+		 * Generar un IF simple: si no se puede calcular su condicin, lo
+		 * ejecuta el intrprete.
+		 * 
+		 * @param st   instruccin
+		 * @param ref  cdigo que devuelve la instruccin
+		 */
+		private void generateSimpleIf(TinyDevStatement st, String ref) {
+			
+			String cond = generateCondition(st.getArg(0));
+			
+			if(cond == null) {
+				out.append("\t\t\t\t\tif(exec(").append(ref).append(")) return -1;\n");
+				return;
+			}
+			
+			out.append("\t\t\t\t\tswitch(").append(cond).append("()) {\n");
+			out.append("\t\t\t\t\t\tcase 0 : ifTrue(false); break;\n");
+			out.append("\t\t\t\t\t\tcase 1 : if(").append(statement(st.getNext(), ref + ".getNext()")).append(") return -1; ifTrue(true); break;\n");
+			out.append("\t\t\t\t\t\tdefault : if(exec(").append(ref).append(")) return -1; break;\n");
+			out.append("\t\t\t\t\t}\n");
+		}
+		
+		/**
+		 * Devolver el cdigo que ejecuta una instruccin, y vale true en
+		 * caso de error.
+		 * 
+		 * @param st   instruccin
+		 * @param ref  cdigo que devuelve la instruccin
+		 * @return  cdigo
+		 */
+		private String statement(TinyDevStatement st, String ref) {
+			
+			String method = null;
+			
+			if(st.getError() == TinyDevLang.Error.SUCCESS && st.getCode() == TinyDevKeyword.Id.SET)
+				method = generateSet(st);
+			
+			return method != null ? "(" + method + "() && exec(" + ref + "))" : "exec(" + ref + ")";
+		}
+		
+		/**
+		 * Comprobar si una instruccin, incluidas las de IF / ELSE simples,
+		 * puede cambiar la lnea a ejecutar.
+		 * 
+		 * @param st  instruccin
+		 * @return  true si puede cambiarla, false en caso contrario
+		 */
+		private boolean changesFlow(TinyDevStatement st) {
+			
+			for(TinyDevStatement s = st; s != null; s = s.getNext()) {
+				
+				// Instruccin con errores de compilacin
+				if(s.getCode() == null)
+					return true;
+				
+				switch(s.getCode()) {
+					case IF :
+						if(s.getNext() == null)
+							return true;
+						break;
+					case ELSE :
+					case DO :
+					case LOOP :
+					case FOR :
+					case NEXT :
+					case SELECT :
+					case CASE :
+					case BREAK :
+					case JUMP :
+					case CALL :
+					case RETURN :
+						return true;
+					default :
+						break;
+				}
+			}
+			
+			return false;
+		}
+		
+		/**
+		 * Generar el mtodo que ejecuta una instruccin SET; devuelve true
+		 * si la ha de ejecutar el intrprete.
+		 * 
+		 * @param st  instruccin
+		 * @return  nombre del mtodo, o null si no se puede compilar
+		 */
+		private String generateSet(TinyDevStatement st) {
+			
+			begin("return true;");
+			
+			int slot = st.getIdentifier().getSlot();
+			String var = variable(st.getIdentifier());
+			String index = null;
+			TinyDevLang.DataType target = types[slot];
+			
+			// Elemento de un array
+			if(st.getIndex() != null) {
+				
+				String ix = value(st.getIndex());
+				
+				if(type != TinyDevLang.DataType.NUMBER || target != TinyDevLang.DataType.ARRAY)
+					return null;
+				
+				index = temp("int", ix);
+				check(index + " < 0 || " + index + " >= " + var + ".getSize()");
+				
+				target = subTypes[slot];
+			}
+			
+			// Valor
+			String val = value(st.getArg(0));
+			
+			if(type != target)
+				return null;
+			
+			if(index != null) {
+				if(target == TinyDevLang.DataType.NUMBER)
+					code(var + ".getNumberArray()[" + index + "] = " + val + ";");
+				else if(target == TinyDevLang.DataType.STRING) {
+					// Si el string no cabe en la memoria, cede al intrprete,
+					// aunque se haya llamado a una funcin con efectos: la
+					// ejecucin termina con error
+					String s = temp("String", val);
+					code("if(reserve(" + var + ".getObjectArray()[" + index + "], " + s + ")) " + bail);
+					code(var + ".getObjectArray()[" + index + "] = " + s + ";");
+				}
+				else
+					return null;
+			}
+			else {
+				if(target == TinyDevLang.DataType.NUMBER)
+					code(var + ".setNumberValue(" + val + ");");
+				else if(target == TinyDevLang.DataType.STRING) {
+					// Si el string no cabe en la memoria, cede al intrprete
+					String s = temp("String", val);
+					code("if(reserve(" + var + ".getObjectValue(), " + s + ")) " + bail);
+					code(var + ".setObjectValue(" + s + ");");
+				}
+				else
+					return null;
+			}
+			
+			code("return false;");
+			
+			return end("boolean", "s");
+		}
+		
+		/**
+		 * Generar el mtodo que calcula la condicin de un IF, DO o LOOP:
+		 * devuelve 1 si es cierta, 0 si es falsa, o -1 si la ha de
+		 * calcular el intrprete.
+		 * 
+		 * @param e  expresin
+		 * @return  nombre del mtodo, o null si no se puede compilar
+		 */
+		private String generateCondition(TinyDevExpr e) {
+			
+			begin("return -1;");
+			
+			String c = value(e);
+			
+			if(type != TinyDevLang.DataType.BOOLEAN)
+				return null;
+			
+			code("return " + c + " ? 1 : 0;");
+			
+			return end("int", "c");
+		}
+		
+		/**
+		 * Generar el mtodo que calcula una expresin para el intrprete,
+		 * si no es un simple valor (ver evaluate).
+		 * 
+		 * @param e  expresin, o null
+		 */
+		private void generateExpr(TinyDevExpr e) {
+			
+			if(e == null || e.getType() == TinyDevExpr.Id.NUMBER
+					|| e.getType() == TinyDevExpr.Id.STRING || e.getType() == TinyDevExpr.Id.VARIABLE)
+				return;
+			
+			begin("return true;");
+			
+			String x = value(e);
+			
+			if(type == TinyDevLang.DataType.NUMBER)
+				code("return number(" + x + ");");
+			else if(type == TinyDevLang.DataType.STRING)
+				code("return string(" + x + ");");
+			else if(type == TinyDevLang.DataType.BOOLEAN)
+				code("return bool(" + x + ");");
+			else
+				return;
+			
+			if(failed)
+				return;
+			
+			// El nombre del mtodo es el ndice de la expresin
+			methods.append("\tprivate boolean e").append(exprs.size()).append("() {\n");
+			methods.append(guards).append(body);
+			methods.append("\t}\n\n");
+			
+			exprs.add(e);
+		}
+		
+		/**
+		 * Comenzar a generar un mtodo.
+		 * 
+		 * @param bailCode  cdigo para ceder al intrprete
+		 */
+		private void begin(String bailCode) {
+			
+			guards = new StringBuilder();
+			body = new StringBuilder();
+			guarded.clear();
+			bail = bailCode;
+			temps = 0;
+			impure = false;
+			failed = false;
+		}
+		
+		/**
+		 * Terminar de generar un mtodo.
+		 * 
+		 * @param result  tipo del resultado
+		 * @param prefix  prefijo del nombre
+		 * @return  nombre del mtodo, o null si no se puede compilar
+		 */
+		private String end(String result, String prefix) {
+			
+			if(failed)
+				return null;
+			
+			String name = prefix + methodCount++;
+			
+			methods.append("\tprivate ").append(result).append(" ").append(name).append("() {\n");
+			methods.append(guards).append(body);
+			methods.append("\t}\n\n");
+			
+			return name;
+		}
+		
+		/**
+		 * Aadir una lnea de cdigo al mtodo.
+		 * 
+		 * @param line  cdigo
+		 */
+		private void code(String line) {
+			
+			body.append("\t\t").append(line).append("\n");
+		}
+		
+		/**
+		 * Aadir una variable temporal al mtodo.
+		 * 
+		 * @param javaType  tipo
+		 * @param value     valor
+		 * @return  nombre
+		 */
+		private String temp(String javaType, String value) {
+			
+			String name = "t" + temps++;
+			
+			code("final " + javaType + " " + name + " = " + value + ";");
+			
+			return name;
+		}
+		
+		/**
+		 * Aadir una comprobacin al mtodo: si se cumple la condicin, se
+		 * cede al intrprete. No es posible tras llamar a una funcin con
+		 * efectos.
+		 * 
+		 * @param cond  condicin
+		 */
+		private void check(String cond) {
+			
+			if(impure)
+				failed = true;
+			
+			code("if(" + cond + ") " + bail);
+		}
+		
+		/**
+		 * Devolver la variable local de una variable del programa, que se
+		 * comprueba al principio del mtodo que exista y sea del tipo que
+		 * tena al compilar.
+		 * 
+		 * @param id  identificador
+		 * @return  nombre de la variable local
+		 */
+		private String variable(TinyDevIdentifier id) {
+			
+			int slot = id.getSlot();
+			String name = "v" + slot;
+			
+			if(types[slot] == null) {
+				failed = true;
+				return name;
+			}
+			
+			if(!guarded.contains(slot)) {
+				
+				guarded.add(slot);
+				
+				guards.append("\t\tfinal TinyDevVariable ").append(name).append(" = variables[").append(slot).append("];\n");
+				guards.append("\t\tif(").append(name).append(" == null || ").append(name).append(".getType() != TinyDevLang.DataType.").append(types[slot]);
+				
+				if(subTypes[slot] != null)
+					guards.append(" || ").append(name).append(".getSubType() != TinyDevLang.DataType.").append(subTypes[slot]);
+				
+				guards.append(") ").append(bail).append("\n");
+			}
+			
+			return name;
+		}
+		
+		/**
+		 * Generar el clculo de un nodo de una expresin, en el mismo orden
+		 * que el intrprete.
+		 * 
+		 * Las funciones y las operaciones que se han de comprobar se
+		 * calculan en variables temporales, en orden; el resto del cdigo
+		 * slo lee valores y no puede fallar, por lo que el orden en que se
+		 * calcula no importa.
+		 * 
+		 * @param e  nodo
+		 * @return  cdigo Java del valor (su tipo queda en type), o null
+		 *          si no se puede compilar
+		 */
+		private String value(TinyDevExpr e) {
+			
+			String x = valueOf(e);
+			
+			if(x == null) {
+				failed = true;
+				type = null;
+			}
+			
+			return x;
+		}
+		
+		private String valueOf(TinyDevExpr e) {
+			
+			switch(e.getType()) {
+				
+				// Constantes
+				case NUMBER :
+					type = TinyDevLang.DataType.NUMBER;
+					return "(" + e.getNumber() + ")";
+				
+				case STRING :
+					type = TinyDevLang.DataType.STRING;
+					return literal(e.getValue());
+				
+				// Variable
+				case VARIABLE : {
+					
+					String var = variable(e.getIdentifier());
+					
+					type = types[e.getIdentifier().getSlot()];
+					
+					if(type == TinyDevLang.DataType.NUMBER)
+						return var + ".getNumberValue()";
+					
+					if(type == TinyDevLang.DataType.STRING)
+						return var + ".getStringValue()";
+					
+					return null;
+				}
+				
+				// Elemento de un array
+				case ELEMENT : {
+					
+					int slot = e.getIdentifier().getSlot();
+					String var = variable(e.getIdentifier());
+					
+					if(types[slot] != TinyDevLang.DataType.ARRAY)
+						return null;
+					
+					String ix = value(e.getArg(0));
+					
+					if(type != TinyDevLang.DataType.NUMBER)
+						return null;
+					
+					String index = temp("int", ix);
+					check(index + " < 0 || " + index + " >= " + var + ".getSize()");
+					
+					type = subTypes[slot];
+					
+					if(type == TinyDevLang.DataType.NUMBER)
+						return var + ".getNumberArray()[" + index + "]";
+					
+					if(type == TinyDevLang.DataType.STRING)
+						return "((String) " + var + ".getObjectArray()[" + index + "])";
+					
+					return null;
+				}
+				
+				// Signo '-'
+				case NEGATIVE : {
+					
+					String x = value(e.getArg(0));
+					
+					if(type != TinyDevLang.DataType.NUMBER)
+						return null;
+					
+					return "(-" + x + ")";
+				}
+				
+				// Operacin
+				case OPERATOR :
+					return operator(e);
+				
+				// Funcin
+				case FUNCTION :
+					return function(e);
+				
+				default :
+					return null;
+			}
+		}
+		
+		/**
+		 * Generar una operacin lgica AND, OR: el operando de la derecha
+		 * slo se calcula si el de la izquierda no decide el resultado, como
+		 * en el intrprete. Si necesita variables temporales o comprobaciones,
+		 * se generan dentro de un if, para no calcularlas si no es necesario.
+		 * 
+		 * @param e   nodo
+		 * @param l   cdigo Java del operando de la izquierda
+		 * @param lt  tipo del operando de la izquierda
+		 * @return  cdigo Java del valor, o null si no se puede compilar
+		 */
+		private String logical(TinyDevExpr e, String l, TinyDevLang.DataType lt) {
+			
+			if(lt != TinyDevLang.DataType.BOOLEAN)
+				return null;
+			
+			boolean and = e.getOperator() == TinyDevOperator.Id.AND;
+			int mark = body.length();
+			
+			String r = value(e.getArg(1));
+			
+			if(r == null || type != TinyDevLang.DataType.BOOLEAN)
+				return null;
+			
+			// El operando de la derecha slo lee valores
+			if(body.length() == mark)
+				return "(" + l + (and ? " && " : " || ") + r + ")";
+			
+			// Mover su cdigo dentro del if
+			String[] right = body.substring(mark).split("\n");
+			
+			body.setLength(mark);
+			
+			String t = "t" + temps++;
+			
+			code("boolean " + t + " = " + l + ";");
+			code("if(" + (and ? "" : "!") + t + ") {");
+			
+			for(String line : right)
+				body.append("\t").append(line).append("\n");
+			
+			code("\t" + t + " = " + r + ";");
+			code("}");
+			
+			type = TinyDevLang.DataType.BOOLEAN;
+			return t;
+		}
+		
+		/**
+		 * Generar una operacin lgica, relacional o aritmtica. Los tipos
+		 * de los operandos han de ser los correctos; si no, el error lo
+		 * indica el intrprete.
+		 * 
+		 * @param e  nodo
+		 * @return  cdigo Java del valor, o null si no se puede compilar
+		 */
+		private String operator(TinyDevExpr e) {
+			
+			String l = value(e.getArg(0));
+			TinyDevLang.DataType lt = type;
+			
+			if(l == null)
+				return null;
+			
+			// Operacin lgica
+			if(e.getOperator() == TinyDevOperator.Id.AND || e.getOperator() == TinyDevOperator.Id.OR)
+				return logical(e, l, lt);
+			
+			String r = value(e.getArg(1));
+			TinyDevLang.DataType rt = type;
+			
+			if(r == null)
+				return null;
+			
+			boolean numbers = lt == TinyDevLang.DataType.NUMBER && rt == TinyDevLang.DataType.NUMBER;
+			boolean strings = lt == TinyDevLang.DataType.STRING && rt == TinyDevLang.DataType.STRING;
+			
+			switch(e.getOperator()) {
+				
+				case EQUAL :
+				case NOT_EQUAL :
+				case GREATER :
+				case GREATER_OR_EQUAL :
+				case LESS :
+				case LESS_OR_EQUAL :
+					String op = relational(e.getOperator());
+					
+					type = TinyDevLang.DataType.BOOLEAN;
+					
+					if(numbers)
+						return "(" + l + op + r + ")";
+					
+					if(strings)
+						return "(" + l + ".compareTo(" + r + ")" + op + "0)";
+					
+					return null;
+				
+				case PLUS :
+					if(!numbers && !strings)
+						return null;
+					
+					type = lt;
+					return "(" + l + " + " + r + ")";
+				
+				case MINUS :
+				case MULTIPLY :
+					if(!numbers)
+						return null;
+					
+					type = TinyDevLang.DataType.NUMBER;
+					return "(" + l + (e.getOperator() == TinyDevOperator.Id.MINUS ? " - " : " * ") + r + ")";
+				
+				// La divisin por 0 la trata el intrprete
+				case DIVIDE :
+				case MODULUS :
+					if(!numbers)
+						return null;
+					
+					String div = temp("int", r);
+					check(div + " == 0");
+					
+					type = TinyDevLang.DataType.NUMBER;
+					return "(" + l + (e.getOperator() == TinyDevOperator.Id.DIVIDE ? " / " : " % ") + div + ")";
+				
+				default :
+					return null;
+			}
+		}
+		
+		/**
+		 * Devolver el operador Java de una comparacin.
+		 * 
+		 * @param op  operador
+		 * @return  operador
+		 */
+		private String relational(TinyDevOperator.Id op) {
+			
+			switch(op) {
+				case EQUAL :
+					return " == ";
+				case NOT_EQUAL :
+					return " != ";
+				case GREATER :
+					return " > ";
+				case GREATER_OR_EQUAL :
+					return " >= ";
+				case LESS :
+					return " < ";
+				default :
+					return " <= ";
+			}
+		}
+		
+		/**
+		 * Generar una funcin, con una llamada directa.
+		 * 
+		 * @param e  nodo
+		 * @return  cdigo Java del valor, o null si no se puede compilar
+		 */
+		private String function(TinyDevExpr e) {
+			
+			String s, n, p;
+			
+			switch(e.getFunction()) {
+				
+				// Funciones con efectos
+				case RANDOM :
+					n = temp("int", "random()");
+					impure = true;
+					type = TinyDevLang.DataType.NUMBER;
+					return n;
+				
+				case KEY :
+					s = temp("String", "key()");
+					impure = true;
+					type = TinyDevLang.DataType.STRING;
+					return s;
+				
+				case MOUSECLICK :
+					s = temp("String", "mouseClick()");
+					impure = true;
+					type = TinyDevLang.DataType.STRING;
+					return s;
+				
+				// Funciones sin argumentos
+				case MOUSEX :
+					return number("io.getMouseX()");
+				case MOUSEY :
+					return number("io.getMouseY()");
+				case CURSORX :
+					return number("io.getColumn()");
+				case CURSORY :
+					return number("io.getRow()");
+				case SCREENHEIGHT :
+					return number("io.getHeight()");
+				case SCREENWIDTH :
+					return number("io.getWidth()");
+				case REPLY :
+					return string("reply()");
+				case PEN :
+					return string("pen()");
+				case PAPER :
+					return string("paper()");
+				case BREAK :
+					type = TinyDevLang.DataType.STRING;
+					return literal("\n");
+				
+				// Funciones con argumentos
+				case NUMBER :
+					if((s = arg(e, 0, TinyDevLang.DataType.STRING)) == null)
+						return null;
+					return number("stringToInt(" + s + ")");
+				
+				case STRING :
+					if((n = arg(e, 0, TinyDevLang.DataType.NUMBER)) == null)
+						return null;
+					return string("String.valueOf(" + n + ")");
+				
+				case LENGTH :
+					
+					// Longitud de un array
+					if(e.getArgCount() > 0 && e.getArg(0).getType() == TinyDevExpr.Id.VARIABLE
+							&& types[e.getArg(0).getIdentifier().getSlot()] == TinyDevLang.DataType.ARRAY) {
+						return number(variable(e.getArg(0).getIdentifier()) + ".getSize()");
+					}
+					
+					// Longitud de una cadena
+					if((s = arg(e, 0, TinyDevLang.DataType.STRING)) == null)
+						return null;
+					return number(s + ".length()");
+				
+				case TEXTHEIGHT :
+					if(arg(e, 0, TinyDevLang.DataType.STRING) == null)
+						return null;
+					return number("io.getTextHeight()");
+				
+				case TEXTWIDTH :
+					if((s = arg(e, 0, TinyDevLang.DataType.STRING)) == null)
+						return null;
+					return number("io.getTextWidth(" + s + ")");
+				
+				case LOWERCASE :
+					if((s = arg(e, 0, TinyDevLang.DataType.STRING)) == null)
+						return null;
+					return string(s + ".toLowerCase(java.util.Locale.ROOT)");
+				
+				case UPPERCASE :
+					if((s = arg(e, 0, TinyDevLang.DataType.STRING)) == null)
+						return null;
+					return string(s + ".toUpperCase(java.util.Locale.ROOT)");
+				
+				case MIDDLE :
+					if((s = arg(e, 0, TinyDevLang.DataType.STRING)) == null
+							|| (n = arg(e, 1, TinyDevLang.DataType.NUMBER)) == null
+							|| (p = arg(e, 2, TinyDevLang.DataType.NUMBER)) == null)
+						return null;
+					
+					// Las posiciones errneas las trata el intrprete
+					String first = temp("int", n);
+					String last = temp("int", first + " + " + p);
+					check(first + " < 0 || " + first + " > " + last + " || " + last + " > " + s + ".length()");
+					
+					return string(s + ".substring(" + first + ", " + last + ")");
+				
+				case FINDSTRING :
+					if((s = arg(e, 0, TinyDevLang.DataType.STRING)) == null
+							|| (p = arg(e, 1, TinyDevLang.DataType.STRING)) == null)
+						return null;
+					
+					n = "0";
+					
+					if(e.getArgCount() > 2) {
+						
+						if((n = arg(e, 2, TinyDevLang.DataType.NUMBER)) == null)
+							return null;
+						
+						check(n + " < 0");
+					}
+					
+					return number(s + ".indexOf(" + p + ", " + n + ")");
+				
+				case REPEATSTRING :
+					if((s = arg(e, 0, TinyDevLang.DataType.STRING)) == null
+							|| (n = arg(e, 1, TinyDevLang.DataType.NUMBER)) == null)
+						return null;
+					
+					check(n + " < 0");
+					
+					return string("repeat(" + s + ", " + n + ")");
+				
+				// Funciones con arrays, imgenes, etc.
+				default :
+					return null;
+			}
+		}
+		
+		/**
+		 * Generar el argumento de una funcin, en una variable temporal.
+		 * 
+		 * @param e      funcin
+		 * @param index  n de argumento
+		 * @param dt     tipo que ha de tener
+		 * @return  nombre de la variable temporal, o null si no se puede compilar
+		 */
+		private String arg(TinyDevExpr e, int index, TinyDevLang.DataType dt) {
+			
+			if(index >= e.getArgCount())
+				return null;
+			
+			String x = value(e.getArg(index));
+			
+			if(type != dt)
+				return null;
+			
+			return temp(dt == TinyDevLang.DataType.NUMBER ? "int" : "String", x);
+		}
+		
+		/**
+		 * Generar el resultado numrico de una funcin, en una variable
+		 * temporal.
+		 * 
+		 * @param call  llamada
+		 * @return  nombre de la variable temporal
+		 */
+		private String number(String call) {
+			
+			type = TinyDevLang.DataType.NUMBER;
+			
+			return temp("int", call);
+		}
+		
+		/**
+		 * Generar el resultado textual de una funcin, en una variable
+		 * temporal.
+		 * 
+		 * @param call  llamada
+		 * @return  nombre de la variable temporal
+		 */
+		private String string(String call) {
+			
+			type = TinyDevLang.DataType.STRING;
+			
+			return temp("String", call);
+		}
+		
+		/**
+		 * Devolver una cadena de texto como literal de Java.
+		 * 
+		 * @param s  cadena
+		 * @return  literal
+		 */
+		private String literal(String s) {
+			
+			StringBuilder sb = new StringBuilder("\"");
+			
+			for(int i = 0; i < s.length(); ++i) {
+				
+				char c = s.charAt(i);
+				
+				if(c >= ' ' && c <= '~' && c != '"' && c != '\\')
+					sb.append(c);
+				else if(c <= 0xFF)
+					sb.append(String.format("\\%03o", (int) c));
+				else
+					sb.append(String.format("\\u%04x", (int) c));
+			}
+			
+			return sb.append('"').toString();
+		}
+	}
+}
@@ -35,6 +35,7 @@ public class TinyDevKeyword {
 		BOLD,
 		BREAK,
 		CALL,
+		CASE,
 		CENTER,
 		CLEAR,
 		CURSOR,
@@ -48,6 +49,7 @@ public class TinyDevKeyword {
 		ERROR,
 		FILL,
 		FONT,
+		FOR,
 		IF,
 		IMAGE,
 		INFORMATION,
@@ -64,6 +66,7 @@ public class TinyDevKeyword {
 		MOUSEX,
 		MOUSEY,
 		MOUSECLICK,
+		NEXT,
 		NUMBER,
 		OKCANCEL,
 		PAPER,
@@ -82,9 +85,11 @@ public class TinyDevKeyword {
 		SCREENHEIGHT,
 		SCREENIMAGE,
 		SCREENWIDTH,
+		SELECT,
 		SET,
 		SOLID,
 		SOUND,
+		STEP,
 		STRING,
 		FINDSTRING,
 		TEXTHEIGHT,
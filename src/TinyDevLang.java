@@ -23,13 +23,26 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
 /**
  * Clase que implementa el lenguaje de programacin KidMind.
@@ -50,6 +63,13 @@ import java.util.Random;
  * 01 Abr 2017 : Comando writefile.
  * 06 Abr 2017 : Los identificadores tambin pueden comenzar por / contener los caracteres '$' y '_'.
  * 03 Jan 2018 : Las funciones empiezan a escribirse como mtodos fnXXX fuera de exprValue(). 
+ * 18 Oct 2026 : Los arrays no tienen tamao mximo; se limita la memoria que ocupan por programa.
+ * 18 Oct 2026 : Motor JIT: compila a una clase Java los programas que ejecutan muchas instrucciones.
+ * 18 Oct 2026 : El intrprete compila a closures las lneas que ejecuta muchas veces.
+ * 18 Oct 2026 : Comprobacin de tipos de las expresiones, antes de la ejecucin.
+ * 18 Oct 2026 : Cada ejecucin tiene su propio contexto; los errores se notifican con TinyDevListener.
+ * 18 Oct 2026 : Los programas se pueden ejecutar en threads virtuales (Java 21 o superior).
+ * 18 Oct 2026 : Ejecucin por turnos, para repartir pocos threads entre muchos programas (ver TinyDevScheduler).
  */
 public class TinyDevLang {
 	
@@ -86,6 +106,7 @@ public class TinyDevLang {
 		DO_NOT_ACTIVE,
 		DO_LOOP_MISMATCH,
 		MISSING_LOOP,
+		MISSING_NEXT,
 		TOO_MANY_CALL,
 		CALL_NOT_ACTIVE,
 		BAD_SCREEN_POSITION,
@@ -98,11 +119,14 @@ public class TinyDevLang {
 		IF_NOT_ACTIVE,
 		TOO_MANY_IF,
 		MISSING_END_IF,
+		SELECT_NOT_ACTIVE,
+		MISSING_END_SELECT,
 		BAD_EXPRESSION,
 		OUT_OF_BOUNDS,
 		BAD_ARRAY_SIZE,
 		READING_FILE,
-		WRITING_FILE
+		WRITING_FILE,
+		OUT_OF_MEMORY
 	}
 	
 	// ----------------
@@ -115,6 +139,27 @@ public class TinyDevLang {
 		SOLID
 	}
 	
+	// ----------------------
+	// Motores de ejecucin
+	// ----------------------
+	
+	public enum Engine {
+		TREE,     // Intrprete: recorre las instrucciones y expresiones compiladas
+		BYTECODE, // Mquina virtual: ejecuta el bytecode del programa (ver TinyDevBytecode)
+		JIT       // Intrprete, que cede la ejecucin al programa compilado a una clase Java (ver TinyDevJit)
+	}
+	
+	// ---------------------------------------------------------------
+	// Superinstrucciones (operando: nmero constante, o variable)
+	// ---------------------------------------------------------------
+	
+	public enum Fusion {
+		SET_STEP,   // SET variable = variable + | - operando
+		IF_KEY,     // IF key() == | != "tecla" THEN ...
+		IMAGE,      // IMAGE operando, operando, variable
+		DO_COMPARE  // DO | LOOP WHILE | UNTIL operando relacional operando
+	}
+	
 	// --------------------
 	// Estilos de la fuente
 	// --------------------
@@ -132,6 +177,7 @@ public class TinyDevLang {
 		new TinyDevKeyword("bold", TinyDevKeyword.Id.BOLD),
 		new TinyDevKeyword("break", TinyDevKeyword.Id.BREAK),
 		new TinyDevKeyword("call", TinyDevKeyword.Id.CALL),
+		new TinyDevKeyword("case", TinyDevKeyword.Id.CASE),
 		new TinyDevKeyword("center", TinyDevKeyword.Id.CENTER),
 		new TinyDevKeyword("clear", TinyDevKeyword.Id.CLEAR),
 		new TinyDevKeyword("cursor", TinyDevKeyword.Id.CURSOR),
@@ -146,6 +192,7 @@ public class TinyDevLang {
 		new TinyDevKeyword("fill", TinyDevKeyword.Id.FILL),
 		new TinyDevKeyword("findstring", TinyDevKeyword.Id.FINDSTRING),
 		new TinyDevKeyword("font", TinyDevKeyword.Id.FONT),
+		new TinyDevKeyword("for", TinyDevKeyword.Id.FOR),
 		new TinyDevKeyword("if", TinyDevKeyword.Id.IF),
 		new TinyDevKeyword("image", TinyDevKeyword.Id.IMAGE),
 		new TinyDevKeyword("information", TinyDevKeyword.Id.INFORMATION),
@@ -162,6 +209,7 @@ public class TinyDevLang {
 		new TinyDevKeyword("mouseClick", TinyDevKeyword.Id.MOUSECLICK),
 		new TinyDevKeyword("mouseX", TinyDevKeyword.Id.MOUSEX),
 		new TinyDevKeyword("mouseY", TinyDevKeyword.Id.MOUSEY),
+		new TinyDevKeyword("next", TinyDevKeyword.Id.NEXT),
 		new TinyDevKeyword("number", TinyDevKeyword.Id.NUMBER),
 		new TinyDevKeyword("okCancel", TinyDevKeyword.Id.OKCANCEL),
 		new TinyDevKeyword("paper", TinyDevKeyword.Id.PAPER),
@@ -180,9 +228,11 @@ public class TinyDevLang {
 		new TinyDevKeyword("screenHeight", TinyDevKeyword.Id.SCREENHEIGHT),
 		new TinyDevKeyword("screenImage", TinyDevKeyword.Id.SCREENIMAGE),
 		new TinyDevKeyword("screenWidth", TinyDevKeyword.Id.SCREENWIDTH),
+		new TinyDevKeyword("select", TinyDevKeyword.Id.SELECT),
 		new TinyDevKeyword("set", TinyDevKeyword.Id.SET),
 		new TinyDevKeyword("solid", TinyDevKeyword.Id.SOLID),
 		new TinyDevKeyword("sound", TinyDevKeyword.Id.SOUND),
+		new TinyDevKeyword("step", TinyDevKeyword.Id.STEP),
 		new TinyDevKeyword("string", TinyDevKeyword.Id.STRING),
 		new TinyDevKeyword("textHeight", TinyDevKeyword.Id.TEXTHEIGHT),
 		new TinyDevKeyword("textWidth", TinyDevKeyword.Id.TEXTWIDTH),
@@ -240,36 +290,167 @@ public class TinyDevLang {
 	// G L O B A L E S
 	// ---------------
 	
-	TinyDevLocalizator loc = new TinyDevLocalizator("TinyDevLang");  // Localizacin de textos, etc. (espaol, ingls...)
+	TinyDevLocalizator loc;  // Localizacin de textos, etc. (espaol, ingls...)
+	
+	private TinyDevListener listener;  // Receptor de las notificaciones de la ejecucin, o null
+	
+	// Nota: El objeto que recibe execute() guarda la configuracin, y cada
+	//       ejecucin se hace con una copia propia (ver newRun()), que
+	//       contiene todo el estado de la ejecucin: as, varios programas
+	//       pueden ejecutarse a la vez en la misma JVM, cada uno con su
+	//       propio intrprete.
 	
-	TinyDevEditor editor;
+	private TinyDevLang running = null;  // Contexto de la ejecucin lanzada con execute(), o null
 	
 	private String currentDirectory;
 	
-	private static final int MAX_ARRAY_SIZE = 100; // Tamao mximo, para los arrays
+	public static final long DEFAULT_MEMORY_LIMIT = 64L * 1024 * 1024; // Memoria mxima por defecto para los arrays y strings de un programa, en bytes
+	
+	private static final int NUMBER_ELEMENT_SIZE = 4;     // Bytes por elemento, en arrays de tipo NUMBER
+	private static final int REFERENCE_ELEMENT_SIZE = 8;  // Bytes por elemento, en arrays de otros tipos
+	private static final int CHAR_SIZE = 2;               // Bytes por carcter, en strings
+	
+	private long memoryLimit = DEFAULT_MEMORY_LIMIT;  // Memoria mxima para los arrays y strings del programa, en bytes
+	private long memoryUsed;                          // Memoria ocupada por los arrays y strings del programa, en bytes
+	
+	private static final int PARALLEL_TOKENIZE_LINES = 20000;  // N mnimo de lneas, para tokenizar en paralelo
+	private static final int TOKENIZE_CHUNK_LINES = 2000;      // N mnimo de lneas de cada fragmento, al tokenizar en paralelo
+	
+	private boolean parallelTokenizing = true;  // True para tokenizar en paralelo los programas grandes
+	
+	private Engine engine = Engine.TREE;  // Motor de ejecucin
+	
+	// Bytecode del programa, si se ejecuta con la mquina virtual
+	private TinyDevBytecode bytecode;  // Bytecode, o null si se ejecuta con el intrprete
+	private int[] code;                // Cdigo
+	private Object[] pool;             // Pool de constantes
+	
+	// Operadores, segn su cdigo de operacin en el bytecode
+	private static final TinyDevOperator.Id[] OPERATORS = new TinyDevOperator.Id[TinyDevBytecode.OP_OPERATE_NUMBER];
+	
+	static {
+		OPERATORS[TinyDevBytecode.OP_EQUAL] = TinyDevOperator.Id.EQUAL;
+		OPERATORS[TinyDevBytecode.OP_NOT_EQUAL] = TinyDevOperator.Id.NOT_EQUAL;
+		OPERATORS[TinyDevBytecode.OP_GREATER] = TinyDevOperator.Id.GREATER;
+		OPERATORS[TinyDevBytecode.OP_GREATER_OR_EQUAL] = TinyDevOperator.Id.GREATER_OR_EQUAL;
+		OPERATORS[TinyDevBytecode.OP_LESS] = TinyDevOperator.Id.LESS;
+		OPERATORS[TinyDevBytecode.OP_LESS_OR_EQUAL] = TinyDevOperator.Id.LESS_OR_EQUAL;
+		OPERATORS[TinyDevBytecode.OP_PLUS] = TinyDevOperator.Id.PLUS;
+		OPERATORS[TinyDevBytecode.OP_MINUS] = TinyDevOperator.Id.MINUS;
+		OPERATORS[TinyDevBytecode.OP_MULTIPLY] = TinyDevOperator.Id.MULTIPLY;
+		OPERATORS[TinyDevBytecode.OP_DIVIDE] = TinyDevOperator.Id.DIVIDE;
+		OPERATORS[TinyDevBytecode.OP_MODULUS] = TinyDevOperator.Id.MODULUS;
+	}
+	
+	// Compilador JIT
+	private static final int JIT_THRESHOLD = 100000; // N de instrucciones ejecutadas por el intrprete, para compilar el programa
+	private int jitCountdown;                        // N de instrucciones que faltan para compilar el programa, o 0 si no se compila
+	private FutureTask<TinyDevJit> jitTask;          // Compilacin en curso, o null
+	private TinyDevJit jit;                          // Programa compilado, o null
+	
+	// Closures
+	private static final int CLOSURE_THRESHOLD = 16;  // N de ejecuciones de una lnea, para compilarla a closures
+	private boolean closureCompiling = true;          // True para compilar a closures las lneas que se ejecutan muchas veces
+	
+	private boolean optimizing = true;  // True para optimizar los programas antes de ejecutarlos (ver TinyDevOptimizer)
 	
-	private ArrayList<TinyDevVariable> variables;       // Variables definidas
+	// Superinstrucciones
+	private boolean fusing = true;       // True para ejecutar con handlers especializados las formas de instruccin ms frecuentes
+	private boolean fusionDump = false;  // True para volcar en System.err las lneas reconocidas como superinstrucciones
+	
+	// Pila de operandos de la mquina virtual
+	private DataType[] stackType = new DataType[64];
+	private int[] stackInt = new int[64];
+	private boolean[] stackBool = new boolean[64];
+	private Object[] stackValue = new Object[64];
+	private int stackTop;
+	
+	private TinyDevVariable[] variables;                // Variables definidas, segn el slot de su identificador
 	private ArrayList<TinyDevPlace> places;             // Places definidos
-	private ArrayList<TinyDevIdentifier> identifiers;   // Identificadores definidos
+	private HashMap<String, TinyDevIdentifier> identifiers;  // Identificadores definidos, segn su nombre en minsculas (ver foldCase)
+	private DataType[] varTypes;                        // Tipos de las variables segn sus declaraciones, o null si se desconocen (ver checkTypes)
+	private DataType[] varSubTypes;                     // Sub-tipos de los arrays segn sus declaraciones
+	private boolean typeUncertain;                      // True si el clculo que se comprueba puede fallar antes, al ejecutarse
 	
 	private ArrayList<String> source;              // Cdigo fuente recibido
 	private ArrayList<TinyDevLine> source_tokens;       // Cdigo fuente tokenizado
 	
 	private int posNumber;    // Posicin (ndice 0..?) en el cdigo fuente de la lnea actual
 	private int lineNumber;   // N de lnea que se est procesando (0..?)
-	private boolean stopped;  // True si el programa ha finalizado, false en caso contrario -- FIXME: volatile?
+	private volatile boolean stopped;  // True si el programa ha finalizado, false en caso contrario
 	private Error errorId;    // Cdigo de error
 	
-	int exprIndex;                  // Posicin en la lnea de tokens de la expresin
-	Object exprValue;               // Valor (resultado) de la expresin
+	int exprInt;                    // Valor (resultado) de la expresin, si es numrica
+	boolean exprBool;               // Valor (resultado) de la expresin, si es booleana
+	Object exprValue;               // Valor (resultado) de la expresin, si es de otro tipo
 	DataType exprType;              // Tipo de valor (resultado) de la expresin
 	DataType exprSubType;			// Sub-tipo (resultado) si la expresin es un array
-	ArrayList<TinyDevToken> exprTokens;  // Lnea de tokens de la expresin
 	
-	private TinyDevScreen io;            // Objeto de entrada / salida desde / hacia el teclado, ventana, etc.
+	private TinyDevIO io;            // Objeto de entrada / salida desde / hacia el teclado, ventana, etc.
 	
 	private Thread executor = null; // Thread para la tokenizacin y ejecucin de lneas de cdigo
 	
+	// Threads virtuales (Java 21 o superior)
+	//
+	// Un thread virtual que espera en un WAIT (Thread.sleep), o en una
+	// espera de entrada, no ocupa su thread del sistema, as que una JVM
+	// puede tener muchos ms programas en ejecucin, si la mayora estn
+	// esperando. Como el cdigo ha de compilar con Java 8, se usan por
+	// reflexin; si la JVM no los tiene, se usan threads normales.
+	private static final Method THREAD_OF_VIRTUAL;  // Thread.ofVirtual(), o null
+	private static final Method BUILDER_NAME;       // Thread.Builder.name(String)
+	private static final Method BUILDER_UNSTARTED;  // Thread.Builder.unstarted(Runnable)
+	private static final Method THREAD_IS_VIRTUAL;  // Thread.isVirtual()
+	
+	static {
+		Method ofVirtual = null, name = null, unstarted = null, isVirtual = null;
+		
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			name = builder.getMethod("name", String.class);
+			unstarted = builder.getMethod("unstarted", Runnable.class);
+			isVirtual = Thread.class.getMethod("isVirtual");
+			
+		} catch(ClassNotFoundException | NoSuchMethodException e) {
+			ofVirtual = null;
+		}
+		
+		THREAD_OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = name;
+		BUILDER_UNSTARTED = unstarted;
+		THREAD_IS_VIRTUAL = isVirtual;
+	}
+	
+	private boolean virtualThreads = false;  // True para ejecutar los programas en threads virtuales, si la JVM los tiene
+	
+	// Esperas de entrada
+	//
+	// Un programa que espera una tecla o un click llamando a key() o a
+	// mouseClick() en un bucle, sin WAIT, no deja nunca libre su thread.
+	// En un thread virtual, a partir de un n de consultas seguidas sin
+	// entrada, cada consulta espera un poco antes de volver, dejando el
+	// thread del sistema a otros programas. Si se ejecuta por turnos, se
+	// suspende el programa, en lugar del thread.
+	private static final int INPUT_WAIT_POLLS = 1000;       // N de consultas seguidas sin entrada, para empezar a esperar
+	private static final long INPUT_WAIT_NANOS = 1000000L;  // Espera de cada consulta sin entrada, a partir de entonces, en ns
+	private boolean inputWaits;                              // True para esperar en las consultas sin entrada
+	private int emptyPolls;                                  // N de consultas seguidas sin entrada
+	
+	// Ejecucin por turnos (ver TinyDevScheduler)
+	//
+	// Un programa que se ejecuta por turnos cede su thread tras ejecutar un
+	// n de lneas (el quantum), para que lo usen otros programas; un WAIT
+	// no duerme el thread, sino que suspende el programa hasta que pase su
+	// tiempo. Sin quantum, el programa se ejecuta de una vez (ver run()).
+	private int quantum;      // N de lneas que se ejecutan en cada turno, o 0 si no se ejecuta por turnos
+	private int slice;        // N de lneas que faltan para terminar el turno actual
+	private boolean yielded;  // True si el programa ha cedido la ejecucin, al terminar su turno
+	private boolean ended;    // True si el programa ha terminado, aunque tenga una espera pendiente
+	private boolean waiting;  // True si el programa est suspendido en una espera
+	private long wakeTime;    // Instante en que finaliza la espera (ver System.nanoTime())
+	
 	// DO ... LOOP UNTIL / WHILE
 	// DO UNTIL / WHILE ... LOOP
 	private static final int MAX_DO_LEVEL = 10;             // Mximo n de Do activos
@@ -278,6 +459,16 @@ public class TinyDevLang {
 	private int[] doLineNumber = new int[MAX_DO_LEVEL];     // N de lnea del DO
 	private int[] doIfBlockLevel = new int[MAX_DO_LEVEL];   // N de IF activos por nivel de DO
 	
+	// FOR variable = inicio TO final {STEP incremento} ... NEXT
+	//
+	// Usa los mismos niveles que DO, para que BREAK y CALL / RETURN
+	// funcionen igual. El contador es la propia variable: si se le asigna
+	// un valor dentro del bucle, NEXT contina desde l.
+	private boolean[] doFor = new boolean[MAX_DO_LEVEL];                       // True si es FOR ... NEXT
+	private TinyDevVariable[] forVariable = new TinyDevVariable[MAX_DO_LEVEL]; // Variable del contador
+	private int[] forLimit = new int[MAX_DO_LEVEL];                            // Valor final
+	private int[] forStep = new int[MAX_DO_LEVEL];                             // Incremento
+	
 	// Nota: Hay 2 tipos de If, que no se pueden mezclar.
 	//
 	//       Simple:
@@ -321,86 +512,356 @@ public class TinyDevLang {
 	
 	/**
 	 * Constructor.
+	 * 
+	 * @param lst  receptor de las notificaciones de la ejecucin, o null
 	 */
-	public TinyDevLang(TinyDevEditor ed) {
+	public TinyDevLang(TinyDevListener lst) {
 		
-		//
+		loc = new TinyDevLocalizator("TinyDevLang");
+		listener = lst;
+	}
+	
+	/**
+	 * Constructor: contexto para una ejecucin, con la configuracin
+	 * de otro objeto (ver newRun()).
+	 * 
+	 * @param config  objeto con la configuracin
+	 */
+	private TinyDevLang(TinyDevLang config) {
+		
+		loc = config.loc;
+		listener = config.listener;
+		memoryLimit = config.memoryLimit;
+		parallelTokenizing = config.parallelTokenizing;
+		engine = config.engine;
+		closureCompiling = config.closureCompiling;
+		optimizing = config.optimizing;
+		fusing = config.fusing;
+		fusionDump = config.fusionDump;
+		virtualThreads = config.virtualThreads;
+	}
+	
+	/**
+	 * Crear un contexto para una nueva ejecucin, con la configuracin
+	 * actual. Cada contexto ejecuta un nico programa, con run(), y no
+	 * comparte su estado con ningn otro.
+	 * 
+	 * @return  contexto
+	 */
+	public TinyDevLang newRun() {
 		
-		editor = ed;
+		return new TinyDevLang(this);
 	}
 	
 	/**
-	 * Ejecutar un programa.
+	 * Ejecutar un programa, en otro thread.
 	 * 
 	 * @param sourceCode  cdigo fuente
 	 * @param screen      objeto de entrada / salida desde / hacia el teclado, pantalla, etc.
 	 * 
 	 */
-	public void execute(ArrayList<String> sourceCode, TinyDevScreen screen, String currentDir) {
+	public void execute(final ArrayList<String> sourceCode, final TinyDevIO screen, final String currentDir) {
 		
 		// Si hay un programa actualmente en ejecucin, detenerlo
 		stop();
+		
+		// Contexto de la nueva ejecucin
+		final TinyDevLang run = newRun();
+		
+		running = run;
 
 		// Thread que har el parseado, tokenizado, y la ejecucin del programa en s
-		executor = new Thread() {
+		executor = newThread(new Runnable() {
 			
 			@Override
 			public void run() {
 				
-				// Inicializacin de variables globales
-				variables = new ArrayList<TinyDevVariable>();
-				places = new ArrayList<TinyDevPlace>();
-				identifiers = new ArrayList<TinyDevIdentifier>();
-				source = sourceCode;
-				errorId = Error.SUCCESS;
-				stopped = false;
-				randGen = new Random();
-				randMax = 32767;
-				penName = "black";
-				paperName = "white";
-				
-				//
-				currentDirectory = currentDir;
-				
-				// Inicializacin de la entrada / salida
-				io = screen;
-				io.reset(TinyDevScreen.DEFAULT_SCREEN_WIDTH, TinyDevScreen.DEFAULT_SCREEN_HEIGHT);
-				io.setTitle(loc.getTitle("Parsing"));
-								
-				// Tokenizar el cdigo fuente
-				source_tokens = tokenizeAll(source);
-				
-				// Paso previo a la ejecucin
-				if(errorId == Error.SUCCESS)			
-					preRun();
-				
-				// Ejecucin del programa
-				if(errorId == Error.SUCCESS) {
-					
-					io.setTitle(loc.getTitle("Running"));
-					runProgram();
-				}
-				
-				// Fin de la ejecucin
-				io.setTitle(loc.getTitle("Stopped"));
-				
-				// Mostrar mensaje de posibles errores
-				if(errorId != Error.SUCCESS)
-					printError();
+				run.run(sourceCode, screen, currentDir);
 			}
-		};
+		}, "TinyDev", virtualThreads);
 		
 		// Comenzar el proceso de parseado, tokenizado, ejecucin, etc.		
 		executor.start();
 	}
 	
 	/**
-	 * Parar la ejecucin del programa.
+	 * Ejecutar un programa, en el thread actual; finaliza al terminar el
+	 * programa. Se ha de llamar una sola vez en cada contexto (ver newRun()).
+	 * 
+	 * @param sourceCode  cdigo fuente
+	 * @param screen      objeto de entrada / salida desde / hacia el teclado, pantalla, etc.;
+	 *                    cualquier implementacin de TinyDevIO
+	 * @param currentDir  directorio actual, para los ficheros del programa
+	 */
+	public void run(ArrayList<String> sourceCode, TinyDevIO screen, String currentDir) {
+		
+		if(prepare(sourceCode, screen, currentDir))
+			runProgram();
+		
+		finish();
+	}
+	
+	/**
+	 * Preparar la ejecucin de un programa: inicializar el contexto, y
+	 * tokenizar, compilar, etc. su cdigo fuente.
+	 * 
+	 * @param sourceCode  cdigo fuente
+	 * @param screen      objeto de entrada / salida
+	 * @param currentDir  directorio actual, para los ficheros del programa
+	 * @return  true si el programa se puede ejecutar, false si hay errores
+	 */
+	private boolean prepare(ArrayList<String> sourceCode, TinyDevIO screen, String currentDir) {
+		
+		// Motor de ejecucin
+		Engine runEngine = engine;
+		
+		// Inicializacin de variables globales
+		variables = null;
+		bytecode = null;
+		code = null;
+		pool = null;
+		stackTop = 0;
+		jitCountdown = (runEngine == Engine.JIT ? JIT_THRESHOLD : 0);
+		jitTask = null;
+		jit = null;
+		places = new ArrayList<TinyDevPlace>();
+		identifiers = new HashMap<String, TinyDevIdentifier>();
+		source = sourceCode;
+		errorId = Error.SUCCESS;
+		memoryUsed = 0;
+		randGen = new Random();
+		randMax = 32767;
+		penName = "black";
+		paperName = "white";
+		
+		//
+		currentDirectory = currentDir;
+		
+		// Inicializacin de la entrada / salida
+		io = screen;
+		inputWaits = isVirtualThread(Thread.currentThread());
+		emptyPolls = 0;
+		io.reset(TinyDevIO.DEFAULT_SCREEN_WIDTH, TinyDevIO.DEFAULT_SCREEN_HEIGHT);
+		io.setTitle(loc.getTitle("Parsing"));
+						
+		// Tokenizar el cdigo fuente
+		source_tokens = tokenizeAll(source);
+		
+		// Reservar un slot en la tabla de variables, para cada identificador
+		variables = new TinyDevVariable[identifiers.size()];
+		
+		// Paso previo a la ejecucin
+		if(errorId == Error.SUCCESS)			
+			preRun();
+		
+		// Compilar las lneas de cdigo, y enlazar sus places y bloques
+		if(errorId == Error.SUCCESS) {
+			compileAll();
+			bindPlaces();
+		}
+		
+		if(errorId == Error.SUCCESS)
+			matchBlocks();
+		
+		// Comprobar los tipos de las expresiones
+		if(errorId == Error.SUCCESS)
+			checkTypes();
+		
+		// Optimizar el programa
+		if(errorId == Error.SUCCESS && optimizing)
+			new TinyDevOptimizer().optimize(source_tokens, variables.length);
+		
+		// Construir las tablas de saltos de los SELECT
+		if(errorId == Error.SUCCESS)
+			buildSelects();
+		
+		// Generar el bytecode, si se ejecuta con la mquina virtual, o
+		// reconocer las superinstrucciones, si se ejecuta con el intrprete
+		if(errorId == Error.SUCCESS && runEngine == Engine.BYTECODE)
+			compileBytecode();
+		else if(errorId == Error.SUCCESS && fusing)
+			fuseAll();
+		
+		if(errorId != Error.SUCCESS)
+			return false;
+		
+		// Inicio de la ejecucin del programa
+		io.setTitle(loc.getTitle("Running"));
+		startProgram();
+		
+		return true;
+	}
+	
+	/**
+	 * Finalizar la ejecucin de un programa.
+	 */
+	private void finish() {
+		
+		// Fin de la ejecucin
+		io.setTitle(loc.getTitle("Stopped"));
+		
+		// Mostrar mensaje de posibles errores
+		if(errorId != Error.SUCCESS)
+			printError();
+	}
+	
+	/**
+	 * Devolver el resultado de la ejecucin.
+	 * 
+	 * @return  cdigo de error, o SUCCESS si no ha habido errores
+	 */
+	public Error getError() {
+		
+		return errorId;
+	}
+	
+	/**
+	 * Devolver la lnea que ha originado el error de la ejecucin.
+	 * 
+	 * @return  n de lnea (0..?), o -1 si no ha habido errores
+	 */
+	public int getErrorLine() {
+		
+		return (errorId != Error.SUCCESS ? lineNumber : -1);
+	}
+	
+	/**
+	 * Devolver el mensaje del error de la ejecucin.
+	 * 
+	 * @return  mensaje, o null si no ha habido errores
+	 */
+	public String getErrorMessage() {
+		
+		return (errorId != Error.SUCCESS ? errorMsg(errorId) : null);
+	}
+	
+	/**
+	 * Establecer la memoria mxima que pueden ocupar los arrays y strings
+	 * de un programa: los elementos de los arrays, y los caracteres de los
+	 * strings asignados a variables y elementos. Se aplica a partir de la
+	 * siguiente ejecucin.
+	 * 
+	 * @param bytes  memoria mxima, en bytes
+	 */
+	public void setMemoryLimit(long bytes) {
+		
+		memoryLimit = bytes;
+	}
+	
+	/**
+	 * Devolver la memoria mxima que pueden ocupar los arrays y strings de
+	 * un programa.
+	 * 
+	 * @return  memoria mxima, en bytes
+	 */
+	public long getMemoryLimit() {
+		
+		return memoryLimit;
+	}
+	
+	/**
+	 * Establecer el motor de ejecucin de los programas. Se aplica a
+	 * partir de la siguiente ejecucin.
+	 * 
+	 * @param eng  motor de ejecucin
+	 */
+	public void setEngine(Engine eng) {
+		
+		engine = eng;
+	}
+	
+	/**
+	 * Devolver el motor de ejecucin de los programas.
+	 * 
+	 * @return  motor de ejecucin
+	 */
+	public Engine getEngine() {
+		
+		return engine;
+	}
+	
+	/**
+	 * Ejecutar los programas en threads virtuales, si la JVM los tiene
+	 * (Java 21 o superior), o en threads normales. Se aplica a partir de
+	 * la siguiente ejecucin. Por defecto, se usan threads normales.
+	 * 
+	 * @param virtual  true para usar threads virtuales, false en caso contrario
+	 */
+	public void setVirtualThreads(boolean virtual) {
+		
+		virtualThreads = virtual;
+	}
+	
+	/**
+	 * Comprobar si la JVM tiene threads virtuales.
+	 * 
+	 * @return  true si los tiene, false en caso contrario
+	 */
+	public static boolean hasVirtualThreads() {
+		
+		Thread th = newThread(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				// Nada
+			}
+		}, "TinyDev", true);
+		
+		return isVirtualThread(th);
+	}
+	
+	/**
+	 * Crear un thread, sin comenzarlo.
+	 * 
+	 * @param task     tarea a ejecutar
+	 * @param name     nombre
+	 * @param virtual  true para crear un thread virtual, si la JVM los tiene
+	 * @return  thread
+	 */
+	public static Thread newThread(Runnable task, String name, boolean virtual) {
+		
+		if(virtual && THREAD_OF_VIRTUAL != null) {
+			
+			try {
+				Object builder = BUILDER_NAME.invoke(THREAD_OF_VIRTUAL.invoke(null), name);
+				
+				return (Thread) BUILDER_UNSTARTED.invoke(builder, task);
+				
+			} catch(IllegalAccessException | InvocationTargetException e) {
+				// No disponibles (por ejemplo, son una 'preview' de la JVM): thread normal
+			}
+		}
+		
+		return new Thread(task, name);
+	}
+	
+	/**
+	 * Comprobar si un thread es virtual.
+	 * 
+	 * @param th  thread
+	 * @return  true si lo es, false en caso contrario
+	 */
+	public static boolean isVirtualThread(Thread th) {
+		
+		try {
+			return THREAD_IS_VIRTUAL != null && (Boolean) THREAD_IS_VIRTUAL.invoke(th);
+		} catch(IllegalAccessException | InvocationTargetException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Parar la ejecucin del programa. Se puede llamar desde cualquier
+	 * thread.
 	 */
 	public void stop() {
 		
 		// Enviar la seal
 		stopped = true;
+		
+		if(running != null)
+			running.stopped = true;
 
 		// Si hay un thread creado, invalidarlo
 		if(executor != null) {
@@ -418,6 +879,8 @@ public class TinyDevLang {
 			// Invalidar el objeto
 			executor = null;
 		}
+		
+		running = null;
 	}
 	
 	/**
@@ -479,7 +942,7 @@ public class TinyDevLang {
 				// nombre del place), y el segundo token ha
 				// de ser el smbolo de 2 puntos ':'
 				if(tokens.get(0).getType() == TinyDevToken.Id.IDENTIFIER
-						&& tokenIsOtherOf(tokens.get(1), TinyDevOperator.Id.COLON)) {
+						&& TinyDevCompiler.tokenIsOtherOf(tokens.get(1), TinyDevOperator.Id.COLON)) {
 					
 					// Tomar el nombre del identificador
 					String name = tokens.get(0).getIdentifier().getName();
@@ -508,1348 +971,3724 @@ public class TinyDevLang {
 	}
 	
 	/**
-	 * Lanza la ejecucin del programa, una vez el cdigo fuente ha sido tokenizado,
-	 * y tratado con el paso previo a la ejecucin.
-	 * 
-	 * Este metodo finaliza, y la ejecucin se realiza mediante un timer.
-	 * 
-	 * La ejecucin finaliza en caso de error, de cierre de la ventana de ejecucin,
-	 * o despus de ejecutar la ltima lnea de cdigo.
+	 * Compilar las lneas de cdigo tokenizado que comienzan por
+	 * una palabra reservada, despus del paso previo a la ejecucin.
 	 * 
-	 *  Si hay errores, los indica en la variable errorId.
+	 * Los errores de sintaxis quedan guardados en cada instruccin, y
+	 * se indican al ejecutarla.
 	 */
-	private void runProgram() {
+	private void compileAll() {
 		
-		// Inicializar globales
-		lineNumber = 0;
-		posNumber = 0;
-		stopped = false;
-		ifTrue = false;
-		doLevel = 0;
-		callLevel = 0;
-		ifBlockLevel = 0;
-		dialogInput = "";
+		// Compilador
+		TinyDevCompiler compiler = new TinyDevCompiler();
 		
-		// Bucle de ejecucin
-		while(!stopped && lineNumber < source_tokens.size() && !io.isClosed()) {
-				
-		  		// Tomar lnea de tokens a ejecutar
-				TinyDevLine line = source_tokens.get(lineNumber);
-
-	  			// Interpretarla, si no est vaca
-	  			if(!line.getTokens().isEmpty()) {
-
-	  				// Si el primer token es una palabra reservada,
-	  				// ejecutar la lnea
-	  				if(line.getTokens().get(0).getType() == TinyDevToken.Id.KEYWORD) {
-	  					
-	  					// Ejecutar la lnea
-	  					command(line);
-	  					
-	  					// Si ha habido un error, abortar la ejecucin
-	  					if(errorId != Error.SUCCESS) {
-		    				stopped = true;
-		    				break;
-	  					}
-	  				}
-	  				
-	  				// En otro caso, ser una declaracin de un place,
-	  				// con lo que no hay que hacer nada
-	  			}
-	  			
-	  			// Siguiente lnea
-	  			++lineNumber;
+		// Recorrer todas las lneas de tokens
+		for(TinyDevLine line : source_tokens) {
+			
+			// Tomar los tokens		
+			ArrayList<TinyDevToken> tokens = line.getTokens();
+			
+			// Compilar la lnea, si es ejecutable
+			if(!tokens.isEmpty() && tokens.get(0).getType() == TinyDevToken.Id.KEYWORD)
+				line.setStatement(compiler.compile(tokens));
 		}
+	}
+	
+	/**
+	 * Enlazar las instrucciones JUMP y CALL con la lnea de su place,
+	 * una vez compiladas las lneas de cdigo, para no tener que
+	 * buscarlo durante la ejecucin.
+	 * 
+	 * Si un place no existe, lo indica en la variable errorId, con el
+	 * n de lnea de la instruccin correspondiente.
+	 */
+	private void bindPlaces() {
 		
-		// FIXME: Si la ejecucin se detiene por haber llegado a
-		//        la ltima lnea de cdigo, se podra comprobar
-		//        si queda algn DO / CALL / IF activo, y
-		//        mostrar un mensaje de error.
+		// Recorrer todas las lneas de cdigo
+		for(int i = 0; i < source_tokens.size(); ++i) {
+			
+			// Recorrer la instruccin, incluidas las de IF / ELSE simples
+			for(TinyDevStatement st = source_tokens.get(i).getStatement(); st != null; st = st.getNext()) {
+				
+				// Slo JUMP y CALL sin errores de compilacin
+				if(st.getError() != Error.SUCCESS
+						|| (st.getCode() != TinyDevKeyword.Id.JUMP && st.getCode() != TinyDevKeyword.Id.CALL))
+					continue;
+				
+				// Buscar el place
+				TinyDevPlace pl = findPlace(st.getIdentifier().getName());
+				
+				// Si no existe, error
+				if(pl == null) {
+					lineNumber = i;
+					errorId = Error.PLACE_NOT_EXISTS;
+					return;
+				}
+				
+				// Tomar la lnea del place
+				st.setTarget(pl.getLine());
+			}
+		}
 	}
 	
 	/**
-	 * Ejecutar una lnea de cdigo tokenizado. En caso de errores,
-	 * fija la variable errorId.
+	 * Enlazar los bloques IF / ELSE / END IF y DO / LOOP, una vez compiladas
+	 * las lneas de cdigo, calculando la lnea destino de cada salto, para
+	 * no tener que buscarla durante la ejecucin.
 	 * 
-	 * Presupone que el primer token es una palabra reservada.
+	 * Si hay bloques sin cerrar, lo indica en la variable errorId, con el
+	 * n de lnea del IF, DO, FOR o SELECT correspondiente.
 	 * 
-	 * @param line  lnea a ejecutar
+	 * Las instrucciones con errores de compilacin no abren ni cierran
+	 * bloques: su error se indica al ejecutarlas, en su propia lnea.
+	 * 
+	 * Los bloques SELECT han de estar bien anidados con los dems: los IF y
+	 * bucles abiertos dentro de un SELECT se han de cerrar antes de su
+	 * siguiente CASE o END SELECT, y los abiertos antes que l no se pueden
+	 * continuar ni cerrar dentro de l.
 	 */
-	private void command(TinyDevLine line) {
+	private void matchBlocks() {
 		
-		// Tomar los tokens de la lnea
-		ArrayList<TinyDevToken> tokens = line.getTokens();
+		// Bloques IF abiertos: instrucciones pendientes de la lnea del
+		// siguiente ELSE o END IF, y ELSE pendientes de la lnea del END IF
+		ArrayList<ArrayList<TinyDevStatement>> ifClauses = new ArrayList<ArrayList<TinyDevStatement>>();
+		ArrayList<ArrayList<TinyDevStatement>> ifElses = new ArrayList<ArrayList<TinyDevStatement>>();
+		ArrayList<Integer> ifLines = new ArrayList<Integer>();
 		
-		// Tomar la 1 palabra reservada (1er token)
-		TinyDevKeyword.Id cmd = line.getTokens().get(0).getKeyword().getCode();
+		// Bucles DO y FOR abiertos: DO, FOR y BREAK pendientes de la lnea
+		// del LOOP o NEXT
+		ArrayList<ArrayList<TinyDevStatement>> doExits = new ArrayList<ArrayList<TinyDevStatement>>();
+		ArrayList<Integer> doLines = new ArrayList<Integer>();
 		
-		// Inicializar globales
-		exprTokens = tokens;
-		exprIndex = 1;
-	
-		// Ejecutar la instruccin correspondiente (la lista
-		// est en orden alfabtico)
-		switch(cmd) {
+		// Bloques SELECT abiertos, con el n de bloques IF y bucles abiertos
+		// antes de cada uno
+		ArrayList<TinyDevSelect> selects = new ArrayList<TinyDevSelect>();
+		ArrayList<Integer> selectLines = new ArrayList<Integer>();
+		ArrayList<Integer> selectIfDepths = new ArrayList<Integer>();
+		ArrayList<Integer> selectDoDepths = new ArrayList<Integer>();
 		
-			case BREAK :
-				doBreak();
-				break;
-			case CALL :
-				doCall();
-				break;
-			case CLEAR :
-				doClear();
-				break;
-			case CURSOR :
-				doCursor();
-				break;
-			case DIALOG :
-				doDialog();
-				break;
-			case DO :
-				doDo();
-				break;
-			case ELLIPSE :
-				doEllipse();
-				break;				
-			case ELSE :
-				doElse();
-				break;
-			case END :
-				doEnd();
-				break;
-			case FONT :
-				doFont();
-				break;
-			case IF :
-				doIf();
-				break;
-			case IMAGE :
-				doImage();
-				break;				
-			case JUMP :
-				doJump();
-				break;
-			case LINE :
-				doLine();
-				break;				
-			case LOOP :
-				doLoop();
-				break;
-			case PAPER :
-				doPaper();
-				break;
-			case PEN :
-				doPen();
-				break;
-			case POINT :
-				doPoint();
-				break;				
-			case PRINT :
-				doPrint();
-				break;
-			case RANDOM :
-				doRandom();
-				break;
-			case RECTANGLE :
-				doRectangle();
-				break;				
-			case RETURN :
-				doReturn();
-				break;
-			case SCREEN :
-				doScreen();
-				break;
-			case SET :
-				doSet();
-				break;
-			case SOUND :
-				doSound();
-				break;
-			case VARIABLE :
-				doVariable();
-				break;
-			case WAIT :
-				doWait();
-				break;
-			case WRITEFILE :
-				doWriteFile();
-				break;
-			case WRITEIMAGE :
-				doWriteImage();
-				break;
+		// Recorrer todas las lneas de cdigo
+		for(int i = 0; i < source_tokens.size(); ++i) {
+			
+			// Tomar la instruccin, si la hay, y no tiene errores
+			TinyDevStatement st = source_tokens.get(i).getStatement();
+			
+			if(st == null || st.getCode() == null || st.getError() != Error.SUCCESS)
+				continue;
+			
+			// Los BREAK, incluidos los de IF / ELSE simples, salen del bucle actual
+			if(!doExits.isEmpty()) {
+				for(TinyDevStatement br = st; br != null; br = br.getNext()) {
+					if(br.getCode() == TinyDevKeyword.Id.BREAK && br.getError() == Error.SUCCESS)
+						doExits.get(doExits.size() - 1).add(br);
+				}
+			}
+			
+			// N de bloques IF y bucles abiertos antes del SELECT actual, si lo hay
+			int ifDepth = (selects.isEmpty() ? 0 : selectIfDepths.get(selectIfDepths.size() - 1));
+			int doDepth = (selects.isEmpty() ? 0 : selectDoDepths.get(selectDoDepths.size() - 1));
+			
+			// CASE, END SELECT: los IF y bucles abiertos dentro del SELECT
+			// actual han de estar cerrados; si no, error en el ms interno
+			if(!selects.isEmpty() && (st.getCode() == TinyDevKeyword.Id.CASE
+					|| (st.getCode() == TinyDevKeyword.Id.END && st.getOption() == TinyDevKeyword.Id.SELECT))) {
 				
-			// Instruccin no ejecutable (funcin), o no reconocida
-			default :
+				int ifLine = (ifClauses.size() > ifDepth ? ifLines.get(ifLines.size() - 1) : -1);
+				int doLine = (doExits.size() > doDepth ? doLines.get(doLines.size() - 1) : -1);
 				
-				// Indicar error
-				syntaxError();
-				break;
+				if(ifLine > doLine) {
+					lineNumber = ifLine;
+					errorId = Error.MISSING_END_IF;
+					return;
+				}
+				
+				if(doLine >= 0) {
+					lineNumber = doLine;
+					errorId = missingLoop(doExits);
+					return;
+				}
+			}
+			
+			switch(st.getCode()) {
+			
+				// IF de bloque: abrir un nuevo bloque
+				case IF :
+					if(st.getNext() == null) {
+						ifClauses.add(new ArrayList<TinyDevStatement>());
+						ifElses.add(new ArrayList<TinyDevStatement>());
+						ifLines.add(i);
+						ifClauses.get(ifClauses.size() - 1).add(st);
+					}
+					break;
+					
+				// ELSE: finaliza la parte anterior del bloque
+				case ELSE :
+					
+					// ELSE IF de bloque
+					boolean elseIf = st.getNext() != null
+							&& st.getNext().getError() == Error.SUCCESS
+							&& st.getNext().getCode() == TinyDevKeyword.Id.IF
+							&& st.getNext().getNext() == null;
+					
+					// El ELSE de bloque no puede continuar un IF abierto
+					// antes del SELECT actual
+					if((st.getNext() == null || elseIf) && !ifClauses.isEmpty() && ifClauses.size() <= ifDepth) {
+						lineNumber = selectLines.get(selectLines.size() - 1);
+						errorId = Error.MISSING_END_SELECT;
+						return;
+					}
+					
+					if(ifClauses.isEmpty()) {
+						
+						// ELSE simple; si es un ELSE IF de bloque, abre un nuevo bloque
+						if(elseIf) {
+							ifClauses.add(new ArrayList<TinyDevStatement>());
+							ifElses.add(new ArrayList<TinyDevStatement>());
+							ifLines.add(i);
+							ifClauses.get(ifClauses.size() - 1).add(st.getNext());
+						}
+						break;
+					}
+					
+					// Las partes anteriores continan en esta lnea
+					ArrayList<TinyDevStatement> clauses = ifClauses.get(ifClauses.size() - 1);
+					
+					for(TinyDevStatement cl : clauses)
+						cl.setTarget(i);
+					
+					clauses.clear();
+					
+					// El ELSE contina en el END IF
+					ifElses.get(ifElses.size() - 1).add(st);
+					
+					// El IF de un ELSE IF de bloque contina en la siguiente parte
+					if(elseIf)
+						clauses.add(st.getNext());
+					break;
+					
+				// SELECT: abrir un nuevo bloque
+				case SELECT :
+					selects.add(new TinyDevSelect(st));
+					selectLines.add(i);
+					selectIfDepths.add(ifClauses.size());
+					selectDoDepths.add(doExits.size());
+					st.setSelect(selects.get(selects.size() - 1));
+					break;
+					
+				// CASE: caso del bloque SELECT actual
+				case CASE :
+					if(!selects.isEmpty()) {
+						
+						TinyDevSelect sel = selects.get(selects.size() - 1);
+						
+						if(st.getOption() == TinyDevKeyword.Id.ELSE) {
+							if(sel.getElseLine() < 0)
+								sel.setElseLine(i);
+						}
+						else
+							sel.addCase(st, i);
+						
+						st.setSelect(sel);
+					}
+					break;
+					
+				// END IF, END SELECT: cerrar el bloque actual
+				case END :
+					
+					// END SELECT: cerrar el bloque SELECT actual
+					if(st.getOption() == TinyDevKeyword.Id.SELECT && !selects.isEmpty()) {
+						
+						TinyDevSelect sel = selects.remove(selects.size() - 1);
+						
+						sel.setEndLine(i);
+						st.setSelect(sel);
+						selectLines.remove(selectLines.size() - 1);
+						selectIfDepths.remove(selectIfDepths.size() - 1);
+						selectDoDepths.remove(selectDoDepths.size() - 1);
+					}
+					
+					// END IF: cerrar el bloque IF actual; no puede cerrar uno
+					// abierto antes del SELECT actual
+					if(st.getOption() == TinyDevKeyword.Id.IF && !ifClauses.isEmpty()) {
+						
+						if(ifClauses.size() <= ifDepth) {
+							lineNumber = selectLines.get(selectLines.size() - 1);
+							errorId = Error.MISSING_END_SELECT;
+							return;
+						}
+						
+						for(TinyDevStatement cl : ifClauses.remove(ifClauses.size() - 1))
+							cl.setTarget(i);
+						
+						for(TinyDevStatement el : ifElses.remove(ifElses.size() - 1))
+							el.setTarget(i);
+						
+						ifLines.remove(ifLines.size() - 1);
+					}
+					break;
+					
+				// DO, FOR: abrir un nuevo bucle
+				case DO :
+				case FOR :
+					doExits.add(new ArrayList<TinyDevStatement>());
+					doLines.add(i);
+					doExits.get(doExits.size() - 1).add(st);
+					break;
+					
+				// LOOP, NEXT: cerrar el bucle actual; si no es del mismo
+				// tipo, lo indicar el intrprete; no pueden cerrar uno
+				// abierto antes del SELECT actual
+				case LOOP :
+				case NEXT :
+					if(!doExits.isEmpty()) {
+						
+						if(doExits.size() <= doDepth) {
+							lineNumber = selectLines.get(selectLines.size() - 1);
+							errorId = Error.MISSING_END_SELECT;
+							return;
+						}
+						
+						for(TinyDevStatement ex : doExits.remove(doExits.size() - 1))
+							ex.setTarget(i);
+						
+						doLines.remove(doLines.size() - 1);
+					}
+					break;
+					
+				default :
+					break;
+			}
 		}
-	}
-	
-	/**
-	 * Buscar una palabra reservada.
-	 * 
-	 * @param name  palabra reservada
-	 * @return  palabra reservada, o null en caso de no encontrarla
-	 */
-	private TinyDevKeyword findKeyword(String name) {
 		
-		// Recorrer la lista de palabras reservadas
-		for(TinyDevKeyword kw : keywords) {
+		// Comprobar si hay bucles sin cerrar
+		if(!doLines.isEmpty()) {
 			
-			// Comparar, ignorando maysculas / minsculas
-			if(kw.getName().equalsIgnoreCase(name)) {
-				
-				// Encontrada
-				return kw;
-			}
+			lineNumber = doLines.get(doLines.size() - 1);
+			errorId = missingLoop(doExits);
+			return;
 		}
 		
-		// No ha sido encontrada
-		return null;
+		// Comprobar si hay bloques SELECT sin cerrar
+		if(!selectLines.isEmpty()) {
+			
+			lineNumber = selectLines.get(selectLines.size() - 1);
+			errorId = Error.MISSING_END_SELECT;
+			return;
+		}
+		
+		// Comprobar si hay bloques IF sin cerrar
+		if(!ifLines.isEmpty()) {
+			
+			lineNumber = ifLines.get(ifLines.size() - 1);
+			errorId = Error.MISSING_END_IF;
+		}
 	}
 	
 	/**
-	 * Buscar un operador de otros, al inicio de una cadena de texto.
+	 * Helper para matchBlocks: Devolver el error del bucle abierto ms
+	 * interno, segn sea un FOR o un DO.
 	 * 
-	 * @param str  cadena de texto
-	 * @return  operador, o null si no lo ha encontrdo
+	 * @param doExits  bucles abiertos: su DO o FOR, y sus BREAK
+	 * @return  cdigo de error
 	 */
-	private TinyDevOperator findOther(String str) {
-		
-		// Recorrer la lista de otros operadores
-		for(TinyDevOperator ot : operators) {
-			
-			// Comparar con el inicio de la cadena de texto
-			if(str.startsWith(ot.getName())) {
-				
-				// Encontrado
-				return ot;
-			}
-		}
+	private static Error missingLoop(ArrayList<ArrayList<TinyDevStatement>> doExits) {
 		
-		// No ha sido encontrado
-		return null;
+		return doExits.get(doExits.size() - 1).get(0).getCode() == TinyDevKeyword.Id.FOR ? Error.MISSING_NEXT : Error.MISSING_LOOP;
 	}
 	
 	/**
-	 * Buscar variable.
-	 * 
-	 * @param name  nombre de la variable
-	 * @return  variable, o null si no ha sido encontrada
+	 * Construir las tablas de saltos de los bloques SELECT, una vez
+	 * optimizado el programa, que puede haber convertido en constantes
+	 * algunos valores de sus CASE (ver TinyDevSelect).
 	 */
-	private TinyDevVariable findVariable(String name) {
+	private void buildSelects() {
 		
-		// Recorrer la lista de variables
-		for(TinyDevVariable vr : variables) {
+		for(TinyDevLine line : source_tokens) {
 			
-			// Comparar, ignorando maysculas / minsculas
-			if(vr.getName().equalsIgnoreCase(name)) {
-				
-				// Encontrada
-				return vr;
-			}
+			TinyDevStatement st = line.getStatement();
+			
+			if(st != null && st.getCode() == TinyDevKeyword.Id.SELECT && st.getSelect() != null)
+				st.getSelect().buildTable();
 		}
-		
-		// No ha sido encontrada
-		return null;
 	}
 	
 	/**
-	 * Buscar un place.
+	 * Comprobar los tipos de las expresiones del programa, antes de
+	 * ejecutarlo.
 	 * 
-	 * @param name  nombre del place
-	 * @return  place, o null si no ha sido encontrado
+	 * Las variables no cambian de tipo una vez creadas, as que el de cada
+	 * identificador se toma de sus instrucciones VARIABLE, si todas indican
+	 * el mismo. A partir de l, se calcula el tipo de cada nodo de las
+	 * expresiones, que queda marcado en el nodo (ver TinyDevExpr), para
+	 * que el intrprete no lo tenga que comprobar al ejecutarlo.
+	 * 
+	 * Las operaciones, argumentos y asignaciones con tipos errneos, que
+	 * fallaran siempre al ejecutarse, se indican como error, con el mismo
+	 * cdigo que dara el intrprete. Las que dependen de variables de tipo
+	 * desconocido, o que van detrs de clculos que pueden fallar antes
+	 * (ndices de arrays, divisiones, etc.), se comprueban al ejecutarlas.
+	 * Las variables declaradas se consideran creadas.
+	 * 
+	 * Si hay errores, los indica en la variable errorId.
 	 */
-	private TinyDevPlace findPlace(String name) {
+	private void checkTypes() {
 		
-		// Recorrer la lista de places
-		for(TinyDevPlace pl : places) {
+		// Tipos de las variables, segn sus declaraciones
+		varTypes = new DataType[variables.length];
+		varSubTypes = new DataType[variables.length];
+		
+		boolean[] conflicts = new boolean[variables.length];
+		
+		for(TinyDevLine line : source_tokens) {
 			
-			// Comparar, ignorando maysculas / minsculas
-			if(pl.getName().equalsIgnoreCase(name)) {
+			for(TinyDevStatement st = line.getStatement(); st != null; st = st.getNext()) {
 				
-				// Encontrado
-				return pl;
+				if(st.getCode() != TinyDevKeyword.Id.VARIABLE || st.getError() != Error.SUCCESS)
+					continue;
+				
+				// Tipo de la declaracin
+				DataType type = optionType(st.getOption());
+				DataType subType = null;
+				
+				if(st.getIndex() != null) {
+					subType = type;
+					type = DataType.ARRAY;
+				}
+				
+				// Si no coincide con el de otra declaracin, el tipo se desconoce
+				int slot = st.getIdentifier().getSlot();
+				
+				if(conflicts[slot])
+					continue;
+				
+				if(type == null || (varTypes[slot] != null && (varTypes[slot] != type || varSubTypes[slot] != subType))) {
+					conflicts[slot] = true;
+					varTypes[slot] = null;
+					varSubTypes[slot] = null;
+				}
+				else {
+					varTypes[slot] = type;
+					varSubTypes[slot] = subType;
+				}
 			}
 		}
 		
-		// No encontrado
-		return null;
-	}
-
-	/**
-	 * Buscar un identificador.
-	 * 
-	 * @param name  nombre del identificador
-	 * @return  identificador, o null si no ha sido encontrado
-	 */
-	private TinyDevIdentifier findIdentifier(String name) {
-		
-		// Recorrer la lista de identificadores
-		for(TinyDevIdentifier id : identifiers) {
+		// Comprobar las instrucciones, incluidas las de los IF / ELSE simples
+		for(int i = 0; i < source_tokens.size() && errorId == Error.SUCCESS; ++i) {
 			
-			// Comparar, ignorando maysculas / minsculas
-			if(id.getName().equalsIgnoreCase(name)) {
+			for(TinyDevStatement st = source_tokens.get(i).getStatement(); st != null; st = st.getNext()) {
 				
-				// Encontrado
-				return id;
+				// Las instrucciones con errores de compilacin los indican al ejecutarse
+				if(st.getCode() == null || st.getError() != Error.SUCCESS)
+					break;
+				
+				typeUncertain = false;
+				
+				if(checkStatement(st)) {
+					lineNumber = i;
+					break;
+				}
 			}
 		}
 		
-		// No ha sido encontrado
-		return null;
+		varTypes = null;
+		varSubTypes = null;
 	}
 	
 	/**
-	 * Tokenizar todo el cdigo fuente. En caso de error, se
-	 * indicar en la variable errorId.
+	 * Helper para checkTypes: Tipo de dato de una instruccin VARIABLE.
 	 * 
-	 * @param source  cdigo fuente
-	 * @return  lneas tokenizadas, o null en caso de error
+	 * @param option  tipo indicado en la instruccin
+	 * @return  tipo de dato, o null si no es vlido
 	 */
-	public ArrayList<TinyDevLine> tokenizeAll(ArrayList<String> source) {
+	private DataType optionType(TinyDevKeyword.Id option) {
 		
-		// Crear un ArrayList de lneas de cdigo tokenizado
-		ArrayList<TinyDevLine> lines = new ArrayList<TinyDevLine>();
+		if(option == TinyDevKeyword.Id.NUMBER)
+			return DataType.NUMBER;
 		
-		// Crear un ArrayList de tokens
-		ArrayList<TinyDevToken> tokens;
+		if(option == TinyDevKeyword.Id.STRING)
+			return DataType.STRING;
 		
-		// Inicializar globales
-		lineNumber = 0;
+		if(option == TinyDevKeyword.Id.IMAGE)
+			return DataType.IMAGE;
 		
-		// Recorrer todas las lneas de cdigo fuente
-		for(String sourceLine : source) {
-			
-			// Tokenizar la lnea
-			if((tokens = tokenize(sourceLine)) == null) {
-				
-				// Hubo un error, abortar
-				return null;
-			}
-
-			// Aadir la lnea tokenizada al ArrayList
-			lines.add(new TinyDevLine(lineNumber++, tokens));
-		}
-
-		// Devolver las lneas tokenizadas
-		return lines;
+		if(option == TinyDevKeyword.Id.SOUND)
+			return DataType.SOUND;
+		
+		return null;
 	}
 	
 	/**
-	 * Tokenizar una lnea de cdigo fuente. Si hay errores,
-	 * se indicarn en la variable errorId.
+	 * Helper para checkTypes: Comprobar los tipos de una instruccin,
+	 * segn los que esperan sus handlers.
 	 * 
-	 * @param line  lnea de cdigo fuente
-	 * @return  tokens, o null en caso de error
+	 * @param st  instruccin
+	 * @return  true en caso de error, false en caso contrario
 	 */
-	public ArrayList<TinyDevToken> tokenize(String line) {
-		
-		// Crear un ArrayList de tokens
-		ArrayList<TinyDevToken> result = new ArrayList<TinyDevToken>();
+	private boolean checkStatement(TinyDevStatement st) {
 		
-		// Tomar longitud de la lnea de cdigo fuente
-		int length = line.length();
-		
-		// Inicializar la posicin (ndice) en la lnea
-		posNumber = 0;
+		switch(st.getCode()) {
 		
-		// Recorrer los caracteres de la lnea
-		while(posNumber < length) {
-			
-			// Ignorar espacios
-			while(Character.isWhitespace(line.charAt(posNumber))) {
+			case PRINT :
+			case PEN :
+			case PAPER :
+			case DIALOG :
+			case WRITEFILE :
+				return checkArg(st.getArg(0), DataType.STRING);
 				
-				// Descartar el espacio, y finalizar si se ha
-				// llegado al final de la lnea
-				if(++posNumber == length)
-					break;
-			}
+			case CURSOR :
+			case SCREEN :
+			case POINT :
+				return checkArg(st.getArg(0), DataType.NUMBER) || checkArg(st.getArg(1), DataType.NUMBER);
 				
-			// Finalizar si se ha llegado al final de la lnea			
-			if(posNumber == length)
-				break;
-			
-			// Comprobar si es un nmero positivo, sin signo
-			if(Character.isDigit(line.charAt(posNumber))) {
+			case ELLIPSE :
+			case RECTANGLE :
+			case LINE :
+				for(int i = 0; i < 4; ++i) {
+					if(checkArg(st.getArg(i), DataType.NUMBER))
+						return true;
+				}
+				return false;
+				
+			case RANDOM :
+			case WAIT :
+				return checkArg(st.getArg(0), DataType.NUMBER);
 				
-				// Tomar el nmero
-				String number = getNumber(line, posNumber);
+			case IMAGE :
+				return checkArg(st.getArg(0), DataType.NUMBER) || checkArg(st.getArg(1), DataType.NUMBER) || checkArg(st.getArg(2), DataType.IMAGE);
 				
-				// Incrementar la posicin
-				posNumber += number.length();
+			case SOUND :
+				return checkArg(st.getArg(0), DataType.SOUND);
 				
-				// Aadir el token				
-				result.add(new TinyDevToken(TinyDevToken.Id.NUMBER, stringToInt(number)));
+			case WRITEIMAGE :
+				return checkArg(st.getArg(0), DataType.STRING) || checkArg(st.getArg(1), DataType.IMAGE);
 				
-				// Continuar
-				continue;
-			}
-			
-			// Comprobar si es un identificador
-			if(Character.isLetter(line.charAt(posNumber)) || line.charAt(posNumber) == '$' || line.charAt(posNumber) == '_') {
+			case IF :
+			case DO :
+			case LOOP :
+				return st.getArgCount() > 0 && checkArg(st.getArg(0), DataType.BOOLEAN);
 				
-				// Tomar el identificador
-				String word = getIdentifier(line, posNumber);
+			case SELECT :
 				
-				// Incrementar la posicin
-				posNumber += word.length();
+				// Slo se pueden comparar nmeros y cadenas
+				if(checkExpr(st.getArg(0)))
+					return true;
 				
-				// Comprobar si es una palabra reservada
-				TinyDevKeyword kw = findKeyword(word);
+				DataType subject = st.getArg(0).getDataType();
 				
-				if(kw != null) {
-					
-					// S: aadir el token
-					result.add(new TinyDevToken(TinyDevToken.Id.KEYWORD, kw));
-				}
-				else {
-					
-					// No: identificador desconocido, puede ser una variable
-					//     o un place, pero en este momento no se puede
-					//     determinar.
-					//
-					//     Crear y aadir el identificador, si no existe ya.
+				if(subject != null && subject != DataType.NUMBER && subject != DataType.STRING)
+					return typeError(Error.BAD_DATA_TYPE);
+				
+				return false;
+				
+			case CASE :
+				
+				// Los valores han de ser del tipo del SELECT, si se conoce
+				DataType expected = (st.getSelect() != null ? st.getSelect().getSelect().getArg(0).getDataType() : null);
+				
+				for(int i = 0; i < st.getArgCount(); ++i) {
 					
-					// Buscar el identificador
-					TinyDevIdentifier id = findIdentifier(word);
+					if(checkExpr(st.getArg(i)))
+						return true;
 					
-					// Comprobar si existe
-					if(id == null) {
-						
-						// No existe: crearlo, y aadirlo
-						id = new TinyDevIdentifier(word);
-						identifiers.add(id);
-					}
+					DataType type = st.getArg(i).getDataType();
 					
-					// Aadir el token
-					result.add(new TinyDevToken(TinyDevToken.Id.IDENTIFIER, id));
+					if(type != null && ((expected != null && type != expected) || (type != DataType.NUMBER && type != DataType.STRING)))
+						return typeError(Error.BAD_DATA_TYPE);
 				}
+				return false;
 				
-				// Continuar
-				continue;
-			}
-			
-			// Comprobar si es una cadena de texto entrecomillada
-			if(line.charAt(posNumber) == '"') {
+			case FOR :
+				
+				// La variable contador ha de ser numrica; si no se conoce
+				// su tipo, puede no existir
+				int counter = st.getIdentifier().getSlot();
+				
+				if(varTypes[counter] == null)
+					typeUncertain = true;
+				else if(varTypes[counter] != DataType.NUMBER)
+					return typeError(Error.BAD_DATA_TYPE);
+				
+				// Inicio, final e incremento
+				for(int i = 0; i < st.getArgCount(); ++i) {
+					
+					if(checkArg(st.getArg(i), DataType.NUMBER))
+						return true;
+				}
+				return false;
 				
-				// Tomar la cadena de texto
-				String str = getString(line, posNumber);
+			case FONT :
 				
-				// Si no hubo errores, proceder
-				if(str != null) {
+				// Nombres y tamaos de la fuente
+				for(int i = 0; i < st.getArgCount(); ++i) {
 					
-					// Actualizar la posicin
-					posNumber += str.length() + 2;
+					if(checkExpr(st.getArg(i)))
+						return true;
 					
-					// Aadir el token
-					result.add(new TinyDevToken(TinyDevToken.Id.STRING, str));
+					DataType type = st.getArg(i).getDataType();
 					
-					// Continuar
-					continue;
+					if(type != null && type != DataType.STRING && type != DataType.NUMBER)
+						return typeError(Error.BAD_ARGUMENT);
 				}
+				return false;
 				
-				// Cadena de texto mal formada, sealar el error y abortar
-				errorId = Error.MISSING_QUOTE;
-				posNumber = line.length();
+			case VARIABLE :
 				
-				return null;
-			}
-			
-			// Crear una subcadena, para bsqueda de operadores			
-			String prefix = line.substring(posNumber);
-			
-			// NOTA: Las comprobaciones, se han de hacer en el orden
-			//       correcto (ver las anotaciones en las definiciones de los
-			//       cdigos de los distintos operadores).
-			
-			// Comprobar si es un operador	
-			TinyDevOperator ot = findOther(prefix);
-			
-			// Encontrado
-			if(ot != null) {
+				// Tamao del array, y valor inicial
+				if(st.getIndex() != null && checkArg(st.getIndex(), DataType.NUMBER))
+					return true;
 				
-				// Si es un comentario, se ignora, junto con el resto de la lnea
-				if(ot.getType() == TinyDevOperator.Id.COMMENT)
-					break;
+				if(st.getArgCount() > 0)
+					return checkArg(st.getArg(0), st.getIndex() != null ? DataType.ARRAY : optionType(st.getOption()));
 				
-				// La coma es opcional, y sirve para separar argumentos,
-				// adems de los espacios
-
-				// Aadir el token, si no es la coma
-				// if(ot.getType() != KmOperator.Id.COMMA)
-				result.add(new TinyDevToken(TinyDevToken.Id.OPERATOR, ot));
+				return false;
 				
-				// Actualizar la posicin
-				posNumber += ot.getName().length();
+			case SET :
 				
-				// Continuar
-				continue;
-			}
-			
-			// Tipo de token desconocido, sealar el error y abortar
-			errorId = Error.BAD_ARGUMENT;
-			
-			return null;
+				// Tipo de la variable; si no se conoce, puede no existir
+				int slot = st.getIdentifier().getSlot();
+				
+				if(varTypes[slot] == null)
+					typeUncertain = true;
+				
+				// ndice del array
+				if(st.getIndex() != null) {
+					
+					if(checkArg(st.getIndex(), DataType.NUMBER))
+						return true;
+					
+					if(varTypes[slot] != null && varTypes[slot] != DataType.ARRAY)
+						return typeError(Error.BAD_DATA_TYPE);
+					
+					// El ndice puede estar fuera de rango
+					typeUncertain = true;
+				}
+				
+				// Valor, segn el tipo de la variable o de los elementos del array
+				return checkArg(st.getArg(0), st.getIndex() != null ? varSubTypes[slot] : varTypes[slot]);
+				
+			default :
+				
+				// Calcular los tipos de sus expresiones, si las tiene
+				for(int i = 0; i < st.getArgCount(); ++i) {
+					
+					if(checkExpr(st.getArg(i)))
+						return true;
+				}
+				return false;
 		}
-		
-		// Devolver resultado de la tokenizacin
-		return result;
 	}
 	
 	/**
-	 * Tomar un identificador. Asume que el 1er carcter es vlido.
+	 * Helper para checkTypes: Comprobar una expresin de la que se espera
+	 * un tipo, como hacen exprNumber(), exprString(), etc.
 	 * 
-	 * @param line   lnea de cdigo fuente
-	 * @param index  posicin ndice en la lnea
-	 * @return  identificador
+	 * @param e         expresin
+	 * @param expected  tipo esperado, o null si se desconoce
+	 * @return  true en caso de error, false en caso contrario
 	 */
-	private String getIdentifier(String line, int index) {
+	private boolean checkArg(TinyDevExpr e, DataType expected) {
 		
-		String id = new String();     // Identificador
-		int length = line.length();   // Longitud de la lnea
-		char ch = line.charAt(index); // 1er carcter
+		// Calcular su tipo
+		if(checkExpr(e))
+			return true;
 		
-		// Recorrer la lnea, mientras los caracteres sean
-		// vlidos
-		do {
-			
-			// Aadir caracter al identificador
-			id = id + ch;
-			
-			// Terminar, si se lleg al final de la lnea
-			if(++index == length)
-				break;
-			
-			// Tomar siguiente caracter
-			ch = line.charAt(index);
-			
-		} while(Character.isLetter(ch) || Character.isDigit(ch) || ch == '_' || ch == '$');
+		DataType type = e.getDataType();
+		
+		// Si se conocen ambos, han de coincidir; las imgenes y sonidos
+		// tambin se pueden indicar con el nombre del fichero
+		if(type == null || expected == null || type == expected)
+			return false;
+		
+		if(type == DataType.STRING && (expected == DataType.IMAGE || expected == DataType.SOUND))
+			return false;
 		
-		// Devolver identificador
-		return id;
+		return typeError(Error.BAD_DATA_TYPE);
 	}
 	
 	/**
-	 * Tomar un nmero. Asume que el 1er carcter es vlido.
+	 * Helper para checkTypes: Indicar un error de tipos, salvo que el
+	 * clculo pueda haber fallado antes al ejecutarse; en ese caso, lo
+	 * indicar el intrprete.
 	 * 
-	 * @param line   lnea de cdigo fuente
-	 * @param index  posicin en la lnea
-	 * @return  nmero
+	 * @param id  cdigo de error
+	 * @return  true si se ha indicado el error, false en caso contrario
 	 */
-	private String getNumber(String line, int index) {
+	private boolean typeError(Error id) {
 		
-		String number = new String();  // Nmero
-		int length = line.length();    // Longitud de la lnea
-		
-		// Recorrer la lnea, mientras los caracteres sean
-		// vlidos
-		do {
-			
-			// Aadir caracter al nmero
-			number += line.charAt(index);
-			
-			// Terminar, si se lleg al final de la lnea
-			if(++index == length)
-				break;
-
-		} while(Character.isDigit(line.charAt(index)));
+		if(typeUncertain)
+			return false;
 		
-		// Devolver nmero
-		return number;
+		errorId = id;
+		return true;
 	}
 	
 	/**
-	 * Tomar una cadena de texto entrecomillada. Asume que el 1er carcter es
-	 * la doble comilla.
+	 * Helper para checkTypes: Calcular el tipo de los nodos de una
+	 * expresin, y marcarlo en ellos.
+	 * 
+	 * El tipo de un nodo es el de su resultado cuando se calcula sin
+	 * errores, o null si no se conoce antes de la ejecucin. Los arrays
+	 * completos se tratan como de tipo desconocido.
 	 * 
-	 * @param line   lnea de cdigo fuente
-	 * @param index  posicin en la lnea
-	 * @return  cadena de texto sin las comillas
+	 * @param e  nodo
+	 * @return  true en caso de error, false en caso contrario
 	 */
-	private String getString(String line, int index) {
+	private boolean checkExpr(TinyDevExpr e) {
 		
-		String str = new String();   // Cadena de texto
-		int length = line.length();  // Longitud de la lnea
+		// Tipo del resultado
+		DataType type = null;
 		
-		// Saltar las comillas de comienzo
-		++index;
+		switch(e.getType()) {
 		
-		// Recorrer la lnea
-		while(index < length) {
-			
-			// Tomar caracter
-			char ch = line.charAt(index++);
-			
-			// Si es un caracter de comillas, finalizar
-			if(ch == '"') {
+			case NUMBER :
+				type = DataType.NUMBER;
+				break;
 				
-				return str;
-			}
-			
-			// Aadir el caracter a la cadena de texto
-			str = str + ch;
+			case STRING :
+				type = DataType.STRING;
+				break;
+				
+			case VARIABLE :
+				
+				// Tipo de sus declaraciones, salvo que sea un array; si no
+				// se conoce, puede no existir
+				int var = e.getIdentifier().getSlot();
+				
+				if(varTypes[var] == null)
+					typeUncertain = true;
+				else if(varTypes[var] != DataType.ARRAY)
+					type = varTypes[var];
+				break;
+				
+			case ELEMENT :
+				
+				// Ha de ser un array, con ndice numrico
+				int arr = e.getIdentifier().getSlot();
+				
+				if(varTypes[arr] == null)
+					typeUncertain = true;
+				else if(varTypes[arr] != DataType.ARRAY)
+					return typeError(Error.BAD_DATA_TYPE);
+				
+				if(checkArg(e.getArg(0), DataType.NUMBER))
+					return true;
+				
+				// El ndice puede estar fuera de rango
+				typeUncertain = true;
+				type = varSubTypes[arr];
+				break;
+				
+			case NEGATIVE :
+				
+				// Ha de ser numrico
+				if(checkExpr(e.getArg(0)))
+					return true;
+				
+				if(!checkOperand(e.getArg(0).getDataType(), DataType.NUMBER, null))
+					return typeError(Error.BAD_EXPRESSION);
+				
+				type = DataType.NUMBER;
+				break;
+				
+			case OPERATOR :
+				
+				// Comprueba sus operandos, y marca su tipo
+				return checkExpr(e.getArg(0)) || checkExpr(e.getArg(1)) || checkOperator(e);
+				
+			case FUNCTION :
+				
+				if(checkFunction(e))
+					return true;
+				
+				// Si no se conoce el tipo de su resultado, o puede dar
+				// error, los clculos siguientes se comprueban al ejecutarlos
+				type = functionType(e.getFunction());
+				
+				if(type == null || functionFails(e.getFunction()))
+					typeUncertain = true;
+				break;
+				
+			default :
+				break;
 		}
-
-		// No se encontraron las comillas del final,
-		// devolver error
-		return null;
+		
+		// Marcar el tipo en el nodo
+		e.setDataType(type);
+		
+		return false;
 	}
 	
-	// -------------------------
-	// I N S T R U C C I O N E S
-	// -------------------------
-	
-	// NOTA: Todos los mtodos que corresponden a instrucciones,
-	//       indican en la variable errorId los posibles errores.
-	
 	/**
-	 * Instruccin - Imprimir expresin textual:
+	 * Helper para checkTypes: Comprobar los tipos de los operandos de una
+	 * operacin, ya calculados, y marcar el de su resultado.
 	 * 
-	 * PRINT {LEFT | CENTER | RIGHT} expresin_textual
+	 * En caso de error, lo indica en errorId con BAD_EXPRESSION, igual que
+	 * el intrprete cuando falla una operacin.
+	 * 
+	 * @param e  nodo de la operacin
+	 * @return  true en caso de error, false en caso contrario
 	 */
-	private void doPrint() {
+	private boolean checkOperator(TinyDevExpr e) {
 		
-		// Necesita argumento
-		if(needArg())
-			return;
+		DataType left = e.getArg(0).getDataType();
+		DataType right = e.getArg(1).getDataType();
 		
-		// Comprobar si el 1er argumento es la alineacin
-		TinyDevToken tk = exprTokens.get(1);
+		// Si no se conoce el tipo de algn operando, la operacin puede
+		// fallar al ejecutarse; igual en las divisiones, por cero
+		boolean uncertain = typeUncertain;
 		
-		// Alineacin
-		int align = 0;
-
-		if(tokenIsCommandOf(tk, TinyDevKeyword.Id.LEFT)) {
-			align = 0;
-			++exprIndex;
-		} else if(tokenIsCommandOf(tk, TinyDevKeyword.Id.CENTER)) {
-			align = 1;
-			++exprIndex;
-		} else if (tokenIsCommandOf(tk, TinyDevKeyword.Id.RIGHT)) {
-			align = 2;
-			++exprIndex;
-		}
+		if(left == null || right == null || e.getOperator() == TinyDevOperator.Id.DIVIDE || e.getOperator() == TinyDevOperator.Id.MODULUS)
+			typeUncertain = true;
 		
-		// Necesita texto
-		if(exprString())
-			return;
+		switch(e.getOperator()) {
 		
-		// Tomar mensaje
-		String text = (String) exprValue;
+			// Operacin lgica: booleanos
+			case AND :
+			case OR :
+				if(checkOperand(left, DataType.BOOLEAN, null) && checkOperand(right, DataType.BOOLEAN, null)) {
+					e.setDataType(DataType.BOOLEAN);
+					return false;
+				}
+				break;
+				
+			// Suma: nmeros o cadenas, del mismo tipo
+			case PLUS :
+				if(checkOperand(left, DataType.NUMBER, DataType.STRING) && checkOperand(right, DataType.NUMBER, DataType.STRING)
+						&& (left == null || right == null || left == right)) {
+					e.setDataType(left != null ? left : right);
+					return false;
+				}
+				break;
+				
+			// Operacin aritmtica: nmeros
+			case MINUS :
+			case MULTIPLY :
+			case DIVIDE :
+			case MODULUS :
+				if(checkOperand(left, DataType.NUMBER, null) && checkOperand(right, DataType.NUMBER, null)) {
+					e.setDataType(DataType.NUMBER);
+					return false;
+				}
+				break;
+				
+			// Comparacin relacional: nmeros o cadenas, del mismo tipo
+			default :
+				if(checkOperand(left, DataType.NUMBER, DataType.STRING) && checkOperand(right, DataType.NUMBER, DataType.STRING)
+						&& (left == null || right == null || left == right)) {
+					e.setDataType(DataType.BOOLEAN);
+					return false;
+				}
+				break;
+		}
 		
-
-		// Necesita final
-		if(needEnd())
-			return;
+		// Error
+		typeUncertain = uncertain;
 		
-		// Calcular posicin X del mensaje, en base a la alineacin
-		if(align > 0) {
-			
-			// Posicin X
-			int x = 0;
-			
-			if(align == 1)
-				x = (io.getWidth() - io.getTextWidth(text)) / 2;  // CENTER
-			else if(align == 2)
-				x = io.getWidth() - io.getTextWidth(text);    // RIGHT
+		if(typeError(Error.BAD_EXPRESSION))
+			return true;
 		
-			// Si la posicin no es vlida, retornar
-			//if(!isValidPos(x, 0))
-			//	return;
-			
-			// Ir a la posicin
-			if(io.cursorTo(x, io.getRow())) {
-				
-				errorId = Error.BAD_SCREEN_POSITION;
-				return;
-			}
-		}
-
-		// Imprimir el mensaje
-		io.print(text);
+		typeUncertain = true;
+		return false;
 	}
 	
 	/**
-	 * Instruccin - Cambiar la fuente, su tamao y los atributos:
+	 * Helper para checkTypes: Comprobar el tipo de un operando, si se conoce.
 	 * 
-	 * FONT nombre | tamao | PLAIN | BOLD | ITALIC | TRANSPARENT {...}
+	 * @param operand  tipo del operando, o null si se desconoce
+	 * @param type     tipo admitido
+	 * @param other    otro tipo admitido, o null
+	 * @return  true si es de un tipo admitido, o se desconoce, false en caso contrario
 	 */
-	private void doFont() {
+	private boolean checkOperand(DataType operand, DataType type, DataType other) {
 		
-		// Necesita argumento
-		if(needArg())
-			return;
-		
-		// Estilo por defecto: ninguno
-		int style = FONT_STYLE_PLAIN;
+		return operand == null || operand == type || operand == other;
+	}
+	
+	/**
+	 * Helper para checkTypes: Comprobar los argumentos de una funcin,
+	 * segn los que espera evalFunction().
+	 * 
+	 * @param e  nodo de la funcin
+	 * @return  true en caso de error, false en caso contrario
+	 */
+	private boolean checkFunction(TinyDevExpr e) {
 		
-		// Flag para indicar que se ha seleccionado el atributo PLAIN
-		boolean plain = false;
+		switch(e.getFunction()) {
 		
-		// Recorrer los argumentos
-		do {
-			// Tomar token
-			TinyDevToken tok = exprTokens.get(exprIndex);
-			
-			// Eliminar posible coma
-			if(tokenIsOtherOf(tok, TinyDevOperator.Id.COMMA)) {
-				++exprIndex;
-				continue;
-			}
-			
-			// Si es una palabra reservada, ver
-			// si corresponde a los atributos
-			if(tok.getType() == TinyDevToken.Id.KEYWORD) {
+			case NUMBER :
+			case TEXTHEIGHT :
+			case TEXTWIDTH :
+			case LOWERCASE :
+			case UPPERCASE :
+			case READFILE :
+				return checkArg(e.getArg(0), DataType.STRING);
 				
-				// Cambiar los atributos
-				switch(tok.getKeyword().getCode()) {
+			case STRING :
+				return checkArg(e.getArg(0), DataType.NUMBER);
 				
-					case PLAIN :
-						plain = true;
-						break;
-					case BOLD :
-						style |= FONT_STYLE_BOLD;
-						break;
-					case ITALIC :
-						style |= FONT_STYLE_ITALIC;
-						break;
-					case TRANSPARENT :
-						style |= FONT_STYLE_TRANSPARENT;
-						break;
-					
-					// No corresponde a un atributo,
-					// finalizar
-					default :
-						errorId = Error.BAD_ARGUMENT;
-						return;
-				}
+			case LENGTH :
 				
-				// Incrementar la posicin
-				++exprIndex;
+				// Una variable de tipo array, o una cadena
+				if(e.getArg(0).getType() == TinyDevExpr.Id.VARIABLE && varTypes[e.getArg(0).getIdentifier().getSlot()] == DataType.ARRAY)
+					return checkExpr(e.getArg(0));
 				
-			} else {
+				return checkArg(e.getArg(0), DataType.STRING);
 				
-				// Retornar, si no es una expresin
-				if(expr())
-					return;
+			case MIDDLE :
+				return checkArg(e.getArg(0), DataType.STRING) || checkArg(e.getArg(1), DataType.NUMBER) || checkArg(e.getArg(2), DataType.NUMBER);
 				
-				// Comprobar si es una expresin textual (nombre de la fuente),
-				// o numrica (tamao de la fuente), y actuar en consecuencia
-				if(exprType == DataType.STRING) {
-					
-					io.setFontFace((String) exprValue);    // Cambiar nombre
-					
-				} else if(exprType == DataType.NUMBER) {
-					
-					io.setFontSize((int) exprValue);       // Cambiar tamao
-					
-					// FIXME : Comprobar si el tamao es vlido
-					
-				} else {
-					
-					// Argumento errneno, finalizar
-					errorId = Error.BAD_ARGUMENT;
-					
-					return;
+			case FINDSTRING :
+				return checkArg(e.getArg(0), DataType.STRING) || checkArg(e.getArg(1), DataType.STRING)
+						|| (e.getArgCount() > 2 && checkArg(e.getArg(2), DataType.NUMBER));
+				
+			case REPEATSTRING :
+				return checkArg(e.getArg(0), DataType.STRING) || checkArg(e.getArg(1), DataType.NUMBER);
+				
+			case SCREENIMAGE :
+				for(int i = 0; i < e.getArgCount(); ++i) {
+					if(checkArg(e.getArg(i), DataType.NUMBER))
+						return true;
 				}
-			}
-		} while(tokensLeft());
-		
-		// Si se han indicado atributos, fijarlos
-		if(style != FONT_STYLE_PLAIN || plain)
-			io.setFontStyle(style);
+				return false;
+				
+			default :
+				
+				// Sin argumentos
+				return false;
+		}
 	}
 	
 	/**
-	 * Instruccin - Borrar la pantalla, y situar el cursor en 0,0:
+	 * Helper para checkTypes: Indicar si una funcin puede dar error, una
+	 * vez calculados sus argumentos.
 	 * 
-	 * CLEAR
+	 * @param fn  funcin
+	 * @return  true si puede dar error, false en caso contrario
 	 */
-	private void doClear() {
-		
-		// No tiene argumentos		
-		if(!needEnd())
-			io.clear(); // Borrar la pantalla
+	private boolean functionFails(TinyDevKeyword.Id fn) {
+		
+		switch(fn) {
+			case MIDDLE :
+			case FINDSTRING :
+			case REPEATSTRING :
+			case READFILE :
+			case SCREENIMAGE :
+				return true;
+			default :
+				return false;
+		}
 	}
 	
 	/**
-	 * Instruccin - Posicionar el cursor:
+	 * Helper para checkTypes: Tipo del resultado de una funcin.
 	 * 
-	 * CURSOR TO x y
+	 * @param fn  funcin
+	 * @return  tipo, o null si no se conoce
 	 */
-	private void doCursor() {
-		
-		// Necesita argumento
-		if(needArg())
-			return;
+	private DataType functionType(TinyDevKeyword.Id fn) {
 		
-		// Comprobar que el siguiente argumento es TO
-		if(!tokenIsCommandOf(exprTokens.get(1), TinyDevKeyword.Id.TO)) {
-			syntaxError();
-			return;
+		switch(fn) {
+			case RANDOM :
+			case MOUSEX :
+			case MOUSEY :
+			case NUMBER :
+			case LENGTH :
+			case TEXTHEIGHT :
+			case TEXTWIDTH :
+			case CURSORX :
+			case CURSORY :
+			case SCREENHEIGHT :
+			case SCREENWIDTH :
+			case FINDSTRING :
+				return DataType.NUMBER;
+			case KEY :
+			case REPLY :
+			case MOUSECLICK :
+			case STRING :
+			case BREAK :
+			case MIDDLE :
+			case PEN :
+			case PAPER :
+			case LOWERCASE :
+			case UPPERCASE :
+			case REPEATSTRING :
+				return DataType.STRING;
+			case SCREENIMAGE :
+				return DataType.IMAGE;
+			default :
+				return null;
 		}
+	}
+	
+	/**
+	 * Generar el bytecode del programa, una vez compiladas sus lneas,
+	 * para ejecutarlo con la mquina virtual.
+	 */
+	private void compileBytecode() {
 		
-		// Saltar TO
-		++exprIndex;
-		
-		// Tomar valor numrico
-		if(exprNumber())
-			return;
-		
-		// Tomar el valor de X
-		int x = (int) exprValue;
-		
-		// Coma
-		if(eatComma())
-			return;
-		
-		// Tomar valor numrico
-		if(exprNumber())
-			return;
-		
-		// Tomar el valor de Y
-		int y = (int) exprValue;
-		
-		// No ha de haber ms argumentos
-		if(needEnd())
-			return;
+		bytecode = new TinyDevBytecode();
+		bytecode.compile(source_tokens);
 		
-		// Situar el cursor en X,Y
-		if(io.cursorTo(x, y)) {
-			errorId = Error.BAD_SCREEN_POSITION;
-		}
+		code = bytecode.getCode();
+		pool = bytecode.getPool();
 	}
 	
 	/**
-	 * Instruccin - Cambiar el color de pluma:
-	 * 
-	 * PEN color
+	 * Inicializar la ejecucin del programa, una vez el cdigo fuente ha sido
+	 * tokenizado, y tratado con el paso previo a la ejecucin.
 	 */
-	private void doPen() {
+	private void startProgram() {
 		
-		// Tomar valor de color como cadena de texto
-		if(exprString())
-			return;
+		// Inicializar globales
+		lineNumber = 0;
+		posNumber = 0;
+		ifTrue = false;
+		doLevel = 0;
+		callLevel = 0;
+		ifBlockLevel = 0;
+		dialogInput = "";
 		
-		penName = (String) exprValue;
+		// Primer turno
+		slice = (quantum > 0 ? quantum : Integer.MAX_VALUE);
+		yielded = false;
+		ended = false;
+		waiting = false;
+	}
+	
+	/**
+	 * Ejecutar el programa, a partir de la lnea actual.
+	 * 
+	 * La ejecucin finaliza en caso de error, de cierre de la ventana de ejecucin,
+	 * o despus de ejecutar la ltima lnea de cdigo. Si se ejecuta por turnos,
+	 * tambin al terminar su turno (ver yielded); el siguiente contina en la
+	 * lnea actual.
+	 * 
+	 *  Si hay errores, los indica en la variable errorId.
+	 */
+	private void runProgram() {
 		
-		// Necesita final
-		if(needEnd())
+		// Continuar con el programa compilado, si lo hay
+		if(jit != null) {
+			jit.run(lineNumber);
 			return;
+		}
 		
-		// Cambiar color
-		if(io.setPen(penName))
-			errorId = Error.BAD_COLOR;
+		// Ejecutar el bytecode, si lo hay
+		if(bytecode != null) {
+			runBytecode();
+			return;
+		}
+		
+		// Bucle de ejecucin
+		while(!stopped && lineNumber < source_tokens.size() && !io.isClosed()) {
+				
+		  		// Tomar lnea de tokens a ejecutar
+				TinyDevLine line = source_tokens.get(lineNumber);
+
+	  			// Interpretarla, si es ejecutable (las lneas vacas y las
+	  			// declaraciones de places no tienen instruccin)
+	  			if(line.getStatement() != null) {
+	  					
+	  				// Ejecutar la lnea, con su closure si la tiene
+	  				if(line.getClosure() != null)
+	  					line.getClosure().run();
+	  				else
+	  					command(line.getStatement());
+	  					
+	  				// Si ha habido un error, abortar la ejecucin
+	  				if(errorId != Error.SUCCESS) {
+		   				stopped = true;
+		   				break;
+	  				}
+	  				
+	  				// Compilar la lnea a closures, al llegar al n de ejecuciones
+	  				if(closureCompiling && line.countExecution() == CLOSURE_THRESHOLD)
+	  					compileClosures(line);
+	  				
+	  				// Compilar el programa con el JIT, al llegar al n de instrucciones ejecutadas
+	  				if(jitCountdown > 0 && --jitCountdown == 0)
+	  					startJit();
+	  			}
+	  			
+	  			// Siguiente lnea
+	  			++lineNumber;
+	  			
+	  			// Ceder la ejecucin al programa compilado, en cuanto est disponible
+	  			if(jitTask != null && jitTask.isDone() && runJit())
+	  				return;
+	  			
+	  			// Terminar el turno, si se ha agotado
+	  			if(--slice == 0 && endSlice())
+	  				return;
+		}
+		
+		// FIXME: Si la ejecucin se detiene por haber llegado a
+		//        la ltima lnea de cdigo, se podra comprobar
+		//        si queda algn DO / CALL / IF activo, y
+		//        mostrar un mensaje de error.
 	}
 	
 	/**
-	 * Instruccin - Cambiar el color de papel:
+	 * Bucle de ejecucin de la mquina virtual: ejecuta las instrucciones del
+	 * bytecode, igual que runProgram() las de las lneas de cdigo.
 	 * 
-	 * PAPER color
+	 * Los saltos a destinos fijos (salir de un bloque o bucle, JUMP, CALL)
+	 * van a la posicin indicada en la instruccin. Las dems instrucciones
+	 * que cambian el flujo del programa (las que ejecuta el intrprete,
+	 * LOOP, NEXT, RETURN) indican la lnea anterior a la siguiente a
+	 * ejecutar, en lineNumber; su posicin en el bytecode se toma de la
+	 * tabla de lneas. Los niveles de IF, DO y CALL son los del intrprete,
+	 * para obtener los mismos errores. Al terminar un turno, lineNumber
+	 * indica la siguiente lnea, igual que en runProgram().
 	 */
-	private void doPaper() {
+	private void runBytecode() {
 		
-		// Tomar color como cadena de texto
-		if(exprString())
-			return;
+		// Tomar el bytecode
+		int[] code = this.code;
 		
-		paperName = (String) exprValue;
+		// Posiciones en el bytecode de las lneas, y final del programa
+		int[] linePcs = bytecode.getLinePcs();
+		int end = linePcs[linePcs.length - 1];
 		
-		// Necesita final
-		if(needEnd())
-			return;
+		// Posicin en el bytecode: la de la lnea actual
+		int pc = linePcs[lineNumber];
 		
-		// Cambiar el color
-		if(io.setPaper(paperName))
-			errorId = Error.BAD_COLOR;
+		// Bucle de ejecucin
+		while(!stopped && pc < end && !io.isClosed()) {
+			
+			// Tomar la lnea de la instruccin, para los errores
+			int line = lineNumber = bytecode.getLine(pc);
+			
+			// Tomar la instruccin
+			TinyDevStatement st = (TinyDevStatement) pool[code[pc + 1]];
+			
+			switch(code[pc]) {
+				
+				// SET variable = valor: si es numrica o textual, asignarla
+				// aqu; si no, o si no existe, con el intrprete
+				case TinyDevBytecode.OP_SET : {
+					TinyDevVariable var = variables[code[pc + 2]];
+					
+					if(var != null && var.getType() == DataType.NUMBER) {
+						if(!exprNumber(st.getArg(0)))
+							var.setNumberValue(exprInt);
+					}
+					else if(var != null && var.getType() == DataType.STRING) {
+						if(!exprString(st.getArg(0)) && !reserveString(var.getObjectValue(), exprValue))
+							var.setObjectValue(exprValue);
+					}
+					else
+						doSet(st);
+					
+					pc += 3;
+					break;
+				}
+				
+				// SET array[ndice] = valor: igual, si es de nmeros o textos
+				case TinyDevBytecode.OP_SET_ELEMENT : {
+					TinyDevVariable var = variables[code[pc + 2]];
+					
+					if(var != null && var.getType() == DataType.ARRAY
+							&& (var.getSubType() == DataType.NUMBER || var.getSubType() == DataType.STRING)) {
+						
+						if(!exprNumber(st.getIndex())) {
+							
+							int index = exprInt;
+							
+							if(index < 0 || index >= var.getSize())
+								errorId = Error.OUT_OF_BOUNDS;
+							else if(var.getSubType() == DataType.NUMBER) {
+								if(!exprNumber(st.getArg(0)))
+									var.getNumberArray()[index] = exprInt;
+							}
+							else if(!exprString(st.getArg(0)) && !reserveString(var.getObjectArray()[index], exprValue))
+								var.getObjectArray()[index] = exprValue;
+						}
+					}
+					else
+						doSet(st);
+					
+					pc += 3;
+					break;
+				}
+				
+				// IF simple: la instruccin puede cambiar la lnea
+				case TinyDevBytecode.OP_IF :
+					if(!exprBoolean(st.getArg(0))) {
+						
+						boolean test = exprBool;
+						
+						if(test)
+							command(st.getNext());
+						
+						ifTrue = test;
+					}
+					
+					pc = linePcs[lineNumber + 1];
+					break;
+				
+				// IF de bloque: si es falso, saltar al ELSE, o tras el END IF
+				case TinyDevBytecode.OP_IF_BLOCK :
+					if(exprBoolean(st.getArg(0)))
+						break;
+					
+					if(ifBlockLevel == MAX_IF_BLOCK_LEVEL) {
+						errorId = Error.TOO_MANY_IF;
+						break;
+					}
+					
+					ifBlockTrue[ifBlockLevel++] = exprBool;
+					
+					if(exprBool)
+						pc += 4;
+					else {
+						if(code[pc + 3] != 0)
+							--ifBlockLevel;
+						
+						pc = code[pc + 2];
+					}
+					break;
+				
+				// DO, FOR: si no se entra en el bucle, se sale de l
+				case TinyDevBytecode.OP_DO :
+					doDo(st, -1);
+					pc = (lineNumber != line ? code[pc + 2] : pc + 3);
+					break;
+				
+				case TinyDevBytecode.OP_FOR :
+					doFor(st);
+					pc = (lineNumber != line ? code[pc + 2] : pc + 3);
+					break;
+				
+				// LOOP, NEXT: si se sigue en el bucle, volver a la lnea del
+				// DO o la siguiente a la del FOR, que da su nivel
+				case TinyDevBytecode.OP_LOOP :
+					doLoop(st, -1);
+					pc = (lineNumber == line ? pc + 2 : linePcs[lineNumber + 1]);
+					break;
+				
+				case TinyDevBytecode.OP_NEXT :
+					doNext(st);
+					pc = (lineNumber == line ? pc + 2 : linePcs[lineNumber + 1]);
+					break;
+				
+				// BREAK: salir del bucle
+				case TinyDevBytecode.OP_BREAK :
+					if(doLevel == 0) {
+						errorId = Error.DO_NOT_ACTIVE;
+						break;
+					}
+					
+					exitDo(st.getTarget());
+					pc = code[pc + 2];
+					break;
+				
+				// JUMP, CALL: saltar al place
+				case TinyDevBytecode.OP_JUMP :
+					pc = code[pc + 2];
+					break;
+				
+				case TinyDevBytecode.OP_CALL :
+					doCall(st);
+					pc = code[pc + 2];
+					break;
+				
+				// RETURN: volver a la lnea siguiente a la del CALL
+				case TinyDevBytecode.OP_RETURN :
+					doReturn();
+					pc = linePcs[lineNumber + 1];
+					break;
+				
+				// Resto de instrucciones (OP_STATEMENT): las ejecuta el intrprete
+				default :
+					command(st);
+					pc = linePcs[lineNumber + 1];
+					break;
+			}
+			
+			// Si ha habido un error, abortar la ejecucin
+			if(errorId != Error.SUCCESS) {
+				stopped = true;
+				break;
+			}
+			
+			// Terminar el turno, si se ha agotado; la siguiente lnea es
+			// la de la siguiente instruccin
+			if(--slice == 0 && endSlice()) {
+				lineNumber = (pc < end ? bytecode.getLine(pc) : linePcs.length - 1);
+				return;
+			}
+		}
 	}
 	
 	/**
-	 * Instruccin - Cuadro de dilogo:
+	 * Comenzar a compilar el programa con el JIT, en otro thread, mientras
+	 * el intrprete sigue ejecutndolo.
+	 */
+	private void startJit() {
+		
+		jitTask = new FutureTask<TinyDevJit>(TinyDevJit.compiler(this, source_tokens, variables, io));
+		
+		Thread compiler = new Thread(jitTask, "TinyDev JIT");
+		compiler.setDaemon(true);
+		compiler.start();
+	}
+	
+	/**
+	 * Ceder la ejecucin al programa compilado con el JIT, a partir de
+	 * la lnea actual, una vez terminada su compilacin.
 	 * 
-	 * DIALOG INPUT | INFORMATION | WARNING | ERROR | YESNO | OKCANCEL expresin_textual
+	 * @return  true si se ha ejecutado el programa compilado, false si no se
+	 *          ha podido compilar, y se ha de seguir con el intrprete
 	 */
-	private void doDialog() {
+	private boolean runJit() {
 		
-		// Necesita argumento
-		if(needArg())
-			return;
+		// Tomar el programa compilado
+		try {
+			jit = jitTask.get();
+		} catch(InterruptedException | ExecutionException ex) {
+			jit = null;
+		}
 		
-		// Saltar el tipo de dilogo
-		++exprIndex;
+		jitTask = null;
 		
-		// Necesita texto
-		if(exprString())
-			return;
+		if(jit == null)
+			return false;
 		
-		// Tomar mensaje
-		String msg = (String) exprValue;
+		// Enlazar sus expresiones, y ejecutarlo
+		jit.install();
+		jit.run(lineNumber);
 		
-		// Necesita final		
-		if(needEnd())
-			return;
+		return true;
+	}
+	
+	// --------------------
+	// Consultas de entrada
+	// --------------------
+	
+	/**
+	 * Tomar la ltima tecla pulsada, para key().
+	 * 
+	 * @return  tecla, o "" si no hay ninguna
+	 */
+	String pollKey() {
 		
-		// Tomar el token del tipo de mensaje
-		TinyDevToken tk = exprTokens.get(1);
+		String k = io.getKey();
 		
-		// Llamar al cuadro de dilogo correspondiente
-		if(tokenIsCommandOf(tk, TinyDevKeyword.Id.INPUT))
-			dialogInput = io.readLine(msg, loc.getString("Input"));
-		else if(tokenIsCommandOf(tk, TinyDevKeyword.Id.INFORMATION))
-			io.dialogInformation(msg, loc.getString("Information"));
-		else if(tokenIsCommandOf(tk, TinyDevKeyword.Id.WARNING))
-			io.dialogWarning(msg, loc.getString("Warning"));
-		else if(tokenIsCommandOf(tk, TinyDevKeyword.Id.ERROR))
-			io.dialogError(msg, loc.getString("Error"));
-		else if(tokenIsCommandOf(tk, TinyDevKeyword.Id.YESNO))
-			dialogInput = io.dialogYesNo(msg, loc.getString("Confirm"));
-		else if(tokenIsCommandOf(tk, TinyDevKeyword.Id.OKCANCEL))
-			dialogInput = io.dialogOkCancel(msg, loc.getString("Confirm"));
-		else {
-			
-			// Error, argumento errneo
-			errorId = Error.BAD_ARGUMENT;
-		}
+		inputPolled(k != null);
+		
+		return k != null ? k : "";
 	}
-
+	
 	/**
-	 * Instruccin - Crear una variable o array:
+	 * Tomar el ltimo botn del ratn pulsado, para mouseClick().
 	 * 
-	 * VARIABLE tipo nombre {= valor}
-	 * VARIABLE tipo nombre[tamao]
+	 * @return  botn, o "" si no hay ninguno
 	 */
-	private void doVariable() {
+	String pollMouseClick() {
 		
-		// Necesita argumento
-		if(needArg())
-			return;
+		String c = io.getMouseClick();
 		
-		// Tomar tipo de dato
-		TinyDevToken token = exprTokens.get(1);
-		DataType dataType;
+		inputPolled(!c.isEmpty());
 		
-		if(tokenIsCommandOf(token, TinyDevKeyword.Id.NUMBER))
-			dataType = DataType.NUMBER;
-		else if(tokenIsCommandOf(token, TinyDevKeyword.Id.STRING))
-			dataType = DataType.STRING;
-		else if(tokenIsCommandOf(token, TinyDevKeyword.Id.IMAGE))
-			dataType = DataType.IMAGE;
-		else if(tokenIsCommandOf(token, TinyDevKeyword.Id.SOUND))
-			dataType = DataType.SOUND;
-		else {
+		return c;
+	}
+	
+	/**
+	 * Contar una consulta de entrada, y esperar si hace falta (ver
+	 * INPUT_WAIT_POLLS).
+	 * 
+	 * @param input  true si haba entrada, false en caso contrario
+	 */
+	private void inputPolled(boolean input) {
+		
+		if(input)
+			emptyPolls = 0;
+		else if((inputWaits || quantum > 0) && ++emptyPolls > INPUT_WAIT_POLLS) {
 			
-			// Error, tipo errneo
-			errorId = Error.BAD_DATA_TYPE;
-			return;
+			if(quantum > 0)
+				suspend(INPUT_WAIT_NANOS);
+			else
+				LockSupport.parkNanos(INPUT_WAIT_NANOS);
 		}
+	}
+	
+	// -------------------------------------------
+	// Ejecucin por turnos (ver TinyDevScheduler)
+	// -------------------------------------------
+	
+	/**
+	 * Preparar la ejecucin de un programa por turnos, en lugar de run().
+	 * Se ha de llamar una sola vez en cada contexto (ver newRun()), y
+	 * ejecutar despus sus turnos con runSlice().
+	 * 
+	 * @param sourceCode  cdigo fuente
+	 * @param screen      objeto de entrada / salida
+	 * @param currentDir  directorio actual, para los ficheros del programa
+	 * @param lines       n de lneas que se ejecutan en cada turno (> 0)
+	 * @return  true si el programa ha finalizado (por errores), false en caso contrario
+	 */
+	boolean startSlices(ArrayList<String> sourceCode, TinyDevIO screen, String currentDir, int lines) {
 		
-		// Saltar tipo
-		++exprIndex;
+		quantum = lines;
 		
-		// Necesita argumento
-		if(needArg())
-			return;
+		if(prepare(sourceCode, screen, currentDir))
+			return false;
 		
-		// Tomar identificador
-		if(exprTokens.get(2).getType() != TinyDevToken.Id.IDENTIFIER) {	
-			// Error, no es un identificador
-			syntaxError();
-			return;
-		}
+		finish();
 		
-		// Tomar el nombre del identificador
-		String name = exprTokens.get(2).getIdentifier().getName();
+		return true;
+	}
+	
+	/**
+	 * Ejecutar un turno del programa, desde donde termin el anterior.
+	 * 
+	 * Si el programa queda suspendido en una espera (ver isWaiting()), el
+	 * siguiente turno no se ha de ejecutar antes de que finalice (ver
+	 * getWakeTime()), salvo que se detenga el programa.
+	 * 
+	 * @return  true si el programa ha finalizado, false en caso contrario
+	 */
+	boolean runSlice() {
 		
-		// Ver si la variable ya existe
-		if(findVariable(name) != null) {
-			
-			// Error, ya existe
-			errorId = Error.VARIABLE_EXISTS;
-			return;
+		yielded = false;
+		waiting = false;
+		
+		if(!ended) {
+			runProgram();
+			ended = !yielded;
 		}
 		
-		// Saltar nombre de variable
-		++exprIndex;
+		// Si el programa ha terminado con una espera (un WAIT en la ltima
+		// lnea), finaliza en el siguiente turno, como si la hubiese hecho
+		if(ended && !(waiting && !stopped && !io.isClosed())) {
+			finish();
+			return true;
+		}
 		
-		// Por defecto, no es un array
-		boolean isArray = false;
-		int arraySize = -1;
+		return false;
+	}
+	
+	/**
+	 * Comprobar si el programa est suspendido en una espera, tras su
+	 * ltimo turno.
+	 * 
+	 * @return  true si lo est, false en caso contrario
+	 */
+	boolean isWaiting() {
 		
-		// Comprobar si es un array
-		if(arrayIndex()) {
-			// Es un array
-			isArray = true;
-			
-			// Tomar tamao
-			arraySize = (int) exprValue;
-			
-			// Comprobar si el tamao es vlido (0 indica array vaco)
-			if(arraySize < 0 || arraySize > MAX_ARRAY_SIZE) {
-				
-				// Error, tamao no vlido
-				errorId = Error.BAD_ARRAY_SIZE;
-				return;
-			}
-
-			/*
-			// Necesita final, puesto que los
-			// arrays no pueden ser inicializados
-			if(needEnd())
-				return;
-			
-			// Aadir array
-			variables.add(new TinyDevVariable(name, DataType.ARRAY, dataType, size));
-			
-			// Retornar
-			return;
-			*/
-		}
-			
-		// Retornar si arrayIndex() detect un error
-		if(errorId != Error.SUCCESS)
-			return;
+		return waiting;
+	}
+	
+	/**
+	 * Devolver el instante en que finaliza la espera del programa.
+	 * 
+	 * @return  instante (ver System.nanoTime())
+	 */
+	long getWakeTime() {
 		
-		// Indicar si se va a inicializar con un valor. Por defecto: no.
-		boolean hasValue = false;
+		return wakeTime;
+	}
+	
+	/**
+	 * Terminar el turno actual, al agotarse su n de lneas.
+	 * 
+	 * @return  true si se ha terminado, false si no se ejecuta por turnos
+	 */
+	private boolean endSlice() {
 		
-		// Si quedan tokens, ser la inicializacin
-		if(tokensLeft()) {
-			
-			// Ha de ser =
-			if(!tokenIsOtherOf(exprTokens.get(exprIndex), TinyDevOperator.Id.ASSIGN)) {		
-				// No, error
-				syntaxError();
-				return;
-			}
-			
-			// Saltar =
-			++exprIndex;
-			
-			// Ha de quedar la expresin con el valor
-			if(!tokensLeft()) {
-				
-				// No hay valor, error
-				syntaxError();
-				return;
-			}
+		if(quantum > 0) {
+			slice = quantum;
+			yielded = true;
 			
-			// Indicar que hay inicializacin
-			hasValue = true;
+			return true;
 		}
 		
-		// Variable a crear
-		TinyDevVariable var = null;
+		slice = Integer.MAX_VALUE;
 		
-		// Crear la variable, segn el tipo de dato, e inicializar
-		// al valor por defecto, o al indicado
-		switch((isArray ? DataType.ARRAY : dataType)) {
-			case NUMBER :
-				exprValue = (Object) 0;
-				if(hasValue) {
-					if(exprNumber())
-						return;
-				}
-				var = new TinyDevVariable(name, DataType.NUMBER, (int) exprValue);
-				break;
-			case STRING :
-				exprValue = (Object) "";
-				if(hasValue) {
-					if(exprString())
-						return;
-				}
-				var = new TinyDevVariable(name, DataType.STRING, (String) exprValue);
-				break;
-			case IMAGE :
-				exprValue = (Object) null;
-				if(hasValue) {
-					if(exprImage())
-						return;
-				}
-				var = new TinyDevVariable(name, DataType.IMAGE, exprValue);
-				break;
-			case SOUND :
-				exprValue = (Object) null;
-				if(hasValue) {
-					if(exprSound())
-						return;
-				}
-				var = new TinyDevVariable(name, DataType.SOUND, exprValue);
+		return false;
+	}
+	
+	/**
+	 * Suspender el programa durante un tiempo, al terminar la lnea actual,
+	 * si se ejecuta por turnos.
+	 * 
+	 * @param nanos  tiempo, en ns
+	 */
+	private void suspend(long nanos) {
+		
+		waiting = true;
+		wakeTime = System.nanoTime() + nanos;
+		
+		// Terminar el turno tras la lnea actual
+		slice = 1;
+	}
+	
+	// ----------------------------------------------------
+	// Soporte para el programa compilado (ver TinyDevJit)
+	// ----------------------------------------------------
+	
+	// Comenzar a ejecutar una lnea; true si se ha de detener la ejecucin, o terminar el turno
+	boolean jitStep(int line) {
+		
+		lineNumber = line;
+		
+		return stopped || io.isClosed() || (--slice == 0 && endSlice());
+	}
+	
+	// Ejecutar una instruccin; true en caso de error
+	boolean jitCommand(TinyDevStatement st) {
+		
+		command(st);
+		
+		if(errorId != Error.SUCCESS) {
+			stopped = true;
+			return true;
+		}
+		
+		return false;
+	}
+	
+	// Ejecutar una instruccin IF, DO o LOOP, con el resultado de su condicin (1 cierta, 0 falsa); true en caso de error
+	boolean jitCommand(TinyDevStatement st, int cond) {
+		
+		switch(st.getCode()) {
+			case IF :
+				doIf(st, cond);
 				break;
-			case ARRAY :
-				var = new TinyDevVariable(name, DataType.ARRAY, dataType, arraySize);
-				if(hasValue) {
-					if(expr())
-						return;
-					if(exprType != DataType.ARRAY || exprSubType != var.getSubType()) {
-						errorId = Error.BAD_DATA_TYPE;
-						return;
-					}
-					Object src[] = (Object []) exprValue;
-					Object dst[] = new Object[src.length];
-					
-					for(int i = 0; i < src.length; ++i) {
-						dst[i] = src[i];
-					}
-
-					var.setObjectValue(dst);
-					var.setSize(dst.length);
-				}
+			case DO :
+				doDo(st, cond);
 				break;
 			default :
-				
-				// Tipo de dato desconocido, error --- no debera ocurrir
-				errorId = Error.BAD_DATA_TYPE;
-				return;
+				doLoop(st, cond);
+				break;
 		}
 		
-		// Necesita final
-		if(needEnd())
-			return;
+		if(errorId != Error.SUCCESS) {
+			stopped = true;
+			return true;
+		}
 		
-		// Aadir la variable
-		variables.add(var);
-//System.out.println(var.getName() + " " + var.getType() + " " + var.getSize() + " of " + var.getSubType());		
+		return false;
 	}
 	
-	/**
-	 * Instruccin - Asignar un valor a una variable o elemento de un array:
-	 * 
-	 * SET variable = valor
-	 * SET array[ndice] = valor
-	 */
-	private void doSet() {
+	// Siguiente lnea a ejecutar
+	int jitNextLine() {
 		
-		// Necesita argumento
-		if(needArg())
-			return;
+		return lineNumber + 1;
+	}
+	
+	// Reservar la memoria de un string que se asigna; true si no cabe (el error lo indica el intrprete)
+	boolean jitReserve(Object oldValue, Object newValue) {
 		
-		// Comprobar que el 1er argumento es un identificador
-		if(exprTokens.get(1).getType() != TinyDevToken.Id.IDENTIFIER) {
-			
-			// No, error
-			syntaxError();
-			return;
-		}
+		long bytes = stringMemory(newValue) - stringMemory(oldValue);
 		
-		// Buscar la variable o array
-		TinyDevVariable var = findVariable(exprTokens.get(1).getIdentifier().getName());
+		if(bytes > 0 && memoryUsed + bytes > memoryLimit)
+			return true;
 		
-		// Abortar, si la variable o array no existe
-		if(var == null) {
-			
-			errorId = Error.VARIABLE_NOT_EXISTS;
-			return;
-		}
+		memoryUsed += bytes;
 		
-		// Saltar el identificador
-		++exprIndex;
+		return false;
+	}
+	
+	// Resultado de la condicin de un IF simple
+	void jitIfTrue(boolean test) {
 		
-		boolean isArray = false;  // Por defecto, no es un array
-		int index = 0;            // Indice para el array
+		ifTrue = test;
+	}
+	
+	// Funciones
+	int jitRandom() {
 		
-		// Ver si es un array
-		if(arrayIndex()) {
-			
-			// Si la variable no es un array, error
-			if(var.getType() != DataType.ARRAY) {
-				
-				errorId = Error.BAD_DATA_TYPE;
-				return;
-			}
-			
-			// Tomar ndice
-			index = (int) exprValue;
-			
-			// Comprobar que el ndice es correcto
-			if(index < 0 || index >= var.getSize()) {
-				
-				errorId = Error.OUT_OF_BOUNDS;
-				return;
-			}
-			
-			// Ok, es un array
-			isArray = true;
-		}
+		return randGen.nextInt(randMax + 1);
+	}
+	
+	int jitStringToInt(String s) {
 		
-		// Comprobar si arrayIndex() ha sealado un error
-		if(errorId != Error.SUCCESS)
-			return;
-
-		// Necesita argumento
-		if(needArg())
-			return;
+		return stringToInt(s);
+	}
+	
+	String jitReply() {
 		
-		// Ha de ser =
-		if(!tokenIsOtherOf(exprTokens.get(exprIndex), TinyDevOperator.Id.ASSIGN)) {
-			
-			syntaxError();
-			return;
-		}
+		return dialogInput;
+	}
+	
+	String jitPen() {
 		
-		// Saltar =
-		++exprIndex;
+		return penName;
+	}
+	
+	String jitPaper() {
 		
-		// Tomar tipo del dato
-		DataType dt = isArray ? var.getSubType() : var.getType();
+		return paperName;
+	}
+	
+	// -------------------------------------------------------------
+	// Closures: lneas y expresiones compiladas a objetos de Java
+	// -------------------------------------------------------------
+	
+	// Cuando una lnea se ha ejecutado CLOSURE_THRESHOLD veces, sus
+	// expresiones se compilan a un rbol de closures (IntSupplier,
+	// BooleanSupplier y Supplier), cada una con sus operandos ya enlazados.
+	//
+	// El tipo de cada nodo se conoce al compilarla, ya que las variables
+	// no cambian de tipo, ni dejan de existir, una vez creadas. Las
+	// expresiones con algn nodo de tipo desconocido (variables que an no
+	// existen, arrays completos, algunas funciones, operaciones con tipos
+	// errneos), se siguen calculando recorriendo su rbol.
+	//
+	// Los nodos que pueden dar un error (ndices de arrays), lo indican en
+	// errorId, y devuelven 0 o null; quien los calcula lo comprueba antes de
+	// seguir, de manera que los errores son los mismos que en el rbol.
+	
+	/**
+	 * Compilar una lnea a closures: sus expresiones, y la instruccin
+	 * en s, si es SET o IF.
+	 * 
+	 * @param line  lnea
+	 */
+	private void compileClosures(TinyDevLine line) {
 		
-		// Tomar valor, dependiendo del tipo de dato
-		switch(dt) {
-			case NUMBER :
-				if(exprNumber())
-					return;
-				break;
-			case STRING :
-				if(exprString())
-					return;
-				break;
-			case IMAGE :
-				if(exprImage())
-					return;
-				break;
-			case SOUND :
-				if(exprSound())
-					return;
-				break;
-			case ARRAY :
-				if(expr())
-					return;
-				if(exprType != DataType.ARRAY || exprSubType != var.getSubType()) {
-					errorId = Error.BAD_DATA_TYPE;
-					return;
-				}
-				break;
-			default :
-				// Tipo de dato desconocido
-				errorId = Error.BAD_DATA_TYPE;
-				return;
-		}
+		TinyDevStatement st = line.getStatement();
 		
-		// Necesita final
-		if(needEnd())
+		// Las instrucciones con errores de compilacin no se compilan, ni
+		// las superinstrucciones, que ya tienen su handler
+		if(st.getError() != Error.SUCCESS || line.getFusion() != null)
 			return;
 		
-		// Si es un array, asignarle el valor y terminar
-		if(isArray) {
+		// Expresiones de la instruccin, y de la que lleva un IF simple
+		for(TinyDevStatement s = st; s != null; s = s.getNext()) {
 			
-			Object array[] = (Object[]) var.getObjectValue();
-			array[index] = exprValue;
+			compileClosure(s.getIndex());
 			
-			return;
-		}
-		
-		// Asignar valor
-		if(dt == DataType.ARRAY) {
-			// Es un array
-			Object src[] = (Object []) exprValue;
-			Object dst[] = new Object[src.length];
+			for(int i = 0; i < s.getArgCount(); ++i)
+				compileClosure(s.getArg(i));
 			
-			for(int i = 0; i < src.length; ++i) {
-				dst[i] = src[i];
+			// Instruccin del place, si el CALL la ejecuta directamente
+			if(s.getBody() != null) {
+				
+				for(int i = 0; i < s.getBody().getArgCount(); ++i)
+					compileClosure(s.getBody().getArg(i));
 			}
-
-			var.setObjectValue(dst);
-			var.setSize(dst.length);
-		}
-		else {
-			// Es una variable, asignarle el valor
-			var.setObjectValue(exprValue);
 		}
+		
+		// Instruccin
+		line.setClosure(statementClosure(st));
 	}
-
+	
 	/**
-	 * Instruccin - Ejecucin condicional simple:
-	 * 
-	 * IF condicin THEN instruccin
-	 * {ELSE IF condicin THEN instruccin}
-	 * {ELSE instruccin}
-	 * 
-	 * Ejecucin condicional de bloque:
-	 * 
-	 * IF condicin THEN
-	 *     instrucciones
-	 * {ELSE IF condicin THEN
-	 *     instrucciones}
-	 * {ELSE
-	 *     instrucciones}
-	 * END IF
+	 * Compilar una expresin a closure, si se conoce su tipo.
 	 * 
-	 * No se pueden mezclar tipos simples y de bloque.
+	 * @param e  expresin, o null
 	 */
-	private void doIf() {
-
-		// Tomar valor de la condicin
-		if(exprBoolean())
-			return;
+	private void compileClosure(TinyDevExpr e) {
 		
-		// Necesita argumento
-		if(needArg())
-			return;
+		// Tomar su tipo
+		DataType type = (e != null ? closureType(e) : null);
 		
-		// Ha de ser THEN
-		if(!tokenIsCommandOf(exprTokens.get(exprIndex), TinyDevKeyword.Id.THEN)) {
-			
-			syntaxError();
+		if(type == null)
 			return;
-		}
-		
-		// Saltar THEN
-		++exprIndex;
 		
-		// Tomar el resultado de la condicin
-		boolean test = (boolean) exprValue;
+		// Indicar si puede dar error
+		final boolean fails = closureFails(e);
 		
-		// Si quedan argumentos, es un IF simple
-		if(tokensLeft()) {
+		// Compilarla, segn su tipo
+		if(type == DataType.NUMBER) {
 			
-			// Ejecutar la instruccin si la condicin es cierta
-			if(test) {
-				
-				// Crear una lista de tokens
-				ArrayList<TinyDevToken> tks = new ArrayList<TinyDevToken>();
-				
-				// Tomar los tokens de la instruccin
-				for(int i = exprIndex; i < exprTokens.size(); ++i)
-					tks.add(exprTokens.get(i));
-				
-				// Ejecutar la instruccin		
-				command(new TinyDevLine(lineNumber, tks));
-			}
-
-			// Indicar el resultado de la condicin
-			ifTrue = test;
+			final IntSupplier value = numberClosure(e);
 			
-			// Finalizar
-			return;
+			e.setClosure(new BooleanSupplier() {
+				public boolean getAsBoolean() {
+					exprInt = value.getAsInt();
+					exprType = DataType.NUMBER;
+					return fails && errorId != Error.SUCCESS;
+				}
+			});
 		}
-		
-		// Es un IF de bloque
-
-		// Comprobar si hay IF de bloque disponibles
-		if(ifBlockLevel == MAX_IF_BLOCK_LEVEL) {
+		else if(type == DataType.BOOLEAN) {
 			
-			// No, error
-			errorId = Error.TOO_MANY_IF;
-			return;
+			final BooleanSupplier value = booleanClosure(e);
+			
+			e.setClosure(new BooleanSupplier() {
+				public boolean getAsBoolean() {
+					exprBool = value.getAsBoolean();
+					exprType = DataType.BOOLEAN;
+					return fails && errorId != Error.SUCCESS;
+				}
+			});
 		}
-		
-		// Aadir nivel de IF
-		ifBlockTrue[ifBlockLevel++] = test;
-
-		// Si la condicin es falsa, saltar las
-		// instrucciones dentro del bloque IF
-		if(!test) {
-			exitIf(true);			
+		else {
+			
+			final Supplier<Object> value = objectClosure(e);
+			final DataType objectType = type;
+			
+			e.setClosure(new BooleanSupplier() {
+				public boolean getAsBoolean() {
+					exprValue = value.get();
+					exprType = objectType;
+					return fails && errorId != Error.SUCCESS;
+				}
+			});
 		}
 	}
 	
 	/**
-	 * Instruccin - Ejecucin condicional simple:
+	 * Compilar una instruccin a closure.
 	 * 
-	 * IF condicin THEN instruccin
+	 * Solo se compilan las asignaciones a variables o elementos de arrays
+	 * numricos o textuales, y las condiciones de los IF; el resto de
+	 * instrucciones se ejecutan con su handler, que calcula sus expresiones
+	 * con sus closures.
+	 * 
+	 * @param st  instruccin
+	 * @return  closure, o null si no se puede compilar
+	 */
+	private Runnable statementClosure(final TinyDevStatement st) {
+		
+		switch(st.getCode()) {
+		
+			case SET :
+				
+				// La variable ha de existir, y ser numrica o textual, o un
+				// array de nmeros o cadenas
+				final TinyDevVariable var = findVariable(st.getIdentifier());
+				
+				if(var == null)
+					return null;
+				
+				DataType type = (st.getIndex() != null ? (var.getType() == DataType.ARRAY ? var.getSubType() : null) : var.getType());
+				
+				if((type != DataType.NUMBER && type != DataType.STRING) || closureType(st.getArg(0)) != type)
+					return null;
+				
+				final boolean fails = closureFails(st.getArg(0));
+				
+				// Asignar a una variable
+				if(st.getIndex() == null) {
+					
+					if(type == DataType.NUMBER) {
+						
+						final IntSupplier value = numberClosure(st.getArg(0));
+						
+						return new Runnable() {
+							public void run() {
+								int v = value.getAsInt();
+								if(fails && errorId != Error.SUCCESS)
+									return;
+								var.setNumberValue(v);
+							}
+						};
+					}
+					
+					final Supplier<Object> value = objectClosure(st.getArg(0));
+					
+					return new Runnable() {
+						public void run() {
+							Object v = value.get();
+							if(fails && errorId != Error.SUCCESS)
+								return;
+							if(reserveString(var.getObjectValue(), v))
+								return;
+							var.setObjectValue(v);
+						}
+					};
+				}
+				
+				// Asignar a un elemento de un array; el ndice se calcula antes que el valor
+				if(closureType(st.getIndex()) != DataType.NUMBER)
+					return null;
+				
+				final IntSupplier index = numberClosure(st.getIndex());
+				final boolean indexFails = closureFails(st.getIndex());
+				
+				if(type == DataType.NUMBER) {
+					
+					final IntSupplier value = numberClosure(st.getArg(0));
+					
+					return new Runnable() {
+						public void run() {
+							int i = index.getAsInt();
+							if(indexFails && errorId != Error.SUCCESS)
+								return;
+							if(i < 0 || i >= var.getSize()) {
+								errorId = Error.OUT_OF_BOUNDS;
+								return;
+							}
+							int v = value.getAsInt();
+							if(fails && errorId != Error.SUCCESS)
+								return;
+							var.getNumberArray()[i] = v;
+						}
+					};
+				}
+				
+				final Supplier<Object> value = objectClosure(st.getArg(0));
+				
+				return new Runnable() {
+					public void run() {
+						int i = index.getAsInt();
+						if(indexFails && errorId != Error.SUCCESS)
+							return;
+						if(i < 0 || i >= var.getSize()) {
+							errorId = Error.OUT_OF_BOUNDS;
+							return;
+						}
+						Object v = value.get();
+						if(fails && errorId != Error.SUCCESS)
+							return;
+						if(reserveString(var.getObjectArray()[i], v))
+							return;
+						var.getObjectArray()[i] = v;
+					}
+				};
+				
+			case IF :
+				
+				// La condicin ha de ser booleana
+				if(closureType(st.getArg(0)) != DataType.BOOLEAN)
+					return null;
+				
+				final BooleanSupplier cond = booleanClosure(st.getArg(0));
+				final boolean condFails = closureFails(st.getArg(0));
+				
+				return new Runnable() {
+					public void run() {
+						boolean test = cond.getAsBoolean();
+						if(condFails && errorId != Error.SUCCESS)
+							return;
+						doIf(st, test ? 1 : 0);
+					}
+				};
+				
+			default :
+				break;
+		}
+		
+		// Se ejecuta con su handler
+		return null;
+	}
+	
+	/**
+	 * Calcular el tipo de un nodo de una expresin, para compilarla a
+	 * closures.
+	 * 
+	 * @param e  nodo
+	 * @return  tipo, o null si no se conoce, o no se puede compilar
+	 */
+	private DataType closureType(TinyDevExpr e) {
+		
+		switch(e.getType()) {
+		
+			case NUMBER :
+				return DataType.NUMBER;
+				
+			case STRING :
+				return DataType.STRING;
+				
+			case VARIABLE :
+				
+				// Ha de existir, y no ser un array
+				TinyDevVariable var = findVariable(e.getIdentifier());
+				
+				return (var != null && var.getType() != DataType.ARRAY ? var.getType() : null);
+				
+			case ELEMENT :
+				
+				// Ha de ser un array de nmeros o cadenas, con ndice numrico
+				TinyDevVariable arr = findVariable(e.getIdentifier());
+				
+				if(arr == null || arr.getType() != DataType.ARRAY || closureType(e.getArg(0)) != DataType.NUMBER)
+					return null;
+				
+				return (arr.getSubType() == DataType.NUMBER || arr.getSubType() == DataType.STRING ? arr.getSubType() : null);
+				
+			case NEGATIVE :
+				return (closureType(e.getArg(0)) == DataType.NUMBER ? DataType.NUMBER : null);
+				
+			case OPERATOR :
+				
+				// Tipos de los operandos
+				DataType left = closureType(e.getArg(0));
+				DataType right = closureType(e.getArg(1));
+				
+				if(left == null || left != right)
+					return null;
+				
+				switch(e.getOperator()) {
+					case AND :
+					case OR :
+						return (left == DataType.BOOLEAN ? DataType.BOOLEAN : null);
+					case PLUS :
+						return (left == DataType.NUMBER || left == DataType.STRING ? left : null);
+					case MINUS :
+					case MULTIPLY :
+					case DIVIDE :
+					case MODULUS :
+						return (left == DataType.NUMBER ? DataType.NUMBER : null);
+					default :
+						return (left == DataType.NUMBER || left == DataType.STRING ? DataType.BOOLEAN : null);
+				}
+				
+			case FUNCTION :
+				
+				switch(e.getFunction()) {
+					case RANDOM :
+					case MOUSEX :
+					case MOUSEY :
+					case CURSORX :
+					case CURSORY :
+					case SCREENHEIGHT :
+					case SCREENWIDTH :
+						return DataType.NUMBER;
+					case KEY :
+					case REPLY :
+					case PEN :
+					case PAPER :
+					case BREAK :
+						return DataType.STRING;
+					case NUMBER :
+						return (closureType(e.getArg(0)) == DataType.STRING ? DataType.NUMBER : null);
+					case STRING :
+						return (closureType(e.getArg(0)) == DataType.NUMBER ? DataType.STRING : null);
+					case LENGTH :
+						return (closureType(e.getArg(0)) == DataType.STRING ? DataType.NUMBER : null);
+					case LOWERCASE :
+					case UPPERCASE :
+						return (closureType(e.getArg(0)) == DataType.STRING ? DataType.STRING : null);
+					default :
+						return null;
+				}
+				
+			default :
+				return null;
+		}
+	}
+	
+	/**
+	 * Indicar si un nodo de una expresin compilada a closures puede dar error.
+	 * 
+	 * @param e  nodo
+	 * @return  true si puede dar error, false en caso contrario
+	 */
+	private boolean closureFails(TinyDevExpr e) {
+		
+		// Solo pueden fallar los ndices de los arrays
+		if(e.getType() == TinyDevExpr.Id.ELEMENT)
+			return true;
+		
+		for(int i = 0; i < e.getArgCount(); ++i) {
+			
+			if(closureFails(e.getArg(i)))
+				return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Compilar a closure un nodo de tipo numrico.
+	 * 
+	 * @param e  nodo
+	 * @return  closure
+	 */
+	private IntSupplier numberClosure(TinyDevExpr e) {
+		
+		switch(e.getType()) {
+		
+			case NUMBER :
+				
+				final int number = e.getNumber();
+				
+				return new IntSupplier() {
+					public int getAsInt() {
+						return number;
+					}
+				};
+				
+			case VARIABLE :
+				
+				final TinyDevVariable var = findVariable(e.getIdentifier());
+				
+				return new IntSupplier() {
+					public int getAsInt() {
+						return var.getNumberValue();
+					}
+				};
+				
+			case ELEMENT :
+				
+				final TinyDevVariable arr = findVariable(e.getIdentifier());
+				final IntSupplier index = numberClosure(e.getArg(0));
+				final boolean indexFails = closureFails(e.getArg(0));
+				
+				return new IntSupplier() {
+					public int getAsInt() {
+						int i = index.getAsInt();
+						if(indexFails && errorId != Error.SUCCESS)
+							return 0;
+						if(i < 0 || i >= arr.getSize()) {
+							errorId = Error.OUT_OF_BOUNDS;
+							return 0;
+						}
+						return arr.getNumberArray()[i];
+					}
+				};
+				
+			case NEGATIVE :
+				
+				final IntSupplier operand = numberClosure(e.getArg(0));
+				
+				return new IntSupplier() {
+					public int getAsInt() {
+						return -operand.getAsInt();
+					}
+				};
+				
+			case OPERATOR :
+				return numberOperator(e);
+				
+			default :
+				return numberFunction(e);
+		}
+	}
+	
+	/**
+	 * Compilar a closure una operacin aritmtica.
+	 * 
+	 * @param e  nodo
+	 * @return  closure
+	 */
+	private IntSupplier numberOperator(TinyDevExpr e) {
+		
+		final IntSupplier left = numberClosure(e.getArg(0));
+		final IntSupplier right = numberClosure(e.getArg(1));
+		final boolean leftFails = closureFails(e.getArg(0));
+		final boolean rightFails = closureFails(e.getArg(1));
+		
+		switch(e.getOperator()) {
+		
+			case PLUS :
+				return new IntSupplier() {
+					public int getAsInt() {
+						int l = left.getAsInt();
+						if(leftFails && errorId != Error.SUCCESS)
+							return 0;
+						return l + right.getAsInt();
+					}
+				};
+				
+			case MINUS :
+				return new IntSupplier() {
+					public int getAsInt() {
+						int l = left.getAsInt();
+						if(leftFails && errorId != Error.SUCCESS)
+							return 0;
+						return l - right.getAsInt();
+					}
+				};
+				
+			case MULTIPLY :
+				return new IntSupplier() {
+					public int getAsInt() {
+						int l = left.getAsInt();
+						if(leftFails && errorId != Error.SUCCESS)
+							return 0;
+						return l * right.getAsInt();
+					}
+				};
+				
+			case DIVIDE :
+				return new IntSupplier() {
+					public int getAsInt() {
+						int l = left.getAsInt();
+						if(leftFails && errorId != Error.SUCCESS)
+							return 0;
+						int r = right.getAsInt();
+						if(rightFails && errorId != Error.SUCCESS)
+							return 0;
+						return l / r;
+					}
+				};
+				
+			default :
+				return new IntSupplier() {
+					public int getAsInt() {
+						int l = left.getAsInt();
+						if(leftFails && errorId != Error.SUCCESS)
+							return 0;
+						int r = right.getAsInt();
+						if(rightFails && errorId != Error.SUCCESS)
+							return 0;
+						return l % r;
+					}
+				};
+		}
+	}
+	
+	/**
+	 * Compilar a closure una funcin de tipo numrico.
+	 * 
+	 * @param e  nodo
+	 * @return  closure
+	 */
+	private IntSupplier numberFunction(TinyDevExpr e) {
+		
+		switch(e.getFunction()) {
+		
+			case RANDOM :
+				return new IntSupplier() {
+					public int getAsInt() {
+						return randGen.nextInt(randMax + 1);
+					}
+				};
+				
+			case MOUSEX :
+				return new IntSupplier() {
+					public int getAsInt() {
+						return io.getMouseX();
+					}
+				};
+				
+			case MOUSEY :
+				return new IntSupplier() {
+					public int getAsInt() {
+						return io.getMouseY();
+					}
+				};
+				
+			case CURSORX :
+				return new IntSupplier() {
+					public int getAsInt() {
+						return io.getColumn();
+					}
+				};
+				
+			case CURSORY :
+				return new IntSupplier() {
+					public int getAsInt() {
+						return io.getRow();
+					}
+				};
+				
+			case SCREENHEIGHT :
+				return new IntSupplier() {
+					public int getAsInt() {
+						return io.getHeight();
+					}
+				};
+				
+			case SCREENWIDTH :
+				return new IntSupplier() {
+					public int getAsInt() {
+						return io.getWidth();
+					}
+				};
+				
+			case NUMBER :
+				
+				final Supplier<Object> string = objectClosure(e.getArg(0));
+				final boolean stringFails = closureFails(e.getArg(0));
+				
+				return new IntSupplier() {
+					public int getAsInt() {
+						Object s = string.get();
+						if(stringFails && errorId != Error.SUCCESS)
+							return 0;
+						return stringToInt((String) s);
+					}
+				};
+				
+			default :  // LENGTH
+				
+				final Supplier<Object> str = objectClosure(e.getArg(0));
+				final boolean strFails = closureFails(e.getArg(0));
+				
+				return new IntSupplier() {
+					public int getAsInt() {
+						Object s = str.get();
+						if(strFails && errorId != Error.SUCCESS)
+							return 0;
+						return ((String) s).length();
+					}
+				};
+		}
+	}
+	
+	/**
+	 * Compilar a closure un nodo de tipo booleano: una operacin lgica
+	 * o relacional.
+	 * 
+	 * @param e  nodo
+	 * @return  closure
+	 */
+	private BooleanSupplier booleanClosure(TinyDevExpr e) {
+		
+		final boolean leftFails = closureFails(e.getArg(0));
+		final boolean rightFails = closureFails(e.getArg(1));
+		
+		// Operacin lgica; el operando de la derecha slo se calcula si es
+		// necesario, como en el rbol
+		if(e.getOperator() == TinyDevOperator.Id.AND || e.getOperator() == TinyDevOperator.Id.OR) {
+			
+			final BooleanSupplier left = booleanClosure(e.getArg(0));
+			final BooleanSupplier right = booleanClosure(e.getArg(1));
+			
+			if(e.getOperator() == TinyDevOperator.Id.AND) {
+				
+				return new BooleanSupplier() {
+					public boolean getAsBoolean() {
+						boolean l = left.getAsBoolean();
+						if(leftFails && errorId != Error.SUCCESS)
+							return false;
+						return l && right.getAsBoolean();
+					}
+				};
+			}
+			
+			return new BooleanSupplier() {
+				public boolean getAsBoolean() {
+					boolean l = left.getAsBoolean();
+					if(leftFails && errorId != Error.SUCCESS)
+						return false;
+					return l || right.getAsBoolean();
+				}
+			};
+		}
+		
+		// Comparacin de cadenas
+		if(closureType(e.getArg(0)) == DataType.STRING) {
+			
+			final Supplier<Object> left = objectClosure(e.getArg(0));
+			final Supplier<Object> right = objectClosure(e.getArg(1));
+			final TinyDevOperator.Id id = e.getOperator();
+			
+			return new BooleanSupplier() {
+				public boolean getAsBoolean() {
+					Object l = left.get();
+					if(leftFails && errorId != Error.SUCCESS)
+						return false;
+					Object r = right.get();
+					if(rightFails && errorId != Error.SUCCESS)
+						return false;
+					return compare(id, ((String) l).compareTo((String) r));
+				}
+			};
+		}
+		
+		// Comparacin de nmeros
+		final IntSupplier left = numberClosure(e.getArg(0));
+		final IntSupplier right = numberClosure(e.getArg(1));
+		
+		switch(e.getOperator()) {
+		
+			case EQUAL :
+				return new BooleanSupplier() {
+					public boolean getAsBoolean() {
+						int l = left.getAsInt();
+						if(leftFails && errorId != Error.SUCCESS)
+							return false;
+						return l == right.getAsInt();
+					}
+				};
+				
+			case NOT_EQUAL :
+				return new BooleanSupplier() {
+					public boolean getAsBoolean() {
+						int l = left.getAsInt();
+						if(leftFails && errorId != Error.SUCCESS)
+							return false;
+						return l != right.getAsInt();
+					}
+				};
+				
+			case GREATER :
+				return new BooleanSupplier() {
+					public boolean getAsBoolean() {
+						int l = left.getAsInt();
+						if(leftFails && errorId != Error.SUCCESS)
+							return false;
+						return l > right.getAsInt();
+					}
+				};
+				
+			case GREATER_OR_EQUAL :
+				return new BooleanSupplier() {
+					public boolean getAsBoolean() {
+						int l = left.getAsInt();
+						if(leftFails && errorId != Error.SUCCESS)
+							return false;
+						return l >= right.getAsInt();
+					}
+				};
+				
+			case LESS :
+				return new BooleanSupplier() {
+					public boolean getAsBoolean() {
+						int l = left.getAsInt();
+						if(leftFails && errorId != Error.SUCCESS)
+							return false;
+						return l < right.getAsInt();
+					}
+				};
+				
+			default :
+				return new BooleanSupplier() {
+					public boolean getAsBoolean() {
+						int l = left.getAsInt();
+						if(leftFails && errorId != Error.SUCCESS)
+							return false;
+						return l <= right.getAsInt();
+					}
+				};
+		}
+	}
+	
+	/**
+	 * Helper para closures: Resultado de una comparacin relacional.
+	 * 
+	 * @param id      operador
+	 * @param result  resultado de la comparacin (<0, 0, >0)
+	 * @return  resultado de la operacin
+	 */
+	private static boolean compare(TinyDevOperator.Id id, int result) {
+		
+		switch(id) {
+			case EQUAL :
+				return result == 0;
+			case NOT_EQUAL :
+				return result != 0;
+			case GREATER :
+				return result > 0;
+			case GREATER_OR_EQUAL :
+				return result >= 0;
+			case LESS :
+				return result < 0;
+			default :
+				return result <= 0;
+		}
+	}
+	
+	/**
+	 * Compilar a closure un nodo de tipo textual, imagen o sonido.
+	 * 
+	 * @param e  nodo
+	 * @return  closure
+	 */
+	private Supplier<Object> objectClosure(TinyDevExpr e) {
+		
+		switch(e.getType()) {
+		
+			case STRING :
+				
+				final Object string = e.getValue();
+				
+				return new Supplier<Object>() {
+					public Object get() {
+						return string;
+					}
+				};
+				
+			case VARIABLE :
+				
+				final TinyDevVariable var = findVariable(e.getIdentifier());
+				
+				return new Supplier<Object>() {
+					public Object get() {
+						return var.getObjectValue();
+					}
+				};
+				
+			case ELEMENT :
+				
+				final TinyDevVariable arr = findVariable(e.getIdentifier());
+				final IntSupplier index = numberClosure(e.getArg(0));
+				final boolean indexFails = closureFails(e.getArg(0));
+				
+				return new Supplier<Object>() {
+					public Object get() {
+						int i = index.getAsInt();
+						if(indexFails && errorId != Error.SUCCESS)
+							return null;
+						if(i < 0 || i >= arr.getSize()) {
+							errorId = Error.OUT_OF_BOUNDS;
+							return null;
+						}
+						return arr.getObjectArray()[i];
+					}
+				};
+				
+			case OPERATOR :  // PLUS
+				
+				final Supplier<Object> left = objectClosure(e.getArg(0));
+				final Supplier<Object> right = objectClosure(e.getArg(1));
+				final boolean leftFails = closureFails(e.getArg(0));
+				
+				return new Supplier<Object>() {
+					public Object get() {
+						Object l = left.get();
+						if(leftFails && errorId != Error.SUCCESS)
+							return null;
+						return (String) l + (String) right.get();
+					}
+				};
+				
+			default :
+				return objectFunction(e);
+		}
+	}
+	
+	/**
+	 * Compilar a closure una funcin de tipo textual.
+	 * 
+	 * @param e  nodo
+	 * @return  closure
+	 */
+	private Supplier<Object> objectFunction(TinyDevExpr e) {
+		
+		switch(e.getFunction()) {
+		
+			case KEY :
+				return new Supplier<Object>() {
+					public Object get() {
+						return pollKey();
+					}
+				};
+				
+			case REPLY :
+				return new Supplier<Object>() {
+					public Object get() {
+						return dialogInput;
+					}
+				};
+				
+			case PEN :
+				return new Supplier<Object>() {
+					public Object get() {
+						return penName;
+					}
+				};
+				
+			case PAPER :
+				return new Supplier<Object>() {
+					public Object get() {
+						return paperName;
+					}
+				};
+				
+			case BREAK :
+				return new Supplier<Object>() {
+					public Object get() {
+						return "\n";
+					}
+				};
+				
+			case STRING :
+				
+				final IntSupplier number = numberClosure(e.getArg(0));
+				final boolean numberFails = closureFails(e.getArg(0));
+				
+				return new Supplier<Object>() {
+					public Object get() {
+						int n = number.getAsInt();
+						if(numberFails && errorId != Error.SUCCESS)
+							return null;
+						return "" + n;
+					}
+				};
+				
+			case LOWERCASE :
+				
+				final Supplier<Object> lower = objectClosure(e.getArg(0));
+				final boolean lowerFails = closureFails(e.getArg(0));
+				
+				return new Supplier<Object>() {
+					public Object get() {
+						Object s = lower.get();
+						if(lowerFails && errorId != Error.SUCCESS)
+							return null;
+						return ((String) s).toLowerCase(Locale.ROOT);
+					}
+				};
+				
+			default :  // UPPERCASE
+				
+				final Supplier<Object> upper = objectClosure(e.getArg(0));
+				final boolean upperFails = closureFails(e.getArg(0));
+				
+				return new Supplier<Object>() {
+					public Object get() {
+						Object s = upper.get();
+						if(upperFails && errorId != Error.SUCCESS)
+							return null;
+						return ((String) s).toUpperCase(Locale.ROOT);
+					}
+				};
+		}
+	}
+	
+	// -------------------------------------------------------------
+	// Superinstrucciones: formas de instruccin frecuentes
+	// -------------------------------------------------------------
+	
+	// Al cargar el programa, las lneas con alguna de las formas de
+	// instruccin ms frecuentes (ver Fusion) se enlazan con un handler
+	// especializado, que se ejecuta como su closure. Sus operandos son
+	// nmeros constantes, o variables numricas que se leen directamente
+	// de su slot, sin calcular ninguna expresin.
+	//
+	// Si al ejecutarla, alguna variable no existe o no es del tipo
+	// esperado, la instruccin se ejecuta con su handler de siempre, que
+	// indica el mismo error que sin superinstrucciones.
+	
+	/**
+	 * Reconocer las superinstrucciones del programa, y enlazar sus
+	 * lneas con su handler.
+	 */
+	private void fuseAll() {
+		
+		for(int i = 0; i < source_tokens.size(); ++i) {
+			
+			TinyDevLine line = source_tokens.get(i);
+			TinyDevStatement st = line.getStatement();
+			
+			// Las instrucciones con errores de compilacin no se reconocen
+			if(st == null || st.getError() != Error.SUCCESS)
+				continue;
+			
+			Fusion fusion = fusion(st);
+			
+			if(fusion == null)
+				continue;
+			
+			line.setFusion(fusion);
+			line.setClosure(fusedStatement(st, fusion));
+			
+			// Volcado de depuracin
+			if(fusionDump)
+				System.err.println(String.format("%5d  %-10s  %s", i + 1, fusion, source.get(i).trim()));
+		}
+	}
+	
+	/**
+	 * Helper para superinstrucciones: Reconocer la forma de una instruccin.
+	 * 
+	 * @param st  instruccin
+	 * @return  forma, o null si no es una superinstruccin
+	 */
+	private Fusion fusion(TinyDevStatement st) {
+		
+		switch(st.getCode()) {
+		
+			case SET :
+				
+				// SET variable = variable + | - operando
+				if(st.getIndex() != null || st.getArg(0).getType() != TinyDevExpr.Id.OPERATOR)
+					return null;
+				
+				TinyDevExpr e = st.getArg(0);
+				
+				if((e.getOperator() == TinyDevOperator.Id.PLUS || e.getOperator() == TinyDevOperator.Id.MINUS)
+						&& e.getArg(0).getType() == TinyDevExpr.Id.VARIABLE
+						&& e.getArg(0).getIdentifier() == st.getIdentifier()
+						&& fusedOperand(e.getArg(1)))
+					return Fusion.SET_STEP;
+				
+				return null;
+				
+			case IF :
+				
+				// IF key() == | != "tecla" THEN ...
+				return keyLiteral(st.getArg(0)) != null ? Fusion.IF_KEY : null;
+				
+			case IMAGE :
+				
+				// IMAGE operando, operando, variable
+				if(fusedOperand(st.getArg(0)) && fusedOperand(st.getArg(1))
+						&& st.getArg(2).getType() == TinyDevExpr.Id.VARIABLE)
+					return Fusion.IMAGE;
+				
+				return null;
+				
+			case DO :
+			case LOOP :
+				
+				// DO | LOOP WHILE | UNTIL operando relacional operando
+				if(st.getArgCount() == 0 || st.getArg(0).getType() != TinyDevExpr.Id.OPERATOR)
+					return null;
+				
+				TinyDevExpr cond = st.getArg(0);
+				
+				switch(cond.getOperator()) {
+					case EQUAL :
+					case NOT_EQUAL :
+					case GREATER :
+					case GREATER_OR_EQUAL :
+					case LESS :
+					case LESS_OR_EQUAL :
+						if(fusedOperand(cond.getArg(0)) && fusedOperand(cond.getArg(1)))
+							return Fusion.DO_COMPARE;
+						break;
+					default :
+						break;
+				}
+				
+				return null;
+				
+			default :
+				return null;
+		}
+	}
+	
+	/**
+	 * Helper para superinstrucciones: Comprobar si un nodo es un operando,
+	 * es decir, un nmero constante o una variable.
+	 * 
+	 * @param e  nodo
+	 * @return  true si lo es, false en caso contrario
+	 */
+	private static boolean fusedOperand(TinyDevExpr e) {
+		
+		return e.getType() == TinyDevExpr.Id.NUMBER || e.getType() == TinyDevExpr.Id.VARIABLE;
+	}
+	
+	/**
+	 * Helper para superinstrucciones: Tomar la tecla de una condicin
+	 * key() == "tecla", o "tecla" == key(), o con el operador !=.
+	 * 
+	 * @param e  condicin
+	 * @return  nodo con la tecla, o null si la condicin no tiene esa forma
+	 */
+	private static TinyDevExpr keyLiteral(TinyDevExpr e) {
+		
+		if(e.getType() != TinyDevExpr.Id.OPERATOR
+				|| (e.getOperator() != TinyDevOperator.Id.EQUAL && e.getOperator() != TinyDevOperator.Id.NOT_EQUAL))
+			return null;
+		
+		for(int i = 0; i < 2; ++i) {
+			
+			TinyDevExpr fn = e.getArg(i);
+			TinyDevExpr key = e.getArg(1 - i);
+			
+			if(fn.getType() == TinyDevExpr.Id.FUNCTION && fn.getFunction() == TinyDevKeyword.Id.KEY
+					&& key.getType() == TinyDevExpr.Id.STRING)
+				return key;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Helper para superinstrucciones: Tomar el valor de un operando, en
+	 * exprInt.
+	 * 
+	 * @param e  operando: nmero constante o variable
+	 * @return  true si la variable no existe o no es numrica, false en caso contrario
+	 */
+	private boolean fusedNumber(TinyDevExpr e) {
+		
+		if(e.getType() == TinyDevExpr.Id.NUMBER) {
+			exprInt = e.getNumber();
+			return false;
+		}
+		
+		TinyDevVariable var = variables[e.getIdentifier().getSlot()];
+		
+		if(var == null || var.getType() != DataType.NUMBER)
+			return true;
+		
+		exprInt = var.getNumberValue();
+		return false;
+	}
+	
+	/**
+	 * Helper para superinstrucciones: Crear el handler especializado de
+	 * una instruccin.
+	 * 
+	 * @param st      instruccin
+	 * @param fusion  forma de la instruccin
+	 * @return  handler
+	 */
+	private Runnable fusedStatement(final TinyDevStatement st, Fusion fusion) {
+		
+		switch(fusion) {
+		
+			case SET_STEP :
+				
+				final int slot = st.getIdentifier().getSlot();
+				final TinyDevExpr step = st.getArg(0).getArg(1);
+				final boolean minus = st.getArg(0).getOperator() == TinyDevOperator.Id.MINUS;
+				
+				return new Runnable() {
+					public void run() {
+						TinyDevVariable var = variables[slot];
+						if(var == null || var.getType() != DataType.NUMBER || fusedNumber(step)) {
+							command(st);
+							return;
+						}
+						var.setNumberValue(minus ? var.getNumberValue() - exprInt : var.getNumberValue() + exprInt);
+					}
+				};
+				
+			case IF_KEY :
+				
+				final String key = keyLiteral(st.getArg(0)).getValue();
+				final boolean equal = st.getArg(0).getOperator() == TinyDevOperator.Id.EQUAL;
+				
+				return new Runnable() {
+					public void run() {
+						doIf(st, pollKey().equals(key) == equal ? 1 : 0);
+					}
+				};
+				
+			case IMAGE :
+				
+				final int image = st.getArg(2).getIdentifier().getSlot();
+				
+				return new Runnable() {
+					public void run() {
+						TinyDevVariable var = variables[image];
+						if(var == null || var.getType() != DataType.IMAGE || var.getObjectValue() == null
+								|| fusedNumber(st.getArg(0))) {
+							command(st);
+							return;
+						}
+						int x = exprInt;
+						if(fusedNumber(st.getArg(1))) {
+							command(st);
+							return;
+						}
+						if(io.drawImage(x, exprInt, var.getObjectValue()))
+							errorId = Error.BAD_SCREEN_POSITION;
+					}
+				};
+				
+			default :
+				
+				final TinyDevExpr cond = st.getArg(0);
+				final boolean isDo = st.getCode() == TinyDevKeyword.Id.DO;
+				
+				return new Runnable() {
+					public void run() {
+						if(fusedNumber(cond.getArg(0))) {
+							command(st);
+							return;
+						}
+						int left = exprInt;
+						if(fusedNumber(cond.getArg(1))) {
+							command(st);
+							return;
+						}
+						int test = compare(cond.getOperator(), Integer.compare(left, exprInt)) ? 1 : 0;
+						if(isDo)
+							doDo(st, test);
+						else
+							doLoop(st, test);
+					}
+				};
+		}
+	}
+	
+	/**
+	 * Ejecutar una instruccin compilada. En caso de errores,
+	 * fija la variable errorId.
+	 * 
+	 * @param st  instruccin a ejecutar
+	 */
+	private void command(TinyDevStatement st) {
+		
+		// Si la instruccin tiene errores de compilacin,
+		// indicarlo ahora
+		if(st.getError() != Error.SUCCESS) {
+			
+			// Si el error est despus de la condicin de un IF,
+			// calcularla antes, como el intrprete de tokens: sus
+			// propios errores (variable que no existe, tipo...) se
+			// indican primero
+			if(st.getCode() == TinyDevKeyword.Id.IF && st.getArgCount() == 1
+					&& exprBoolean(st.getArg(0)))
+				return;
+			
+			errorId = st.getError();
+			return;
+		}
+	
+		// Ejecutar la instruccin correspondiente (la lista
+		// est en orden alfabtico)
+		switch(st.getCode()) {
+		
+			case BREAK :
+				doBreak(st);
+				break;
+			case CALL :
+				doCall(st);
+				break;
+			case CASE :
+				doCase(st);
+				break;
+			case CLEAR :
+				doClear();
+				break;
+			case CURSOR :
+				doCursor(st);
+				break;
+			case DIALOG :
+				doDialog(st);
+				break;
+			case DO :
+				doDo(st, -1);
+				break;
+			case ELLIPSE :
+				doEllipse(st);
+				break;				
+			case ELSE :
+				doElse(st);
+				break;
+			case END :
+				doEnd(st);
+				break;
+			case FONT :
+				doFont(st);
+				break;
+			case FOR :
+				doFor(st);
+				break;
+			case IF :
+				doIf(st, -1);
+				break;
+			case IMAGE :
+				doImage(st);
+				break;				
+			case JUMP :
+				doJump(st);
+				break;
+			case LINE :
+				doLine(st);
+				break;				
+			case LOOP :
+				doLoop(st, -1);
+				break;
+			case NEXT :
+				doNext(st);
+				break;
+			case PAPER :
+				doPaper(st);
+				break;
+			case PEN :
+				doPen(st);
+				break;
+			case POINT :
+				doPoint(st);
+				break;				
+			case PRINT :
+				doPrint(st);
+				break;
+			case RANDOM :
+				doRandom(st);
+				break;
+			case RECTANGLE :
+				doRectangle(st);
+				break;				
+			case RETURN :
+				doReturn();
+				break;
+			case SCREEN :
+				doScreen(st);
+				break;
+			case SELECT :
+				doSelect(st);
+				break;
+			case SET :
+				doSet(st);
+				break;
+			case SOUND :
+				doSound(st);
+				break;
+			case VARIABLE :
+				doVariable(st);
+				break;
+			case WAIT :
+				doWait(st);
+				break;
+			case WRITEFILE :
+				doWriteFile(st);
+				break;
+			case WRITEIMAGE :
+				doWriteImage(st);
+				break;
+				
+			// Instruccin no ejecutable (funcin), o no reconocida
+			default :
+				
+				// Indicar error
+				syntaxError();
+				break;
+		}
+	}
+	
+	/**
+	 * Buscar variable.
+	 * 
+	 * El tokenizador asigna a cada identificador un slot en la tabla de
+	 * variables, por lo que no es necesario buscarla por su nombre.
+	 * 
+	 * @param id  identificador de la variable
+	 * @return  variable, o null si no ha sido creada
+	 */
+	private TinyDevVariable findVariable(TinyDevIdentifier id) {
+		
+		return variables[id.getSlot()];
+	}
+	
+	/**
+	 * Buscar un place.
+	 * 
+	 * @param name  nombre del place
+	 * @return  place, o null si no ha sido encontrado
+	 */
+	private TinyDevPlace findPlace(String name) {
+		
+		// Recorrer la lista de places
+		for(TinyDevPlace pl : places) {
+			
+			// Comparar, ignorando maysculas / minsculas
+			if(pl.getName().equalsIgnoreCase(name)) {
+				
+				// Encontrado
+				return pl;
+			}
+		}
+		
+		// No encontrado
+		return null;
+	}
+
+	/**
+	 * Tokenizar todo el cdigo fuente. En caso de error, se
+	 * indicar en la variable errorId.
+	 * 
+	 * Si el cdigo fuente es grande, y est activada la tokenizacin en
+	 * paralelo, se reparte entre los procesadores (ver tokenizeParallel).
+	 * 
+	 * @param source  cdigo fuente
+	 * @return  lneas tokenizadas, o null en caso de error
+	 */
+	public ArrayList<TinyDevLine> tokenizeAll(ArrayList<String> source) {
+		
+		// Tokenizar en paralelo, si procede
+		if(parallelTokenizing && source.size() >= PARALLEL_TOKENIZE_LINES && ForkJoinPool.getCommonPoolParallelism() > 1)
+			return tokenizeParallel(source);
+		
+		// Tokenizar todas las lneas, una tras otra
+		TinyDevTokenizer tokenizer = new TinyDevTokenizer(identifiers);
+		
+		ArrayList<TinyDevLine> lines = tokenizer.tokenizeAll(source, 0, source.size());
+		
+		// Tomar el resultado
+		errorId = tokenizer.getErrorId();
+		lineNumber = tokenizer.getLineNumber();
+		posNumber = tokenizer.getPosNumber();
+		
+		return lines;
+	}
+	
+	/**
+	 * Tokenizar todo el cdigo fuente en paralelo. En caso de error, se
+	 * indicar en la variable errorId.
+	 * 
+	 * El cdigo fuente se divide en fragmentos, que se tokenizan a la vez
+	 * en el pool fork-join comn, cada uno con su propia tabla de
+	 * identificadores. Despus, se unen sus identificadores en el orden de
+	 * los fragmentos, de forma que cada uno recibe el mismo slot que si el
+	 * cdigo fuente se hubiera tokenizado lnea a lnea, y se sustituyen
+	 * en las lneas tokenizadas (tambin a la vez).
+	 * 
+	 * @param source  cdigo fuente
+	 * @return  lneas tokenizadas, o null en caso de error
+	 */
+	private ArrayList<TinyDevLine> tokenizeParallel(final ArrayList<String> source) {
+		
+		// Tamao de los fragmentos: unos cuantos por procesador, para repartir mejor el trabajo
+		int size = source.size();
+		int chunks = ForkJoinPool.getCommonPoolParallelism() * 4;
+		int chunkSize = Math.max(TOKENIZE_CHUNK_LINES, (size + chunks - 1) / chunks);
+		
+		// Crear un tokenizador para cada fragmento
+		final ArrayList<TinyDevTokenizer> tokenizers = new ArrayList<TinyDevTokenizer>();
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		
+		for(int first = 0; first < size; first += chunkSize) {
+			
+			final TinyDevTokenizer tokenizer = new TinyDevTokenizer(new HashMap<String, TinyDevIdentifier>());
+			final int from = first;
+			final int to = Math.min(first + chunkSize, size);
+			
+			tokenizers.add(tokenizer);
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					tokenizer.tokenizeAll(source, from, to);
+					return null;
+				}
+			});
+		}
+		
+		// Tokenizar los fragmentos
+		runParallel(tasks);
+		
+		// Unir los resultados, en orden
+		ArrayList<TinyDevLine> lines = new ArrayList<TinyDevLine>(size);
+		
+		tasks.clear();
+		
+		for(final TinyDevTokenizer tokenizer : tokenizers) {
+			
+			// Unir sus identificadores
+			final TinyDevIdentifier[] ids = tokenizer.merge(identifiers);
+			
+			// Si hubo un error, es el primero del cdigo fuente: abortar
+			if(tokenizer.getLines() == null) {
+				
+				errorId = tokenizer.getErrorId();
+				lineNumber = tokenizer.getLineNumber();
+				posNumber = tokenizer.getPosNumber();
+				
+				return null;
+			}
+			
+			// Sustituir despus sus identificadores en sus lneas
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					tokenizer.relink(ids);
+					return null;
+				}
+			});
+			
+			lines.addAll(tokenizer.getLines());
+		}
+		
+		runParallel(tasks);
+		
+		lineNumber = size;
+		
+		return lines;
+	}
+	
+	/**
+	 * Ejecutar unas tareas en el pool fork-join comn, y esperar a que
+	 * terminen.
+	 * 
+	 * @param tasks  tareas
+	 */
+	private void runParallel(List<Callable<Void>> tasks) {
+		
+		for(Future<Void> task : ForkJoinPool.commonPool().invokeAll(tasks)) {
+			try {
+				task.get();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch(ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+	
+	/**
+	 * Activar o desactivar la tokenizacin en paralelo de los
+	 * programas grandes. Por defecto, est activada.
+	 * 
+	 * @param parallel  true para activarla, false para desactivarla
+	 */
+	public void setParallelTokenizing(boolean parallel) {
+		
+		parallelTokenizing = parallel;
+	}
+	
+	/**
+	 * Activar o desactivar la compilacin a closures de las lneas
+	 * que se ejecutan muchas veces. Por defecto, est activada.
+	 * 
+	 * @param compiling  true para activarla, false para desactivarla
+	 */
+	public void setClosureCompiling(boolean compiling) {
+		
+		closureCompiling = compiling;
+	}
+	
+	/**
+	 * Activar o desactivar la optimizacin de los programas antes de
+	 * ejecutarlos. Por defecto, est activada.
+	 * 
+	 * @param optimize  true para activarla, false para desactivarla
+	 */
+	public void setOptimizing(boolean optimize) {
+		
+		optimizing = optimize;
+	}
+	
+	/**
+	 * Activar o desactivar las superinstrucciones: las formas de
+	 * instruccin ms frecuentes se ejecutan con un handler especializado.
+	 * Por defecto, estn activadas.
+	 * 
+	 * @param fuse  true para activarlas, false para desactivarlas
+	 */
+	public void setFusing(boolean fuse) {
+		
+		fusing = fuse;
+	}
+	
+	/**
+	 * Activar o desactivar el volcado en System.err de las lneas
+	 * reconocidas como superinstrucciones, al cargar cada programa.
+	 * Por defecto, est desactivado.
+	 * 
+	 * @param dump  true para activarlo, false para desactivarlo
+	 */
+	public void setFusionDump(boolean dump) {
+		
+		fusionDump = dump;
+	}
+	
+	// -------------------------
+	// I N S T R U C C I O N E S
+	// -------------------------
+	
+	// NOTA: Todos los mtodos que corresponden a instrucciones,
+	//       indican en la variable errorId los posibles errores.
+	
+	/**
+	 * Instruccin - Imprimir expresin textual:
+	 * 
+	 * PRINT {LEFT | CENTER | RIGHT} expresin_textual
+	 */
+	private void doPrint(TinyDevStatement st) {
+		
+		// Necesita texto
+		if(exprString(st.getArg(0)))
+			return;
+		
+		// Tomar mensaje
+		String text = (String) exprValue;
+		
+		// Calcular posicin X del mensaje, en base a la alineacin
+		if(st.getOption() == TinyDevKeyword.Id.CENTER || st.getOption() == TinyDevKeyword.Id.RIGHT) {
+			
+			// Posicin X
+			int x = 0;
+			
+			if(st.getOption() == TinyDevKeyword.Id.CENTER)
+				x = (io.getWidth() - io.getTextWidth(text)) / 2;  // CENTER
+			else
+				x = io.getWidth() - io.getTextWidth(text);    // RIGHT
+		
+			// Ir a la posicin
+			if(io.cursorTo(x, io.getRow())) {
+				
+				errorId = Error.BAD_SCREEN_POSITION;
+				return;
+			}
+		}
+
+		// Imprimir el mensaje
+		io.print(text);
+	}
+	
+	/**
+	 * Instruccin - Cambiar la fuente, su tamao y los atributos:
+	 * 
+	 * FONT nombre | tamao | PLAIN | BOLD | ITALIC | TRANSPARENT {...}
+	 */
+	private void doFont(TinyDevStatement st) {
+		
+		// Recorrer los nombres y tamaos de la fuente
+		for(int i = 0; i < st.getArgCount(); ++i) {
+				
+			// Retornar, si no es una expresin
+			if(expr(st.getArg(i)))
+				return;
+			
+			// Comprobar si es una expresin textual (nombre de la fuente),
+			// o numrica (tamao de la fuente), y actuar en consecuencia
+			if(exprType == DataType.STRING) {
+				
+				io.setFontFace((String) exprValue);    // Cambiar nombre
+				
+			} else if(exprType == DataType.NUMBER) {
+				
+				io.setFontSize(exprInt);       // Cambiar tamao
+				
+				// FIXME : Comprobar si el tamao es vlido
+				
+			} else {
+				
+				// Argumento errneno, finalizar
+				errorId = Error.BAD_ARGUMENT;
+				
+				return;
+			}
+		}
+		
+		// Si se han indicado atributos, fijarlos
+		if(st.getStyle() != -1)
+			io.setFontStyle(st.getStyle());
+	}
+	
+	/**
+	 * Instruccin - Borrar la pantalla, y situar el cursor en 0,0:
+	 * 
+	 * CLEAR
+	 */
+	private void doClear() {
+		
+		// Borrar la pantalla
+		io.clear();
+	}
+	
+	/**
+	 * Instruccin - Posicionar el cursor:
+	 * 
+	 * CURSOR TO x y
+	 */
+	private void doCursor(TinyDevStatement st) {
+		
+		// Tomar valor numrico
+		if(exprNumber(st.getArg(0)))
+			return;
+		
+		// Tomar el valor de X
+		int x = exprInt;
+		
+		// Tomar valor numrico
+		if(exprNumber(st.getArg(1)))
+			return;
+		
+		// Tomar el valor de Y
+		int y = exprInt;
+		
+		// Situar el cursor en X,Y
+		if(io.cursorTo(x, y)) {
+			errorId = Error.BAD_SCREEN_POSITION;
+		}
+	}
+	
+	/**
+	 * Instruccin - Cambiar el color de pluma:
+	 * 
+	 * PEN color
+	 */
+	private void doPen(TinyDevStatement st) {
+		
+		// Tomar valor de color como cadena de texto
+		if(exprString(st.getArg(0)))
+			return;
+		
+		penName = (String) exprValue;
+		
+		// Cambiar color
+		if(io.setPen(penName))
+			errorId = Error.BAD_COLOR;
+	}
+	
+	/**
+	 * Instruccin - Cambiar el color de papel:
+	 * 
+	 * PAPER color
+	 */
+	private void doPaper(TinyDevStatement st) {
+		
+		// Tomar color como cadena de texto
+		if(exprString(st.getArg(0)))
+			return;
+		
+		paperName = (String) exprValue;
+		
+		// Cambiar el color
+		if(io.setPaper(paperName))
+			errorId = Error.BAD_COLOR;
+	}
+	
+	/**
+	 * Instruccin - Cuadro de dilogo:
+	 * 
+	 * DIALOG INPUT | INFORMATION | WARNING | ERROR | YESNO | OKCANCEL expresin_textual
+	 */
+	private void doDialog(TinyDevStatement st) {
+		
+		// Necesita texto
+		if(exprString(st.getArg(0)))
+			return;
+		
+		// Tomar mensaje
+		String msg = (String) exprValue;
+		
+		// Si no se indic un tipo de mensaje vlido, error
+		if(st.getOption() == null) {
+			
+			// Error, argumento errneo
+			errorId = Error.BAD_ARGUMENT;
+			return;
+		}
+		
+		// Llamar al cuadro de dilogo correspondiente
+		switch(st.getOption()) {
+			case INPUT :
+				dialogInput = io.readLine(msg, loc.getString("Input"));
+				break;
+			case INFORMATION :
+				io.dialogInformation(msg, loc.getString("Information"));
+				break;
+			case WARNING :
+				io.dialogWarning(msg, loc.getString("Warning"));
+				break;
+			case ERROR :
+				io.dialogError(msg, loc.getString("Error"));
+				break;
+			case YESNO :
+				dialogInput = io.dialogYesNo(msg, loc.getString("Confirm"));
+				break;
+			case OKCANCEL :
+				dialogInput = io.dialogOkCancel(msg, loc.getString("Confirm"));
+				break;
+			default :
+				// Error, argumento errneo
+				errorId = Error.BAD_ARGUMENT;
+				break;
+		}
+	}
+
+	/**
+	 * Instruccin - Crear una variable o array:
+	 * 
+	 * VARIABLE tipo nombre {= valor}
+	 * VARIABLE tipo nombre[tamao]
+	 */
+	private void doVariable(TinyDevStatement st) {
+		
+		// Tomar tipo de dato
+		DataType dataType;
+		
+		switch(st.getOption()) {
+			case NUMBER :
+				dataType = DataType.NUMBER;
+				break;
+			case STRING :
+				dataType = DataType.STRING;
+				break;
+			case IMAGE :
+				dataType = DataType.IMAGE;
+				break;
+			case SOUND :
+				dataType = DataType.SOUND;
+				break;
+			default :
+				// Error, tipo errneo --- no debera ocurrir
+				errorId = Error.BAD_DATA_TYPE;
+				return;
+		}
+		
+		// Tomar el nombre del identificador
+		String name = st.getIdentifier().getName();
+		
+		// Ver si la variable ya existe
+		if(findVariable(st.getIdentifier()) != null) {
+			
+			// Error, ya existe
+			errorId = Error.VARIABLE_EXISTS;
+			return;
+		}
+		
+		// Por defecto, no es un array
+		boolean isArray = false;
+		int arraySize = -1;
+		
+		// Comprobar si es un array
+		if(st.getIndex() != null) {
+			
+			// Tomar tamao
+			if(exprNumber(st.getIndex()))
+				return;
+			
+			// Es un array
+			isArray = true;
+			arraySize = exprInt;
+			
+			// Comprobar si el tamao es vlido (0 indica array vaco)
+			if(arraySize < 0) {
+				
+				// Error, tamao no vlido
+				errorId = Error.BAD_ARRAY_SIZE;
+				return;
+			}
+		}
+		
+		// Indicar si se va a inicializar con un valor
+		boolean hasValue = st.getArgCount() > 0;
+		
+		// Variable a crear
+		TinyDevVariable var = null;
+		
+		// Crear la variable, segn el tipo de dato, e inicializar
+		// al valor por defecto, o al indicado
+		switch((isArray ? DataType.ARRAY : dataType)) {
+			case NUMBER :
+				exprInt = 0;
+				if(hasValue) {
+					if(exprNumber(st.getArg(0)))
+						return;
+				}
+				var = new TinyDevVariable(name, DataType.NUMBER, exprInt);
+				break;
+			case STRING :
+				exprValue = (Object) "";
+				if(hasValue) {
+					if(exprString(st.getArg(0)))
+						return;
+				}
+				if(reserveString(null, exprValue))
+					return;
+				var = new TinyDevVariable(name, DataType.STRING, (String) exprValue);
+				break;
+			case IMAGE :
+				exprValue = (Object) null;
+				if(hasValue) {
+					if(exprImage(st.getArg(0)))
+						return;
+				}
+				var = new TinyDevVariable(name, DataType.IMAGE, exprValue);
+				break;
+			case SOUND :
+				exprValue = (Object) null;
+				if(hasValue) {
+					if(exprSound(st.getArg(0)))
+						return;
+				}
+				var = new TinyDevVariable(name, DataType.SOUND, exprValue);
+				break;
+			case ARRAY :
+				if(hasValue) {
+					if(expr(st.getArg(0)))
+						return;
+					if(exprType != DataType.ARRAY || exprSubType != dataType) {
+						errorId = Error.BAD_DATA_TYPE;
+						return;
+					}
+					if(reserveMemory(arrayMemory(dataType, exprValue)))
+						return;
+					var = new TinyDevVariable(name, DataType.ARRAY, dataType, 0);
+					var.copyArrayValue(exprValue);
+				}
+				else {
+					if(reserveMemory((long) arraySize * elementSize(dataType)))
+						return;
+					var = new TinyDevVariable(name, DataType.ARRAY, dataType, arraySize);
+				}
+				break;
+			default :
+				
+				// Tipo de dato desconocido, error --- no debera ocurrir
+				errorId = Error.BAD_DATA_TYPE;
+				return;
+		}
+		
+		// Aadir la variable, en el slot de su identificador
+		variables[st.getIdentifier().getSlot()] = var;
+	}
+	
+	/**
+	 * Instruccin - Asignar un valor a una variable o elemento de un array:
+	 * 
+	 * SET variable = valor
+	 * SET array[ndice] = valor
+	 */
+	private void doSet(TinyDevStatement st) {
+		
+		// Buscar la variable o array
+		TinyDevVariable var = findVariable(st.getIdentifier());
+		
+		// Abortar, si la variable o array no existe
+		if(var == null) {
+			
+			errorId = Error.VARIABLE_NOT_EXISTS;
+			return;
+		}
+		
+		boolean isArray = false;  // Por defecto, no es un array
+		int index = 0;            // Indice para el array
+		
+		// Ver si es un array
+		if(st.getIndex() != null) {
+			
+			// Calcular el ndice
+			if(exprNumber(st.getIndex()))
+				return;
+			
+			// Si la variable no es un array, error
+			if(var.getType() != DataType.ARRAY) {
+				
+				errorId = Error.BAD_DATA_TYPE;
+				return;
+			}
+			
+			// Tomar ndice
+			index = exprInt;
+			
+			// Comprobar que el ndice es correcto
+			if(index < 0 || index >= var.getSize()) {
+				
+				errorId = Error.OUT_OF_BOUNDS;
+				return;
+			}
+			
+			// Ok, es un array
+			isArray = true;
+		}
+		
+		// Tomar tipo del dato
+		DataType dt = isArray ? var.getSubType() : var.getType();
+		
+		// Tomar valor, dependiendo del tipo de dato
+		switch(dt) {
+			case NUMBER :
+				if(exprNumber(st.getArg(0)))
+					return;
+				break;
+			case STRING :
+				if(exprString(st.getArg(0)))
+					return;
+				break;
+			case IMAGE :
+				if(exprImage(st.getArg(0)))
+					return;
+				break;
+			case SOUND :
+				if(exprSound(st.getArg(0)))
+					return;
+				break;
+			case ARRAY :
+				if(expr(st.getArg(0)))
+					return;
+				if(exprType != DataType.ARRAY || exprSubType != var.getSubType()) {
+					errorId = Error.BAD_DATA_TYPE;
+					return;
+				}
+				break;
+			default :
+				// Tipo de dato desconocido
+				errorId = Error.BAD_DATA_TYPE;
+				return;
+		}
+		
+		// Si es un array, asignarle el valor y terminar
+		if(isArray) {
+			
+			if(dt == DataType.NUMBER)
+				var.getNumberArray()[index] = exprInt;
+			else {
+				// Reservar memoria para el string, si lo es
+				if(reserveString(var.getObjectArray()[index], exprValue))
+					return;
+				
+				var.getObjectArray()[index] = exprValue;
+			}
+			
+			return;
+		}
+		
+		// Asignar valor
+		if(dt == DataType.ARRAY) {
+			// Es un array, reservar memoria y copiar sus elementos
+			if(reserveMemory(arrayMemory(var.getSubType(), exprValue) - arrayMemory(var.getSubType(), var.getArrayValue())))
+				return;
+			
+			var.copyArrayValue(exprValue);
+		}
+		else if(dt == DataType.NUMBER) {
+			// Es una variable numrica, asignarle el valor
+			var.setNumberValue(exprInt);
+		}
+		else {
+			// Es una variable, reservar memoria para el string, si lo es,
+			// y asignarle el valor
+			if(reserveString(var.getObjectValue(), exprValue))
+				return;
+			
+			var.setObjectValue(exprValue);
+		}
+	}
+
+	/**
+	 * Helper para memoria: Reservar memoria, dentro del lmite de memoria del
+	 * programa; si es negativa, se libera.
+	 * 
+	 * En caso de error, lo indica en la variable errorId.
+	 * 
+	 * @param bytes  memoria, en bytes
+	 * @return  true en caso de error, false en caso contrario
+	 */
+	private boolean reserveMemory(long bytes) {
+		
+		// Memoria ocupada tras la reserva
+		long used = memoryUsed + bytes;
+		
+		// Comprobar el lmite
+		if(bytes > 0 && used > memoryLimit) {
+			errorId = Error.OUT_OF_MEMORY;
+			return true;
+		}
+		
+		memoryUsed = used;
+		return false;
+	}
+	
+	/**
+	 * Helper para memoria: Reservar la memoria que ocupa el valor de una
+	 * variable o elemento de un array, liberando la que ocupaba su valor
+	 * anterior. Slo ocupan memoria los strings.
+	 * 
+	 * En caso de error, lo indica en la variable errorId.
+	 * 
+	 * @param oldValue  valor anterior (null si es una variable nueva)
+	 * @param newValue  valor nuevo
+	 * @return  true en caso de error, false en caso contrario
+	 */
+	private boolean reserveString(Object oldValue, Object newValue) {
+		
+		return reserveMemory(stringMemory(newValue) - stringMemory(oldValue));
+	}
+	
+	/**
+	 * Helper para memoria: Devolver la memoria que ocupa un string, o los
+	 * strings de los elementos de un array.
+	 * 
+	 * @param value  valor
+	 * @return  memoria, en bytes (0 si no es un string, ni un array de strings)
+	 */
+	private static long stringMemory(Object value) {
+		
+		if(value instanceof String)
+			return (long) ((String) value).length() * CHAR_SIZE;
+		
+		long bytes = 0;
+		
+		if(value instanceof Object[]) {
+			for(Object o : (Object []) value) {
+				if(o instanceof String)
+					bytes += (long) ((String) o).length() * CHAR_SIZE;
+			}
+		}
+		
+		return bytes;
+	}
+	
+	/**
+	 * Helper para memoria: Devolver la memoria que ocupa el valor de un
+	 * array: sus elementos, y sus strings, si los tiene.
+	 * 
+	 * @param subtype  tipo de los elementos
+	 * @param arr      valor del array: int[], o de otro tipo
+	 * @return  memoria, en bytes
+	 */
+	private static long arrayMemory(DataType subtype, Object arr) {
+		
+		return (long) arrayLength(arr) * elementSize(subtype) + stringMemory(arr);
+	}
+	
+	/**
+	 * Helper para memoria: Devolver la memoria que ocupa un elemento de un
+	 * array, sin contar su string, si lo es.
+	 * 
+	 * @param subtype  tipo de los elementos
+	 * @return  memoria, en bytes
+	 */
+	private static int elementSize(DataType subtype) {
+		
+		return subtype == DataType.NUMBER ? NUMBER_ELEMENT_SIZE : REFERENCE_ELEMENT_SIZE;
+	}
+	
+	/**
+	 * Helper para arrays: Devolver el n de elementos del valor de un array.
+	 * 
+	 * @param arr  valor del array: int[], o de otro tipo
+	 * @return  n de elementos
+	 */
+	private static int arrayLength(Object arr) {
+		
+		return arr instanceof int[] ? ((int []) arr).length : ((Object []) arr).length;
+	}
+	
+	/**
+	 * Instruccin - Ejecucin condicional simple:
+	 * 
+	 * IF condicin THEN instruccin
+	 * {ELSE IF condicin THEN instruccin}
+	 * {ELSE instruccin}
+	 * 
+	 * Ejecucin condicional de bloque:
+	 * 
+	 * IF condicin THEN
+	 *     instrucciones
+	 * {ELSE IF condicin THEN
+	 *     instrucciones}
+	 * {ELSE
+	 *     instrucciones}
+	 * END IF
+	 * 
+	 * No se pueden mezclar tipos simples y de bloque.
+	 * 
+	 * @param st    instruccin
+	 * @param cond  resultado de la condicin, si ya se ha calculado (1 cierta,
+	 *              0 falsa), o -1 para calcularla
+	 */
+	private void doIf(TinyDevStatement st, int cond) {
+
+		// Tomar valor de la condicin
+		if(cond < 0 && exprBoolean(st.getArg(0)))
+			return;
+		
+		// Tomar el resultado de la condicin
+		boolean test = (cond < 0 ? exprBool : cond != 0);
+		
+		// Si lleva instruccin, es un IF simple
+		if(st.getNext() != null) {
+			
+			// Ejecutar la instruccin si la condicin es cierta
+			if(test) {
+				command(st.getNext());
+			}
+
+			// Indicar el resultado de la condicin
+			ifTrue = test;
+			
+			// Finalizar
+			return;
+		}
+		
+		// Es un IF de bloque
+
+		// Comprobar si hay IF de bloque disponibles
+		if(ifBlockLevel == MAX_IF_BLOCK_LEVEL) {
+			
+			// No, error
+			errorId = Error.TOO_MANY_IF;
+			return;
+		}
+		
+		// Aadir nivel de IF
+		ifBlockTrue[ifBlockLevel++] = test;
+
+		// Si la condicin es falsa, saltar las
+		// instrucciones dentro del bloque IF
+		if(!test) {
+			exitIf(st);			
+		}
+	}
+	
+	/**
+	 * Instruccin - Ejecucin condicional simple:
+	 * 
+	 * IF condicin THEN instruccin
 	 * {ELSE IF condicin THEN instruccin}
 	 * {ELSE instruccin}
 	 * 
@@ -1865,7 +4704,7 @@ public class TinyDevLang {
 	 * 
 	 * No se pueden mezclar tipos simples y de bloque.
 	 */
-	private void doElse() {
+	private void doElse(TinyDevStatement st) {
 
 		// Resultado de la condicin del IF anterior
 		boolean wasTrue = false;
@@ -1879,12 +4718,12 @@ public class TinyDevLang {
 			// Si la condicin de IF es cierta, saltar
 			// las instrucciones del bloque ELSE
 			if(wasTrue) {
-					exitIf(false);
+					exitIf(st);
 					return;
 			}
 			
 			// Si es un ELSE sin argumentos, retornar
-			if(!tokensLeft()) {
+			if(st.getNext() == null) {
 				return;
 			}
 			
@@ -1892,7 +4731,7 @@ public class TinyDevLang {
 			
 			// Ha de ser un ELSE IF
 			
-			if(!tokenIsCommandOf(exprTokens.get(exprIndex), TinyDevKeyword.Id.IF)) {
+			if(st.getNext().getCode() != TinyDevKeyword.Id.IF) {
 				syntaxError();
 				return;
 			}
@@ -1908,7 +4747,7 @@ public class TinyDevLang {
 			
 		} else {
 			
-			if(!tokensLeft()) {
+			if(st.getNext() == null) {
 				
 				errorId = Error.IF_NOT_ACTIVE;
 				return;
@@ -1916,117 +4755,46 @@ public class TinyDevLang {
 			wasTrue = ifTrue;
 		}
 
-		// Comprobar si es ELSE de bloque
-		/***************************
-		if(!tokensLeft()) {
-			
-			// Si no hay IFs activos, error
-			if(ifBlockLevel == 0) {
-				
-				errorId = Error.IF_NOT_ACTIVE;
-				return;
-			}
-			
-			// Si la condicin de IF es cierta, saltar
-			// las instrucciones del bloque ELSE
-			if(ifBlockTrue[ifBlockLevel - 1]) {
-				exitIf(false);
-			}
-			
-			// Finalizar
-			return;
-		}
-		*************************/
 		// Es un ELSE simple: ELSE instrucciones
 
 		// Ejecutar las instrucciones, si la condicin
 		// del IF simple es falsa
 		if(!wasTrue) {
-			
-			// Crear array de Tokens
-			ArrayList<TinyDevToken> tks = new ArrayList<TinyDevToken>();
-			
-			// Tomar los Tokens de la instruccin ELSE
-			for(int i = 1; i < exprTokens.size(); ++i) {
-				
-				// Aadir Token
-				tks.add(exprTokens.get(i));
-			}
-			
-			// Crear lnea de instrucciones y ejecutarla
-			command(new TinyDevLine(lineNumber, tks));
+			command(st.getNext());
 		}
 	}
 	
 	/**
 	 * Helper para IF / ELSE: Salir de un bloque IF.
 	 * 
-	 * @param isIf  true si es if quien lo llama, false para else
+	 * Salta a la lnea destino de la instruccin, calculada antes de la
+	 * ejecucin: si es un ELSE, se ejecutar a continuacin; si es un
+	 * END IF, se sale del bloque.
+	 * 
+	 * @param st  instruccin IF o ELSE
 	 */
-	private void exitIf(boolean isIf) {
+	private void exitIf(TinyDevStatement st) {
 		
-		TinyDevLine line;                       // Lnea de instrucciones		
-		int lines = source_tokens.size();  // N de lneas del cdigo
-		int level = ifBlockLevel;          // Nivel de if
-
-		// Recorrer las lneas de cdigo tokenizado, a partir de
-		// la siguiente a la actual
-		for(int i = lineNumber + 1; i < lines; ++i) {
-			
-			// Tomar lnea tokenizada
-			line = source_tokens.get(i);
+		// Lnea destino
+		int target = st.getTarget();
+		
+		// Si no la hay, error -- no debera ocurrir
+		if(target < 0) {
+			errorId = Error.MISSING_END_IF;
+			return;
+		}
+		
+		// Comprobar si es un ELSE
+		if(source_tokens.get(target).getStatement().getCode() == TinyDevKeyword.Id.ELSE) {
 			
-			// Tratarla si no est vaca
-			if(!line.getTokens().isEmpty()) {
-				
-				// Tomar el 1er token
-				TinyDevToken tok = line.getTokens().get(0);
-				
-				// Si el token es un comando, ver si es
-				// uno de: IF, ELSE, END IF.
-				if(tok.getType() == TinyDevToken.Id.KEYWORD) {
-					
-					// Tomar comando
-					TinyDevKeyword.Id type = tok.getKeyword().getCode();
-					
-					// Comprobar si es END IF
-					if(type == TinyDevKeyword.Id.END) {
-						if(line.getTokens().size() > 1) {
-							if(line.getTokens().get(1).getType() == TinyDevToken.Id.KEYWORD) {
-								if(line.getTokens().get(1).getKeyword().getCode() == TinyDevKeyword.Id.IF) {
-									
-									// Retornar, si es un END IF del mismo nivel
-									if(level == ifBlockLevel) {
-										lineNumber = i;
-										--ifBlockLevel;
-										return;
-									}
-									
-									// Es un END IF de otro nivel, decrementar y continuar buscando
-									--level;
-								}
-							}
-						}
-					// Comprobar si es IF --- FIXME: Comprobar si es un IF simple
-					} else if(type == TinyDevKeyword.Id.IF) {
-						
-						// Incrementar nivel y continuar buscando
-						++level;
-					// Comprobar si es ELSE y el mtodo lo llama un IF  --- FIXME: Comprobar si es un ELSE simple
-					} else if(isIf && type == TinyDevKeyword.Id.ELSE) {
-						
-						// Retornar, si es un ELSE del mismo nivel
-						if(level == ifBlockLevel) {
-							lineNumber = i - 1;
-							return;
-						}
-					}
-				}
-			}
+			// Ejecutar el ELSE
+			lineNumber = target - 1;
+			return;
 		}
 		
-		// Error, se ha llegado al final del cdigo
-		errorId = Error.MISSING_END_IF;
+		// Es el END IF, salir del bloque
+		lineNumber = target;
+		--ifBlockLevel;
 	}
 	
 	/**
@@ -2041,8 +4809,12 @@ public class TinyDevLang {
 	 * DO WHILE | UNTIL condicin
 	 *    ...
 	 * LOOP
+	 * 
+	 * @param st    instruccin
+	 * @param cond  resultado de la condicin, si ya se ha calculado (1 cierta,
+	 *              0 falsa), o -1 para calcularla
 	 */
-	private void doDo() {
+	private void doDo(TinyDevStatement st, int cond) {
 		
 		// Por defecto, es DO no es nuevo
 		boolean flagNew = false;
@@ -2061,11 +4833,12 @@ public class TinyDevLang {
 			// Crear nuevo nivel de DO
 			doLineNumber[doLevel] = lineNumber;
 			doIfBlockLevel[doLevel] = ifBlockLevel;
+			doFor[doLevel] = false;
 			flagNew = true;
 		}
 		
 		// Comprobar si es DO
-		if(!tokensLeft()) {
+		if(st.getOption() == null) {
 			
 			// S, indicarlo
 			if(flagNew) {
@@ -2082,7 +4855,7 @@ public class TinyDevLang {
 	    // DO UNTIL expresin
 		
 		// Comprobar el resultado de la expresin
-		boolean test = testDo();
+		boolean test = testDo(st, cond);
 		
 		// Continuar si no hubo errores
 		if(errorId == Error.SUCCESS) {
@@ -2095,7 +4868,7 @@ public class TinyDevLang {
 			
 			// Si la condicin es falsa, salir del bucle
 			if(!test)
-				exitDo();
+				exitDo(st.getTarget());
 		}
 	}
 	
@@ -2111,8 +4884,12 @@ public class TinyDevLang {
 	 * DO WHILE | UNTIL condicin
 	 *    ...
 	 * LOOP
+	 * 
+	 * @param st    instruccin
+	 * @param cond  resultado de la condicin, si ya se ha calculado (1 cierta,
+	 *              0 falsa), o -1 para calcularla
 	 */
-	private void doLoop() {
+	private void doLoop(TinyDevStatement st, int cond) {
 		
 		// Si no hay DO activo, abortar
 		if(doLevel == 0) {
@@ -2120,8 +4897,14 @@ public class TinyDevLang {
 			return;
 		}
 		
+		// Si el bucle es un FOR, error
+		if(doFor[doLevel - 1]) {
+			errorId = Error.DO_LOOP_MISMATCH;
+			return;
+		}
+		
 		// Comprobar si es LOOP sin condicin
-		if(!tokensLeft()) {
+		if(st.getOption() == null) {
 			
 			// Si el DO lleva la condicin, saltar a la lnea
 			// del DO, de lo contrario, error
@@ -2146,14 +4929,145 @@ public class TinyDevLang {
 		}
 		
 		// Comprobar el resultado de la expresin
-		if(testDo())
+		if(testDo(st, cond))
 			lineNumber = doLineNumber[doLevel - 1] - 1;  // Verdadera: Saltar a la lnea del DO
+		else if(errorId == Error.SUCCESS) {
+			// Falsa: Salir del bucle, que termina en este LOOP
+			exitDo(lineNumber);
+		}
+	}
+	
+	/**
+	 * Instruccin - Iniciar un bucle con contador:
+	 * 
+	 * FOR variable = inicio TO final {STEP incremento}
+	 *    ...
+	 * NEXT
+	 * 
+	 * El inicio, el final y el incremento se calculan una sola vez. Si el
+	 * incremento es positivo, el bucle se ejecuta mientras el contador sea
+	 * menor o igual que el final; si es negativo, mientras sea mayor o igual.
+	 * 
+	 * @param st  instruccin
+	 */
+	private void doFor(TinyDevStatement st) {
+		
+		// Buscar la variable
+		TinyDevVariable var = findVariable(st.getIdentifier());
+		
+		// Abortar, si la variable no existe
+		if(var == null) {
+			
+			errorId = Error.VARIABLE_NOT_EXISTS;
+			return;
+		}
+		
+		// Ha de ser numrica
+		if(var.getType() != DataType.NUMBER) {
+			
+			errorId = Error.BAD_DATA_TYPE;
+			return;
+		}
+		
+		// Calcular el inicio y el final
+		if(exprNumber(st.getArg(0)))
+			return;
+		
+		int first = exprInt;
+		
+		if(exprNumber(st.getArg(1)))
+			return;
+		
+		int last = exprInt;
+		
+		// Calcular el incremento, si lo hay; no puede ser 0
+		int step = 1;
+		
+		if(st.getArgCount() > 2) {
+			
+			if(exprNumber(st.getArg(2)))
+				return;
+			
+			if((step = exprInt) == 0) {
+				
+				errorId = Error.BAD_ARGUMENT;
+				return;
+			}
+		}
+		
+		// Comprobar si es un FOR nuevo; si no lo es (se ha vuelto a su
+		// lnea con un JUMP), se reinicia en el mismo nivel
+		if(doLevel == 0 || lineNumber != doLineNumber[doLevel - 1]) {
+
+			// Comprobar si se pueden crear ms
+			if(doLevel == MAX_DO_LEVEL) {
+				
+				// No hay niveles disponibles, error
+				errorId = Error.TOO_MANY_DO;
+				return;
+			}
+			
+			// Crear nuevo nivel de DO
+			doLineNumber[doLevel] = lineNumber;
+			doIfBlockLevel[doLevel] = ifBlockLevel;
+			doAlone[doLevel] = false;
+			doFor[doLevel++] = true;
+		}
+		
+		// Iniciar el contador
+		int level = doLevel - 1;
+		
+		forVariable[level] = var;
+		forLimit[level] = last;
+		forStep[level] = step;
+		
+		var.setNumberValue(first);
+		
+		// Si el contador ya ha pasado del final, salir del bucle
+		if(step > 0 ? first > last : first < last)
+			exitDo(st.getTarget());
+	}
+	
+	/**
+	 * Instruccin - Siguiente vuelta de un bucle con contador:
+	 * 
+	 * NEXT
+	 * 
+	 * El contador se incrementa desde el valor actual de la variable, que
+	 * se puede haber cambiado dentro del bucle. Al terminar el bucle, la
+	 * variable conserva el valor de la ltima vuelta.
+	 * 
+	 * @param st  instruccin
+	 */
+	private void doNext(TinyDevStatement st) {
+		
+		// Si no hay bucle activo, abortar
+		if(doLevel == 0) {
+			errorId = Error.DO_NOT_ACTIVE;
+			return;
+		}
+		
+		int level = doLevel - 1;
+		
+		// Si el bucle no es un FOR, error
+		if(!doFor[level]) {
+			errorId = Error.DO_LOOP_MISMATCH;
+			return;
+		}
+		
+		// Incrementar el contador, sin desbordamientos
+		long next = (long) forVariable[level].getNumberValue() + forStep[level];
+		
+		if(forStep[level] > 0 ? next <= forLimit[level] : next >= forLimit[level]) {
+			
+			// Seguir: saltar a la lnea siguiente a la del FOR; el executor
+			// la incrementar
+			forVariable[level].setNumberValue((int) next);
+			lineNumber = doLineNumber[level];
+		}
 		else {
-			// Falsa: Salir del bucle
-			--lineNumber; // exitDo() busca a partir de la lnea actual, as que debemos decrementarla para que encuentre este LOOP
-			exitDo();
-			//--doLevel;
-			//ifBlockLevel = doIfBlockLevel[doLevel];
+			// Salir del bucle, que termina en este NEXT
+			exitDo(lineNumber);
 		}
 	}
 	
@@ -2162,11 +5076,7 @@ public class TinyDevLang {
 	 * 
 	 * BREAK
 	 */
-	private void doBreak() {
-		
-		// Necesita final, pues no tiene argumentos
-		if(needEnd())
-			return;
+	private void doBreak(TinyDevStatement st) {
 		
 		// Comprobar que hay algn bucle activo
 		if(doLevel == 0) {
@@ -2175,64 +5085,26 @@ public class TinyDevLang {
 		}
 		
 		// Salir del bucle
-		exitDo();
+		exitDo(st.getTarget());
 	}
 	
 	/**
 	 * Helper para DO / LOOP: Salir de un bucle.
+	 * 
+	 * @param target  lnea del LOOP, o -1 si no se encontr
 	 */
-	private void exitDo() {
-		
-		TinyDevLine line;		               // Lnea de tokens
-		int lines = source_tokens.size();  // N de lneas del cdigo
-		int level = doLevel;               // Nivel del bucle
+	private void exitDo(int target) {
 		
-		// Recorrer todas las lneas, desde la posicin siguiente a la actual
-		for(int i = lineNumber + 1; i < lines; ++i) {
-			
-			// Tomar lnea
-			line = source_tokens.get(i);
-			
-			// Proceder si no est vaca
-			if(!line.getTokens().isEmpty()) {
-				
-				// Tomar 1er token
-				TinyDevToken tok = line.getTokens().get(0);
-				
-				// Proceder si es una palabra reservada, y comprobar si es DO o LOOP
-				if(tok.getType() == TinyDevToken.Id.KEYWORD) {
-					
-					// Tomar tipo de palabra reservada
-					TinyDevKeyword.Id type = tok.getKeyword().getCode();
-					
-					// Comprobar si es LOOP
-					if(type == TinyDevKeyword.Id.LOOP) {
-						
-						// Si es el mismo nivel, saltar a la lnea
-						// posterior al bucle y finalizar
-						if(level == doLevel) {
-							
-							lineNumber = i;
-							--doLevel;
-							ifBlockLevel = doIfBlockLevel[doLevel];
-							return;
-						}
-						
-						// No es el mismo nivel, decrementar y continuar
-						--level;
-						
-					// Comprobar si es DO
-					} else if(type == TinyDevKeyword.Id.DO) {
-						
-						// Incrementar y continuar
-						++level;
-					}
-				}
-			}
+		// Si no hay LOOP, error
+		if(target < 0) {
+			errorId = Error.MISSING_LOOP;
+			return;
 		}
 		
-		// Se ha llegado al final, error
-		errorId = Error.MISSING_LOOP;
+		// Saltar a la lnea del LOOP; el executor la incrementar
+		lineNumber = target;
+		--doLevel;
+		ifBlockLevel = doIfBlockLevel[doLevel];
 	}
 	
 	/**
@@ -2240,9 +5112,12 @@ public class TinyDevLang {
 	 * y devolver un valor que indica si se ha de continuar la ejecucin del bucle o no,
 	 * dependiendo del resultado de la condicin, y de si es un bucle WHILE o UNTIL.
 	 * 
+	 * @param st    instruccin DO o LOOP, con la condicin
+	 * @param cond  resultado de la condicin, si ya se ha calculado (1 cierta,
+	 *              0 falsa), o -1 para calcularla
 	 * @return  true para continuar en el bucle, false en caso contrario
 	 */
-	private boolean testDo() {
+	private boolean testDo(TinyDevStatement st, int cond) {
 		
 		// Puede ser una de estas formas:
 		//
@@ -2251,37 +5126,15 @@ public class TinyDevLang {
 		// LOOP WHILE expresin
 		// LOOP UNTIL expresin
 		
-		// Necesitar argumento (WHILE o UNTIL)
-		if(needArg())
-			return false;
-		
 		// Flag para discriminar entre WHILE o UNTIL
-		boolean isWhile;
-		
-		// Comprobar si es WHILE o UNTIL
-		if(tokenIsCommandOf(exprTokens.get(1), TinyDevKeyword.Id.WHILE))
-			isWhile = true;
-		else if(tokenIsCommandOf(exprTokens.get(1), TinyDevKeyword.Id.UNTIL))
-			isWhile = false;
-		else {
-			// Ninguno de los 2, error
-			syntaxError();
-			return false;
-		}
-		
-		// Saltar WHILE o UNTIL
-		++exprIndex;
+		boolean isWhile = st.getOption() == TinyDevKeyword.Id.WHILE;
 		
 		// Comprobar la expresin, y retornar si hubo error
-		if(exprBoolean())
+		if(cond < 0 && exprBoolean(st.getArg(0)))
 			return false;
 		
 		// Tomar el resultado de la expresin
-		boolean test = (boolean) exprValue;
-		
-		// Necesita final, no hay ms argumentos
-		if(needEnd())
-			return false;
+		boolean test = (cond < 0 ? exprBool : cond != 0);
 		
 		// Devolver TRUE si la condicin es cierta y es un WHILE,
 		// o si la condicin es falsa y es un UNTIL,
@@ -2296,38 +5149,12 @@ public class TinyDevLang {
 	/**
 	 * Instruccin - Saltar a un place:
 	 * 
-	 * JUMP place
-	 */
-	private void doJump() {
-		
-		// Necesita argumentos: place
-		if(needArg())
-			return;
-		
-		// Comprobar que hay un identificador
-		if(exprTokens.get(exprIndex).getType() != TinyDevToken.Id.IDENTIFIER) {
-			syntaxError();
-			return;
-		}
-		
-		// Buscar el place
-		TinyDevPlace pl = findPlace(exprTokens.get(exprIndex).getIdentifier().getName());
-		
-		// Si no existe, error
-		if(pl == null) {
-			errorId = Error.PLACE_NOT_EXISTS;
-			return;
-		}
-		
-		// Saltar el place
-		++exprIndex;
-		
-		// No hay ms argumentos
-		if(needEnd())
-			return;
+	 * JUMP place
+	 */
+	private void doJump(TinyDevStatement st) {
 		
-		// Saltar a la lnea del place
-		lineNumber = pl.getLine() - 1;
+		// Saltar a la lnea del place, enlazada antes de la ejecucin
+		lineNumber = st.getTarget() - 1;
 	}
 	
 	/**
@@ -2335,7 +5162,7 @@ public class TinyDevLang {
 	 * 
 	 * CALL place
 	 */
-	private void doCall() {
+	private void doCall(TinyDevStatement st) {
 		
 		// Si no es posible crear ms niveles de CALL, error		
 		if(callLevel == MAX_CALL_LEVEL) {
@@ -2343,6 +5170,13 @@ public class TinyDevLang {
 			return;
 		}
 		
+		// Si el place se ha sustituido por su instruccin, ejecutarla aqu
+		// mismo, sin saltar al place ni volver con su RETURN
+		if(st.getBody() != null) {
+			command(st.getBody());
+			return;
+		}
+		
 		// Tomar nota del n de lnea actual
 		callLineNumber[callLevel] = lineNumber;       // Esto ha de hacerse antes de llamar a doJump()
 		
@@ -2354,7 +5188,7 @@ public class TinyDevLang {
 		++callLevel;
 		
 		// Llamar a JUMP, que se encargar del resto
-		doJump();
+		doJump(st);
 	}
 	
 	/**
@@ -2364,10 +5198,6 @@ public class TinyDevLang {
 	 */
 	private void doReturn() {
 		
-		// No tiene argumentos
-		if(needEnd())
-			return;
-		
 		// Si no hay niveles de CALL, error
 		if(callLevel == 0) {
 			errorId = Error.CALL_NOT_ACTIVE;
@@ -2386,18 +5216,25 @@ public class TinyDevLang {
 	}
 	
 	/**
-	 * Instruccin - Finaliza el programa, o un bloque IF:
+	 * Instruccin - Finaliza el programa, o un bloque IF o SELECT:
 	 * 
 	 * END
 	 * END IF
+	 * END SELECT
 	 */
-	private void doEnd() {
+	private void doEnd(TinyDevStatement st) {
 		
 		// Si no tiene argumentos, finalizar el programa		
-		if(!tokensLeft()) {
+		if(st.getOption() == null) {
 			stopped = true;
 		}
-		else if(tokenIsCommandOf(exprTokens.get(1), TinyDevKeyword.Id.IF)) {
+		else if(st.getOption() == TinyDevKeyword.Id.SELECT) {
+			
+			// Es un SELECT, no hay nada que hacer, salvo si no hay SELECT
+			if(st.getSelect() == null)
+				errorId = Error.SELECT_NOT_ACTIVE;
+		}
+		else {
 			
 			// Es un IF, decrementar el nivel de IFs
 			if(ifBlockLevel > 0) {
@@ -2408,124 +5245,188 @@ public class TinyDevLang {
 				// Error, no hay IFs activos
 				errorId = Error.IF_NOT_ACTIVE;
 			}
-			
-			// Saltar el IF
-			++exprIndex;
 		}
-		
-		// No ha de haber ms argumentos
-		needEnd();
 	}
 	
 	/**
-	 * Instruccin - Dibujar una elipse (o crculo):
+	 * Instruccin - Ejecutar el CASE correspondiente a un valor:
 	 * 
-	 * ELLIPSE {FILL | SOLID} x, y, ancho, alto
+	 * SELECT valor
+	 * CASE valor {, valor...}
+	 *     instrucciones
+	 * {CASE valor {, valor...}
+	 *     instrucciones}
+	 * {CASE ELSE
+	 *     instrucciones}
+	 * END SELECT
+	 * 
+	 * Salta al primer CASE con un valor igual, o al CASE ELSE si no lo hay,
+	 * o al END SELECT si tampoco lo hay. Si todos los valores son constantes,
+	 * lo busca en la tabla de saltos, sin compararlos uno a uno.
+	 * 
+	 * @param st  instruccin
 	 */
-	private void doEllipse() {
-		
-		// Estilo por defecto (dibujar slo borde)
-		Style style = Style.EMPTY;
-				
-		if(tokenIsCommandOf(exprTokens.get(exprIndex), TinyDevKeyword.Id.FILL)) {
-			style = Style.FILL;
-			++exprIndex;
-		} else if(tokenIsCommandOf(exprTokens.get(exprIndex), TinyDevKeyword.Id.SOLID)) {
-			style = Style.SOLID;
-			++exprIndex;
-		}
-				
-		if(exprNumber())             // Calcular X
-			return;
-		
-		int x = (int) exprValue;     // Tomar X
+	private void doSelect(TinyDevStatement st) {
 		
-		if(eatComma())				 // Coma
-			return;
+		TinyDevSelect sel = st.getSelect();
 		
-		if(exprNumber())              // Calcular Y
+		// Calcular el valor, que ha de ser un nmero o una cadena
+		if(expr(st.getArg(0)))
 			return;
-
-		int y = (int) exprValue;      // Tomar Y
 		
-		if(eatComma())				 // Coma
+		if(exprType != DataType.NUMBER && exprType != DataType.STRING) {
+			errorId = Error.BAD_DATA_TYPE;
 			return;
+		}
 		
-		if(exprNumber())              // Calcular ancho
-			return;
+		int target = -1;
 		
-		int width = (int) exprValue;  // Tomar ancho
+		if(sel.getTableType() != null) {
+			
+			// Buscar en la tabla de saltos
+			if(exprType != sel.getTableType()) {
+				errorId = Error.BAD_DATA_TYPE;
+				return;
+			}
+			
+			target = (exprType == DataType.NUMBER ? sel.findNumber(exprInt) : sel.findString((String) exprValue));
+		}
+		else {
+			
+			// Comparar con los valores de cada CASE, en orden
+			DataType type = exprType;
+			int number = exprInt;
+			Object value = exprValue;
+			
+			for(int c = 0; c < sel.getCaseCount() && target < 0; ++c) {
+				
+				TinyDevStatement cs = sel.getCase(c);
+				
+				for(int i = 0; i < cs.getArgCount(); ++i) {
+					
+					// Calcular el valor del CASE; los errores se indican en su lnea
+					if(expr(cs.getArg(i)) || exprType != type) {
+						
+						if(errorId == Error.SUCCESS)
+							errorId = Error.BAD_DATA_TYPE;
+						
+						lineNumber = sel.getCaseLine(c);
+						return;
+					}
+					
+					if(type == DataType.NUMBER ? exprInt == number : exprValue.equals(value)) {
+						target = sel.getCaseLine(c);
+						break;
+					}
+				}
+			}
+		}
 		
-		if(eatComma())				 // Coma
-			return;
+		// Si no hay ningn CASE con ese valor, saltar al CASE ELSE, o al END SELECT
+		if(target < 0)
+			target = (sel.getElseLine() >= 0 ? sel.getElseLine() : sel.getEndLine());
 		
-		if(exprNumber())              // Calcular alto
-			return;
-
-		int height = (int) exprValue; // Tomar alto
+		// Saltar a la lnea del CASE; el executor la incrementar
+		lineNumber = target;
+	}
+	
+	/**
+	 * Instruccin - Fin de las instrucciones de un CASE, que sale del
+	 * bloque SELECT:
+	 * 
+	 * CASE valor {, valor...}
+	 * CASE ELSE
+	 */
+	private void doCase(TinyDevStatement st) {
 		
-		// No hay ms argumentos
-		if(needEnd())
+		// Si no hay SELECT, error
+		if(st.getSelect() == null) {
+			errorId = Error.SELECT_NOT_ACTIVE;
 			return;
+		}
 		
-		// Si las posiciones son vlidas, dibujar
-		if(io.ellipse(x,  y, width, height, style))
-			errorId = Error.BAD_SCREEN_POSITION;
+		// Saltar a la lnea del END SELECT; el executor la incrementar
+		lineNumber = st.getSelect().getEndLine();
 	}
 	
 	/**
-	 * Instruccin - Dibujar un rectngulo (o cuadrado):
+	 * Helper para ELLIPSE / RECTANGLE: Devolver el estilo de dibujo.
 	 * 
-	 * RECTANGLE {FILL | SOLID} x, y, ancho, alto
+	 * @param st  instruccin
+	 * @return  estilo
 	 */
-	private void doRectangle() {
+	private Style shapeStyle(TinyDevStatement st) {
 		
 		// Estilo por defecto (dibujar slo borde)
-		Style style = Style.EMPTY;
-				
-		if(tokenIsCommandOf(exprTokens.get(exprIndex), TinyDevKeyword.Id.FILL)) {
-			style = Style.FILL;
-			++exprIndex;
-		} else if(tokenIsCommandOf(exprTokens.get(exprIndex), TinyDevKeyword.Id.SOLID)) {
-			style = Style.SOLID;
-			++exprIndex;
-		}
+		if(st.getOption() == TinyDevKeyword.Id.FILL)
+			return Style.FILL;
+		else if(st.getOption() == TinyDevKeyword.Id.SOLID)
+			return Style.SOLID;
+		
+		return Style.EMPTY;
+	}
+	
+	/**
+	 * Instruccin - Dibujar una elipse (o crculo):
+	 * 
+	 * ELLIPSE {FILL | SOLID} x, y, ancho, alto
+	 */
+	private void doEllipse(TinyDevStatement st) {
 		
-		if(exprNumber())               // Calcular X
+		if(exprNumber(st.getArg(0)))  // Calcular X
 			return;
 		
-		int x = (int) exprValue;       // Tomar X
+		int x = exprInt;      // Tomar X
 		
-		if(eatComma())				 // Coma
+		if(exprNumber(st.getArg(1)))  // Calcular Y
 			return;
+
+		int y = exprInt;      // Tomar Y
 		
-		if(exprNumber())               // Calcular Y
+		if(exprNumber(st.getArg(2)))  // Calcular ancho
 			return;
 		
-		int y = (int) exprValue;       // Tomar Y
+		int width = exprInt;  // Tomar ancho
 		
-		if(eatComma())				 // Coma
+		if(exprNumber(st.getArg(3)))  // Calcular alto
 			return;
+
+		int height = exprInt; // Tomar alto
+		
+		// Si las posiciones son vlidas, dibujar
+		if(io.ellipse(x,  y, width, height, shapeStyle(st)))
+			errorId = Error.BAD_SCREEN_POSITION;
+	}
+	
+	/**
+	 * Instruccin - Dibujar un rectngulo (o cuadrado):
+	 * 
+	 * RECTANGLE {FILL | SOLID} x, y, ancho, alto
+	 */
+	private void doRectangle(TinyDevStatement st) {
 		
-		if(exprNumber())               // Calcular ancho
+		if(exprNumber(st.getArg(0)))   // Calcular X
 			return;
 		
-		int width = (int) exprValue;   // Tomar ancho
+		int x = exprInt;       // Tomar X
 		
-		if(eatComma())				 // Coma
+		if(exprNumber(st.getArg(1)))   // Calcular Y
 			return;
 		
-		if(exprNumber())               // Calcular alto
+		int y = exprInt;       // Tomar Y
+		
+		if(exprNumber(st.getArg(2)))   // Calcular ancho
 			return;
 		
-		int height = (int) exprValue;  // Tomar alto
+		int width = exprInt;   // Tomar ancho
 		
-		// No ha de haber ms argumentos
-		if(needEnd())
+		if(exprNumber(st.getArg(3)))   // Calcular alto
 			return;
 		
+		int height = exprInt;  // Tomar alto
+		
 		// Si las posiciones son vlidas, dibujar
-		if(io.rectangle(x, y, width, height, style))
+		if(io.rectangle(x, y, width, height, shapeStyle(st)))
 			errorId = Error.BAD_SCREEN_POSITION;
 	}
 	
@@ -2534,40 +5435,27 @@ public class TinyDevLang {
 	 * 
 	 * LINE x y x2 y2
 	 */
-	private void doLine() {
+	private void doLine(TinyDevStatement st) {
 		
-		if(exprNumber())               // Calcular X
+		if(exprNumber(st.getArg(0)))   // Calcular X
 			return;
 		
-		int x = (int) exprValue;       // Tomar X
-		
-		if(eatComma())				 // Coma
-			return;
+		int x = exprInt;       // Tomar X
 		
-		if(exprNumber())               // Calcular Y
+		if(exprNumber(st.getArg(1)))   // Calcular Y
 			return;
 		
-		int y = (int) exprValue;       // Tomar Y
+		int y = exprInt;       // Tomar Y
 		
-		if(eatComma())				 // Coma
+		if(exprNumber(st.getArg(2)))   // Calcular X2
 			return;
 		
-		if(exprNumber())               // Calcular X2
-			return;
-		
-		int x2 = (int) exprValue;      // Tomar X2
-		
-		if(eatComma())				 // Coma
-			return;
+		int x2 = exprInt;      // Tomar X2
 		
-		if(exprNumber())               // Calcular Y2
+		if(exprNumber(st.getArg(3)))   // Calcular Y2
 			return;
 		
-		int y2 = (int) exprValue;      // Tomar Y2
-		
-		// No hay ms argumentos
-		if(needEnd())
-			return;
+		int y2 = exprInt;      // Tomar Y2
 		
 		// Si las posiciones son vlidas, dibujar
 		if(io.line(x, y, x2, y2))
@@ -2580,25 +5468,18 @@ public class TinyDevLang {
 	 * 
 	 * SCREEN ancho alto
 	 */
-	private void doScreen() {
+	private void doScreen(TinyDevStatement st) {
 		
-		if(exprNumber())              // Calcular ancho
+		if(exprNumber(st.getArg(0)))  // Calcular ancho
 			return;
 		
-		int width = (int) exprValue;  // Tomar ancho
-		
-		if(eatComma())				 // Coma
-			return;
+		int width = exprInt;  // Tomar ancho
 		
-		if(exprNumber())              // Calcular alto
+		if(exprNumber(st.getArg(1)))  // Calcular alto
 			return;
 		
-		int height = (int) exprValue; // Tomar alto
+		int height = exprInt; // Tomar alto
 		
-		// No hay ms argumentos
-		if(needEnd())
-			return;
-
 		// Cambiar las dimensiones de la pantalla
 		if(io.reset(width, height))
 			errorId = Error.BAD_SCREEN_SIZE;
@@ -2609,24 +5490,17 @@ public class TinyDevLang {
 	 * 
 	 * POINT x y
 	 */
-	private void doPoint() {
+	private void doPoint(TinyDevStatement st) {
 		
-		if(exprNumber())         // Calcular X
+		if(exprNumber(st.getArg(0))) // Calcular X
 			return;
 		
-		int x = (int) exprValue; // Tomar X
-		
-		if(eatComma())				 // Coma
-			return;
+		int x = exprInt;     // Tomar X
 		
-		if(exprNumber())         // Calcular Y
+		if(exprNumber(st.getArg(1))) // Calcular Y
 			return;
 		
-		int y = (int) exprValue; // Tomar Y
-		
-		// No hay ms argumentos
-		if(needEnd())
-			return;
+		int y = exprInt;     // Tomar Y
 		
 		// Si la posicin es correcta, dibujar
 		if(io.point(x,y))
@@ -2638,25 +5512,19 @@ public class TinyDevLang {
 	 * 
 	 * IMAGE x y imagen
 	 */
-	private void doImage() {
+	private void doImage(TinyDevStatement st) {
 		
-		if(exprNumber())         // Calcular X
+		if(exprNumber(st.getArg(0))) // Calcular X
 			return;
 		
-		int x = (int) exprValue; // Tomar X
-		
-		if(eatComma())				 // Coma
-			return;
+		int x = exprInt;     // Tomar X
 		
-		if(exprNumber())         // Calcular Y
+		if(exprNumber(st.getArg(1))) // Calcular Y
 			return;
 		
-		int y = (int) exprValue; // Tomar Y
+		int y = exprInt;     // Tomar Y
 		
-		if(eatComma())				 // Coma
-			return;
-
-		if(exprImage())          // Calcular la imagen
+		if(exprImage(st.getArg(2)))  // Calcular la imagen
 			return;
 		
 		// Comprobar que la imagen es vlida
@@ -2665,10 +5533,6 @@ public class TinyDevLang {
 			return;
 		}
 		
-		// No hay ms argumentos
-		if(needEnd())
-			return;
-		
 		// Dibujar la imagen
 		if(	io.drawImage(x, y, exprValue))
 			errorId = Error.BAD_SCREEN_POSITION;
@@ -2679,14 +5543,10 @@ public class TinyDevLang {
 	 * 
 	 * SOUND sonido
 	 */
-	private void doSound() {
+	private void doSound(TinyDevStatement st) {
 		
 		// Calcular la expresin
-		if(expr())
-			return;
-		
-		// No hay ms argumentos
-		if(needEnd())
+		if(expr(st.getArg(0)))
 			return;
 		
 		// Sonido
@@ -2723,18 +5583,14 @@ public class TinyDevLang {
 	 * 
 	 * RANDOM mximo
 	 */
-	private void doRandom() {
+	private void doRandom(TinyDevStatement st) {
 		
 		// Calcular el mximo
-		if(exprNumber())
-			return;
-		
-		// No hay ms argumentos
-		if(needEnd())
+		if(exprNumber(st.getArg(0)))
 			return;
 		
 		// Tomar el valor
-		int max = (int) exprValue;
+		int max = exprInt;
 		
 		// Comprobar que es un valor correcto
 		if(max < 2 || max > 32767) {
@@ -2751,24 +5607,30 @@ public class TinyDevLang {
 	 * 
 	 * WAIT milisegundos
 	 */
-	private void doWait() {
+	private void doWait(TinyDevStatement st) {
 		
 		// Calcular el valor
-		if(exprNumber())
-			return;
-		
-		// No hay ms argumentos
-		if(needEnd())
+		if(exprNumber(st.getArg(0)))
 			return;
 		
 		// Establecer la pausa
-		int waitTime = (int) exprValue; // FIXME: Comprobar el valor de waitTime
+		int waitTime = exprInt; // FIXME: Comprobar el valor de waitTime
+		
+		// El programa no est en una espera de entrada
+		emptyPolls = 0;
+		
+		// Si se ejecuta por turnos, suspender el programa, y no el thread
+		if(quantum > 0) {
+			suspend(waitTime * 1000000L);
+			return;
+		}
 		
+		// Nota: En un thread virtual, sleep() deja libre el thread del sistema
 		try {
 			Thread.sleep(waitTime);
 		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace(); // FIXME
+			// Interrumpido (ver TinyDevBatch): detener la ejecucin
+			stopped = true;
 		}
 	}
 	
@@ -2777,26 +5639,16 @@ public class TinyDevLang {
 	 * 
 	 * WRITEFILE filename, textArray
 	 */
-	private void doWriteFile() {
+	private void doWriteFile(TinyDevStatement st) {
 		
 		// Tomar valor del nombre de fichero
-		if(exprString())
+		if(exprString(st.getArg(0)))
 			return;
 		
 		String fname = addCurrentDirToFile((String) exprValue);
 		
-		// Coma
-		if(eatComma())
-			return;
-		
-		// Ha de ser un identificador
-		if(exprTokens.get(3).getType() != TinyDevToken.Id.IDENTIFIER) {
-			syntaxError();
-			return;
-		}
-		
 		// Ha de ser una variable
-		TinyDevVariable var = findVariable(exprTokens.get(3).getIdentifier().getName());
+		TinyDevVariable var = findVariable(st.getIdentifier());
 		
 		// Abortar, si la variable no existe
 		if(var == null) {
@@ -2810,15 +5662,8 @@ public class TinyDevLang {
 			return;
 		}
 
-		// Saltar el identificador
-		++exprIndex;
-		
-		// Necesita final
-		if(needEnd())
-			return;
-		
 		//
-		Object arr[] = (Object[]) var.getObjectValue();
+		Object arr[] = var.getObjectArray();
 		
 		//
 		BufferedWriter bfwr = null;
@@ -2854,20 +5699,16 @@ public class TinyDevLang {
 	 * 
 	 * WRITEIMAGE filename, image
 	 */
-	private void doWriteImage() {
+	private void doWriteImage(TinyDevStatement st) {
 		
 		// Tomar valor del nombre de fichero
-		if(exprString())
+		if(exprString(st.getArg(0)))
 			return;
 		
 		String fname = addCurrentDirToFile((String) exprValue);
 		
-		// Coma
-		if(eatComma())
-			return;
-		
 		// Tomar valor de la imagen -- FIXME Qu pasa si... writeImage("p.png", "p.png") ?
-		if(exprImage()) {
+		if(exprImage(st.getArg(1))) {
 			return;
 		}
 
@@ -2879,10 +5720,6 @@ public class TinyDevLang {
 		
 		Object img = exprValue;
 		
-		// Necesita final
-		if(needEnd())
-			return;
-		
 		//
 		if(io.saveImage(fname, img)) {
 			errorId = Error.CANT_SAVE_IMAGE;
@@ -2973,6 +5810,7 @@ public class TinyDevLang {
 			case DO_NOT_ACTIVE : return loc.getError("DoNotActive");
 			case DO_LOOP_MISMATCH : return loc.getError("DoLoopMismatch");
 			case MISSING_LOOP : return loc.getError("MissingLoop");
+			case MISSING_NEXT : return loc.getError("MissingNext");
 			case TOO_MANY_CALL : return loc.getError("TooManyCall");
 			case CALL_NOT_ACTIVE : return loc.getError("CallNotActive");
 			case BAD_SCREEN_POSITION : return loc.getError("BadScreenPosition");
@@ -2985,11 +5823,14 @@ public class TinyDevLang {
 			case IF_NOT_ACTIVE : return loc.getError("IfNotActive");
 			case TOO_MANY_IF : return loc.getError("TooManyIf");
 			case MISSING_END_IF : return loc.getError("MissingEndIf");
+			case SELECT_NOT_ACTIVE : return loc.getError("SelectNotActive");
+			case MISSING_END_SELECT : return loc.getError("MissingEndSelect");
 			case BAD_EXPRESSION : return loc.getError("BadExpression");
 			case OUT_OF_BOUNDS : return loc.getError("OutOfBounds");
 			case BAD_ARRAY_SIZE : return loc.getError("BadArraySize");
 			case READING_FILE : return loc.getError("ReadingFile");
 			case WRITING_FILE : return loc.getError("WritingFile");
+			case OUT_OF_MEMORY : return loc.getError("OutOfMemory");
 			
 			// Cdigo desconocido
 			default :
@@ -3014,8 +5855,9 @@ public class TinyDevLang {
 		// Mostrar mensaje de error
 		io.dialogError(text, title);
 		
-		editor.notifyError(lineNumber, source.get(lineNumber), errorMsg(errorId));
-
+		// Notificarlo
+		if(listener != null)
+			listener.notifyError(lineNumber, source.get(lineNumber), errorMsg(errorId));
 	}
 	
 	// ---------------------
@@ -3036,28 +5878,18 @@ public class TinyDevLang {
 	 * 
 	 * En caso de error, lo indica en la variable errorId.
 	 * 
+	 * @param e  expresin
 	 * @return true en caso de error, false en caso contrario
 	 */
-	private boolean exprNumber() {
+	private boolean exprNumber(TinyDevExpr e) {
 		
 		// Calcular expresin
-		if(!expr()) {
+		if(!expr(e)) {
 			
 			// Si el resultado es un nmero, xito
 			if(exprType == DataType.NUMBER)
 				return false;
 			
-			/************************
-			// Si el resultado es una cadena textual, convertir a su
-			// valor numrico, y xito ---- FIXME: Esto debera ser slo para ASSIGN y VARIABLE
-			if(exprType == DataType.STRING) {
-				
-				exprType = DataType.NUMBER;
-				exprValue = stringToInt((String) exprValue);
-				return false;
-			}
-			**********************/
-			
 			// Tipo resultante incorrecto
 			errorId = Error.BAD_DATA_TYPE;
 		}
@@ -3071,27 +5903,17 @@ public class TinyDevLang {
 	 * 
 	 * En caso de error, lo indica en la variable errorId.
 	 * 
+	 * @param e  expresin
 	 * @return true en caso de error, false en caso contrario
 	 */
-	private boolean exprString() {
+	private boolean exprString(TinyDevExpr e) {
 		
 		// Calcular expresin
-		if(!expr()) {
+		if(!expr(e)) {
 			
 			// Si el resultado es textual, xito
 			if(exprType == DataType.STRING)
 				return false;
-
-			/****************************
-			// Si el resultado es numrico, convertir a su valor textual
-			// y xito ---- FIXME: Esto debera ser slo para ASSIGN y VARIABLE
-			if(exprType == DataType.NUMBER) {
-				
-				exprType = DataType.STRING;
-				exprValue = "" + (int) exprValue;
-				return false;
-			}
-			***********************/
 			
 			// Tipo resultante incorrecto
 			errorId = Error.BAD_DATA_TYPE;
@@ -3106,12 +5928,13 @@ public class TinyDevLang {
 	 * 
 	 * En caso de error, lo indica en la variable errorId.
 	 * 
+	 * @param e  expresin
 	 * @return true en caso de error, false en caso contrario
 	 */
-	private boolean exprBoolean() {
+	private boolean exprBoolean(TinyDevExpr e) {
 		
 		// Calcular la expresin
-		if(!expr()) {
+		if(!expr(e)) {
 			
 			// Si el resultado es booleano, xito
 			if(exprType == DataType.BOOLEAN)
@@ -3130,12 +5953,13 @@ public class TinyDevLang {
 	 * 
 	 * En caso de error, lo indica en la variable errorId.
 	 * 
+	 * @param e  expresin
 	 * @return true en caso de error, false en caso contrario
 	 */
-	private boolean exprImage() {
+	private boolean exprImage(TinyDevExpr e) {
 		
 		// Calcular expresin
-		if(!expr()) {
+		if(!expr(e)) {
 			
 			// Si el resultado es de tipo imagen, xito
 			if(exprType == DataType.IMAGE)
@@ -3174,12 +5998,13 @@ public class TinyDevLang {
 	 * 
 	 * En caso de error, lo indica en la variable errorId.
 	 * 
+	 * @param e  expresin
 	 * @return true en caso de error, false en caso contrario
 	 */
-	private boolean exprSound() {
+	private boolean exprSound(TinyDevExpr e) {
 		
 		// Calcular expresin
-		if(!expr()) {
+		if(!expr(e)) {
 			
 			// Si es de tipo sonido, xito
 			if(exprType == DataType.SOUND)
@@ -3217,16 +6042,27 @@ public class TinyDevLang {
 	 * 
 	 * En caso de error, lo indica en la variable errorId.
 	 * 
+	 * @param e  expresin
 	 * @return true en caso de error, false en caso contrario
 	 */
-	private boolean expr() {
+	private boolean expr(TinyDevExpr e) {
 		
 		exprType = null;	// Tipo resultante de la expresin
 		exprSubType = null;	// Sub-tipo para arrays
 		exprValue = null;	// Valor resultante de la expresin
 		
-		// Calcular la expresin, llamando al 1er nivel
-		if(exprLogical()) {
+		// Si tiene cdigo compilado por el JIT, calcularla con l, salvo
+		// que lo tenga que hacer el intrprete
+		if(e.getJit() >= 0 && !jit.evaluate(e.getJit()))
+			return false;
+		
+		// Si est compilada a closure, calcularla con ella
+		if(e.getClosure() != null)
+			return e.getClosure().getAsBoolean();
+		
+		// Calcular la expresin, ejecutando su bytecode si lo tiene, o
+		// recorriendo su rbol
+		if(e.getCode() >= 0 ? evalCode(e.getCode()) : eval(e)) {
 			
 			// Si ha devuelto true, es que hubo un error, por lo que
 			// se ha que indicar un cdigo de error genrico, de no ser que
@@ -3245,161 +6081,151 @@ public class TinyDevLang {
 	}
 	
 	/**
-	 * Comparacin lgica AND, OR.
+	 * Calcular un nodo de una expresin.
 	 * 
 	 * En caso de error, lo indica en la variable errorId.
 	 * 
+	 * @param e  nodo
 	 * @return true en caso de error, false en caso contrario
 	 */
-	private boolean exprLogical() {
+	private boolean eval(TinyDevExpr e) {
 		
-		// Llamar al nivel siguiente
-		if(exprRelational())
-			return true;
+		switch(e.getType()) {
 		
-		// Bucle
-		while(true) {
-			
-			// Tomar siguiente token
-			TinyDevToken token = peekToken();
-			
-			// Salir del bucle si no es un operador
-			if(token == null || token.getType() != TinyDevToken.Id.OPERATOR)
-				break;
-			
-			// Tomar tipo de operador
-			TinyDevOperator.Id id = token.getOperator().getType();
-			
-			// Salir del bucle si no es un operador de este nivel
-			if(id != TinyDevOperator.Id.AND && id != TinyDevOperator.Id.OR)
+			// N positivo
+			case NUMBER :
+				exprType = DataType.NUMBER;
+				exprInt = e.getNumber();
+				return false;
+				
+			// Cadena textual
+			case STRING :
+				exprType = DataType.STRING;
+				exprValue = e.getValue();
+				return false;
+				
+			// Variable o array
+			case VARIABLE :
+				return evalVariable(e);
+				
+			// Elemento de un array
+			case ELEMENT :
+				return evalElement(e);
+				
+			// Signo '-', ha de ser un valor numrico negativo
+			case NEGATIVE :
+				
+				// Calcular el operando, que ha de ser un nmero
+				if(eval(e.getArg(0)) || exprType != DataType.NUMBER)
+					return true;
+				
+				// Tomar su valor negativo
+				exprInt = -exprInt;
+				return false;
+				
+			// Operacin
+			case OPERATOR :
+				return evalOperator(e);
+				
+			// Funcin
+			case FUNCTION :
+				return evalFunction(e);
+				
+			default :
 				break;
+		}
+		
+		// Error -- no debera ocurrir
+		return true;
+	}
+	
+	/**
+	 * Tomar el valor de una variable o array.
+	 * 
+	 * @param e  nodo
+	 * @return true en caso de error, false en caso contrario
+	 */
+	private boolean evalVariable(TinyDevExpr e) {
+		
+		return loadVariable(findVariable(e.getIdentifier()));
+	}
+	
+	/**
+	 * Helper para expresiones: Tomar el valor de una variable o array.
+	 * 
+	 * @param var  variable, o null si no existe
+	 * @return true en caso de error, false en caso contrario
+	 */
+	private boolean loadVariable(TinyDevVariable var) {
+		
+		// Si no existe como variable, error
+		if(var == null) {
 			
-			// Saltar el operador
-			++exprIndex;
-
-			// El valor de la izquierda ha de ser booleano
-			if(exprType != DataType.BOOLEAN)
-				return true;
-			
-			// Tomar valor de la izquierda
-			boolean b1 = (boolean) exprValue;
-			
-			// Llamar al nivel siguiente
-			if(exprRelational())
-				return true;
-			
-			// El valor de la derecha, ha de ser booleano			
-			if(exprType != DataType.BOOLEAN)
-				return true;
-			
-			// Tomar valor de la derecha
-			boolean b2 = (boolean) exprValue;
-			
-			// Calcular el resultado de la expresin
-			switch(id) {
-				case AND :
-					exprValue = b1 && b2;
-					break;
-				case OR :
-					exprValue = b1 || b2;
-					break;
-				default :
-					// Operador desconocido -- no debera ocurrir
-					return true;
-			}
+			errorId = Error.VARIABLE_NOT_EXISTS;
+			return true;
 		}
 		
+		// Sub-tipo del array
+		if(var.getType() == DataType.ARRAY)
+			exprSubType = var.getSubType();
+		
+		// Tomar el tipo y valor de la variable
+		exprType = var.getType();
+		
+		if(exprType == DataType.NUMBER)
+			exprInt = var.getNumberValue();
+		else if(exprType == DataType.ARRAY)
+			exprValue = var.getArrayValue();
+		else
+			exprValue = var.getObjectValue();
+		
 		// xito
-		return false;		
+		return false;
 	}
 	
 	/**
-	 * Comparacin relacional ==, !=, >, >=, <, <=.
-	 * 
-	 * En caso de error, lo indica en la variable errorId.
+	 * Tomar el valor de un elemento de un array.
 	 * 
+	 * @param e  nodo
 	 * @return true en caso de error, false en caso contrario
 	 */
-	private boolean exprRelational() {
+	private boolean evalElement(TinyDevExpr e) {
 		
-		// Llamar al siguiente nivel
-		if(exprAdd())
+		// Ha de ser un array
+		TinyDevVariable var = findVariable(e.getIdentifier());
+		
+		if(checkArray(var))
 			return true;
 		
-		// Bucle
-		while(true) {
-			
-			// Tomar siguiente token
-			TinyDevToken token = peekToken();
-			
-			// Salir del bucle si no es un operador
-			if(token == null || token.getType() != TinyDevToken.Id.OPERATOR)
-				break;
-			
-			// Tomar tipo de operador
-			TinyDevOperator.Id id = token.getOperator().getType();
-			
-			// Salir del bucle si no es un operador de este nivel
-			if(id != TinyDevOperator.Id.EQUAL && id != TinyDevOperator.Id.NOT_EQUAL
-					&& id != TinyDevOperator.Id.LESS && id != TinyDevOperator.Id.LESS_OR_EQUAL
-					&& id != TinyDevOperator.Id.GREATER && id != TinyDevOperator.Id.GREATER_OR_EQUAL)
-				break;
-			
-			// Saltar el operador
-			++exprIndex;
-			
-			// Guardar tipo y valor actuales
-			DataType exType = exprType;
-			Object exValue = exprValue;
-			
-			// Llamar al siguiente nivel
-			if(exprAdd())
-				return true;
-			
-			// Solo se permiten comparaciones de 2 valores del
-			// mismo tipo, y que sean numricos o textuales
-			if(exType != exprType || (exType != DataType.NUMBER && exType != DataType.STRING))
-				return true;
-			
-			// Resultado de la comparacin
-			int result;
-			
-			// Comparar
-			if(exType == DataType.NUMBER)
-				result = (int) exValue - (int) exprValue;
-			else {
-				String s1 = (String) exValue;
-				String s2 = (String) exprValue;
-				result = s1.compareTo(s2);
-			}
-			
-			// El tipo de la expresin ser booleano
-			exprType = DataType.BOOLEAN;
+		// Calcular el ndice
+		if(exprNumber(e.getArg(0)))
+			return true;
 		
-			// Calcular el valor de la expresin
-			switch(id) {
-				case EQUAL :
-					exprValue = result == 0;
-					break;
-				case NOT_EQUAL :
-					exprValue = result != 0;
-					break;
-				case GREATER:
-					exprValue = result > 0;
-					break;
-				case GREATER_OR_EQUAL :
-					exprValue = result >= 0;
-					break;
-				case LESS:
-					exprValue = result < 0;
-					break;
-				case LESS_OR_EQUAL:
-					exprValue = result <= 0;
-					break;
-				default :
-					// Operador desconocido -- no debera ocurrir
-					return true;
-			}
+		// Tomar el valor del elemento
+		return loadElement(var);
+	}
+	
+	/**
+	 * Helper para expresiones: Comprobar que una variable existe, y es
+	 * un array.
+	 * 
+	 * @param var  variable, o null si no existe
+	 * @return true en caso de error, false en caso contrario
+	 */
+	private boolean checkArray(TinyDevVariable var) {
+		
+		// Si no existe como variable, error
+		if(var == null) {
+			
+			errorId = Error.VARIABLE_NOT_EXISTS;
+			return true;
+		}
+		
+		// Ha de ser un array
+		if(var.getType() != DataType.ARRAY) {
+			
+			errorId = Error.BAD_DATA_TYPE;
+			return true;
 		}
 		
 		// xito
@@ -3407,872 +6233,808 @@ public class TinyDevLang {
 	}
 	
 	/**
-	 * Operacin aritmtica: +, -.
-	 * 
-	 * En caso de error, lo indica en la variable errorId.
+	 * Helper para expresiones: Tomar el valor de un elemento de un array,
+	 * una vez calculado su ndice.
 	 * 
+	 * @param var  array
 	 * @return true en caso de error, false en caso contrario
 	 */
-	private boolean exprAdd() {
+	private boolean loadElement(TinyDevVariable var) {
 		
-		// Llamar al nivel siguiente
-		if(exprMul())
-			return true;
+		// Tomar el ndice
+		int index = exprInt;
 		
-		// Bucle
-		while(true) {
-			
-			// Tomar siguiente token
-			TinyDevToken token = peekToken();
-			
-			// Si no es del tipo requerido, salir del bucle
-			if(token == null || token.getType() != TinyDevToken.Id.OPERATOR)
-				break;
-			
-			// Tomar tipo de token
-			TinyDevOperator.Id id = token.getOperator().getType();
-			
-			// Si no es + o -, salir del bucle
-			if(id != TinyDevOperator.Id.PLUS && id != TinyDevOperator.Id.MINUS)
-				break;
-			
-			// Saltar operador
-			++exprIndex;
-			
-			// Guardar tipo y valor actuales
-			DataType exType = exprType;
-			Object exValue = exprValue;
-			
-			// Llamar al siguiente nivel
-			if(exprMul())
-				return true;
-			
-			// Slo se permiten valores numricos o textuales				
-			if((exType != DataType.STRING  && exType != DataType.NUMBER)
-					|| (exprType != DataType.STRING && exprType != DataType.NUMBER))
-				return true;
-			
-			// Calcular el valor y tipo de la expresin
-			switch(id) {
+		// Comprobar que el ndice es correcto
+		if(index < 0 || index >= var.getSize()) {
 			
-				// Suma: Se pueden sumar 2 nmeros, o concatenar
-				//       2 cadenas.
-				case PLUS :
-					if(exType == DataType.NUMBER && exprType == DataType.NUMBER) {
-						// Suma: 5 + 6 == 11
-						exprValue = (int) exValue + (int) exprValue;
-						break;
-					}
-					
-					if(exType == DataType.STRING && exprType == DataType.STRING) {
-						// Concatena: "k" + "q" == "kq"
-						exprValue = (String) exValue + (String) exprValue;
-						break;
-					}
-					
-					// Error: "k" + 5
-					// Error: 5 + "k"
-					return true;
-					
-				// Resta: Slo se pueden restar 2 nmeros.
-				case MINUS :
-					if(exType == DataType.NUMBER && exprType == DataType.NUMBER) {
-						// Resta: 5 - 6 == -1
-						exprValue = (int) exValue - (int) exprValue;
-						break;
-					}
-					
-					// Hay algn valor textual, error
-					return true;
-				default :
-					// Operador desconocido -- no debera ocurrir
-					return true;
-			}
+			// Error en el ndice del array
+			errorId = Error.OUT_OF_BOUNDS;
+			return true;
 		}
 		
+		// Tomar el tipo
+		exprType = var.getSubType();
+		
+		// Tomar el valor del elemento del array
+		if(exprType == DataType.NUMBER)
+			exprInt = var.getNumberArray()[index];
+		else
+			exprValue = var.getObjectArray()[index];
+		
 		// xito
 		return false;
 	}
 	
 	/**
-	 * Operacin aritmtica: *, /, %.
+	 * Calcular una operacin lgica, relacional o aritmtica.
 	 * 
-	 * En caso de error, lo indica en la variable errorId.
+	 * @param e  nodo
+	 * @return true en caso de error, false en caso contrario
+	 */
+	private boolean evalOperator(TinyDevExpr e) {
+		
+		// Tomar tipo de operador
+		TinyDevOperator.Id id = e.getOperator();
+		
+		// Si ambos operandos son numricos antes de la ejecucin, calcularla
+		// sin comprobar sus tipos
+		if(e.getArg(0).getDataType() == DataType.NUMBER && e.getArg(1).getDataType() == DataType.NUMBER)
+			return evalNumberOperator(id, e);
+		
+		// Calcular el valor de la izquierda
+		if(eval(e.getArg(0)))
+			return true;
+		
+		// Guardar tipo y valor actuales
+		DataType exType = exprType;
+		int exInt = exprInt;
+		boolean exBool = exprBool;
+		Object exValue = exprValue;
+		
+		// El valor de la izquierda ha de ser booleano en AND, OR, y
+		// numrico en *, /, %
+		if((id == TinyDevOperator.Id.AND || id == TinyDevOperator.Id.OR) && exType != DataType.BOOLEAN)
+			return true;
+		
+		// Si el valor de la izquierda decide el resultado de AND, OR, no
+		// calcular el de la derecha (que puede llamar a funciones como key())
+		if((id == TinyDevOperator.Id.AND && !exBool) || (id == TinyDevOperator.Id.OR && exBool))
+			return false;
+		
+		if((id == TinyDevOperator.Id.MULTIPLY || id == TinyDevOperator.Id.DIVIDE || id == TinyDevOperator.Id.MODULUS) && exType != DataType.NUMBER)
+			return true;
+		
+		// Calcular el valor de la derecha
+		if(eval(e.getArg(1)))
+			return true;
+		
+		// Calcular la operacin
+		return operate(id, exType, exInt, exBool, exValue);
+	}
+	
+	/**
+	 * Calcular una operacin relacional o aritmtica, cuyos operandos son
+	 * numricos (ver checkTypes).
 	 * 
+	 * @param id  operador
+	 * @param e   nodo
 	 * @return true en caso de error, false en caso contrario
 	 */
-	private boolean exprMul() {
+	private boolean evalNumberOperator(TinyDevOperator.Id id, TinyDevExpr e) {
 		
-		// Llamar al siguiente nivel
-		if(exprValue())
+		// Calcular el valor de la izquierda
+		if(eval(e.getArg(0)))
 			return true;
 		
-		// Bucle
-		while(true) {
-			
-			// Tomar token
-			TinyDevToken token = peekToken();
-			
-			// Si no es del tipo requerido, salir del bucle
-			if(token == null || token.getType() != TinyDevToken.Id.OPERATOR)
-				break;
-			
-			// Tomar tipo del operador
-			TinyDevOperator.Id id = token.getOperator().getType();
-			
-			// Si no es uno de los requeridos, salir del bucle
-			if(id != TinyDevOperator.Id.MULTIPLY && id != TinyDevOperator.Id.DIVIDE && id != TinyDevOperator.Id.MODULUS)
+		int left = exprInt;
+		
+		// Calcular el valor de la derecha
+		if(eval(e.getArg(1)))
+			return true;
+		
+		// Calcular la operacin
+		switch(id) {
+			case PLUS :
+				exprInt = left + exprInt;
+				return false;
+			case MINUS :
+				exprInt = left - exprInt;
+				return false;
+			case MULTIPLY :
+				exprInt = left * exprInt;
+				return false;
+			case DIVIDE :
+				exprInt = left / exprInt;
+				return false;
+			case MODULUS :
+				exprInt = left % exprInt;
+				return false;
+			default :
 				break;
-			
-			// Saltar operador
-			++exprIndex;
-			
-			// El valor de la izquierda ha de ser numrico
-			if(exprType != DataType.NUMBER)
-				return true;
-			
-			// Tomar el valor de la izquierda
-			int v1 = (int) exprValue;
-			
-			// Llamar al siguiente nivel
-			if(exprValue())
-				return true;
-			
-			// El valor de la derecha ha de ser numrico
-			if(exprType != DataType.NUMBER)
-				return true;
-			
-			// Tomar valor de la derecha
-			int v2 = (int) exprValue;
-			
-			switch(id) {
-				case MULTIPLY :
-					exprValue = v1 * v2;
-					break;
-				case DIVIDE :
-					exprValue = v1 / v2;
-					break;
-				case MODULUS :
-					exprValue = v1 % v2;
-					break;
-				default :
-					// Operador errneo -- no debera suceder
-					return true;
-			}
 		}
 		
-		// xito
+		// Comparacin relacional
+		exprType = DataType.BOOLEAN;
+		exprBool = compare(id, Integer.compare(left, exprInt));
+		
 		return false;
 	}
 	
 	/**
-	 * Tomar valor primario.
-	 * 
-	 * En caso de error, lo indica en la variable errorId.
+	 * Helper para expresiones: Calcular una operacin lgica, relacional o
+	 * aritmtica, una vez calculados sus operandos: el de la izquierda se
+	 * indica, y el de la derecha est en exprXxx.
 	 * 
+	 * @param id       operador
+	 * @param exType   tipo del operando de la izquierda
+	 * @param exInt    valor del operando de la izquierda, si es numrico
+	 * @param exBool   valor del operando de la izquierda, si es booleano
+	 * @param exValue  valor del operando de la izquierda, si es de otro tipo
 	 * @return true en caso de error, false en caso contrario
 	 */
-	private boolean exprValue() {
+	private boolean operate(TinyDevOperator.Id id, DataType exType, int exInt, boolean exBool, Object exValue) {
 		
-		// Tomar token
-		TinyDevToken token = peekToken();
+		switch(id) {
 		
-		// Si hay token disponible, ver de qu tipo es
-		if(token != null) {
-			
-			// Abrir parntesis: expresin anidada
-			if(tokenIsOtherOf(token, TinyDevOperator.Id.OPEN_PARENTHESIS)) {
-				
-				// Saltar parntesis
-				++exprIndex;
+			// Comparacin lgica AND, OR
+			case AND :
+			case OR :
 				
-				// Llamar al nivel ms bajo de expresin
-				if(exprLogical())
+				// Los valores han de ser booleanos
+				if(exType != DataType.BOOLEAN || exprType != DataType.BOOLEAN)
 					return true;
 				
-				// Tomar token
-				token = peekToken();
+				// Calcular el resultado de la expresin
+				if(id == TinyDevOperator.Id.AND)
+					exprBool = exBool && exprBool;
+				else
+					exprBool = exBool || exprBool;
 				
-				// Si hay token disponible, ha de ser el cierre del parntesis
-				if(token != null) {
-					if(tokenIsOtherOf(token, TinyDevOperator.Id.CLOSE_PARENTHESIS)) {
-						
-							// Saltar parntesis
-							++exprIndex;
-							
-							// xito
-							return false;
-					}
-				}
+				return false;
 				
-				// Error
-				return true;
-			}
-		
-			// Signo '-', ha de ser un valor numrico negativo;
-			if(tokenIsOtherOf(token, TinyDevOperator.Id.MINUS)) {
-
-				// Saltar signo
-				++exprIndex;
-
-				// Llamar a este mismo nivel
-				if(!exprValue()) {
-					
-					// Ha de ser un nmero
-					if(exprType == DataType.NUMBER) {
-						
-						// Tomar su valor negativo
-						exprValue = -(int)exprValue;
-						
-						// xito
-						return false;
-					}
-				}
+			// Comparacin relacional ==, !=, >, >=, <, <=
+			case EQUAL :
+			case NOT_EQUAL :
+			case GREATER :
+			case GREATER_OR_EQUAL :
+			case LESS :
+			case LESS_OR_EQUAL :
 				
-				// Error
-				return true;
-			}
-			
-			// Tomar el tipo del token
-			TinyDevToken.Id tokType = token.getType();
-			
-			// Ver si es un identificador
-			if(tokType == TinyDevToken.Id.IDENTIFIER) {
+				// Solo se permiten comparaciones de 2 valores del
+				// mismo tipo, y que sean numricos o textuales
+				if(exType != exprType || (exType != DataType.NUMBER && exType != DataType.STRING))
+					return true;
 				
-				// Saltar identificador
-				++exprIndex;
+				// Resultado de la comparacin
+				int result;
 				
-				// Ha de ser una variable
-				TinyDevVariable var = findVariable(token.getIdentifier().getName());
+				// Comparar
+				if(exType == DataType.NUMBER)
+					result = Integer.compare(exInt, exprInt);
+				else
+					result = ((String) exValue).compareTo((String) exprValue);
 				
-				// Si no existe como variable, error
-				if(var == null) {
-					
-					errorId = Error.VARIABLE_NOT_EXISTS;
-					return true;
+				// El tipo de la expresin ser booleano
+				exprType = DataType.BOOLEAN;
+			
+				// Calcular el valor de la expresin
+				switch(id) {
+					case EQUAL :
+						exprBool = result == 0;
+						break;
+					case NOT_EQUAL :
+						exprBool = result != 0;
+						break;
+					case GREATER:
+						exprBool = result > 0;
+						break;
+					case GREATER_OR_EQUAL :
+						exprBool = result >= 0;
+						break;
+					case LESS:
+						exprBool = result < 0;
+						break;
+					default :
+						exprBool = result <= 0;
+						break;
 				}
 				
-				// Tomar el tipo de la variable
-				DataType varType = var.getType();
+				return false;
 				
-				// Ver si es un array
-				if(varType == DataType.ARRAY) {
-					// Ver si es un elemento de un array
-					if(arrayIndex()) {
-							
-						// Tomar el ndice
-						int index = (int) exprValue;
-						
-						// Comprobar que el ndice es correcto
-						if(index >= 0 && index < var.getSize()) {
-							
-							// Tomar el valor del elemento del array
-							Object array[] = (Object []) var.getObjectValue();
-							exprValue = array[(int) exprValue];
-							
-							// Tomar el tipo
-							exprType = var.getSubType();
-							
-							// xito
-							return false;
-						}
-						
-						// Error en el ndice del array
-						errorId = Error.OUT_OF_BOUNDS;
-						
-						return true;
-					}
-					
-					if(errorId != Error.SUCCESS) {
-						// Fracaso
-						return true;
-					}
-					
-					// Sub-tipo del array
-					exprSubType = var.getSubType();
+			// Suma: Se pueden sumar 2 nmeros, o concatenar
+			//       2 cadenas.
+			case PLUS :
+				
+				if(exType == DataType.NUMBER && exprType == DataType.NUMBER) {
+					// Suma: 5 + 6 == 11
+					exprInt = exInt + exprInt;
+					return false;
 				}
 				
-				// Tomar el tipo y valor de la variable
-				exprType = varType;
-				exprValue = var.getObjectValue();
+				if(exType == DataType.STRING && exprType == DataType.STRING) {
+					// Concatena: "k" + "q" == "kq"
+					exprValue = (String) exValue + (String) exprValue;
+					return false;
+				}
 				
-				// xito
-				return false;
-			}
-			
-			// Ver si es un n positivo
-			if(tokType == TinyDevToken.Id.NUMBER) {
+				// Error: "k" + 5
+				// Error: 5 + "k"
+				return true;
 				
-				// Saltar nmero
-				++exprIndex;
+			// Resta: Slo se pueden restar 2 nmeros.
+			case MINUS :
 				
-				// Tomar tipo y valor
-				exprType = DataType.NUMBER;
-				exprValue = token.getNumber();
-	
-				// xito
-				return false;
-			}
-			
-			// Ver si el token es una cadena textual
-			if(tokType == TinyDevToken.Id.STRING) {
+				if(exType == DataType.NUMBER && exprType == DataType.NUMBER) {
+					// Resta: 5 - 6 == -1
+					exprInt = exInt - exprInt;
+					return false;
+				}
 				
-				// Saltar token de cadena
-				++exprIndex;
+				// Hay algn valor textual, error
+				return true;
 				
-				// Tomar tipo y valor
-				exprType = DataType.STRING;
-				exprValue = token.getString();
+			// Operacin aritmtica: *, /, %
+			case MULTIPLY :
+			case DIVIDE :
+			case MODULUS :
 				
-				// xito
-				return false;
-			}
-			
-			// Ha de ser una palabra reservada, que devuelve
-			// un valor (funcin)
-			if(tokType == TinyDevToken.Id.KEYWORD) {
+				// Los valores han de ser numricos
+				if(exType != DataType.NUMBER || exprType != DataType.NUMBER)
+					return true;
+				
+				// Tomar los valores
+				int v1 = exInt;
+				int v2 = exprInt;
 				
-				// Saltar palabra reservada
-				++exprIndex;
+				if(id == TinyDevOperator.Id.MULTIPLY)
+					exprInt = v1 * v2;
+				else if(id == TinyDevOperator.Id.DIVIDE)
+					exprInt = v1 / v2;
+				else
+					exprInt = v1 % v2;
 				
-				// Ha de ser un parntesis abierto
-				if(tokenIsOtherOf(peekToken(), TinyDevOperator.Id.OPEN_PARENTHESIS)) {
+				return false;
 				
-					// Saltar (
-					++exprIndex;
+			default :
+				break;
+		}
+		
+		// Operador desconocido -- no debera ocurrir
+		return true;
+	}
+	
+	/**
+	 * Calcular una expresin, ejecutando su bytecode (ver TinyDevBytecode).
+	 * 
+	 * El resultado de cada operacin queda en el acumulador, que se guarda
+	 * en variables locales, y se pasa a exprXxx al llamar a los helpers y
+	 * al terminar; el operando de la izquierda de las operaciones se guarda
+	 * en la pila. Los errores son los mismos que al recorrer su rbol.
+	 * 
+	 * @param pc  posicin de la expresin en el bytecode
+	 * @return true en caso de error, false en caso contrario
+	 */
+	private boolean evalCode(int pc) {
+		
+		// Tomar el bytecode
+		int[] code = this.code;
+		
+		// Base de la pila, para restaurarla en caso de error
+		int base = stackTop;
+		
+		// Acumulador
+		DataType type = exprType;
+		int number = exprInt;
+		boolean bool = exprBool;
+		Object value = exprValue;
+		
+		// Operacin, y operando de la derecha
+		int op;
+		int right = 0;
+		
+		// Bucle de ejecucin
+		for(;;) {
+			
+			switch(op = code[pc++]) {
+			
+				// N positivo
+				case TinyDevBytecode.OP_NUMBER :
+					type = DataType.NUMBER;
+					number = code[pc++];
+					continue;
 					
-					// Comprobar cul es, y generar el tipo y
-					// valor correspondiente
+				// Cadena textual
+				case TinyDevBytecode.OP_STRING :
+					type = DataType.STRING;
+					value = pool[code[pc++]];
+					continue;
 					
-					// Dentro de una funcin, los errores se han de indicar
-					// nicamente fijando errorId.
-					switch(token.getKeyword().getCode()) {
-						case RANDOM : // random()
-							fnRandom();
-							break;
-						case MOUSEX : // mouseX()
-							fnMouseX();
-							break;
-						case MOUSEY : // mouseY()
-							fnMouseY();
-							break;
-						case KEY :  // key()
-							fnKey();
-							break;
-						case REPLY :  // reply()
-							exprType = DataType.STRING;
-							exprValue = dialogInput;
-							break;
-						case MOUSECLICK :  // mouseClick()
-							fnMouseClick();
-							break;
-						case NUMBER :  // number(string)
-							if(!exprString()) {
-								exprType = DataType.NUMBER;
-								exprValue = stringToInt((String) exprValue);
-								break;
-							}
-							//errorId = Error.BAD_DATA_TYPE;
-							break;
-						case STRING :  // string(number)
-							if(!exprNumber()) {
-								exprType = DataType.STRING;
-								exprValue = "" + (int) exprValue;
-								break;
-							}
-							//errorId = Error.BAD_DATA_TYPE;
-							break;
-						case LENGTH :  // length(variable_de_tipo_array | string)
-							// Tomar token
-							token = peekToken();
-							
-							// Si hay token disponible, ver de qu tipo es
-							if(token != null && token.getType() == TinyDevToken.Id.IDENTIFIER) {
-								// Ha de ser una variable...
-								TinyDevVariable var = findVariable(token.getIdentifier().getName());
-								
-								// ... de tipo array
-								if(var != null && var.getType() == DataType.ARRAY) {
-									// Saltar identificador
-									++exprIndex;
-									
-									// Devolver la longitud del array
-									exprType = DataType.NUMBER;
-									exprValue = var.getSize();
-									break;
-								}
-							}
-							
-							// Ha de ser una expresin de cadena
-							if(!exprString()) {
-								exprType = DataType.NUMBER;
-								exprValue = ((String) exprValue).length();
-								break;
-							}
-							//errorId = Error.BAD_DATA_TYPE;
-							break;
-						case BREAK :  // break()
-							exprType = DataType.STRING;
-							exprValue = "\n";
-							break;
-						case MIDDLE : // middle(string, first_pos, how_many)
-							if(!exprString()) {
-								String s = (String) exprValue;
-								if(eatComma())
-									break;
-								if(!exprNumber()) {
-									int firstPos = (int) exprValue;
-									if(eatComma())
-										break;
-									if(!exprNumber()) {
-										int howMany = (int) exprValue;
-										try {
-											exprType = DataType.STRING;
-											exprValue = s.substring(firstPos, firstPos + howMany);
-											break;
-										} catch(IndexOutOfBoundsException ex) {
-											errorId = Error.OUT_OF_BOUNDS;
-											break;
-										}
-									}
-								}
-							}
-							//errorId = Error.BAD_DATA_TYPE;
-							break;
-						case TEXTHEIGHT :  // textHeight(string)
-							if(!exprString()) {
-								exprType = DataType.NUMBER;
-								exprValue = io.getTextHeight(/* (String) exprValue */);
-								break;
-							}
-							//errorId = Error.BAD_DATA_TYPE;
-							break;
-						case TEXTWIDTH :  // textWidth(string)
-							if(!exprString()) {
-								exprType = DataType.NUMBER;
-								exprValue = io.getTextWidth((String) exprValue);
-								break;
-							}
-							//errorId = Error.BAD_DATA_TYPE;
-							break;
-						case PEN : // pen()
-							exprType = DataType.STRING;
-							exprValue = penName;
-							break;
-						case PAPER : // paper()
-							exprType = DataType.STRING;
-							exprValue = paperName;
-							break;
-						case CURSORX :  // cursorX()
-							exprType = DataType.NUMBER;
-							exprValue = io.getColumn();
-							break;
-						case CURSORY :  // cursorY()
-							exprType = DataType.NUMBER;
-							exprValue = io.getRow();
-							break;
-						case SCREENHEIGHT :  // screenHeight()
-							exprType = DataType.NUMBER;
-							exprValue = io.getHeight();
-							break;
-						case SCREENWIDTH :  // screenWidth()
-							exprType = DataType.NUMBER;
-							exprValue = io.getWidth();
-							break;
-						case LOWERCASE :  // lowercase(string)
-							if(!exprString()) {
-								exprType = DataType.STRING;
-								exprValue = ((String) exprValue).toLowerCase(Locale.ROOT);
-								break;
-							}
-							//errorId = Error.BAD_DATA_TYPE;
-							break;
-						case UPPERCASE :  // uppercase(string)
-							if(!exprString()) {
-								exprType = DataType.STRING;
-								exprValue = ((String) exprValue).toUpperCase(Locale.ROOT);
-								break;
-							}
-							//errorId = Error.BAD_DATA_TYPE;
-							break;
-						case FINDSTRING : // findstring(string, substring, {position})
-							if(!exprString()) {
-								String s = (String) exprValue;
-								if(eatComma())
-									break;
-								if(!exprString()) {
-									String ss = (String) exprValue;
-									int p = 0;
-									if(tokensLeft() && tokenIsOtherOf(peekToken(), TinyDevOperator.Id.COMMA)) {
-										++exprIndex;
-										if(exprNumber())
-											break;
-										p = (int) exprValue;
-									}
-									if(p < 0) {
-										errorId = Error.BAD_ARGUMENT;
-										break;
-									}
-									exprType = DataType.NUMBER;
-									exprValue = s.indexOf(ss, p);
-									break;
-								}
-							}
-							//errorId = Error.BAD_DATA_TYPE;
-							break;
-						case REPEATSTRING :
-							if(!exprString()) {
-								String s = (String) exprValue;
-								if(eatComma())
-									break;
-								if(!exprNumber()) {
-									int n = (int) exprValue;
-									
-									if(n < 0) {
-										errorId = Error.BAD_ARGUMENT;
-										break;
-									}
-									String r = "";
-									
-									for(int i = 0; i < n; ++i) {
-										r = r.concat(s);
-									}
-									exprType = DataType.STRING;
-									exprValue = r;
-									break;
-								}
-							}
-							//errorId = Error.BAD_DATA_TYPE;
-							break;
-						case READFILE :
-							if(!exprString()) {
-								String fname = (String) exprValue;
-
-								try {
-									List<String> lines = Files.readAllLines(Paths.get(addCurrentDirToFile(fname)), StandardCharsets.UTF_8);
-									
-									exprType = DataType.ARRAY;
-									exprSubType = DataType.STRING;
-									exprValue = (Object) lines.toArray();
-									
-								} catch (IOException e) {
-									errorId = Error.READING_FILE;
-									
-									// FIXME - problemas:
-									// - si charset del fichero no es utf8 da error.
-									// - permitir paths absolutos o ../ ?
-								}
-								
-								break;
-							}
-							//errorId = Error.BAD_DATA_TYPE;
-							break;
-						case SCREENIMAGE :
-							fnScreenImage();
-							break;
-						default :
-							// Es una palabra reservada que
-							// no es una funcin, error
-							errorId = Error.BAD_SYNTAX;
-							break;
+				// Variable o array
+				case TinyDevBytecode.OP_VARIABLE : {
+					
+					TinyDevVariable var = variables[code[pc++]];
+					
+					// Variable numrica
+					if(var != null && var.getType() == DataType.NUMBER) {
+						type = DataType.NUMBER;
+						number = var.getNumberValue();
+						continue;
+					}
+					
+					// Resto de casos
+					if(loadVariable(var))
+						break;
+					
+					type = exprType;
+					value = exprValue;
+					continue;
+				}
+					
+				// Elemento de un array: comprobar el array, antes de calcular el ndice
+				case TinyDevBytecode.OP_ARRAY :
+					if(checkArray(variables[code[pc++]]))
+						break;
+					continue;
+					
+				// Elemento de un array: el ndice ha de ser numrico
+				case TinyDevBytecode.OP_ELEMENT :
+					if(type != DataType.NUMBER) {
+						errorId = Error.BAD_DATA_TYPE;
+						break;
+					}
+					exprInt = number;
+					if(loadElement(variables[code[pc++]]))
+						break;
+					type = exprType;
+					number = exprInt;
+					value = exprValue;
+					continue;
+					
+				// Signo '-', ha de ser un valor numrico
+				case TinyDevBytecode.OP_NEGATIVE :
+					if(type != DataType.NUMBER)
+						break;
+					number = -number;
+					continue;
+					
+				// Funcin
+				case TinyDevBytecode.OP_FUNCTION :
+					if(evalFunction((TinyDevExpr) pool[code[pc++]]))
+						break;
+					type = exprType;
+					number = exprInt;
+					bool = exprBool;
+					value = exprValue;
+					continue;
+					
+				// Operacin lgica: si el operando de la izquierda decide el
+				// resultado, saltar el de la derecha, sin calcularlo
+				case TinyDevBytecode.OP_AND :
+					if(type != DataType.BOOLEAN)
+						break;
+					pc = (bool ? pc + 1 : code[pc]);
+					continue;
+				case TinyDevBytecode.OP_OR :
+					if(type != DataType.BOOLEAN)
+						break;
+					pc = (bool ? code[pc] : pc + 1);
+					continue;
+				case TinyDevBytecode.OP_BOOLEAN :
+					if(type != DataType.BOOLEAN)
+						break;
+					continue;
+					
+				// Guardar el operando de la izquierda, comprobando su tipo
+				// si es necesario
+				case TinyDevBytecode.OP_PUSH_NUMBER :
+					if(type != DataType.NUMBER)
+						break;
+					push(type, number, bool, value);
+					continue;
+				case TinyDevBytecode.OP_PUSH :
+					push(type, number, bool, value);
+					continue;
+					
+				// Operacin con un nmero constante: el acumulador ha de ser numrico
+				case TinyDevBytecode.OP_OPERATE_NUMBER :
+					if(type != DataType.NUMBER)
+						break;
+					op = code[pc++];
+					right = code[pc++];
+					break;
+					
+				// Operacin con una variable
+				case TinyDevBytecode.OP_OPERATE_VARIABLE : {
+					
+					op = code[pc++];
+					TinyDevVariable var = variables[code[pc++]];
+					
+					// Si los 2 operandos son nmeros, calcular directamente
+					if(type == DataType.NUMBER && var != null && var.getType() == DataType.NUMBER) {
+						right = var.getNumberValue();
+						break;
 					}
 					
-					// Comprobar si hubo un error devuelto por la funcin
-					if(errorId != Error.SUCCESS)
-						return true;
+					// El operando de la izquierda de algunas operaciones se comprueba
+					// antes de tomar el de la derecha
+					if((op == TinyDevBytecode.OP_MULTIPLY || op == TinyDevBytecode.OP_DIVIDE || op == TinyDevBytecode.OP_MODULUS) && type != DataType.NUMBER) {
+						op = TinyDevBytecode.OP_END;
+						break;
+					}
 					
-					// Ha de ser un parntesis cerrado
-					if(tokenIsCloseParenthesis()) {
-				
-						// Saltar palabra reservada
-						++exprIndex;
-						
-						// xito
-						return false;
+					// Tomar la variable, y calcular como con la pila
+					if(loadVariable(var)) {
+						op = TinyDevBytecode.OP_END;
+						break;
+					}
+					
+					if(operate(OPERATORS[op], type, number, bool, value)) {
+						op = TinyDevBytecode.OP_END;
+						break;
 					}
 					
-					// Error: falta el parntesis de cierre
-					errorId = Error.BAD_NUMBER_OF_ARGUMENTS;
+					type = exprType;
+					number = exprInt;
+					bool = exprBool;
+					value = exprValue;
+					continue;
 				}
-				
-				// Error
+					
+				// Operaciones con la pila: operandos numricos
+				case TinyDevBytecode.OP_PLUS :
+				case TinyDevBytecode.OP_MINUS :
+				case TinyDevBytecode.OP_MULTIPLY :
+				case TinyDevBytecode.OP_DIVIDE :
+				case TinyDevBytecode.OP_MODULUS :
+				case TinyDevBytecode.OP_EQUAL :
+				case TinyDevBytecode.OP_NOT_EQUAL :
+				case TinyDevBytecode.OP_GREATER :
+				case TinyDevBytecode.OP_GREATER_OR_EQUAL :
+				case TinyDevBytecode.OP_LESS :
+				case TinyDevBytecode.OP_LESS_OR_EQUAL :
+					if(stackType[--stackTop] == DataType.NUMBER && type == DataType.NUMBER) {
+						right = number;
+						number = stackInt[stackTop];
+						break;
+					}
+					
+					// Resto de casos
+					exprType = type;
+					exprInt = number;
+					exprBool = bool;
+					exprValue = value;
+					
+					if(operate(OPERATORS[op], stackType[stackTop], stackInt[stackTop], stackBool[stackTop], stackValue[stackTop])) {
+						op = TinyDevBytecode.OP_END;
+						break;
+					}
+					
+					type = exprType;
+					number = exprInt;
+					bool = exprBool;
+					value = exprValue;
+					continue;
+					
+				// Fin de la expresin
+				case TinyDevBytecode.OP_END :
+					exprType = type;
+					exprInt = number;
+					exprBool = bool;
+					exprValue = value;
+					return false;
+					
+				// Cdigo desconocido -- no debera ocurrir
+				default :
+					op = TinyDevBytecode.OP_END;
+					break;
+			}
+			
+			// Operacin entre 2 nmeros: el de la izquierda est en el acumulador
+			switch(op) {
+				case TinyDevBytecode.OP_PLUS : number += right; continue;
+				case TinyDevBytecode.OP_MINUS : number -= right; continue;
+				case TinyDevBytecode.OP_MULTIPLY : number *= right; continue;
+				case TinyDevBytecode.OP_DIVIDE : number /= right; continue;
+				case TinyDevBytecode.OP_MODULUS : number %= right; continue;
+				case TinyDevBytecode.OP_EQUAL : bool = number == right; type = DataType.BOOLEAN; continue;
+				case TinyDevBytecode.OP_NOT_EQUAL : bool = number != right; type = DataType.BOOLEAN; continue;
+				case TinyDevBytecode.OP_GREATER : bool = number > right; type = DataType.BOOLEAN; continue;
+				case TinyDevBytecode.OP_GREATER_OR_EQUAL : bool = number >= right; type = DataType.BOOLEAN; continue;
+				case TinyDevBytecode.OP_LESS : bool = number < right; type = DataType.BOOLEAN; continue;
+				case TinyDevBytecode.OP_LESS_OR_EQUAL : bool = number <= right; type = DataType.BOOLEAN; continue;
+				default : break;
 			}
 			
-			// Error
+			// Error (incluidas las operaciones lgicas con nmeros): restaurar la pila
+			stackTop = base;
 			return true;
 		}
-
-		// Faltan argumentos, error
-		errorId = Error.BAD_NUMBER_OF_ARGUMENTS;
-		return true;
-	}
-	
-	private void fnKey() {
-		if(tokenIsCloseParenthesis()) {
-			exprType = DataType.STRING;
-			String str = io.getKey();
-			exprValue = str != null ? str : "";
-		}
 	}
 	
-	private void fnRandom() {
-		if(tokenIsCloseParenthesis()) {
-			exprType = DataType.NUMBER;
-			exprValue = randGen.nextInt(randMax + 1);
+	/**
+	 * Helper para la mquina virtual: Guardar un valor en la pila de
+	 * operandos, amplindola si es necesario.
+	 * 
+	 * @param type    tipo
+	 * @param number  valor, si es numrico
+	 * @param bool    valor, si es booleano
+	 * @param value   valor, si es de otro tipo
+	 */
+	private void push(DataType type, int number, boolean bool, Object value) {
+		
+		if(stackTop == stackType.length) {
+			stackType = Arrays.copyOf(stackType, stackTop * 2);
+			stackInt = Arrays.copyOf(stackInt, stackTop * 2);
+			stackBool = Arrays.copyOf(stackBool, stackTop * 2);
+			stackValue = Arrays.copyOf(stackValue, stackTop * 2);
 		}
+		
+		stackType[stackTop] = type;
+		stackInt[stackTop] = number;
+		stackBool[stackTop] = bool;
+		stackValue[stackTop] = value;
+		++stackTop;
 	}
 	
-	private void fnMouseX() {
-		if(tokenIsCloseParenthesis()) {
-			exprType = DataType.NUMBER;
-			exprValue = io.getMouseX();
-		}
-	}
+	/**
+	 * Calcular una funcin (palabra reservada que devuelve un valor).
+	 * 
+	 * Dentro de una funcin, los errores se han de indicar
+	 * nicamente fijando errorId.
+	 * 
+	 * @param e  nodo
+	 * @return true en caso de error, false en caso contrario
+	 */
+	private boolean evalFunction(TinyDevExpr e) {
 		
-	private void fnMouseY() {
-		if(tokenIsCloseParenthesis()) {
-			exprType = DataType.NUMBER;
-			exprValue = io.getMouseY();
-		}
-	}
+		// Comprobar cul es, y generar el tipo y
+		// valor correspondiente
+		switch(e.getFunction()) {
+			case RANDOM : // random()
+				exprType = DataType.NUMBER;
+				exprInt = randGen.nextInt(randMax + 1);
+				break;
+			case MOUSEX : // mouseX()
+				exprType = DataType.NUMBER;
+				exprInt = io.getMouseX();
+				break;
+			case MOUSEY : // mouseY()
+				exprType = DataType.NUMBER;
+				exprInt = io.getMouseY();
+				break;
+			case KEY :  // key()
+				exprType = DataType.STRING;
+				exprValue = pollKey();
+				break;
+			case REPLY :  // reply()
+				exprType = DataType.STRING;
+				exprValue = dialogInput;
+				break;
+			case MOUSECLICK :  // mouseClick()
+				exprType = DataType.STRING;
+				exprValue = pollMouseClick();
+				break;
+			case NUMBER :  // number(string)
+				if(!exprString(e.getArg(0))) {
+					exprType = DataType.NUMBER;
+					exprInt = stringToInt((String) exprValue);
+				}
+				break;
+			case STRING :  // string(number)
+				if(!exprNumber(e.getArg(0))) {
+					exprType = DataType.STRING;
+					exprValue = "" + exprInt;
+				}
+				break;
+			case LENGTH :  // length(variable_de_tipo_array | string)
+				
+				// Si es una variable de tipo array, devolver su longitud
+				if(e.getArg(0).getType() == TinyDevExpr.Id.VARIABLE) {
+					
+					TinyDevVariable var = findVariable(e.getArg(0).getIdentifier());
+					
+					if(var != null && var.getType() == DataType.ARRAY) {
+						exprType = DataType.NUMBER;
+						exprInt = var.getSize();
+						break;
+					}
+				}
+				
+				// Ha de ser una expresin de cadena
+				if(!exprString(e.getArg(0))) {
+					exprType = DataType.NUMBER;
+					exprInt = ((String) exprValue).length();
+				}
+				break;
+			case BREAK :  // break()
+				exprType = DataType.STRING;
+				exprValue = "\n";
+				break;
+			case MIDDLE : // middle(string, first_pos, how_many)
+				if(!exprString(e.getArg(0))) {
+					String s = (String) exprValue;
+					if(!exprNumber(e.getArg(1))) {
+						int firstPos = exprInt;
+						if(!exprNumber(e.getArg(2))) {
+							int howMany = exprInt;
+							try {
+								exprType = DataType.STRING;
+								exprValue = s.substring(firstPos, firstPos + howMany);
+							} catch(IndexOutOfBoundsException ex) {
+								errorId = Error.OUT_OF_BOUNDS;
+							}
+						}
+					}
+				}
+				break;
+			case TEXTHEIGHT :  // textHeight(string)
+				if(!exprString(e.getArg(0))) {
+					exprType = DataType.NUMBER;
+					exprInt = io.getTextHeight(/* (String) exprValue */);
+				}
+				break;
+			case TEXTWIDTH :  // textWidth(string)
+				if(!exprString(e.getArg(0))) {
+					exprType = DataType.NUMBER;
+					exprInt = io.getTextWidth((String) exprValue);
+				}
+				break;
+			case PEN : // pen()
+				exprType = DataType.STRING;
+				exprValue = penName;
+				break;
+			case PAPER : // paper()
+				exprType = DataType.STRING;
+				exprValue = paperName;
+				break;
+			case CURSORX :  // cursorX()
+				exprType = DataType.NUMBER;
+				exprInt = io.getColumn();
+				break;
+			case CURSORY :  // cursorY()
+				exprType = DataType.NUMBER;
+				exprInt = io.getRow();
+				break;
+			case SCREENHEIGHT :  // screenHeight()
+				exprType = DataType.NUMBER;
+				exprInt = io.getHeight();
+				break;
+			case SCREENWIDTH :  // screenWidth()
+				exprType = DataType.NUMBER;
+				exprInt = io.getWidth();
+				break;
+			case LOWERCASE :  // lowercase(string)
+				if(!exprString(e.getArg(0))) {
+					exprType = DataType.STRING;
+					exprValue = ((String) exprValue).toLowerCase(Locale.ROOT);
+				}
+				break;
+			case UPPERCASE :  // uppercase(string)
+				if(!exprString(e.getArg(0))) {
+					exprType = DataType.STRING;
+					exprValue = ((String) exprValue).toUpperCase(Locale.ROOT);
+				}
+				break;
+			case FINDSTRING : // findstring(string, substring, {position})
+				if(!exprString(e.getArg(0))) {
+					String s = (String) exprValue;
+					if(!exprString(e.getArg(1))) {
+						String ss = (String) exprValue;
+						int p = 0;
+						if(e.getArgCount() > 2) {
+							if(exprNumber(e.getArg(2)))
+								break;
+							p = exprInt;
+						}
+						if(p < 0) {
+							errorId = Error.BAD_ARGUMENT;
+							break;
+						}
+						exprType = DataType.NUMBER;
+						exprInt = s.indexOf(ss, p);
+					}
+				}
+				break;
+			case REPEATSTRING :
+				if(!exprString(e.getArg(0))) {
+					String s = (String) exprValue;
+					if(!exprNumber(e.getArg(1))) {
+						int n = exprInt;
+						
+						if(n < 0) {
+							errorId = Error.BAD_ARGUMENT;
+							break;
+						}
+						String r = "";
+						
+						for(int i = 0; i < n; ++i) {
+							r = r.concat(s);
+						}
+						exprType = DataType.STRING;
+						exprValue = r;
+					}
+				}
+				break;
+			case READFILE :
+				if(!exprString(e.getArg(0))) {
+					String fname = (String) exprValue;
 
-	private void fnMouseClick() {
-		if(tokenIsCloseParenthesis()) {
-			exprType = DataType.STRING;
-			exprValue = io.getMouseClick();
+					try {
+						List<String> lines = Files.readAllLines(Paths.get(addCurrentDirToFile(fname)), StandardCharsets.UTF_8);
+						
+						exprType = DataType.ARRAY;
+						exprSubType = DataType.STRING;
+						exprValue = lines.toArray(new String[lines.size()]);
+						
+						// Comprobar que cabe en la memoria que le queda al
+						// programa, antes de asignarlo
+						if(arrayMemory(DataType.STRING, exprValue) > memoryLimit - memoryUsed)
+							errorId = Error.OUT_OF_MEMORY;
+						
+					} catch (IOException ex) {
+						errorId = Error.READING_FILE;
+						
+						// FIXME - problemas:
+						// - si charset del fichero no es utf8 da error.
+						// - permitir paths absolutos o ../ ?
+					}
+				}
+				break;
+			case SCREENIMAGE :
+				fnScreenImage(e);
+				break;
+			default :
+				// Es una palabra reservada que
+				// no es una funcin, error
+				errorId = Error.BAD_SYNTAX;
+				break;
 		}
+		
+		// Comprobar si hubo un error devuelto por la funcin
+		return errorId != Error.SUCCESS;
 	}
 	
 	// image = screenImage({x, y, width, height})
-	private void fnScreenImage() {
+	private void fnScreenImage(TinyDevExpr e) {
 		int x, y, width, height;
 		
-		if(tokenIsCloseParenthesis()) {
+		if(e.getArgCount() == 0) {
 			// Pantalla completa
 			x = y = width = height = 0;
 		}
 		else {
 			// Pantalla parcial
-			if(exprNumber())
+			if(exprNumber(e.getArg(0)))
 				return;
 			
-			x = (int) exprValue;
-			
-			if(eatComma())
-				return;
+			x = exprInt;
 			
-			if(exprNumber())
+			if(exprNumber(e.getArg(1)))
 				return;
 			
-			y = (int) exprValue;
-			
-			if(eatComma())
-				return;
+			y = exprInt;
 			
-			if(exprNumber())
+			if(exprNumber(e.getArg(2)))
 				return;
 			
-			width = (int) exprValue;
-			
-			if(eatComma())
-				return;
+			width = exprInt;
 			
-			if(exprNumber())
+			if(exprNumber(e.getArg(3)))
 				return;
 			
-			height = (int) exprValue;
-		}
-		
-		if(tokenIsCloseParenthesis()) {
-			// Leer imagen de la pantalla
-			Object img = io.getImage(x, y, width, height);
-			
-			if(img != null) {
-				exprType = DataType.IMAGE;
-				exprValue = img;
-			}
-			else {
-				// Error: posicin y/o dimensiones errneas
-				errorId = Error.BAD_SCREEN_SIZE;
-			}
-		}
-	}
-
-	/**
-	 * Helper: Devuelve un token sin avanzar la posicin en la expresin,
-	 * o null si no quedan ms.
-	 * 
-	 * @return  token en la posicin actual, o null si no quedan ms
-	 */
-	private TinyDevToken peekToken() {
-		
-		// Devolver token si todava quedan
-		if(exprIndex < exprTokens.size()) {
-			return exprTokens.get(exprIndex);
-		}
-		
-		// No quedan
-		return null;
-	}
-	
-	/**
-	 * Comprueba si un token de tipo 'otros' es uno determinado.
-	 * 
-	 * @param token  token
-	 * @param type   tipo
-	 * @return       true si es el indicado, false en caso contrario
-	 */
-	private boolean tokenIsOtherOf(TinyDevToken token, TinyDevOperator.Id type) {
-		
-		// Hacer la comprobacin, si token no es null
-		if(token != null) {
-			// Comprobar si el token coincide con lo indicado
-			if(token.getType() == TinyDevToken.Id.OPERATOR && token.getOperator().getType() == type) {
-				
-				// S
-				return true;
-			}
-		}
-		
-		// No
-		return false;
-	}
-	
-	private boolean tokenIsCloseParenthesis() {
-		return tokenIsOtherOf(peekToken(), TinyDevOperator.Id.CLOSE_PARENTHESIS);
-	}
-	
-	/**
-	 * Comprobar si el token es la palabra reservada indicada.
-	 * 
-	 * @param token  token
-	 * @param id     palabra reservada
-	 * @return       true si coinciden, false en caso contrario
-	 */
-	private boolean tokenIsCommandOf(TinyDevToken token, TinyDevKeyword.Id id) {
-		
-		// Comprobar si la palabra reservada coincide
-		if(token.getType() == TinyDevToken.Id.KEYWORD && token.getKeyword().getCode() == id) {
-			
-			// S
-			return true;
-		}
-		
-		// No
-		return false;
-	}
-
-	/**
-	 * Comprobar si quedan tokens por leer.
-	 * 
-	 * @return  true si quedan, false en caso contrario
-	 */
-	private boolean tokensLeft() {
-		
-		// Devolver comprobacin
-		return exprIndex < exprTokens.size();
-	}
-	
-	/**
-	 * Comprobar si quedan tokens por leer. Si no quedan,
-	 * establece el cdigo de error.
-	 * 
-	 * @return  true si no quedan, false en caso contrario
-	 */
-	private boolean needArg() {
-		
-		// Comprobar si quedan tokens
-		if(!tokensLeft()) {
-			
-			// No quedan, error
-			errorId = Error.BAD_NUMBER_OF_ARGUMENTS;
-			return true;
+			height = exprInt;
 		}
 		
-		// S quedan
-		return false;
-	}
-	
-	/**
-	 * Comprobar si quedan tokens por leer. Si quedan,
-	 * establece el cdigo de error.
-	 * 
-	 * @return  true si quedan, false en caso contrario
-	 */
-	private boolean needEnd() {
-		
-		// Comprobar si quedan tokens
-		if(tokensLeft()) {
-			
-			// S quedan, error
-			errorId = Error.BAD_NUMBER_OF_ARGUMENTS;
-			return true;
-		}
+		// Leer imagen de la pantalla
+		Object img = io.getImage(x, y, width, height);
 		
-		// No quedan
-		return false;
-	}
-	
-	private boolean eatComma() {
-		if(tokenIsOtherOf(peekToken(), TinyDevOperator.Id.COMMA)) {
-			++exprIndex;
-			return false;
+		if(img != null) {
+			exprType = DataType.IMAGE;
+			exprValue = img;
 		}
-		
-		errorId = Error.BAD_NUMBER_OF_ARGUMENTS;
-		return true;
-	}
-	
-	/**
-	 * Comprobar si es una expresin entre corchetes, que indica
-	 * el ndice de un array.
-	 * 
-	 * Si la expresin [num] est bien construida, establece el
-	 * valor de la expresin en el nmero de ndice. En caso
-	 * contrario, establece el error.
-	 * 
-	 * Si no es una expresin entre corchetes, no establece
-	 * error alguno.
-	 * 
-	 * @return  true si es una expresin entre corchetes, false en caso contrario o error
-	 */
-	private boolean arrayIndex() {
-		
-		// Han de quedar tokens
-		if(tokensLeft()) {
-			
-			// Si es un corchete abierto, ha de ser un ndice
-			if(tokenIsOtherOf(exprTokens.get(exprIndex), TinyDevOperator.Id.OPEN_BRACKET)) {
-				
-				// Saltar el corchete
-				++exprIndex;
-				
-				// Ha de ser una expresin numrica
-				if(!exprNumber()) {
-					
-					// Ha de ser un corchete de cierre
-					if(tokensLeft()) {
-						if(tokenIsOtherOf(exprTokens.get(exprIndex), TinyDevOperator.Id.CLOSE_BRACKET)) {
-							
-							// Saltar el corchete
-							++exprIndex;
-							
-							// xito
-							return true;
-						}
-					}
-					
-					// Expresin de ndice mal construida
-					syntaxError();
-				}
-				
-				// Error en la expresin entre corchetes
-				return false;
-			}
+		else {
+			// Error: posicin y/o dimensiones errneas
+			errorId = Error.BAD_SCREEN_SIZE;
 		}
-		
-		// No es una expresin entre corchetes
-		return false;
 	}
-
 }
@@ -30,6 +30,10 @@ public class TinyDevLine {
 	
 	private int number; 				// N de lnea
 	private ArrayList<TinyDevToken> tokens;	// Tokens
+	private TinyDevStatement statement;		// Instruccin compilada, o null si no es ejecutable
+	private int executions;				// N de veces que se ha ejecutado
+	private Runnable closure;				// Instruccin compilada a closure, o null si no la tiene
+	private TinyDevLang.Fusion fusion;		// Forma de superinstruccin, o null si no lo es
 	
 	/**
 	 * Constructor.
@@ -62,5 +66,74 @@ public class TinyDevLine {
 		
 		return tokens;
 	}
+	
+	/**
+	 * Devolver la instruccin compilada.
+	 * 
+	 * @return  instruccin, o null si la lnea no es ejecutable
+	 */
+	public TinyDevStatement getStatement() {
+		
+		return statement;
+	}
+	
+	/**
+	 * Establecer la instruccin compilada.
+	 * 
+	 * @param st  instruccin
+	 */
+	public void setStatement(TinyDevStatement st) {
+		
+		statement = st;
+	}
+	
+	/**
+	 * Contar una ejecucin de la lnea.
+	 * 
+	 * @return  n de veces que se ha ejecutado, incluida esta
+	 */
+	public int countExecution() {
+		
+		return ++executions;
+	}
+	
+	/**
+	 * Devolver la instruccin compilada a closure.
+	 * 
+	 * @return  closure, o null si no la tiene
+	 */
+	public Runnable getClosure() {
+		
+		return closure;
+	}
+	
+	/**
+	 * Establecer la instruccin compilada a closure.
+	 * 
+	 * @param cl  closure
+	 */
+	public void setClosure(Runnable cl) {
+		
+		closure = cl;
+	}
+	
+	/**
+	 * Devolver la forma de superinstruccin de la lnea.
+	 * 
+	 * @return  forma, o null si no es una superinstruccin
+	 */
+	public TinyDevLang.Fusion getFusion() {
+		
+		return fusion;
+	}
+	
+	/**
+	 * Establecer la forma de superinstruccin de la lnea.
+	 * 
+	 * @param fs  forma
+	 */
+	public void setFusion(TinyDevLang.Fusion fs) {
+		
+		fusion = fs;
+	}
 }
-
@@ -0,0 +1,44 @@
+/**
+ * TinyDev - Programming language for kids
+ * 
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+/**
+ * Interfaz para recibir las notificaciones de una ejecucin de un
+ * programa (ver TinyDevLang.execute() y TinyDevLang.run()).
+ * 
+ * El editor la implementa, para llevar el cursor a la lnea que ha
+ * originado un error; en otros usos, como la ejecucin por lotes, puede
+ * no haber ningn receptor.
+ * 
+ * Se llama desde el thread que ejecuta el programa.
+ * 
+ * @author Miguel
+ */
+public interface TinyDevListener {
+	
+	/**
+	 * Indicar que durante el parseado o la ejecucin, se ha producido un error.
+	 * 
+	 * @param lineNumber  nmero de lnea (0..?)
+	 * @param sourceCode  lnea de cdigo fuente
+	 * @param errorMsg    mensaje de error
+	 */
+	void notifyError(int lineNumber, String sourceCode, String errorMsg);
+}
@@ -0,0 +1,406 @@
+/**
+ * TinyDev - Programming language for kids
+ * 
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Clase que implementa una entrada / salida nula: no dibuja nada, no hay
+ * teclado ni ratn, y los dilogos se cancelan.
+ * 
+ * Sirve para medir la velocidad del intrprete, sin el coste de dibujar.
+ * Comprueba las posiciones y tamaos igual que TinyDevScreen, para que los
+ * programas den los mismos errores; el texto tiene unas medidas fijas.
+ * 
+ * Las imgenes son objetos Dimension, con su tamao.
+ * 
+ * @author Miguel
+ */
+public class TinyDevNullIO implements TinyDevIO {
+	
+	private static final int CHAR_WIDTH = 8;    // Ancho de los caracteres en pixels
+	private static final int CHAR_HEIGHT = 16;  // Alto de los caracteres en pixels
+	
+	private int screen_width;  // Ancho de pantalla en pixels
+	private int screen_height; // Alto  de pantalla en pixels
+	
+	private int xpos;          // Posicin X actual del cursor de texto
+	private int ypos;          // Posicin Y actual del cursor de texto
+	
+	private volatile boolean closed;  // True si la pantalla se ha cerrado
+	
+	/**
+	 * Constructor.
+	 */
+	public TinyDevNullIO() {
+		
+		reset(DEFAULT_SCREEN_WIDTH, DEFAULT_SCREEN_HEIGHT);
+	}
+	
+	@Override
+	public boolean reset(int width, int height) {
+		
+		boolean result = false;
+		
+		if(width < MIN_SCREEN_WIDTH || width > MAX_SCREEN_WIDTH
+				|| height < MIN_SCREEN_HEIGHT || height > MAX_SCREEN_HEIGHT) {
+			
+			result = true;
+			
+			width = DEFAULT_SCREEN_WIDTH;
+			height = DEFAULT_SCREEN_HEIGHT;
+		}
+		
+		screen_width = width;
+		screen_height = height;
+		
+		clear();
+		
+		return result;
+	}
+	
+	@Override
+	public void quit() {
+		
+		closed = true;
+	}
+	
+	@Override
+	public boolean isClosed() {
+		
+		return closed;
+	}
+	
+	@Override
+	public void setTitle(String title) {
+		
+		// Nada
+	}
+	
+	@Override
+	public int getWidth() {
+		
+		return screen_width;
+	}
+	
+	@Override
+	public int getHeight() {
+		
+		return screen_height;
+	}
+	
+	@Override
+	public void print(String txt) {
+		
+		// Mover el cursor, como TinyDevScreen, con las medidas fijas
+		for(int i = 0; i < txt.length(); ++i) {
+			
+			if(txt.charAt(i) == '\n' || xpos + CHAR_WIDTH > screen_width)
+				printLn();
+			
+			if(txt.charAt(i) != '\n')
+				xpos += CHAR_WIDTH;
+		}
+	}
+	
+	/**
+	 * Mover la posicin actual, a la siguiente fila, columna 0.
+	 */
+	private void printLn() {
+		
+		xpos = 0;
+		ypos += CHAR_HEIGHT;
+		
+		if(ypos + CHAR_HEIGHT > screen_height)
+			ypos = 0;
+	}
+	
+	@Override
+	public void clear() {
+		
+		xpos = 0;
+		ypos = 0;
+	}
+	
+	@Override
+	public boolean cursorTo(int x, int y) {
+		
+		if(isValidPos(x, y)) {
+			
+			xpos = x;
+			ypos = y;
+			
+			return false;
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public int getRow() {
+		
+		return ypos;
+	}
+	
+	@Override
+	public int getColumn() {
+		
+		return xpos;
+	}
+	
+	@Override
+	public int getTextWidth(String txt) {
+		
+		return txt.length() * CHAR_WIDTH;
+	}
+	
+	@Override
+	public int getTextHeight() {
+		
+		return CHAR_HEIGHT;
+	}
+	
+	@Override
+	public void setFontFace(String face) {
+		
+		// Nada
+	}
+	
+	@Override
+	public void setFontSize(int size) {
+		
+		// Nada
+	}
+	
+	@Override
+	public void setFontStyle(int style) {
+		
+		// Nada
+	}
+	
+	@Override
+	public boolean setPen(String colorName) {
+		
+		return !isColor(colorName);
+	}
+	
+	@Override
+	public boolean setPaper(String colorName) {
+		
+		return !isColor(colorName);
+	}
+	
+	@Override
+	public boolean ellipse(int x, int y, int width, int height, TinyDevLang.Style style) {
+		
+		return !isValidRect(x, y, width, height);
+	}
+	
+	@Override
+	public boolean line(int x, int y, int x2, int y2) {
+		
+		return !(isValidPos(x, y) && isValidPos(x2, y2));
+	}
+	
+	@Override
+	public boolean rectangle(int x, int y, int width, int height, TinyDevLang.Style style) {
+		
+		return !isValidRect(x, y, width, height);
+	}
+	
+	@Override
+	public boolean point(int x, int y) {
+		
+		return !isValidPos(x, y);
+	}
+	
+	@Override
+	public Object loadImage(String filename) {
+		
+		// Slo interesa su tamao
+		try {
+			BufferedImage img = ImageIO.read(new File(filename));
+			
+			return (img != null ? new Dimension(img.getWidth(), img.getHeight()) : null);
+			
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	@Override
+	public boolean saveImage(String filename, Object img) {
+		
+		return false;
+	}
+	
+	@Override
+	public boolean drawImage(int x, int y, Object img) {
+		
+		Dimension d = (Dimension) img;
+		
+		return !isValidRect(x, y, d.width, d.height);
+	}
+	
+	@Override
+	public Object getImage(int x, int y, int width, int height) {
+		
+		if(width <= 0 || height <= 0) {
+			x = y = 0;
+			width = screen_width;
+			height = screen_height;
+		}
+		
+		return (isValidRect(x, y, width, height) ? new Dimension(width, height) : null);
+	}
+	
+	@Override
+	public Object loadSound(String filename) {
+		
+		return filename;
+	}
+	
+	@Override
+	public void playSound(Object snd) {
+		
+		// Nada
+	}
+	
+	@Override
+	public String getKey() {
+		
+		return null;
+	}
+	
+	@Override
+	public String getMouseClick() {
+		
+		return "";
+	}
+	
+	@Override
+	public int getMouseX() {
+		
+		return -1;
+	}
+	
+	@Override
+	public int getMouseY() {
+		
+		return -1;
+	}
+	
+	@Override
+	public String readLine(String prompt, String title) {
+		
+		return "";
+	}
+	
+	@Override
+	public void dialogInformation(String message, String title) {
+		
+		// Nada
+	}
+	
+	@Override
+	public void dialogWarning(String message, String title) {
+		
+		// Nada
+	}
+	
+	@Override
+	public void dialogError(String message, String title) {
+		
+		// Nada
+	}
+	
+	@Override
+	public String dialogYesNo(String message, String title) {
+		
+		return "no";
+	}
+	
+	@Override
+	public String dialogOkCancel(String message, String title) {
+		
+		return "cancel";
+	}
+	
+	/**
+	 * Helper: Comprobar si un nombre de color es vlido (ver
+	 * TinyDevScreen.setPen()).
+	 * 
+	 * @param colorName  nombre
+	 * @return  true si lo es, false en caso contrario
+	 */
+	private boolean isColor(String colorName) {
+		
+		switch(colorName.toLowerCase(Locale.ROOT)) {
+			case "black" :
+			case "blue" :
+			case "cyan" :
+			case "light_gray" :
+			case "gray" :
+			case "dark_gray" :
+			case "magenta" :
+			case "orange" :
+			case "pink" :
+			case "red" :
+			case "white" :
+			case "yellow" :
+			case "green" :
+				return true;
+			default :
+				return false;
+		}
+	}
+	
+	/**
+	 * Helper: Comprobar que una posicin es vlida.
+	 * 
+	 * @param x  posicin X
+	 * @param y  posicin Y
+	 * @return   true si es vlida, false en caso contrario
+	 */
+	private boolean isValidPos(int x, int y) {
+		
+		return x >= 0 && x < screen_width && y >= 0 && y < screen_height;
+	}
+	
+	/**
+	 * Helper: Comprobar que la posicin de un rectngulo es vlida.
+	 * 
+	 * @param x       posicin X
+	 * @param y       posicin Y
+	 * @param width   ancho en pixels
+	 * @param height  alto en pixels
+	 * @return        true si es vlida, false en caso contrario
+	 */
+	private boolean isValidRect(int x, int y, int width, int height) {
+		
+		return isValidPos(x, y) && isValidPos(x + width - 1, y + height - 1);
+	}
+}
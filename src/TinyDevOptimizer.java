@@ -0,0 +1,609 @@
+/**
+ * TinyDev - Programming language for kids
+ *
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Clase que implementa el optimizador de un programa, una vez compiladas
+ * sus lneas, comprobados sus tipos (ver TinyDevLang.checkTypes), y antes
+ * de ejecutarlo.
+ * 
+ * Las optimizaciones no cambian el resultado del programa, ni sus errores:
+ * 
+ * - Propaga las variables numricas o textuales que no se modifican nunca
+ *   (no son destino de ningn SET), declaradas una sola vez, con un valor
+ *   constante, en el prlogo del programa: las lneas anteriores al primer
+ *   place o instruccin de control de flujo, que se ejecutan una sola vez
+ *   y en orden, antes que el resto.
+ * 
+ * - Calcula las expresiones constantes: operaciones y funciones sin
+ *   efectos, cuyos argumentos son constantes (salvo divisiones por cero).
+ * 
+ * - Elimina los IF simples con condicin constante, si el programa no
+ *   tiene ELSE simples, que dependen del resultado del ltimo IF simple.
+ * 
+ * - Encadena los JUMP y CALL a places que comienzan por otro JUMP.
+ * 
+ * - Sustituye los CALL a places de una sola instruccin, seguida de RETURN,
+ *   por dicha instruccin, si no puede dar error (CLEAR, o SET con una
+ *   expresin que no puede fallar, a una variable del prlogo). El CALL
+ *   la ejecuta directamente, despus de comprobar el nivel de CALL, como
+ *   siempre (ver TinyDevStatement.getBody).
+ * 
+ * @author Miguel
+ */
+public class TinyDevOptimizer {
+	
+	private ArrayList<TinyDevLine> program;  // Lneas del programa
+	private int prologue;                    // N de lneas del prlogo
+	private boolean simpleElse;              // True si el programa tiene ELSE simples
+	private TinyDevExpr[] constants;         // Valor constante de cada variable, segn su slot, o null
+	private TinyDevLang.DataType[] types;    // Tipo de cada variable declarada en el prlogo, o null
+	
+	/**
+	 * Optimizar un programa, cuyas lneas ya estn compiladas, y sin errores
+	 * de tipos.
+	 * 
+	 * @param prg    lneas del programa
+	 * @param slots  n de slots en la tabla de variables
+	 */
+	public void optimize(ArrayList<TinyDevLine> prg, int slots) {
+		
+		program = prg;
+		constants = new TinyDevExpr[slots];
+		types = new TinyDevLang.DataType[slots];
+		
+		// N de declaraciones de cada variable, y variables modificadas con SET
+		int[] declarations = new int[slots];
+		boolean[] assigned = new boolean[slots];
+		
+		for(TinyDevLine line : program) {
+			
+			for(TinyDevStatement st = line.getStatement(); st != null; st = st.getNext()) {
+				
+				if(st.getCode() == null || st.getError() != TinyDevLang.Error.SUCCESS)
+					break;
+				
+				if(st.getCode() == TinyDevKeyword.Id.VARIABLE)
+					++declarations[st.getIdentifier().getSlot()];
+				else if(st.getCode() == TinyDevKeyword.Id.SET || st.getCode() == TinyDevKeyword.Id.FOR)
+					assigned[st.getIdentifier().getSlot()] = true;
+				else if(st.getCode() == TinyDevKeyword.Id.ELSE && st.getNext() != null)
+					simpleElse = true;
+			}
+		}
+		
+		// Prlogo: hasta el primer place, o instruccin de control de flujo
+		for(prologue = 0; prologue < program.size(); ++prologue) {
+			
+			TinyDevLine line = program.get(prologue);
+			
+			if(line.getStatement() == null ? !line.getTokens().isEmpty() : changesFlow(line.getStatement()))
+				break;
+		}
+		
+		// Propagar las variables constantes, y calcular las expresiones constantes
+		for(int i = 0; i < program.size(); ++i) {
+			
+			TinyDevStatement st = program.get(i).getStatement();
+			
+			for(TinyDevStatement s = st; s != null; s = s.getNext()) {
+				
+				// Las instrucciones con errores de compilacin los indican al ejecutarse
+				if(s.getCode() == null || s.getError() != TinyDevLang.Error.SUCCESS)
+					break;
+				
+				if(s.getIndex() != null)
+					s.setIndex(fold(s.getIndex()));
+				
+				for(int a = 0; a < s.getArgCount(); ++a)
+					s.setArg(a, fold(s.getArg(a)));
+			}
+			
+			// Tomar las variables declaradas en el prlogo
+			if(i < prologue && st != null && st.getCode() == TinyDevKeyword.Id.VARIABLE && st.getError() == TinyDevLang.Error.SUCCESS)
+				declare(st, declarations, assigned);
+		}
+		
+		// Eliminar los IF simples con condicin constante
+		if(!simpleElse) {
+			
+			for(TinyDevLine line : program)
+				removeDeadIf(line);
+		}
+		
+		// Encadenar los JUMP y CALL, y sustituir los CALL por su place
+		for(TinyDevLine line : program) {
+			
+			for(TinyDevStatement st = line.getStatement(); st != null; st = st.getNext()) {
+				
+				if(st.getError() != TinyDevLang.Error.SUCCESS
+						|| (st.getCode() != TinyDevKeyword.Id.JUMP && st.getCode() != TinyDevKeyword.Id.CALL))
+					continue;
+				
+				st.setTarget(thread(st.getTarget()));
+				
+				if(st.getCode() == TinyDevKeyword.Id.CALL)
+					st.setBody(inlineBody(st.getTarget()));
+			}
+		}
+	}
+	
+	/**
+	 * Comprobar si una instruccin cambia el flujo del programa, o
+	 * lo detiene.
+	 * 
+	 * @param st  instruccin
+	 * @return  true si lo hace, false en caso contrario
+	 */
+	private static boolean changesFlow(TinyDevStatement st) {
+		
+		if(st.getCode() == null)
+			return true;
+		
+		switch(st.getCode()) {
+			case JUMP :
+			case CALL :
+			case RETURN :
+			case IF :
+			case ELSE :
+			case END :
+			case DO :
+			case LOOP :
+			case FOR :
+			case NEXT :
+			case SELECT :
+			case CASE :
+			case BREAK :
+				return true;
+			default :
+				return false;
+		}
+	}
+	
+	/**
+	 * Tomar una variable declarada en el prlogo: existe en todas las
+	 * lneas siguientes, ya que si su declaracin falla, el programa se
+	 * detiene. Si adems no se modifica nunca, y su valor es constante,
+	 * se propaga.
+	 * 
+	 * @param st            instruccin VARIABLE
+	 * @param declarations  n de declaraciones de cada variable
+	 * @param assigned      variables modificadas con SET
+	 */
+	private void declare(TinyDevStatement st, int[] declarations, boolean[] assigned) {
+		
+		int slot = st.getIdentifier().getSlot();
+		
+		// Tipo, si no es un array
+		if(st.getIndex() != null)
+			return;
+		
+		if(st.getOption() == TinyDevKeyword.Id.NUMBER)
+			types[slot] = TinyDevLang.DataType.NUMBER;
+		else if(st.getOption() == TinyDevKeyword.Id.STRING)
+			types[slot] = TinyDevLang.DataType.STRING;
+		else
+			return;
+		
+		// Ha de ser su nica declaracin, y no modificarse nunca
+		if(declarations[slot] != 1 || assigned[slot])
+			return;
+		
+		// Valor constante, o el valor por defecto
+		if(st.getArgCount() == 0)
+			constants[slot] = (types[slot] == TinyDevLang.DataType.NUMBER ? number(0) : string(""));
+		else if(st.getArg(0).getType() == TinyDevExpr.Id.NUMBER && types[slot] == TinyDevLang.DataType.NUMBER)
+			constants[slot] = st.getArg(0);
+		else if(st.getArg(0).getType() == TinyDevExpr.Id.STRING && types[slot] == TinyDevLang.DataType.STRING)
+			constants[slot] = st.getArg(0);
+	}
+	
+	/**
+	 * Propagar las variables constantes, y calcular las expresiones
+	 * constantes, de un nodo de una expresin y sus operandos.
+	 * 
+	 * @param e  nodo
+	 * @return  nodo optimizado
+	 */
+	private TinyDevExpr fold(TinyDevExpr e) {
+		
+		// Variable constante
+		if(e.getType() == TinyDevExpr.Id.VARIABLE) {
+			
+			TinyDevExpr c = constants[e.getIdentifier().getSlot()];
+			
+			if(c == null)
+				return e;
+			
+			return (c.getType() == TinyDevExpr.Id.NUMBER ? number(c.getNumber()) : string(c.getValue()));
+		}
+		
+		// Operandos y argumentos
+		for(int i = 0; i < e.getArgCount(); ++i)
+			e.setArg(i, fold(e.getArg(i)));
+		
+		switch(e.getType()) {
+		
+			case NEGATIVE :
+				if(isNumber(e.getArg(0)))
+					return number(-e.getArg(0).getNumber());
+				break;
+				
+			case OPERATOR :
+				
+				TinyDevExpr left = e.getArg(0);
+				TinyDevExpr right = e.getArg(1);
+				
+				if(isNumber(left) && isNumber(right)) {
+					
+					int l = left.getNumber();
+					int r = right.getNumber();
+					
+					switch(e.getOperator()) {
+						case PLUS :
+							return number(l + r);
+						case MINUS :
+							return number(l - r);
+						case MULTIPLY :
+							return number(l * r);
+						case DIVIDE :
+							if(r != 0)
+								return number(l / r);
+							break;
+						case MODULUS :
+							if(r != 0)
+								return number(l % r);
+							break;
+						default :
+							break;
+					}
+				}
+				else if(isString(left) && isString(right) && e.getOperator() == TinyDevOperator.Id.PLUS) {
+					
+					return string(left.getValue() + right.getValue());
+				}
+				break;
+				
+			case FUNCTION :
+				return foldFunction(e);
+				
+			default :
+				break;
+		}
+		
+		return e;
+	}
+	
+	/**
+	 * Calcular una funcin sin efectos, con argumentos constantes.
+	 * 
+	 * @param e  nodo de la funcin
+	 * @return  nodo optimizado
+	 */
+	private TinyDevExpr foldFunction(TinyDevExpr e) {
+		
+		switch(e.getFunction()) {
+			case STRING :
+				if(isNumber(e.getArg(0)))
+					return string("" + e.getArg(0).getNumber());
+				break;
+			case NUMBER :
+				if(isString(e.getArg(0))) {
+					try {
+						return number(Integer.parseInt(e.getArg(0).getValue()));
+					} catch(NumberFormatException ex) {
+						return number(0);
+					}
+				}
+				break;
+			case LENGTH :
+				if(isString(e.getArg(0)))
+					return number(e.getArg(0).getValue().length());
+				break;
+			case LOWERCASE :
+				if(isString(e.getArg(0)))
+					return string(e.getArg(0).getValue().toLowerCase(Locale.ROOT));
+				break;
+			case UPPERCASE :
+				if(isString(e.getArg(0)))
+					return string(e.getArg(0).getValue().toUpperCase(Locale.ROOT));
+				break;
+			case BREAK :
+				return string("\n");
+			default :
+				break;
+		}
+		
+		return e;
+	}
+	
+	/**
+	 * Calcular una condicin constante.
+	 * 
+	 * @param e  expresin
+	 * @return  1 si es cierta, 0 si es falsa, o -1 si no es constante
+	 */
+	private static int condition(TinyDevExpr e) {
+		
+		if(e.getType() != TinyDevExpr.Id.OPERATOR)
+			return -1;
+		
+		TinyDevExpr left = e.getArg(0);
+		TinyDevExpr right = e.getArg(1);
+		
+		// Operacin lgica: si el operando de la izquierda decide el
+		// resultado, el de la derecha no se llega a calcular
+		if(e.getOperator() == TinyDevOperator.Id.AND || e.getOperator() == TinyDevOperator.Id.OR) {
+			
+			int l = condition(left);
+			
+			if(l < 0)
+				return -1;
+			
+			if(l == (e.getOperator() == TinyDevOperator.Id.AND ? 0 : 1))
+				return l;
+			
+			return condition(right);
+		}
+		
+		// Comparacin relacional
+		int result;
+		
+		if(isNumber(left) && isNumber(right))
+			result = Integer.compare(left.getNumber(), right.getNumber());
+		else if(isString(left) && isString(right))
+			result = left.getValue().compareTo(right.getValue());
+		else
+			return -1;
+		
+		switch(e.getOperator()) {
+			case EQUAL :
+				return result == 0 ? 1 : 0;
+			case NOT_EQUAL :
+				return result != 0 ? 1 : 0;
+			case GREATER :
+				return result > 0 ? 1 : 0;
+			case GREATER_OR_EQUAL :
+				return result >= 0 ? 1 : 0;
+			case LESS :
+				return result < 0 ? 1 : 0;
+			case LESS_OR_EQUAL :
+				return result <= 0 ? 1 : 0;
+			default :
+				return -1;
+		}
+	}
+	
+	/**
+	 * Eliminar de una lnea los IF simples con condicin constante: si es
+	 * cierta, se sustituyen por su instruccin, y si es falsa, se eliminan.
+	 * 
+	 * @param line  lnea
+	 */
+	private void removeDeadIf(TinyDevLine line) {
+		
+		for(;;) {
+			
+			TinyDevStatement st = line.getStatement();
+			
+			if(st == null || st.getCode() != TinyDevKeyword.Id.IF || st.getNext() == null || st.getError() != TinyDevLang.Error.SUCCESS)
+				return;
+			
+			int cond = condition(st.getArg(0));
+			
+			if(cond < 0)
+				return;
+			
+			line.setStatement(cond != 0 ? st.getNext() : null);
+		}
+	}
+	
+	/**
+	 * Encadenar un salto: si su place comienza por un JUMP, saltar
+	 * directamente al place de ste.
+	 * 
+	 * @param target  lnea del place
+	 * @return  lnea del place final
+	 */
+	private int thread(int target) {
+		
+		// Como mximo, tantos saltos como lneas, para no entrar en un bucle sin fin
+		for(int i = 0; i < program.size(); ++i) {
+			
+			TinyDevStatement st = firstStatement(target);
+			
+			if(st == null || st.getCode() != TinyDevKeyword.Id.JUMP || st.getError() != TinyDevLang.Error.SUCCESS)
+				break;
+			
+			target = st.getTarget();
+		}
+		
+		return target;
+	}
+	
+	/**
+	 * Tomar la instruccin de un place de una sola instruccin, seguida de
+	 * RETURN, si no puede dar error.
+	 * 
+	 * @param target  lnea del place
+	 * @return  instruccin, o null si no la hay, o puede dar error
+	 */
+	private TinyDevStatement inlineBody(int target) {
+		
+		// Instruccin, y RETURN
+		int line = nextStatement(target);
+		
+		if(line < 0 || target < prologue)
+			return null;
+		
+		TinyDevStatement st = program.get(line).getStatement();
+		TinyDevStatement ret = firstStatement(line + 1);
+		
+		if(ret == null || ret.getCode() != TinyDevKeyword.Id.RETURN || ret.getError() != TinyDevLang.Error.SUCCESS
+				|| st.getError() != TinyDevLang.Error.SUCCESS || st.getNext() != null)
+			return null;
+		
+		// CLEAR
+		if(st.getCode() == TinyDevKeyword.Id.CLEAR)
+			return st;
+		
+		// SET de una variable del prlogo, con el mismo tipo
+		if(st.getCode() == TinyDevKeyword.Id.SET && st.getIndex() == null) {
+			
+			TinyDevLang.DataType type = types[st.getIdentifier().getSlot()];
+			
+			if(type != null && st.getArg(0).getDataType() == type && safe(st.getArg(0)))
+				return st;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Comprobar si una expresin no puede dar error: todas sus variables
+	 * son del prlogo, y se conocen los tipos de todos sus nodos, que
+	 * no son elementos de arrays, divisiones, ni funciones que pueden fallar.
+	 * 
+	 * @param e  nodo
+	 * @return  true si no puede dar error, false en caso contrario
+	 */
+	private boolean safe(TinyDevExpr e) {
+		
+		if(e.getDataType() == null)
+			return false;
+		
+		switch(e.getType()) {
+			case NUMBER :
+			case STRING :
+				return true;
+			case VARIABLE :
+				return types[e.getIdentifier().getSlot()] != null;
+			case ELEMENT :
+				return false;
+			case OPERATOR :
+				if(e.getOperator() == TinyDevOperator.Id.DIVIDE || e.getOperator() == TinyDevOperator.Id.MODULUS)
+					return false;
+				break;
+			case FUNCTION :
+				switch(e.getFunction()) {
+					case MIDDLE :
+					case FINDSTRING :
+					case REPEATSTRING :
+					case READFILE :
+					case SCREENIMAGE :
+						return false;
+					default :
+						break;
+				}
+				break;
+			default :
+				break;
+		}
+		
+		// Operandos y argumentos
+		for(int i = 0; i < e.getArgCount(); ++i) {
+			
+			if(!safe(e.getArg(i)))
+				return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Buscar la siguiente lnea con instruccin, a partir de una.
+	 * 
+	 * @param line  n de lnea
+	 * @return  n de lnea, o -1 si no hay ms
+	 */
+	private int nextStatement(int line) {
+		
+		while(line < program.size() && program.get(line).getStatement() == null)
+			++line;
+		
+		return (line < program.size() ? line : -1);
+	}
+	
+	/**
+	 * Tomar la siguiente instruccin, a partir de una lnea.
+	 * 
+	 * @param line  n de lnea
+	 * @return  instruccin, o null si no hay ms
+	 */
+	private TinyDevStatement firstStatement(int line) {
+		
+		line = nextStatement(line);
+		
+		return (line < 0 ? null : program.get(line).getStatement());
+	}
+	
+	/**
+	 * Crear un nmero constante.
+	 * 
+	 * @param num  nmero
+	 * @return  nodo
+	 */
+	private static TinyDevExpr number(int num) {
+		
+		TinyDevExpr e = new TinyDevExpr(num);
+		e.setDataType(TinyDevLang.DataType.NUMBER);
+		
+		return e;
+	}
+	
+	/**
+	 * Crear una cadena de texto constante.
+	 * 
+	 * @param str  cadena de texto
+	 * @return  nodo
+	 */
+	private static TinyDevExpr string(String str) {
+		
+		TinyDevExpr e = new TinyDevExpr(str);
+		e.setDataType(TinyDevLang.DataType.STRING);
+		
+		return e;
+	}
+	
+	/**
+	 * Comprobar si un nodo es un nmero constante.
+	 * 
+	 * @param e  nodo
+	 * @return  true si lo es, false en caso contrario
+	 */
+	private static boolean isNumber(TinyDevExpr e) {
+		
+		return e.getType() == TinyDevExpr.Id.NUMBER;
+	}
+	
+	/**
+	 * Comprobar si un nodo es una cadena de texto constante.
+	 * 
+	 * @param e  nodo
+	 * @return  true si lo es, false en caso contrario
+	 */
+	private static boolean isString(TinyDevExpr e) {
+		
+		return e.getType() == TinyDevExpr.Id.STRING;
+	}
+}
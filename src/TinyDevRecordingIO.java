@@ -0,0 +1,364 @@
+/**
+ * TinyDev - Programming language for kids
+ * 
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Clase que implementa una entrada / salida que registra las llamadas de
+ * dibujo y texto, y las pasa a otra (TinyDevScreen, TinyDevNullIO...).
+ * 
+ * Cada llamada se guarda como una lnea de texto, con su nombre y sus
+ * argumentos; por ejemplo: "line 10 10 50 50". Se guardan hasta un
+ * mximo de lneas, para no agotar la memoria con programas largos; el
+ * resto slo se cuentan.
+ * 
+ * @author Miguel
+ */
+public class TinyDevRecordingIO implements TinyDevIO {
+	
+	public static final int DEFAULT_MAX_ENTRIES = 100000;  // Mximo n de llamadas que se guardan, por defecto
+	
+	private TinyDevIO io;                                  // Entrada / salida a la que se pasan las llamadas
+	private ArrayList<String> log = new ArrayList<String>(); // Llamadas registradas
+	private int maxEntries;                                // Mximo n de llamadas que se guardan
+	private long count;                                    // N de llamadas registradas, incluidas las no guardadas
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param target  entrada / salida a la que se pasan las llamadas
+	 */
+	public TinyDevRecordingIO(TinyDevIO target) {
+		
+		this(target, DEFAULT_MAX_ENTRIES);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param target      entrada / salida a la que se pasan las llamadas
+	 * @param maxEntries  mximo n de llamadas que se guardan
+	 */
+	public TinyDevRecordingIO(TinyDevIO target, int maxEntries) {
+		
+		io = target;
+		this.maxEntries = maxEntries;
+	}
+	
+	/**
+	 * Devolver las llamadas registradas, en orden.
+	 * 
+	 * @return  llamadas
+	 */
+	public List<String> getLog() {
+		
+		return log;
+	}
+	
+	/**
+	 * Devolver el n de llamadas registradas, incluidas las que no se han
+	 * guardado por superar el mximo.
+	 * 
+	 * @return  n de llamadas
+	 */
+	public long getCount() {
+		
+		return count;
+	}
+	
+	/**
+	 * Helper: Registrar una llamada.
+	 * 
+	 * @param call  nombre y argumentos
+	 */
+	private void record(String call) {
+		
+		if(++count <= maxEntries)
+			log.add(call);
+	}
+	
+	// ---------------------
+	// Llamadas registradas
+	// ---------------------
+	
+	@Override
+	public boolean reset(int width, int height) {
+		
+		record("reset " + width + " " + height);
+		
+		return io.reset(width, height);
+	}
+	
+	@Override
+	public void print(String txt) {
+		
+		record("print " + txt);
+		
+		io.print(txt);
+	}
+	
+	@Override
+	public void clear() {
+		
+		record("clear");
+		
+		io.clear();
+	}
+	
+	@Override
+	public boolean cursorTo(int x, int y) {
+		
+		record("cursorTo " + x + " " + y);
+		
+		return io.cursorTo(x, y);
+	}
+	
+	@Override
+	public void setFontFace(String face) {
+		
+		record("setFontFace " + face);
+		
+		io.setFontFace(face);
+	}
+	
+	@Override
+	public void setFontSize(int size) {
+		
+		record("setFontSize " + size);
+		
+		io.setFontSize(size);
+	}
+	
+	@Override
+	public void setFontStyle(int style) {
+		
+		record("setFontStyle " + style);
+		
+		io.setFontStyle(style);
+	}
+	
+	@Override
+	public boolean setPen(String colorName) {
+		
+		record("setPen " + colorName);
+		
+		return io.setPen(colorName);
+	}
+	
+	@Override
+	public boolean setPaper(String colorName) {
+		
+		record("setPaper " + colorName);
+		
+		return io.setPaper(colorName);
+	}
+	
+	@Override
+	public boolean ellipse(int x, int y, int width, int height, TinyDevLang.Style style) {
+		
+		record("ellipse " + x + " " + y + " " + width + " " + height + " " + style);
+		
+		return io.ellipse(x, y, width, height, style);
+	}
+	
+	@Override
+	public boolean line(int x, int y, int x2, int y2) {
+		
+		record("line " + x + " " + y + " " + x2 + " " + y2);
+		
+		return io.line(x, y, x2, y2);
+	}
+	
+	@Override
+	public boolean rectangle(int x, int y, int width, int height, TinyDevLang.Style style) {
+		
+		record("rectangle " + x + " " + y + " " + width + " " + height + " " + style);
+		
+		return io.rectangle(x, y, width, height, style);
+	}
+	
+	@Override
+	public boolean point(int x, int y) {
+		
+		record("point " + x + " " + y);
+		
+		return io.point(x, y);
+	}
+	
+	@Override
+	public boolean drawImage(int x, int y, Object img) {
+		
+		record("drawImage " + x + " " + y);
+		
+		return io.drawImage(x, y, img);
+	}
+	
+	@Override
+	public void playSound(Object snd) {
+		
+		record("playSound " + snd);
+		
+		io.playSound(snd);
+	}
+	
+	// ------------------------
+	// Llamadas no registradas
+	// ------------------------
+	
+	@Override
+	public void quit() {
+		
+		io.quit();
+	}
+	
+	@Override
+	public boolean isClosed() {
+		
+		return io.isClosed();
+	}
+	
+	@Override
+	public void setTitle(String title) {
+		
+		io.setTitle(title);
+	}
+	
+	@Override
+	public int getWidth() {
+		
+		return io.getWidth();
+	}
+	
+	@Override
+	public int getHeight() {
+		
+		return io.getHeight();
+	}
+	
+	@Override
+	public int getRow() {
+		
+		return io.getRow();
+	}
+	
+	@Override
+	public int getColumn() {
+		
+		return io.getColumn();
+	}
+	
+	@Override
+	public int getTextWidth(String txt) {
+		
+		return io.getTextWidth(txt);
+	}
+	
+	@Override
+	public int getTextHeight() {
+		
+		return io.getTextHeight();
+	}
+	
+	@Override
+	public Object loadImage(String filename) {
+		
+		return io.loadImage(filename);
+	}
+	
+	@Override
+	public boolean saveImage(String filename, Object img) {
+		
+		return io.saveImage(filename, img);
+	}
+	
+	@Override
+	public Object getImage(int x, int y, int width, int height) {
+		
+		return io.getImage(x, y, width, height);
+	}
+	
+	@Override
+	public Object loadSound(String filename) {
+		
+		return io.loadSound(filename);
+	}
+	
+	@Override
+	public String getKey() {
+		
+		return io.getKey();
+	}
+	
+	@Override
+	public String getMouseClick() {
+		
+		return io.getMouseClick();
+	}
+	
+	@Override
+	public int getMouseX() {
+		
+		return io.getMouseX();
+	}
+	
+	@Override
+	public int getMouseY() {
+		
+		return io.getMouseY();
+	}
+	
+	@Override
+	public String readLine(String prompt, String title) {
+		
+		return io.readLine(prompt, title);
+	}
+	
+	@Override
+	public void dialogInformation(String message, String title) {
+		
+		io.dialogInformation(message, title);
+	}
+	
+	@Override
+	public void dialogWarning(String message, String title) {
+		
+		io.dialogWarning(message, title);
+	}
+	
+	@Override
+	public void dialogError(String message, String title) {
+		
+		io.dialogError(message, title);
+	}
+	
+	@Override
+	public String dialogYesNo(String message, String title) {
+		
+		return io.dialogYesNo(message, title);
+	}
+	
+	@Override
+	public String dialogOkCancel(String message, String title) {
+		
+		return io.dialogOkCancel(message, title);
+	}
+}
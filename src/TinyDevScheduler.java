@@ -0,0 +1,366 @@
+/**
+ * TinyDev - Programming language for kids
+ * 
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Clase que ejecuta muchos programas por turnos, con pocos threads.
+ * 
+ * Cada programa se ejecuta con su propio contexto (ver TinyDevLang.newRun()),
+ * un turno cada vez: tras ejecutar un n de lneas (el quantum), cede su
+ * thread al siguiente programa de la cola. As, un programa con un bucle
+ * sin fin no impide que se ejecuten los dems.
+ * 
+ * Un programa en un WAIT, o que espera una tecla o un click, se suspende
+ * sin ocupar ningn thread, en una rueda de temporizacin: un array de
+ * listas, una por cada milisegundo de una vuelta, en el que cada programa
+ * est en la lista de su instante de finalizacin. Un thread recorre la
+ * rueda, y devuelve a la cola los programas cuyas esperas han finalizado.
+ * 
+ * Los threads no impiden que finalice la JVM.
+ * 
+ * @author Miguel
+ */
+public class TinyDevScheduler {
+	
+	public static final int DEFAULT_QUANTUM = 1000;  // N de lneas que se ejecutan en cada turno, por defecto
+	
+	private static final long TICK_NANOS = 1000000L;  // Tiempo de cada posicin de la rueda, en ns
+	private static final int WHEEL_SIZE = 512;        // N de posiciones de la rueda (una vuelta)
+	
+	private int quantum;  // N de lneas que se ejecutan en cada turno
+	
+	// Programas listos para ejecutar su turno, en orden
+	private LinkedBlockingQueue<Task> ready = new LinkedBlockingQueue<Task>();
+	
+	// Programas en ejecucin, segn su contexto
+	private ConcurrentHashMap<TinyDevLang, Task> tasks = new ConcurrentHashMap<TinyDevLang, Task>();
+	
+	// Rueda de temporizacin; sus datos se protegen con su lock
+	private ArrayList<ArrayList<Task>> wheel = new ArrayList<ArrayList<Task>>(WHEEL_SIZE);
+	private long wheelStart = System.nanoTime();  // Instante de la posicin 0
+	private long lastTick = -1;                   // ltima posicin recorrida
+	private int suspended;                        // N de programas en la rueda
+	
+	private Thread[] workers;         // Threads que ejecutan los turnos
+	private Thread timer;             // Thread que recorre la rueda
+	private volatile boolean closed;  // True si se ha cerrado el planificador
+	
+	/**
+	 * Programa en ejecucin.
+	 */
+	private static class Task {
+		
+		private TinyDevLang lang;             // Contexto de ejecucin
+		private ArrayList<String> sourceCode; // Cdigo fuente
+		private TinyDevIO io;                 // Objeto de entrada / salida
+		private String currentDir;            // Directorio actual
+		private Consumer<Throwable> done;     // Aviso de finalizacin
+		
+		private boolean started;    // True si se ha preparado su ejecucin
+		private boolean suspended;  // True si est en la rueda
+		private boolean stopped;    // True si se ha detenido (ver stop())
+		private long wakeTick;      // Posicin de la rueda en que finaliza su espera
+	}
+	
+	/**
+	 * Constructor: un thread por procesador, y el quantum por defecto.
+	 */
+	public TinyDevScheduler() {
+		
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUANTUM);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param threads  n de threads que ejecutan los turnos (> 0)
+	 * @param quantum  n de lneas que se ejecutan en cada turno (> 0)
+	 */
+	public TinyDevScheduler(int threads, int quantum) {
+		
+		if(threads < 1 || quantum < 1)
+			throw new IllegalArgumentException();
+		
+		this.quantum = quantum;
+		
+		for(int i = 0; i < WHEEL_SIZE; ++i)
+			wheel.add(new ArrayList<Task>());
+		
+		// Threads de ejecucin
+		workers = new Thread[threads];
+		
+		for(int i = 0; i < threads; ++i) {
+			
+			workers[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					
+					work();
+				}
+			}, "TinyDev worker " + i);
+			
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		
+		// Thread de la rueda
+		timer = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				turnWheel();
+			}
+		}, "TinyDev timer");
+		
+		timer.setDaemon(true);
+		timer.start();
+	}
+	
+	/**
+	 * Ejecutar un programa. Finaliza enseguida; el aviso de finalizacin se
+	 * llama desde un thread del planificador, al terminar el programa, con
+	 * null, o con la excepcin que lo ha terminado.
+	 * 
+	 * @param lang        contexto de ejecucin (ver TinyDevLang.newRun())
+	 * @param sourceCode  cdigo fuente
+	 * @param io          objeto de entrada / salida
+	 * @param currentDir  directorio actual, para los ficheros del programa
+	 * @param done        aviso de finalizacin
+	 */
+	public void submit(TinyDevLang lang, ArrayList<String> sourceCode, TinyDevIO io, String currentDir, Consumer<Throwable> done) {
+		
+		if(closed)
+			throw new IllegalStateException("Scheduler closed");
+		
+		Task task = new Task();
+		
+		task.lang = lang;
+		task.sourceCode = sourceCode;
+		task.io = io;
+		task.currentDir = currentDir;
+		task.done = done;
+		
+		tasks.put(lang, task);
+		ready.add(task);
+	}
+	
+	/**
+	 * Parar la ejecucin de un programa. Si est suspendido en una espera,
+	 * la termina. Se puede llamar desde cualquier thread.
+	 * 
+	 * @param lang  contexto de ejecucin
+	 */
+	public void stop(TinyDevLang lang) {
+		
+		lang.stop();
+		
+		Task task = tasks.get(lang);
+		
+		if(task != null) {
+			
+			synchronized(wheel) {
+				
+				task.stopped = true;
+				
+				if(task.suspended) {
+					
+					wheel.get(slot(task.wakeTick)).remove(task);
+					--suspended;
+					
+					task.suspended = false;
+					ready.add(task);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Cerrar el planificador, y sus threads. Los programas que no han
+	 * finalizado se abandonan, sin aviso.
+	 */
+	public void shutdown() {
+		
+		closed = true;
+		
+		for(Thread th : workers)
+			th.interrupt();
+		
+		timer.interrupt();
+	}
+	
+	/**
+	 * Bucle de un thread de ejecucin: ejecutar un turno de cada programa
+	 * listo, en orden.
+	 */
+	private void work() {
+		
+		try {
+			while(!closed)
+				runSlice(ready.take());
+			
+		} catch(InterruptedException e) {
+			// Cerrado (ver shutdown())
+		}
+	}
+	
+	/**
+	 * Ejecutar un turno de un programa, y devolverlo a la cola, o a la
+	 * rueda, segn cmo termine.
+	 * 
+	 * @param task  programa
+	 */
+	private void runSlice(Task task) {
+		
+		boolean finished;
+		Throwable error = null;
+		
+		try {
+			if(task.started)
+				finished = task.lang.runSlice();
+			else {
+				task.started = true;
+				finished = task.lang.startSlices(task.sourceCode, task.io, task.currentDir, quantum);
+			}
+			
+		} catch(RuntimeException | StackOverflowError e) {
+			
+			finished = true;
+			error = e;
+		}
+		
+		if(finished) {
+			
+			tasks.remove(task.lang);
+			task.done.accept(error);
+		}
+		else if(task.lang.isWaiting())
+			suspend(task, task.lang.getWakeTime());
+		else
+			ready.add(task);
+	}
+	
+	/**
+	 * Suspender un programa en la rueda, hasta un instante.
+	 * 
+	 * @param task      programa
+	 * @param wakeTime  instante (ver System.nanoTime())
+	 */
+	private void suspend(Task task, long wakeTime) {
+		
+		synchronized(wheel) {
+			
+			long tick = (wakeTime - wheelStart + TICK_NANOS - 1) / TICK_NANOS;
+			
+			// Si su espera ya ha finalizado, o se ha detenido, sigue en la cola
+			if(wakeTime - System.nanoTime() <= 0 || tick <= lastTick || task.stopped) {
+				ready.add(task);
+				return;
+			}
+			
+			task.suspended = true;
+			task.wakeTick = tick;
+			
+			wheel.get(slot(tick)).add(task);
+			
+			// Si la rueda estaba parada, ponerla en marcha
+			if(suspended++ == 0)
+				wheel.notify();
+		}
+	}
+	
+	/**
+	 * Bucle del thread de la rueda: cada milisegundo, devolver a la cola
+	 * los programas cuyas esperas han finalizado. Si no hay ninguno en la
+	 * rueda, espera a que lo haya.
+	 */
+	private void turnWheel() {
+		
+		try {
+			while(!closed) {
+				
+				long nanos;
+				
+				synchronized(wheel) {
+					
+					long now = (System.nanoTime() - wheelStart) / TICK_NANOS;
+					
+					// Recorrer las posiciones desde la ltima vez, sin dar
+					// ms de una vuelta; en cada una puede haber programas
+					// de vueltas posteriores
+					for(long tick = Math.max(lastTick + 1, now - WHEEL_SIZE + 1); tick <= now && suspended > 0; ++tick) {
+						
+						Iterator<Task> it = wheel.get(slot(tick)).iterator();
+						
+						while(it.hasNext()) {
+							
+							Task task = it.next();
+							
+							if(task.wakeTick <= now) {
+								
+								it.remove();
+								--suspended;
+								
+								task.suspended = false;
+								ready.add(task);
+							}
+						}
+					}
+					
+					lastTick = now;
+					
+					// Si no hay programas en la rueda, esperar a que los haya
+					if(suspended == 0) {
+						wheel.wait();
+						continue;
+					}
+					
+					nanos = wheelStart + (now + 1) * TICK_NANOS - System.nanoTime();
+				}
+				
+				// Esperar a la siguiente posicin, sin el lock (wait() no
+				// tiene una precisin menor que un ms)
+				LockSupport.parkNanos(nanos);
+			}
+			
+		} catch(InterruptedException e) {
+			// Cerrado (ver shutdown())
+		}
+	}
+	
+	/**
+	 * Helper: Posicin en la rueda de un instante.
+	 * 
+	 * @param tick  instante, en posiciones desde la posicin 0
+	 * @return  posicin
+	 */
+	private static int slot(long tick) {
+		
+		return (int) (tick % WHEEL_SIZE);
+	}
+}
@@ -39,7 +39,8 @@ import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.*;
 
 /**
- * Clase que implementa la entrada / salida de teclado, ratn y pantalla.
+ * Clase que implementa la entrada / salida de teclado, ratn y pantalla,
+ * con una ventana de Swing (ver TinyDevIO).
  * 
  * Esta clase es totalmente dependiente del entorno (Swing, Android, etc.).
  * 
@@ -55,15 +56,7 @@ import javax.swing.*;
  * 
  * @author Miguel
  */
-public class TinyDevScreen implements KeyListener {
-	
-	public static final int MIN_SCREEN_WIDTH = 256;
-	public static final int MIN_SCREEN_HEIGHT = 256;
-	public static final int MAX_SCREEN_WIDTH = 800;
-	public static final int MAX_SCREEN_HEIGHT = 800;
-
-	public static final int DEFAULT_SCREEN_WIDTH = 300;	// Ancho de pantalla en pixels por defecto
-	public static final int DEFAULT_SCREEN_HEIGHT = 300;   // Alto  de pantalla en pixels por defecto
+public class TinyDevScreen implements TinyDevIO, KeyListener {
 	
 	private Color pen;         // Color de pluma actual
 	private Color paper;       // Color de papel (fondo) actual
@@ -99,11 +92,33 @@ public class TinyDevScreen implements KeyListener {
 	 * Constructor.
 	 * 
 	 * Crea e inicializa la ventana.
-	 * 
-	 * @param title Ttulo de la ventana
 	 */
 	public TinyDevScreen() {
 		
+		this(true);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * Sin ventana, slo se dibuja en el buffer de pantalla; las subclases
+	 * se encargan de la entrada, los dilogos, etc. (ver TinyDevHeadlessScreen).
+	 * 
+	 * @param window  true para crear la ventana, false en caso contrario
+	 */
+	protected TinyDevScreen(boolean window) {
+		
+		if(window)
+			createWindow();
+		
+        reset(DEFAULT_SCREEN_WIDTH, DEFAULT_SCREEN_HEIGHT);                       // Finalizar inicializacin
+	}
+	
+	/**
+	 * Crear la ventana.
+	 */
+	private void createWindow() {
+		
 		frame = new JFrame();          // Nueva ventana
 		frame.setTitle("");            // Ttulo por defecto
 		frame.setIconImage(new ImageIcon(getClass().getResource("/AppIcon.png")).getImage());
@@ -123,8 +138,6 @@ public class TinyDevScreen implements KeyListener {
 		});
 		
         frame.setContentPane(label);   // Aadir el componente
-        
-        reset(DEFAULT_SCREEN_WIDTH, DEFAULT_SCREEN_HEIGHT);                       // Finalizar inicializacin
 	}
 	
 	/**
@@ -150,7 +163,8 @@ public class TinyDevScreen implements KeyListener {
 		screen_width = width;           // Ancho del bitmap en pixels
 		screen_height = height;         // Alto  del bitmap en pixels
 		
-		frame.setSize(width, height);   // Fijar tamao de la ventana
+		if(frame != null)
+			frame.setSize(width, height);   // Fijar tamao de la ventana
 		
 		// Crear buffer para el bitmap
 		
@@ -178,7 +192,8 @@ public class TinyDevScreen implements KeyListener {
         
         //graphics.addRenderingHints(hints);
 
-        label.setIcon(new ImageIcon(screen));  // Agregar el bitmap al componente que lo mostrar
+        if(frame != null)
+        	label.setIcon(new ImageIcon(screen));  // Agregar el bitmap al componente que lo mostrar
         
 		pen = Color.BLACK;   // Color de pluma
 		paper = Color.WHITE; // Color de papel
@@ -192,9 +207,11 @@ public class TinyDevScreen implements KeyListener {
 		
 		mouseButton = MouseEvent.NOBUTTON;
         
-        frame.setVisible(true);  // Mostrar ventana
-		
-		frame.pack();            // Adaptar el tamao de la ventana a su contenido
+		if(frame != null) {
+			frame.setVisible(true);  // Mostrar ventana
+			
+			frame.pack();            // Adaptar el tamao de la ventana a su contenido
+		}
 		
 		clear();                 // Borrar el bitmap
 		
@@ -729,7 +746,8 @@ public class TinyDevScreen implements KeyListener {
 		
 		// Repintar -- NOTA: repaint() es thread-safe
 		
-		frame.repaint();
+		if(frame != null)
+			frame.repaint();
 	}
 	
 	public String getMouseClick() {
@@ -0,0 +1,310 @@
+/**
+ * TinyDev - Programming language for kids
+ * 
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Clase que implementa un bloque SELECT ... END SELECT.
+ * 
+ * Guarda las lneas de sus CASE, CASE ELSE y END SELECT, calculadas antes
+ * de la ejecucin (ver TinyDevLang.matchBlocks()).
+ * 
+ * Si todos los valores de los CASE son constantes del mismo tipo, se
+ * construye una tabla de saltos, para encontrar el CASE correspondiente
+ * sin comparar el valor con cada uno de ellos: un array indexado por el
+ * valor, si son nmeros cercanos entre s, o una tabla hash en los dems
+ * casos.
+ * 
+ * @author Miguel
+ */
+public class TinyDevSelect {
+	
+	// Huecos permitidos en la tabla indexada, por cada valor
+	private static final int INDEX_SPREAD = 4;
+	
+	private TinyDevStatement select;                                              // Instruccin SELECT
+	private ArrayList<TinyDevStatement> cases = new ArrayList<TinyDevStatement>(); // CASE con valores
+	private ArrayList<Integer> caseLines = new ArrayList<Integer>();             // N de lnea de cada CASE
+	private int elseLine = -1;                                                    // N de lnea del CASE ELSE, o -1
+	private int endLine = -1;                                                     // N de lnea del END SELECT, o -1
+	
+	// Tabla de saltos
+	private TinyDevLang.DataType tableType;        // Tipo de los valores, o null si no hay tabla
+	private int minNumber;                         // Menor valor numrico, en la tabla indexada
+	private int[] numberLines;                     // Tabla indexada: n de lnea, o -1
+	private HashMap<Integer, Integer> numberTable; // Tabla hash de valores numricos
+	private HashMap<String, Integer> stringTable;  // Tabla hash de valores textuales
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param st  instruccin SELECT
+	 */
+	public TinyDevSelect(TinyDevStatement st) {
+		
+		select = st;
+	}
+	
+	/**
+	 * Devolver la instruccin SELECT.
+	 * 
+	 * @return  instruccin
+	 */
+	public TinyDevStatement getSelect() {
+		
+		return select;
+	}
+	
+	/**
+	 * Aadir un CASE con valores.
+	 * 
+	 * @param st    instruccin CASE
+	 * @param line  n de lnea
+	 */
+	public void addCase(TinyDevStatement st, int line) {
+		
+		cases.add(st);
+		caseLines.add(line);
+	}
+	
+	/**
+	 * Devolver el n de CASE con valores.
+	 * 
+	 * @return  n de CASE
+	 */
+	public int getCaseCount() {
+		
+		return cases.size();
+	}
+	
+	/**
+	 * Devolver un CASE con valores.
+	 * 
+	 * @param index  ndice (0..?)
+	 * @return  instruccin CASE
+	 */
+	public TinyDevStatement getCase(int index) {
+		
+		return cases.get(index);
+	}
+	
+	/**
+	 * Devolver el n de lnea de un CASE con valores.
+	 * 
+	 * @param index  ndice (0..?)
+	 * @return  n de lnea
+	 */
+	public int getCaseLine(int index) {
+		
+		return caseLines.get(index);
+	}
+	
+	/**
+	 * Devolver el n de lnea del CASE ELSE.
+	 * 
+	 * @return  n de lnea, o -1 si no lo hay
+	 */
+	public int getElseLine() {
+		
+		return elseLine;
+	}
+	
+	/**
+	 * Establecer el n de lnea del CASE ELSE.
+	 * 
+	 * @param line  n de lnea
+	 */
+	public void setElseLine(int line) {
+		
+		elseLine = line;
+	}
+	
+	/**
+	 * Devolver el n de lnea del END SELECT.
+	 * 
+	 * @return  n de lnea, o -1 si no lo hay
+	 */
+	public int getEndLine() {
+		
+		return endLine;
+	}
+	
+	/**
+	 * Establecer el n de lnea del END SELECT.
+	 * 
+	 * @param line  n de lnea
+	 */
+	public void setEndLine(int line) {
+		
+		endLine = line;
+	}
+	
+	/**
+	 * Construir la tabla de saltos, si todos los valores de los CASE son
+	 * constantes del mismo tipo. Si un valor est repetido, vale el del
+	 * primer CASE, como al compararlos uno a uno.
+	 */
+	public void buildTable() {
+		
+		tableType = null;
+		numberLines = null;
+		numberTable = null;
+		stringTable = null;
+		
+		// Comprobar que los valores son constantes, y su tipo
+		TinyDevLang.DataType type = null;
+		int count = 0;
+		long min = Integer.MAX_VALUE;
+		long max = Integer.MIN_VALUE;
+		
+		for(TinyDevStatement st : cases) {
+			
+			for(int i = 0; i < st.getArgCount(); ++i) {
+				
+				TinyDevExpr e = st.getArg(i);
+				TinyDevLang.DataType dt;
+				
+				if(e.getType() == TinyDevExpr.Id.STRING)
+					dt = TinyDevLang.DataType.STRING;
+				else if(isNumber(e)) {
+					
+					dt = TinyDevLang.DataType.NUMBER;
+					min = Math.min(min, number(e));
+					max = Math.max(max, number(e));
+				}
+				else
+					return;
+				
+				if(type != null && dt != type)
+					return;
+				
+				type = dt;
+				++count;
+			}
+		}
+		
+		if(count == 0)
+			return;
+		
+		// Nmeros cercanos: tabla indexada; si no, tabla hash
+		if(type == TinyDevLang.DataType.NUMBER && max - min < (long) count * INDEX_SPREAD) {
+			
+			minNumber = (int) min;
+			numberLines = new int[(int) (max - min) + 1];
+			
+			for(int i = 0; i < numberLines.length; ++i)
+				numberLines[i] = -1;
+		}
+		else if(type == TinyDevLang.DataType.NUMBER)
+			numberTable = new HashMap<Integer, Integer>();
+		else
+			stringTable = new HashMap<String, Integer>();
+		
+		// Rellenar la tabla, en orden
+		for(int c = cases.size() - 1; c >= 0; --c) {
+			
+			TinyDevStatement st = cases.get(c);
+			int line = caseLines.get(c);
+			
+			for(int i = st.getArgCount() - 1; i >= 0; --i) {
+				
+				TinyDevExpr e = st.getArg(i);
+				
+				if(numberLines != null)
+					numberLines[number(e) - minNumber] = line;
+				else if(numberTable != null)
+					numberTable.put(number(e), line);
+				else
+					stringTable.put(e.getValue(), line);
+			}
+		}
+		
+		tableType = type;
+	}
+	
+	/**
+	 * Devolver el tipo de los valores de la tabla de saltos.
+	 * 
+	 * @return  tipo, o null si no hay tabla
+	 */
+	public TinyDevLang.DataType getTableType() {
+		
+		return tableType;
+	}
+	
+	/**
+	 * Buscar un valor numrico en la tabla de saltos.
+	 * 
+	 * @param value  valor
+	 * @return  n de lnea del CASE, o -1 si no est
+	 */
+	public int findNumber(int value) {
+		
+		if(numberLines != null) {
+			
+			long index = (long) value - minNumber;
+			
+			return (index >= 0 && index < numberLines.length ? numberLines[(int) index] : -1);
+		}
+		
+		Integer line = numberTable.get(value);
+		
+		return (line != null ? line : -1);
+	}
+	
+	/**
+	 * Buscar un valor textual en la tabla de saltos.
+	 * 
+	 * @param value  valor
+	 * @return  n de lnea del CASE, o -1 si no est
+	 */
+	public int findString(String value) {
+		
+		Integer line = stringTable.get(value);
+		
+		return (line != null ? line : -1);
+	}
+	
+	/**
+	 * Helper: Comprobar si una expresin es un nmero constante, con o
+	 * sin signo '-'.
+	 * 
+	 * @param e  expresin
+	 * @return  true si lo es, false en caso contrario
+	 */
+	private boolean isNumber(TinyDevExpr e) {
+		
+		return e.getType() == TinyDevExpr.Id.NUMBER
+				|| (e.getType() == TinyDevExpr.Id.NEGATIVE && e.getArg(0).getType() == TinyDevExpr.Id.NUMBER);
+	}
+	
+	/**
+	 * Helper: Valor de un nmero constante, con o sin signo '-'.
+	 * 
+	 * @param e  expresin
+	 * @return  valor
+	 */
+	private int number(TinyDevExpr e) {
+		
+		return (e.getType() == TinyDevExpr.Id.NUMBER ? e.getNumber() : -e.getArg(0).getNumber());
+	}
+}
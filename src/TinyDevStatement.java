@@ -0,0 +1,299 @@
+/**
+ * TinyDev - Programming language for kids
+ *
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+/**
+ * Clase que implementa una instruccin compilada.
+ * 
+ * Cada lnea de cdigo que comienza por una palabra reservada, se compila
+ * una sola vez en una instruccin, con sus argumentos ya convertidos en
+ * expresiones compiladas (ver TinyDevExpr).
+ * 
+ * Si la lnea tiene errores de sintaxis, la instruccin guarda el cdigo
+ * de error, que se indicar al ejecutarla, como se haca al interpretar
+ * directamente los tokens.
+ * 
+ * @author Miguel
+ */
+public class TinyDevStatement {
+	
+	private TinyDevKeyword.Id code;         // Instruccin
+	private TinyDevKeyword.Id option;       // Opcin: alineacin, estilo, tipo de dato, WHILE / UNTIL...
+	private int style = -1;                 // Estilo de la fuente para FONT, o -1 si no se indica
+	private TinyDevIdentifier identifier;   // Variable, array o place
+	private TinyDevExpr index;              // ndice o tamao del array, o null si no lo hay
+	private TinyDevExpr[] args;             // Argumentos
+	private TinyDevStatement next;          // Instruccin a ejecutar en IF / ELSE simples
+	private TinyDevStatement body;          // Instruccin del place, en CALL sustituidos por ella, o null
+	private TinyDevSelect select;           // Bloque de SELECT, CASE y END SELECT, o null
+	private int target = -1;                // Lnea destino de IF, ELSE, DO, BREAK, JUMP y CALL, o -1 si no la hay
+	private TinyDevLang.Error error = TinyDevLang.Error.SUCCESS;  // Error de compilacin
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param cd  instruccin
+	 */
+	public TinyDevStatement(TinyDevKeyword.Id cd) {
+		
+		code = cd;
+	}
+	
+	/**
+	 * Devolver la instruccin.
+	 * 
+	 * @return  instruccin
+	 */
+	public TinyDevKeyword.Id getCode() {
+		
+		return code;
+	}
+	
+	/**
+	 * Devolver la opcin.
+	 * 
+	 * @return  opcin, o null si no la hay
+	 */
+	public TinyDevKeyword.Id getOption() {
+		
+		return option;
+	}
+	
+	/**
+	 * Establecer la opcin.
+	 * 
+	 * @param op  opcin
+	 */
+	public void setOption(TinyDevKeyword.Id op) {
+		
+		option = op;
+	}
+	
+	/**
+	 * Devolver el estilo de la fuente.
+	 * 
+	 * @return  estilo, o -1 si no se ha indicado
+	 */
+	public int getStyle() {
+		
+		return style;
+	}
+	
+	/**
+	 * Establecer el estilo de la fuente.
+	 * 
+	 * @param st  estilo
+	 */
+	public void setStyle(int st) {
+		
+		style = st;
+	}
+	
+	/**
+	 * Devolver el identificador.
+	 * 
+	 * @return  identificador
+	 */
+	public TinyDevIdentifier getIdentifier() {
+		
+		return identifier;
+	}
+	
+	/**
+	 * Establecer el identificador.
+	 * 
+	 * @param id  identificador
+	 */
+	public void setIdentifier(TinyDevIdentifier id) {
+		
+		identifier = id;
+	}
+	
+	/**
+	 * Devolver la expresin del ndice o tamao del array.
+	 * 
+	 * @return  expresin, o null si no la hay
+	 */
+	public TinyDevExpr getIndex() {
+		
+		return index;
+	}
+	
+	/**
+	 * Establecer la expresin del ndice o tamao del array.
+	 * 
+	 * @param ix  expresin
+	 */
+	public void setIndex(TinyDevExpr ix) {
+		
+		index = ix;
+	}
+	
+	/**
+	 * Devolver un argumento.
+	 * 
+	 * @param ix  posicin (0..?)
+	 * @return  argumento
+	 */
+	public TinyDevExpr getArg(int ix) {
+		
+		return args[ix];
+	}
+	
+	/**
+	 * Devolver el n de argumentos.
+	 * 
+	 * @return  n de argumentos
+	 */
+	public int getArgCount() {
+		
+		return args == null ? 0 : args.length;
+	}
+	
+	/**
+	 * Establecer los argumentos.
+	 * 
+	 * @param ar  argumentos
+	 */
+	public void setArgs(TinyDevExpr[] ar) {
+		
+		args = ar;
+	}
+	
+	/**
+	 * Sustituir un argumento.
+	 * 
+	 * @param ix  posicin (0..?)
+	 * @param ar  argumento
+	 */
+	public void setArg(int ix, TinyDevExpr ar) {
+		
+		args[ix] = ar;
+	}
+	
+	/**
+	 * Devolver la instruccin a ejecutar en IF / ELSE simples.
+	 * 
+	 * @return  instruccin, o null si no la hay
+	 */
+	public TinyDevStatement getNext() {
+		
+		return next;
+	}
+	
+	/**
+	 * Establecer la instruccin a ejecutar en IF / ELSE simples.
+	 * 
+	 * @param st  instruccin
+	 */
+	public void setNext(TinyDevStatement st) {
+		
+		next = st;
+	}
+	
+	/**
+	 * Devolver la instruccin del place, en CALL a places de una sola
+	 * instruccin que no puede dar error, que se ejecuta en lugar de
+	 * saltar al place (ver TinyDevOptimizer).
+	 * 
+	 * @return  instruccin, o null si no la hay
+	 */
+	public TinyDevStatement getBody() {
+		
+		return body;
+	}
+	
+	/**
+	 * Establecer la instruccin del place, en CALL.
+	 * 
+	 * @param st  instruccin
+	 */
+	public void setBody(TinyDevStatement st) {
+		
+		body = st;
+	}
+	
+	/**
+	 * Devolver el bloque SELECT al que pertenece la instruccin, en
+	 * SELECT, CASE y END SELECT.
+	 * 
+	 * @return  bloque, o null si no lo hay
+	 */
+	public TinyDevSelect getSelect() {
+		
+		return select;
+	}
+	
+	/**
+	 * Establecer el bloque SELECT.
+	 * 
+	 * @param sel  bloque
+	 */
+	public void setSelect(TinyDevSelect sel) {
+		
+		select = sel;
+	}
+	
+	/**
+	 * Devolver la lnea destino del salto, calculada antes de la ejecucin:
+	 * 
+	 * IF de bloque: siguiente ELSE o END IF del mismo bloque.
+	 * ELSE: END IF del bloque.
+	 * DO, BREAK: LOOP del bucle.
+	 * FOR, BREAK: NEXT del bucle.
+	 * JUMP, CALL: lnea del place.
+	 * 
+	 * @return  n de lnea (0..?), o -1 si no la hay
+	 */
+	public int getTarget() {
+		
+		return target;
+	}
+	
+	/**
+	 * Establecer la lnea destino del salto.
+	 * 
+	 * @param tg  n de lnea (0..?)
+	 */
+	public void setTarget(int tg) {
+		
+		target = tg;
+	}
+	
+	/**
+	 * Devolver el error de compilacin.
+	 * 
+	 * @return  cdigo de error, o SUCCESS si no lo hay
+	 */
+	public TinyDevLang.Error getError() {
+		
+		return error;
+	}
+	
+	/**
+	 * Establecer el error de compilacin.
+	 * 
+	 * @param err  cdigo de error
+	 */
+	public void setError(TinyDevLang.Error err) {
+		
+		error = err;
+	}
+}
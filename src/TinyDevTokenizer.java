@@ -0,0 +1,523 @@
+/**
+ * TinyDev - Programming language for kids
+ *
+ * Copyright (C) 2017-2022 Miguel I. Garca Lpez (FloppySoftware).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ * Read the file `LICENSE.MD` for more details.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Clase que implementa el tokenizador del cdigo fuente.
+ * 
+ * Convierte cada lnea de cdigo fuente en una lnea de tokens
+ * (TinyDevLine), creando los identificadores que encuentra en ella.
+ * 
+ * Cada identificador nuevo recibe el siguiente slot libre de la tabla de
+ * identificadores que utiliza el tokenizador. Varios tokenizadores pueden
+ * trabajar a la vez sobre distintos fragmentos del cdigo fuente, cada uno
+ * con su propia tabla, y unir despus sus identificadores con merge() y relink().
+ * 
+ * @author Miguel
+ */
+public class TinyDevTokenizer {
+	
+	// Palabras reservadas, segn su nombre en minsculas (ver foldCase)
+	private static final HashMap<String, TinyDevKeyword> keywordMap = new HashMap<String, TinyDevKeyword>();
+	
+	// Operadores, segn su cdigo
+	private static final TinyDevOperator[] operatorsById = new TinyDevOperator[TinyDevOperator.Id.values().length];
+	
+	// Clases de caracteres, para el tokenizador
+	private static final byte CHAR_OTHER = 0;   // Operador, o carcter desconocido
+	private static final byte CHAR_SPACE = 1;   // Espacio
+	private static final byte CHAR_DIGIT = 2;   // Dgito
+	private static final byte CHAR_LETTER = 3;  // Letra, '$' o '_'
+	private static final byte CHAR_QUOTE = 4;   // Comillas
+	
+	// Clases de los caracteres ASCII
+	private static final byte[] charClasses = new byte[128];
+	
+	static {
+		for(TinyDevKeyword kw : TinyDevLang.keywords) {
+			keywordMap.put(foldCase(kw.getName()), kw);
+		}
+		
+		for(TinyDevOperator ot : TinyDevLang.operators) {
+			operatorsById[ot.getType().ordinal()] = ot;
+		}
+		
+		for(char ch = 0; ch < charClasses.length; ++ch) {
+			if(Character.isWhitespace(ch))
+				charClasses[ch] = CHAR_SPACE;
+			else if(Character.isDigit(ch))
+				charClasses[ch] = CHAR_DIGIT;
+			else if(Character.isLetter(ch) || ch == '$' || ch == '_')
+				charClasses[ch] = CHAR_LETTER;
+			else if(ch == '"')
+				charClasses[ch] = CHAR_QUOTE;
+		}
+	}
+	
+	private HashMap<String, TinyDevIdentifier> identifiers;  // Identificadores, segn su nombre en minsculas (ver foldCase)
+	private ArrayList<TinyDevLine> lines;                   // Lneas tokenizadas
+	private TinyDevLang.Error errorId;                      // Cdigo de error
+	private int lineNumber;                                 // N de lnea que se est procesando (0..?)
+	private int posNumber;                                  // Posicin (ndice 0..?) en la lnea actual
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param ids  tabla de identificadores, segn su nombre en minsculas
+	 */
+	public TinyDevTokenizer(HashMap<String, TinyDevIdentifier> ids) {
+		
+		identifiers = ids;
+		errorId = TinyDevLang.Error.SUCCESS;
+	}
+	
+	/**
+	 * Tokenizar un fragmento del cdigo fuente. En caso de error, se
+	 * indicar en la variable errorId, y la lnea en lineNumber.
+	 * 
+	 * @param source  cdigo fuente
+	 * @param first   n de la primera lnea del fragmento (0..?)
+	 * @param last    n de la lnea siguiente a la ltima del fragmento
+	 * @return  lneas tokenizadas, o null en caso de error
+	 */
+	public ArrayList<TinyDevLine> tokenizeAll(List<String> source, int first, int last) {
+		
+		// Crear un ArrayList de lneas de cdigo tokenizado
+		lines = new ArrayList<TinyDevLine>(last - first);
+		
+		// Crear un ArrayList de tokens
+		ArrayList<TinyDevToken> tokens;
+		
+		// Recorrer las lneas de cdigo fuente del fragmento
+		for(lineNumber = first; lineNumber < last; ++lineNumber) {
+			
+			// Tokenizar la lnea
+			if((tokens = tokenize(source.get(lineNumber))) == null) {
+				
+				// Hubo un error, abortar
+				lines = null;
+				return null;
+			}
+			
+			// Aadir la lnea tokenizada al ArrayList
+			lines.add(new TinyDevLine(lineNumber, tokens));
+		}
+		
+		// Devolver las lneas tokenizadas
+		return lines;
+	}
+	
+	/**
+	 * Aadir a una tabla de identificadores los del tokenizador que no estn
+	 * ya en ella, en el orden de sus slots; es decir, en el orden en que
+	 * aparecen en el fragmento de cdigo fuente.
+	 * 
+	 * @param ids  tabla de identificadores, segn su nombre en minsculas
+	 * @return  identificadores de la tabla, segn el slot de los del tokenizador
+	 */
+	public TinyDevIdentifier[] merge(HashMap<String, TinyDevIdentifier> ids) {
+		
+		// Identificadores del tokenizador, segn su slot
+		TinyDevIdentifier[] own = new TinyDevIdentifier[identifiers.size()];
+		
+		for(TinyDevIdentifier id : identifiers.values()) {
+			own[id.getSlot()] = id;
+		}
+		
+		// Buscarlos en la tabla, y aadirlos si no existen
+		TinyDevIdentifier[] result = new TinyDevIdentifier[own.length];
+		
+		for(int i = 0; i < own.length; ++i) {
+			
+			String key = foldCase(own[i].getName());
+			TinyDevIdentifier id = ids.get(key);
+			
+			if(id == null) {
+				id = new TinyDevIdentifier(own[i].getName(), ids.size());
+				ids.put(key, id);
+			}
+			
+			result[i] = id;
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Sustituir en las lneas tokenizadas los identificadores del tokenizador
+	 * por los indicados, segn su slot.
+	 * 
+	 * @param ids  identificadores que sustituyen a los del tokenizador
+	 */
+	public void relink(TinyDevIdentifier[] ids) {
+		
+		for(TinyDevLine line : lines) {
+			
+			ArrayList<TinyDevToken> tokens = line.getTokens();
+			
+			for(int i = 0; i < tokens.size(); ++i) {
+				
+				TinyDevToken tk = tokens.get(i);
+				
+				if(tk.getType() == TinyDevToken.Id.IDENTIFIER) {
+					tokens.set(i, new TinyDevToken(TinyDevToken.Id.IDENTIFIER, ids[tk.getIdentifier().getSlot()]));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Devolver las lneas tokenizadas.
+	 * 
+	 * @return  lneas tokenizadas, o null en caso de error
+	 */
+	public ArrayList<TinyDevLine> getLines() {
+		
+		return lines;
+	}
+	
+	/**
+	 * Devolver el cdigo de error.
+	 * 
+	 * @return  cdigo de error
+	 */
+	public TinyDevLang.Error getErrorId() {
+		
+		return errorId;
+	}
+	
+	/**
+	 * Devolver el n de lnea del error.
+	 * 
+	 * @return  n de lnea (0..?)
+	 */
+	public int getLineNumber() {
+		
+		return lineNumber;
+	}
+	
+	/**
+	 * Devolver la posicin del error en su lnea.
+	 * 
+	 * @return  posicin (0..?)
+	 */
+	public int getPosNumber() {
+		
+		return posNumber;
+	}
+	
+	/**
+	 * Tokenizar una lnea de cdigo fuente. Si hay errores,
+	 * se indicarn en la variable errorId, y la posicin en posNumber.
+	 * 
+	 * La lnea se recorre una sola vez, carcter a carcter, sin crear
+	 * subcadenas ms que para los identificadores y cadenas de texto.
+	 * 
+	 * @param line  lnea de cdigo fuente
+	 * @return  tokens, o null en caso de error
+	 */
+	public ArrayList<TinyDevToken> tokenize(String line) {
+		
+		// Crear un ArrayList de tokens
+		ArrayList<TinyDevToken> result = new ArrayList<TinyDevToken>();
+		
+		// Tomar longitud de la lnea de cdigo fuente
+		int length = line.length();
+		
+		// Posicin (ndice) en la lnea
+		int pos = 0;
+		
+		// Recorrer los caracteres de la lnea
+		while(pos < length) {
+			
+			// Tomar el carcter, y su posicin de inicio
+			char ch = line.charAt(pos);
+			int start = pos;
+			
+			switch(charClass(ch)) {
+			
+				// Ignorar espacios
+				case CHAR_SPACE :
+					++pos;
+					break;
+				
+				// Nmero positivo, sin signo
+				case CHAR_DIGIT :
+					
+					// Tomar el nmero; si no cabe en un int, su valor es 0
+					int number = 0;
+					boolean overflow = false;
+					
+					do {
+						int digit = Character.digit(line.charAt(pos), 10);
+						
+						if(number > (Integer.MAX_VALUE - digit) / 10)
+							overflow = true;
+						else
+							number = number * 10 + digit;
+						
+					} while(++pos < length && charClass(line.charAt(pos)) == CHAR_DIGIT);
+					
+					// Aadir el token
+					result.add(new TinyDevToken(TinyDevToken.Id.NUMBER, overflow ? 0 : number));
+					break;
+				
+				// Identificador
+				case CHAR_LETTER :
+					
+					// Tomar el identificador
+					while(++pos < length) {
+						int cls = charClass(line.charAt(pos));
+						
+						if(cls != CHAR_LETTER && cls != CHAR_DIGIT)
+							break;
+					}
+					
+					String word = line.substring(start, pos);
+					
+					// Comprobar si es una palabra reservada
+					TinyDevKeyword kw = findKeyword(word);
+					
+					if(kw != null) {
+						
+						// S: aadir el token
+						result.add(new TinyDevToken(TinyDevToken.Id.KEYWORD, kw));
+					}
+					else {
+						
+						// No: identificador desconocido, puede ser una variable
+						//     o un place, pero en este momento no se puede
+						//     determinar.
+						//
+						//     Crear y aadir el identificador, si no existe ya.
+						
+						// Buscar el identificador
+						TinyDevIdentifier id = findIdentifier(word);
+						
+						// Comprobar si existe
+						if(id == null) {
+							
+							// No existe: crearlo, y aadirlo
+							id = new TinyDevIdentifier(word, identifiers.size());
+							identifiers.put(foldCase(word), id);
+						}
+						
+						// Aadir el token
+						result.add(new TinyDevToken(TinyDevToken.Id.IDENTIFIER, id));
+					}
+					break;
+				
+				// Cadena de texto entrecomillada
+				case CHAR_QUOTE :
+					
+					// Buscar las comillas del final
+					pos = line.indexOf('"', start + 1);
+					
+					if(pos < 0) {
+						
+						// Cadena de texto mal formada, sealar el error y abortar
+						errorId = TinyDevLang.Error.MISSING_QUOTE;
+						posNumber = length;
+						
+						return null;
+					}
+					
+					// Aadir el token, sin las comillas
+					result.add(new TinyDevToken(TinyDevToken.Id.STRING, line.substring(start + 1, pos++)));
+					break;
+				
+				// Operador, o carcter desconocido
+				default :
+					
+					TinyDevOperator ot = findOperator(line, pos);
+					
+					if(ot == null) {
+						
+						// Tipo de token desconocido, sealar el error y abortar
+						errorId = TinyDevLang.Error.BAD_ARGUMENT;
+						posNumber = pos;
+						
+						return null;
+					}
+					
+					// Si es un comentario, se ignora, junto con el resto de la lnea
+					if(ot.getType() == TinyDevOperator.Id.COMMENT) {
+						posNumber = pos;
+						
+						return result;
+					}
+					
+					// La coma es opcional, y sirve para separar argumentos,
+					// adems de los espacios
+					
+					// Aadir el token
+					result.add(new TinyDevToken(TinyDevToken.Id.OPERATOR, ot));
+					
+					// Actualizar la posicin
+					pos += ot.getName().length();
+					break;
+			}
+		}
+		
+		// Devolver resultado de la tokenizacin
+		posNumber = pos;
+		
+		return result;
+	}
+	
+	/**
+	 * Devolver la clase de un carcter, para el tokenizador.
+	 * 
+	 * @param ch  carcter
+	 * @return  CHAR_SPACE, CHAR_DIGIT, CHAR_LETTER, CHAR_QUOTE o CHAR_OTHER
+	 */
+	private static int charClass(char ch) {
+		
+		// Caracteres ASCII: segn la tabla
+		if(ch < charClasses.length)
+			return charClasses[ch];
+		
+		// Resto de caracteres
+		if(Character.isWhitespace(ch))
+			return CHAR_SPACE;
+		if(Character.isDigit(ch))
+			return CHAR_DIGIT;
+		if(Character.isLetter(ch))
+			return CHAR_LETTER;
+		
+		return CHAR_OTHER;
+	}
+	
+	/**
+	 * Buscar un operador, en una posicin de una lnea de cdigo fuente.
+	 * 
+	 * NOTA: Los operadores que principian con el mismo carcter, se
+	 *       comprueban empezando por el ms largo.
+	 * 
+	 * @param line  lnea de cdigo fuente
+	 * @param pos   posicin en la lnea
+	 * @return  operador, o null si no lo ha encontrado
+	 */
+	private static TinyDevOperator findOperator(String line, int pos) {
+		
+		// Siguiente carcter, o 0 si es el final de la lnea
+		char next = pos + 1 < line.length() ? line.charAt(pos + 1) : 0;
+		
+		switch(line.charAt(pos)) {
+			case '=' : return operator(next == '=' ? TinyDevOperator.Id.EQUAL : TinyDevOperator.Id.ASSIGN);
+			case '!' : return next == '=' ? operator(TinyDevOperator.Id.NOT_EQUAL) : null;
+			case '<' : return operator(next == '=' ? TinyDevOperator.Id.LESS_OR_EQUAL : TinyDevOperator.Id.LESS);
+			case '>' : return operator(next == '=' ? TinyDevOperator.Id.GREATER_OR_EQUAL : TinyDevOperator.Id.GREATER);
+			case '&' : return next == '&' ? operator(TinyDevOperator.Id.AND) : null;
+			case '|' : return next == '|' ? operator(TinyDevOperator.Id.OR) : null;
+			case '\'' : return operator(TinyDevOperator.Id.COMMENT);
+			case ':' : return operator(TinyDevOperator.Id.COLON);
+			case ',' : return operator(TinyDevOperator.Id.COMMA);
+			case '(' : return operator(TinyDevOperator.Id.OPEN_PARENTHESIS);
+			case ')' : return operator(TinyDevOperator.Id.CLOSE_PARENTHESIS);
+			case '[' : return operator(TinyDevOperator.Id.OPEN_BRACKET);
+			case ']' : return operator(TinyDevOperator.Id.CLOSE_BRACKET);
+			case '+' : return operator(TinyDevOperator.Id.PLUS);
+			case '-' : return operator(TinyDevOperator.Id.MINUS);
+			case '*' : return operator(TinyDevOperator.Id.MULTIPLY);
+			case '/' : return operator(TinyDevOperator.Id.DIVIDE);
+			case '%' : return operator(TinyDevOperator.Id.MODULUS);
+			default  : return null;
+		}
+	}
+	
+	/**
+	 * Devolver el operador de la lista de operadores, segn su cdigo.
+	 * 
+	 * @param id  cdigo del operador
+	 * @return  operador
+	 */
+	private static TinyDevOperator operator(TinyDevOperator.Id id) {
+		
+		return operatorsById[id.ordinal()];
+	}
+	
+	/**
+	 * Buscar una palabra reservada.
+	 * 
+	 * @param name  palabra reservada
+	 * @return  palabra reservada, o null en caso de no encontrarla
+	 */
+	private TinyDevKeyword findKeyword(String name) {
+		
+		return keywordMap.get(foldCase(name));
+	}
+	
+	/**
+	 * Pasar un nombre a minsculas, para poder buscarlo en una tabla hash
+	 * ignorando maysculas / minsculas, igual que equalsIgnoreCase().
+	 * 
+	 * @param name  nombre
+	 * @return  nombre en minsculas (el mismo objeto, si ya lo estaba)
+	 */
+	private static String foldCase(String name) {
+		
+		int length = name.length();
+		
+		// Buscar el primer carcter a convertir
+		int i = 0;
+		
+		while(i < length && foldCase(name.charAt(i)) == name.charAt(i))
+			++i;
+		
+		// Si no hay ninguno, devolver el mismo nombre
+		if(i == length)
+			return name;
+		
+		// Convertir el resto
+		char[] chars = name.toCharArray();
+		
+		for(; i < length; ++i)
+			chars[i] = foldCase(chars[i]);
+		
+		return new String(chars);
+	}
+	
+	/**
+	 * Pasar un carcter a minsculas, igual que equalsIgnoreCase().
+	 * 
+	 * @param ch  carcter
+	 * @return  carcter en minsculas
+	 */
+	private static char foldCase(char ch) {
+		
+		return Character.toLowerCase(Character.toUpperCase(ch));
+	}
+	
+	/**
+	 * Buscar un identificador.
+	 * 
+	 * @param name  nombre del identificador
+	 * @return  identificador, o null si no ha sido encontrado
+	 */
+	private TinyDevIdentifier findIdentifier(String name) {
+		
+		return identifiers.get(foldCase(name));
+	}
+}
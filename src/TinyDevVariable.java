@@ -19,14 +19,19 @@
  * Read the file `LICENSE.MD` for more details.
  */
 
+import java.util.Arrays;
+
 public class TinyDevVariable {
 	
 	private String name = null;
 	private TinyDevLang.DataType type = null;
 	private Object value = null;
+	private int number = 0;      // Valor, si la variable es de tipo NUMBER
 	
 	private TinyDevLang.DataType subtype = null;
 	private int size = 0;
+	private int numbers[] = null;     // Elementos, si es un array de tipo NUMBER
+	private Object elements[] = null; // Elementos, si es un array de otro tipo (String[] si es de tipo STRING)
 	
 	public TinyDevVariable(String nm, TinyDevLang.DataType tp, String val) {
 		
@@ -39,7 +44,7 @@ public class TinyDevVariable {
 		
 		name = nm;
 		type = tp;
-		value = val;
+		number = val;
 	}
 	
 	public TinyDevVariable(String nm, TinyDevLang.DataType tp, Object val) {
@@ -55,21 +60,16 @@ public class TinyDevVariable {
 		type = tp;
 		subtype = subtp;
 		size = sz;
-		value = new Object[sz];
-		
-		Object init = null;
 		
 		if(subtype == TinyDevLang.DataType.NUMBER) {
-			init = 0;
+			numbers = new int[sz];
 		}
 		else if(subtype == TinyDevLang.DataType.STRING) {
-			init = "";
+			elements = new String[sz];
+			Arrays.fill(elements, "");
 		}
-		
-		Object arr[] = (Object []) value;
-		
-		for(int i = 0; i < size; ++i) {
-			arr[i] = init;
+		else {
+			elements = new Object[sz];
 		}
 	}
 
@@ -89,7 +89,7 @@ public class TinyDevVariable {
 	
 	public int getNumberValue() {
 		
-		return (int) value;
+		return number;
 	}
 	
 	public void setStringValue(String str) {
@@ -99,7 +99,7 @@ public class TinyDevVariable {
 	
 	public void setNumberValue(int num) {
 		
-		value = num;
+		number = num;
 	}
 	
 	public Object getObjectValue() {
@@ -121,5 +121,29 @@ public class TinyDevVariable {
 	public TinyDevLang.DataType getSubType() {
 		return subtype;
 	}
+	
+	public int[] getNumberArray() {
+		return numbers;
+	}
+	
+	public Object[] getObjectArray() {
+		return elements;
+	}
+	
+	public Object getArrayValue() {
+		return subtype == TinyDevLang.DataType.NUMBER ? numbers : elements;
+	}
+	
+	public void copyArrayValue(Object arr) {
+		
+		if(subtype == TinyDevLang.DataType.NUMBER) {
+			numbers = ((int []) arr).clone();
+			size = numbers.length;
+		}
+		else {
+			elements = ((Object []) arr).clone();
+			size = elements.length;
+		}
+	}
 
 }